@@ -29,10 +29,12 @@ public interface IAiService {
     /**
      * 根据选定的 知识库Tag 流式生成消息的响应结果
      *
-     * @param model   需要使用的模型
-     * @param ragTag  知识库 Tag
-     * @param message 发送的消息
+     * @param model      需要使用的模型
+     * @param ragTag     知识库 Tag
+     * @param message    发送的消息
+     * @param topK       检索的文本块数量, 为空时使用默认值
+     * @param searchMode 检索方式 ( vector, keyword, hybrid ), 为空时使用配置的默认值
      * @return 返回 Spring AI 对话响应对象 ( 流式传输 )
      */
-    Flux<ChatResponse> generateStreamWithRag(String model, String ragTag, String message);
+    Flux<ChatResponse> generateStreamWithRag(String model, String ragTag, String message, Integer topK, String searchMode);
 }
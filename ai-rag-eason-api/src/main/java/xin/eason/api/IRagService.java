@@ -1,6 +1,11 @@
 package xin.eason.api;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.multipart.MultipartFile;
+import xin.eason.api.dto.EmbeddingCacheStatsDTO;
+import xin.eason.api.dto.IngestionJobStatusDTO;
+import xin.eason.api.dto.KnowledgeBaseStatsDTO;
+import xin.eason.api.dto.KnowledgeTagDTO;
 import xin.eason.api.response.Result;
 
 import java.util.List;
@@ -17,19 +22,66 @@ public interface IRagService {
     Result<List<String>> queryRagTagList();
 
     /**
-     * 上传 RAG 知识库文件
+     * 查询已有的 RAG 知识库的 Tag 标签及其元数据
+     * @return 元数据列表
+     */
+    Result<List<KnowledgeTagDTO>> queryRagTagDetailList();
+
+    /**
+     * 上传 RAG 知识库文件, 文件会被暂存后交由后台导入任务异步处理
      * @param ragTag 上传的 RAG 知识库的 Tag 标签
      * @param files 上传的一系列文件, 使用列表封装
-     * @return 上传
+     * @return 导入任务 ID
      */
     Result<String> uploadRagFiles(String ragTag, List<MultipartFile> files);
 
     /**
-     * 根据传入的仓库 URL 和用户名, Token 克隆 Git 仓库, 然后上传知识库
+     * 流式上传 RAG 知识库文件: 边读取请求体边把各文件写入暂存目录, 每个文件接收完毕即开始导入, 不等待整个请求结束
+     * @param request multipart/form-data 请求, ragTag 表单字段需位于文件之前 ( 或放在查询参数中 )
+     * @return 导入任务 ID
+     */
+    Result<String> uploadRagFilesStream(HttpServletRequest request);
+
+    /**
+     * 查询知识库导入任务的进度
+     * @param jobId 导入任务 ID
+     * @return 任务整体进度, 吞吐量以及每个文件的处理状态
+     */
+    Result<IngestionJobStatusDTO> queryIngestionJob(String jobId);
+
+    /**
+     * 查询嵌入缓存的命中统计
+     * @return 缓存命中统计
+     */
+    Result<EmbeddingCacheStatsDTO> queryEmbeddingCacheStats();
+
+    /**
+     * 根据传入的仓库 URL 和用户名, Token 同步 Git 仓库, 然后增量更新知识库 ( 只处理上次索引之后变化的文件 )
      * @param repositoryUrl 仓库 URL
      * @param userName 用户名
      * @param token 用户 Token
-     * @return 分析结果
+     * @return 导入任务 ID, 仓库没有新提交时返回提示信息
      */
     Result<String> analyseGitRepository(String repositoryUrl, String userName, String token);
+
+    /**
+     * 删除 RAG 知识库的全部内容, 并从 Tag 列表中移除
+     * @param ragTag 知识库 Tag
+     * @return 删除的文本块数
+     */
+    Result<Integer> deleteRagTag(String ragTag);
+
+    /**
+     * 用上传的文件替换 RAG 知识库的全部内容: 新版本在后台导入, 期间检索仍使用旧版本, 全部文件导入成功后一次切换
+     * @param ragTag 知识库 Tag
+     * @param files 新版本的全部文件
+     * @return 构建新版本的导入任务 ID
+     */
+    Result<String> replaceRagFiles(String ragTag, List<MultipartFile> files);
+
+    /**
+     * 查询各知识库 ( 及其替换中, 待删除的版本 ) 的文本块数与占用空间
+     * @return 用量列表
+     */
+    Result<List<KnowledgeBaseStatsDTO>> queryKnowledgeBaseStats();
 }
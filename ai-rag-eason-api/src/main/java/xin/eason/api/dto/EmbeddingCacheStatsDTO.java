@@ -0,0 +1,38 @@
+package xin.eason.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 嵌入缓存命中统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheStatsDTO {
+    /**
+     * 查询缓存的文本块总数
+     */
+    private Long requests;
+    /**
+     * 进程内缓存命中数
+     */
+    private Long localHits;
+    /**
+     * Redis 缓存命中数
+     */
+    private Long redisHits;
+    /**
+     * 未命中 ( 实际发往嵌入服务 ) 的文本块数
+     */
+    private Long misses;
+    /**
+     * 命中率
+     */
+    private Double hitRate;
+    /**
+     * 进程内缓存当前条目数
+     */
+    private Long localEntries;
+}
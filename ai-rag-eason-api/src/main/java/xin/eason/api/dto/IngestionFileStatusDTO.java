@@ -0,0 +1,38 @@
+package xin.eason.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 知识库导入任务中单个文件的处理进度
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionFileStatusDTO {
+    /**
+     * 文件名称
+     */
+    private String fileName;
+    /**
+     * 当前所处阶段 ( QUEUED, PARSING, SPLITTING, EMBEDDING, STORING, COMPLETED, FAILED )
+     */
+    private String state;
+    /**
+     * 文件分片后的文本块总数
+     */
+    private Integer chunkCount;
+    /**
+     * 已经写入向量库的文本块数量
+     */
+    private Integer storedChunks;
+    /**
+     * 处理耗时 ( 毫秒 )
+     */
+    private Long elapsedMillis;
+    /**
+     * 失败原因, 处理成功时为空
+     */
+    private String error;
+}
@@ -0,0 +1,64 @@
+package xin.eason.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 知识库导入任务的整体进度与吞吐量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobStatusDTO {
+    /**
+     * 任务 ID
+     */
+    private String jobId;
+    /**
+     * 知识库 Tag
+     */
+    private String ragTag;
+    /**
+     * 任务状态 ( RUNNING, COMPLETED, PARTIAL: 部分文件失败, FAILED: 全部文件失败或发布失败 )
+     */
+    private String status;
+    /**
+     * 文件总数
+     */
+    private Integer totalFiles;
+    /**
+     * 已成功处理的文件数
+     */
+    private Integer completedFiles;
+    /**
+     * 处理失败的文件数
+     */
+    private Integer failedFiles;
+    /**
+     * 已分片得到的文本块总数
+     */
+    private Long totalChunks;
+    /**
+     * 已写入向量库的文本块数量
+     */
+    private Long storedChunks;
+    /**
+     * 任务已运行时间 ( 毫秒 )
+     */
+    private Long elapsedMillis;
+    /**
+     * 文件吞吐量 ( 个/秒 )
+     */
+    private Double filesPerSecond;
+    /**
+     * 文本块吞吐量 ( 块/秒 )
+     */
+    private Double chunksPerSecond;
+    /**
+     * 每个文件的处理进度
+     */
+    private List<IngestionFileStatusDTO> files;
+}
@@ -0,0 +1,34 @@
+package xin.eason.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一个知识库版本在向量库中的用量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnowledgeBaseStatsDTO {
+    /**
+     * 知识库 Tag
+     */
+    private String ragTag;
+    /**
+     * 文本块实际写入的 Tag, 知识库被替换过时与 ragTag 不同
+     */
+    private String storageTag;
+    /**
+     * 版本状态 ( ACTIVE 正在提供检索, BUILDING 替换中的新版本, INACTIVE 已被替换或未完成的版本, 等待删除 )
+     */
+    private String state;
+    /**
+     * 文本块数
+     */
+    private Long chunks;
+    /**
+     * 占用字节数, 统计口径取决于向量库
+     */
+    private Long bytes;
+}
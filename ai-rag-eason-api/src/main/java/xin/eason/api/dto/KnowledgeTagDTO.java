@@ -0,0 +1,38 @@
+package xin.eason.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 已登记的知识库 Tag 及其元数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnowledgeTagDTO {
+    /**
+     * 知识库 Tag
+     */
+    private String ragTag;
+    /**
+     * 导入任务写入的文本块数 ( 扣除增量索引删除的旧文本块 )
+     */
+    private Long chunks;
+    /**
+     * 最后一次索引成功的 Git 提交, 不是代码仓库时为 null
+     */
+    private String lastCommit;
+    /**
+     * 写入文本块时使用的嵌入模型
+     */
+    private String embeddingModel;
+    /**
+     * 登记时间 ( 毫秒时间戳 )
+     */
+    private Long createTime;
+    /**
+     * 最后一次导入完成的时间 ( 毫秒时间戳 )
+     */
+    private Long updateTime;
+}
@@ -0,0 +1,26 @@
+package xin.eason.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import xin.eason.trigger.concurrent.BlockingExecution;
+
+/**
+ * 阻塞调用执行方式配置注入类. Tomcat 请求线程由 spring.threads.virtual.enabled 切换为虚拟线程 ( Java 21 ),
+ * 后台工作线程与各下游服务的并发上限由 spring.ai.rag.concurrency 配置
+ */
+@Configuration
+@EnableConfigurationProperties(RagConfigProperties.class)
+public class ConcurrencyConfig {
+
+    /**
+     * 注入 {@link BlockingExecution} 对象, 导入流水线, 知识库检索与控制器共用同一组下游并发许可
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link BlockingExecution} Bean 对象
+     */
+    @Bean
+    public BlockingExecution blockingExecution(RagConfigProperties ragConfigProperties) {
+        return new BlockingExecution(ragConfigProperties.getConcurrency());
+    }
+}
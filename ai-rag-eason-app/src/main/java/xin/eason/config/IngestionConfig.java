@@ -0,0 +1,154 @@
+package xin.eason.config;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.git.GitIndexState;
+import xin.eason.trigger.git.GitRepositoryIndexer;
+import xin.eason.trigger.git.RepositoryScanner;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionWorkQueue;
+import xin.eason.trigger.ingest.IngestionWorkers;
+import xin.eason.trigger.ingest.RedisIngestionWorkQueue;
+import xin.eason.trigger.knowledge.KnowledgeGenerations;
+import xin.eason.trigger.knowledge.KnowledgeRegistry;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.vectorstore.PgBulkLoader;
+import xin.eason.trigger.vectorstore.PgVectorDocumentDeleter;
+import xin.eason.trigger.vectorstore.VectorBulkLoader;
+import xin.eason.trigger.vectorstore.VectorDocumentDeleter;
+
+/**
+ * 知识库导入流水线配置注入类
+ */
+@Configuration
+@EnableConfigurationProperties(RagConfigProperties.class)
+public class IngestionConfig {
+
+    /**
+     * 注入 {@link IngestionPipeline} 导入流水线对象, 上传的文件在其中异步完成 解析 -> 分片 -> 嵌入 -> 存储
+     *
+     * @param ragConfigProperties  RAG 配置属性
+     * @param documentSplitter     文本分割器
+     * @param embeddingClient      嵌入客户端
+     * @param vectorStore          知识库使用的向量库
+     * @param ragMetrics           RAG 指标
+     * @param blockingExecution    工作线程类型与下游并发上限
+     * @param bulkLoader           向量库的批量导入通道, 未开启时不存在
+     * @param knowledgeGenerations 知识库版本表, 导入任务写入知识库的当前版本, 知识库正在删除或替换时拒绝导入
+     * @param workQueue            多个节点共享的导入工作队列, 未开启时不存在
+     * @return {@link IngestionPipeline} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    public IngestionPipeline ingestionPipeline(RagConfigProperties ragConfigProperties, DocumentSplitter documentSplitter,
+                                               EmbeddingClient embeddingClient, VectorStore vectorStore, RagMetrics ragMetrics,
+                                               BlockingExecution blockingExecution, ObjectProvider<VectorBulkLoader> bulkLoader,
+                                               KnowledgeGenerations knowledgeGenerations, ObjectProvider<IngestionWorkQueue> workQueue) {
+        IngestionPipeline pipeline = new IngestionPipeline(ragConfigProperties.getIngest(), documentSplitter, embeddingClient, vectorStore, ragMetrics, blockingExecution);
+        bulkLoader.ifAvailable(pipeline::useBulkLoader);
+        workQueue.ifAvailable(pipeline::useWorkQueue);
+        pipeline.resolveStorageTagsWith(knowledgeGenerations::resolveForWrite);
+        return pipeline;
+    }
+
+    /**
+     * 注入基于 Redis Stream 的 {@link IngestionWorkQueue} 导入工作队列, 各节点共同处理文本块批次 ( 向量库需在节点间共享, 因此不适用于 HNSW 向量库 )
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param redissonClient      Redisson 客户端
+     * @return {@link RedisIngestionWorkQueue} Bean 对象
+     */
+    @Bean
+    @ConditionalOnExpression("'${spring.ai.rag.store:pgvector}' != 'hnsw' && ${spring.ai.rag.work-queue.enabled:false}")
+    public RedisIngestionWorkQueue ingestionWorkQueue(RagConfigProperties ragConfigProperties, RedissonClient redissonClient) {
+        return new RedisIngestionWorkQueue(redissonClient, ragConfigProperties.getWorkQueue());
+    }
+
+    /**
+     * 注入 {@link IngestionWorkers} 工作队列消费者, 领取任一节点投递的文本块批次并嵌入, 存储
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param ingestionWorkQueue  导入工作队列
+     * @param embeddingClient     嵌入客户端
+     * @param vectorStore         知识库使用的向量库
+     * @param ragMetrics          RAG 指标
+     * @param blockingExecution   工作线程类型与下游并发上限
+     * @return {@link IngestionWorkers} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnExpression("'${spring.ai.rag.store:pgvector}' != 'hnsw' && ${spring.ai.rag.work-queue.enabled:false}")
+    public IngestionWorkers ingestionWorkers(RagConfigProperties ragConfigProperties, IngestionWorkQueue ingestionWorkQueue, EmbeddingClient embeddingClient,
+                                             VectorStore vectorStore, RagMetrics ragMetrics, BlockingExecution blockingExecution) {
+        return new IngestionWorkers(ingestionWorkQueue, embeddingClient, vectorStore, ragMetrics, blockingExecution, ragConfigProperties.getWorkQueue());
+    }
+
+    /**
+     * 注入以 COPY 批量写入 PG 向量库的 {@link VectorBulkLoader} 对象, 在 {@link PgVectorStore} 建表之后读取列类型
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param jdbcTemplate        用于调用数据库的对象
+     * @return {@link PgBulkLoader} Bean 对象
+     */
+    @Bean(initMethod = "initialize")
+    @DependsOn("pgVectorStore")
+    @ConditionalOnExpression("'${spring.ai.rag.store:pgvector}' == 'pgvector' && ${spring.ai.rag.bulk-load.enabled:false}")
+    public PgBulkLoader pgBulkLoader(RagConfigProperties ragConfigProperties, JdbcTemplate jdbcTemplate) {
+        return new PgBulkLoader(ragConfigProperties.getBulkLoad(), jdbcTemplate);
+    }
+
+    /**
+     * 注入按元数据删除向量并统计各 Tag 用量的 {@link PgVectorDocumentDeleter} 对象 ( PG 向量库; 其余向量库自身即实现了这两个接口 )
+     *
+     * @param jdbcTemplate 用于调用数据库的对象
+     * @return {@link PgVectorDocumentDeleter} Bean 对象
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "store", havingValue = "pgvector", matchIfMissing = true)
+    public PgVectorDocumentDeleter vectorDocumentDeleter(JdbcTemplate jdbcTemplate) {
+        return new PgVectorDocumentDeleter(jdbcTemplate);
+    }
+
+    /**
+     * 注入 {@link RepositoryScanner} 并行仓库扫描器
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link RepositoryScanner} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RepositoryScanner repositoryScanner(RagConfigProperties ragConfigProperties) {
+        return new RepositoryScanner(ragConfigProperties.getGit());
+    }
+
+    /**
+     * 注入 {@link GitRepositoryIndexer} Git 仓库增量索引器
+     *
+     * @param ragConfigProperties   RAG 配置属性
+     * @param ingestionPipeline     知识库导入流水线
+     * @param repositoryScanner     并行仓库扫描器
+     * @param vectorDocumentDeleter 向量删除器
+     * @param redissonClient        Redisson 客户端, 记录每个仓库最后索引的提交与知识库 Tag 的拥有者
+     * @param knowledgeGenerations  知识库版本表, 全量构建写入新版本, 增量更新作用于知识库的当前版本
+     * @param knowledgeRegistry     知识库 Tag 登记表, 已登记的 Tag 不会被仓库认领
+     * @return {@link GitRepositoryIndexer} Bean 对象
+     */
+    @Bean
+    public GitRepositoryIndexer gitRepositoryIndexer(RagConfigProperties ragConfigProperties, IngestionPipeline ingestionPipeline, RepositoryScanner repositoryScanner,
+                                                     VectorDocumentDeleter vectorDocumentDeleter, RedissonClient redissonClient,
+                                                     KnowledgeGenerations knowledgeGenerations, KnowledgeRegistry knowledgeRegistry) {
+        GitRepositoryIndexer indexer = new GitRepositoryIndexer(ragConfigProperties.getGit(), ingestionPipeline, repositoryScanner, vectorDocumentDeleter,
+                new GitIndexState(redissonClient), knowledgeGenerations);
+        indexer.checkExistingTagsWith(knowledgeRegistry::contains);
+        return indexer;
+    }
+}
@@ -0,0 +1,62 @@
+package xin.eason.config;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.git.GitRepositoryIndexer;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.knowledge.KnowledgeGenerations;
+import xin.eason.trigger.knowledge.KnowledgeLifecycle;
+import xin.eason.trigger.knowledge.KnowledgeRegistry;
+import xin.eason.trigger.vectorstore.KnowledgeInventory;
+import xin.eason.trigger.vectorstore.VectorDocumentDeleter;
+
+/**
+ * 知识库管理 ( 删除, 替换, 用量统计 ) 配置注入类
+ */
+@Configuration
+public class KnowledgeConfig {
+
+    /**
+     * 注入 {@link KnowledgeGenerations} 知识库版本表, 导入流水线, 检索器与 Git 索引器都按其解析知识库当前版本的文本块 Tag
+     *
+     * @param redissonClient    Redisson 客户端
+     * @param blockingExecution 工作线程类型与下游并发上限
+     * @return {@link KnowledgeGenerations} Bean 对象
+     */
+    @Bean
+    public KnowledgeGenerations knowledgeGenerations(RedissonClient redissonClient, BlockingExecution blockingExecution) {
+        return new KnowledgeGenerations(redissonClient, blockingExecution);
+    }
+
+    /**
+     * 注入 {@link KnowledgeRegistry} 知识库 Tag 登记表, 启动时预加载到本地并迁移旧的 Tag 列表
+     *
+     * @param redissonClient      Redisson 客户端
+     * @param ragConfigProperties RAG 配置, 提供嵌入模型名称与是否兼容旧的 Tag 列表
+     * @param blockingExecution   工作线程类型与下游并发上限
+     * @return {@link KnowledgeRegistry} Bean 对象
+     */
+    @Bean
+    public KnowledgeRegistry knowledgeRegistry(RedissonClient redissonClient, RagConfigProperties ragConfigProperties, BlockingExecution blockingExecution) {
+        return new KnowledgeRegistry(redissonClient, ragConfigProperties.getEmbed(), ragConfigProperties.isLegacyTagList(), blockingExecution);
+    }
+
+    /**
+     * 注入 {@link KnowledgeLifecycle} 知识库生命周期管理对象
+     *
+     * @param ingestionPipeline     知识库导入流水线
+     * @param vectorDocumentDeleter 向量删除器
+     * @param knowledgeInventory    向量库用量统计
+     * @param knowledgeGenerations  知识库版本表
+     * @param gitRepositoryIndexer  Git 仓库增量索引器
+     * @return {@link KnowledgeLifecycle} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KnowledgeLifecycle knowledgeLifecycle(IngestionPipeline ingestionPipeline, VectorDocumentDeleter vectorDocumentDeleter,
+                                                 KnowledgeInventory knowledgeInventory, KnowledgeGenerations knowledgeGenerations,
+                                                 GitRepositoryIndexer gitRepositoryIndexer) {
+        return new KnowledgeLifecycle(ingestionPipeline, vectorDocumentDeleter, knowledgeInventory, knowledgeGenerations, gitRepositoryIndexer);
+    }
+}
@@ -0,0 +1,24 @@
+package xin.eason.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import xin.eason.trigger.metrics.RagMetrics;
+
+/**
+ * RAG 指标配置注入类, 指标经 Actuator 以 /actuator/prometheus 暴露
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 注入 {@link RagMetrics} 对象, 对话控制器与导入流水线共用
+     *
+     * @param meterRegistry Actuator 自动配置的指标注册表
+     * @return {@link RagMetrics} Bean 对象
+     */
+    @Bean
+    public RagMetrics ragMetrics(MeterRegistry meterRegistry) {
+        return new RagMetrics(meterRegistry);
+    }
+}
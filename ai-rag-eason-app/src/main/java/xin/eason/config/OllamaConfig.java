@@ -5,6 +5,7 @@ import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
 import dev.langchain4j.data.document.splitter.DocumentByWordSplitter;
 import dev.langchain4j.data.segment.TextSegment;
 import lombok.RequiredArgsConstructor;
+import org.springframework.ai.embedding.EmbeddingClient;
 import org.springframework.ai.ollama.OllamaChatClient;
 import org.springframework.ai.ollama.OllamaEmbeddingClient;
 import org.springframework.ai.ollama.api.OllamaApi;
@@ -19,7 +20,15 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.redisson.api.RedissonClient;
+import xin.eason.trigger.embedding.BatchingEmbeddingClient;
+import xin.eason.trigger.embedding.CachingEmbeddingClient;
+import xin.eason.trigger.embedding.OllamaBatchEmbeddingClient;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+import xin.eason.trigger.vectorstore.PgPartitionedVectorStore;
 
 import java.util.Optional;
 
@@ -28,7 +37,7 @@ import java.util.Optional;
  */
 @Configuration
 @RequiredArgsConstructor
-@EnableConfigurationProperties(OllamaConfigProperties.class)
+@EnableConfigurationProperties({OllamaConfigProperties.class, RagConfigProperties.class})
 public class OllamaConfig {
 
     /**
@@ -95,32 +104,97 @@ public class OllamaConfig {
     }
 
     /**
-     * 注入 {@link PgVectorStore} 可使用数据库存储的向量储存器对象 ( 嵌入模型: nomic-embed-text )
+     * 注入合并请求的批量嵌入客户端 ( 嵌入模型: nomic-embed-text ), 使用 Ollama 的 /api/embed 批量接口
      *
-     * @param ollamaApi    {@link  OllamaApi} 的 Bean 对象
-     * @param jdbcTemplate 用于调用数据库的对象
-     * @return {@link PgVectorStore} Bean 对象
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link BatchingEmbeddingClient} Bean 对象
      */
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     @ConditionalOnProperty(prefix = "spring.ai.rag", name = "embed", havingValue = "nomic-embed-text", matchIfMissing = true)
-    public PgVectorStore pgVectorStoreOllamaAi(OllamaApi ollamaApi, JdbcTemplate jdbcTemplate) {
-        OllamaEmbeddingClient ollamaEmbeddingClient = new OllamaEmbeddingClient(ollamaApi);
-        ollamaEmbeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
-        return new PgVectorStore(jdbcTemplate, ollamaEmbeddingClient);
+    public BatchingEmbeddingClient batchingEmbeddingClientOllamaAi(RagConfigProperties ragConfigProperties) {
+        OllamaBatchEmbeddingClient ollamaBatchEmbeddingClient = new OllamaBatchEmbeddingClient(ollamaConfigProperties.getBaseUrl(), "nomic-embed-text");
+        return new BatchingEmbeddingClient(ollamaBatchEmbeddingClient, ragConfigProperties.getEmbedding());
+    }
+
+    /**
+     * 注入合并请求的批量嵌入客户端 ( 嵌入模型: text-embedding-ada-002 )
+     *
+     * @param openAiApi           {@link  OpenAiApi} 的 Bean 对象
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link BatchingEmbeddingClient} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "embed", havingValue = "text-embedding-ada-002")
+    public BatchingEmbeddingClient batchingEmbeddingClientOpenAi(OpenAiApi openAiApi, RagConfigProperties ragConfigProperties) {
+        return new BatchingEmbeddingClient(new OpenAiEmbeddingClient(openAiApi), ragConfigProperties.getEmbedding());
     }
 
     /**
-     * 注入 {@link PgVectorStore} 可使用数据库存储的向量储存器对象 ( 嵌入模型: text-embedding-ada-002 )
+     * 注入带内容寻址缓存的嵌入客户端, 未变化的文本块直接复用已有向量
      *
-     * @param openAiApi    {@link  OpenAiApi} 的 Bean 对象
-     * @param jdbcTemplate 用于调用数据库的对象
+     * @param batchingEmbeddingClient 合并请求的批量嵌入客户端
+     * @param ragConfigProperties     RAG 配置属性
+     * @param redissonClient          Redisson 客户端, 用于二级缓存
+     * @return {@link CachingEmbeddingClient} Bean 对象
+     */
+    @Bean
+    public CachingEmbeddingClient cachingEmbeddingClient(BatchingEmbeddingClient batchingEmbeddingClient, RagConfigProperties ragConfigProperties, RedissonClient redissonClient) {
+        return new CachingEmbeddingClient(batchingEmbeddingClient, ragConfigProperties.getEmbed(), ragConfigProperties.getEmbeddingCache(), redissonClient);
+    }
+
+    /**
+     * 注入知识库使用的嵌入客户端, 导入流水线与 {@link PgVectorStore} 共用
+     *
+     * @param cachingEmbeddingClient 带缓存的嵌入客户端
+     * @return {@link PrecomputedEmbeddingClient} Bean 对象
+     */
+    @Bean
+    @Primary
+    public PrecomputedEmbeddingClient ragEmbeddingClient(CachingEmbeddingClient cachingEmbeddingClient) {
+        return new PrecomputedEmbeddingClient(cachingEmbeddingClient);
+    }
+
+    /**
+     * 注入 {@link PgVectorStore} 可使用数据库存储的向量储存器对象
+     *
+     * @param ragEmbeddingClient 知识库使用的嵌入客户端
+     * @param jdbcTemplate       用于调用数据库的对象
      * @return {@link PgVectorStore} Bean 对象
      */
     @Bean
-    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "embed", havingValue = "text-embedding-ada-002")
-    public PgVectorStore pgVectorStoreOpenAi(OpenAiApi openAiApi, JdbcTemplate jdbcTemplate) {
-        OpenAiEmbeddingClient openAiEmbeddingClient = new OpenAiEmbeddingClient(openAiApi);
-        return new PgVectorStore(jdbcTemplate, openAiEmbeddingClient);
+    @Primary
+    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "store", havingValue = "pgvector", matchIfMissing = true)
+    public PgVectorStore pgVectorStore(EmbeddingClient ragEmbeddingClient, JdbcTemplate jdbcTemplate) {
+        return new PgVectorStore(jdbcTemplate, ragEmbeddingClient);
+    }
+
+    /**
+     * 注入 {@link HnswVectorStore} 进程内 HNSW 向量储存器对象, 查询不经过数据库
+     *
+     * @param ragEmbeddingClient  知识库使用的嵌入客户端
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link HnswVectorStore} Bean 对象
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "store", havingValue = "hnsw")
+    public HnswVectorStore hnswVectorStore(EmbeddingClient ragEmbeddingClient, RagConfigProperties ragConfigProperties) {
+        return new HnswVectorStore(ragEmbeddingClient, ragConfigProperties.getHnsw());
+    }
+
+    /**
+     * 注入 {@link PgPartitionedVectorStore} 按知识库 Tag 分区的 PG 向量储存器对象, 每个 Tag 的检索只访问其分区与分区上的索引
+     *
+     * @param ragEmbeddingClient  知识库使用的嵌入客户端
+     * @param jdbcTemplate        用于调用数据库的对象
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link PgPartitionedVectorStore} Bean 对象
+     */
+    @Bean(initMethod = "initialize")
+    @Primary
+    @ConditionalOnProperty(prefix = "spring.ai.rag", name = "store", havingValue = "pgvector-partitioned")
+    public PgPartitionedVectorStore pgPartitionedVectorStore(EmbeddingClient ragEmbeddingClient, JdbcTemplate jdbcTemplate, RagConfigProperties ragConfigProperties) {
+        return new PgPartitionedVectorStore(ragConfigProperties.getPartitioned(), jdbcTemplate, ragEmbeddingClient);
     }
 
 }
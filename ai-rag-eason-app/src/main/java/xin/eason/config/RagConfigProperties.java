@@ -0,0 +1,107 @@
+package xin.eason.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import xin.eason.trigger.concurrent.ConcurrencyOptions;
+import xin.eason.trigger.embedding.EmbeddingBatchOptions;
+import xin.eason.trigger.embedding.EmbeddingCacheOptions;
+import xin.eason.trigger.git.GitIndexOptions;
+import xin.eason.trigger.retrieval.ContextOptions;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.retrieval.SemanticCacheOptions;
+import xin.eason.trigger.vectorstore.BulkLoadOptions;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.PgPartitionOptions;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionQueueOptions;
+
+/**
+ * RAG 知识库配置属性类
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties("spring.ai.rag")
+public class RagConfigProperties {
+    /**
+     * 使用的嵌入模型 ( nomic-embed-text, text-embedding-ada-002 )
+     */
+    private String embed = "nomic-embed-text";
+    /**
+     * 知识库使用的向量库 ( pgvector, hnsw )
+     */
+    private String store = "pgvector";
+    /**
+     * 是否兼容仍在运行的旧版本节点: 知识库 Tag 同时写入旧的 Tag 列表, 并以该列表为准列出 Tag. 所有节点升级后关闭, 关闭后启动时删除旧列表
+     */
+    private boolean legacyTagList = true;
+    /**
+     * 进程内 HNSW 向量库参数, store 为 hnsw 时生效
+     */
+    @NestedConfigurationProperty
+    private HnswOptions hnsw = new HnswOptions();
+    /**
+     * 知识库导入流水线参数
+     */
+    @NestedConfigurationProperty
+    private IngestionOptions ingest = new IngestionOptions();
+    /**
+     * 嵌入请求合并参数
+     */
+    @NestedConfigurationProperty
+    private EmbeddingBatchOptions embedding = new EmbeddingBatchOptions();
+    /**
+     * 嵌入缓存参数
+     */
+    @NestedConfigurationProperty
+    private EmbeddingCacheOptions embeddingCache = new EmbeddingCacheOptions();
+    /**
+     * Git 仓库索引参数
+     */
+    @NestedConfigurationProperty
+    private GitIndexOptions git = new GitIndexOptions();
+    /**
+     * 检索结果缓存参数
+     */
+    @NestedConfigurationProperty
+    private RetrievalCacheOptions retrievalCache = new RetrievalCacheOptions();
+    /**
+     * 知识库检索参数 ( 多路子查询, 倒数排名融合与去重 )
+     */
+    @NestedConfigurationProperty
+    private RetrievalOptions retrieval = new RetrievalOptions();
+    /**
+     * 知识库上下文组装参数 ( 模型 token 预算, 重叠合并与去重 )
+     */
+    @NestedConfigurationProperty
+    private ContextOptions context = new ContextOptions();
+    /**
+     * 语义回答缓存参数
+     */
+    @NestedConfigurationProperty
+    private SemanticCacheOptions semanticCache = new SemanticCacheOptions();
+    /**
+     * 阻塞调用执行参数 ( 虚拟线程, 各下游服务的并发上限 )
+     */
+    @NestedConfigurationProperty
+    private ConcurrencyOptions concurrency = new ConcurrencyOptions();
+    /**
+     * PG 向量库批量导入参数 ( COPY, 暂存表, 延迟重建索引 )
+     */
+    @NestedConfigurationProperty
+    private BulkLoadOptions bulkLoad = new BulkLoadOptions();
+    /**
+     * 分布式导入工作队列参数
+     */
+    @NestedConfigurationProperty
+    private IngestionQueueOptions workQueue = new IngestionQueueOptions();
+    /**
+     * 按知识库 Tag 分区的 PG 向量库参数
+     */
+    @NestedConfigurationProperty
+    private PgPartitionOptions partitioned = new PgPartitionOptions();
+}
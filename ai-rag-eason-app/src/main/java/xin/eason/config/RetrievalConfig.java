@@ -0,0 +1,131 @@
+package xin.eason.config;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.knowledge.KnowledgeGenerations;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.retrieval.SemanticAnswerCache;
+import xin.eason.trigger.vectorstore.LexicalIndex;
+import xin.eason.trigger.vectorstore.PgFullTextIndex;
+
+/**
+ * 知识库检索配置注入类
+ */
+@Configuration
+@EnableConfigurationProperties(RagConfigProperties.class)
+public class RetrievalConfig {
+
+    /**
+     * 注入 {@link RetrievalCache} 检索结果缓存, 并注册为导入流水线的知识库变更监听器
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param ingestionPipeline   知识库导入流水线
+     * @param redissonClient      Redisson 客户端, 用于跨节点共享缓存
+     * @return {@link RetrievalCache} Bean 对象
+     */
+    @Bean
+    public RetrievalCache retrievalCache(RagConfigProperties ragConfigProperties, IngestionPipeline ingestionPipeline, RedissonClient redissonClient) {
+        RetrievalCache retrievalCache = new RetrievalCache(ragConfigProperties.getEmbed(), ragConfigProperties.getRetrievalCache(), redissonClient);
+        ingestionPipeline.addKnowledgeChangeListener(retrievalCache);
+        return retrievalCache;
+    }
+
+    /**
+     * 注入基于 PostgreSQL 全文检索的 {@link LexicalIndex} 关键词索引 ( PG 向量库; HNSW 向量库自身即实现了该接口 ),
+     * 在 {@link PgVectorStore} 建表之后创建 tsvector 生成列与 GIN 索引. 增加生成列会锁表重写, 需显式开启 spring.ai.rag.retrieval.pg-full-text
+     *
+     * @param jdbcTemplate 用于调用数据库的对象
+     * @return {@link PgFullTextIndex} Bean 对象
+     */
+    @Bean(initMethod = "initialize")
+    @DependsOn("pgVectorStore")
+    @ConditionalOnExpression("'${spring.ai.rag.store:pgvector}' == 'pgvector' && ${spring.ai.rag.retrieval.pg-full-text:false}")
+    public PgFullTextIndex pgFullTextIndex(JdbcTemplate jdbcTemplate) {
+        return new PgFullTextIndex(jdbcTemplate);
+    }
+
+    /**
+     * 注入 {@link KnowledgeRetriever} 知识库检索器, 供各对话控制器共用
+     *
+     * @param vectorStore          知识库使用的向量库
+     * @param lexicalIndex         与向量库一同维护的关键词索引, 没有时只做向量检索
+     * @param retrievalCache       检索结果缓存
+     * @param ragEmbeddingClient   向量库使用的嵌入客户端
+     * @param ragConfigProperties  RAG 配置属性
+     * @param blockingExecution    工作线程类型与下游并发上限
+     * @param knowledgeGenerations 知识库版本表, 检索知识库的当前版本
+     * @return {@link KnowledgeRetriever} Bean 对象
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KnowledgeRetriever knowledgeRetriever(VectorStore vectorStore, ObjectProvider<LexicalIndex> lexicalIndex, RetrievalCache retrievalCache,
+                                                 PrecomputedEmbeddingClient ragEmbeddingClient, RagConfigProperties ragConfigProperties,
+                                                 BlockingExecution blockingExecution, KnowledgeGenerations knowledgeGenerations) {
+        KnowledgeRetriever knowledgeRetriever = new KnowledgeRetriever(vectorStore, lexicalIndex.getIfAvailable(), retrievalCache, ragEmbeddingClient,
+                ragConfigProperties.getRetrieval(), blockingExecution);
+        knowledgeRetriever.resolveStorageTagsWith(knowledgeGenerations::resolve);
+        return knowledgeRetriever;
+    }
+
+    /**
+     * 注入流式对话使用的 {@link Scheduler} 调度器, 在其上执行问题嵌入, 知识库检索与提示词组装等阻塞步骤,
+     * Web 容器线程在返回 Flux 后即被释放. 平台线程时为有界弹性调度器; 开启虚拟线程时每个任务一个新的虚拟线程,
+     * 不再有线程数与排队上限, 对下游的并发由 {@link BlockingExecution} 的许可限制
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param blockingExecution   工作线程类型与下游并发上限
+     * @return 有界弹性 {@link Scheduler} Bean 对象
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler ragScheduler(RagConfigProperties ragConfigProperties, BlockingExecution blockingExecution) {
+        if (blockingExecution.isVirtualThreads())
+            return Schedulers.fromExecutorService(blockingExecution.executor("rag-chat-", 0), "rag-chat");
+        RetrievalOptions options = ragConfigProperties.getRetrieval();
+        int threads = options.getSchedulerThreads() > 0 ? options.getSchedulerThreads() : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+        return Schedulers.newBoundedElastic(threads, options.getSchedulerQueueSize(), blockingExecution.threadFactory("rag-chat-"), 60);
+    }
+
+    /**
+     * 注入 {@link ContextBuilder} 知识库上下文组装器, 按模型的 token 预算组装提示词
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @return {@link ContextBuilder} Bean 对象
+     */
+    @Bean
+    public ContextBuilder contextBuilder(RagConfigProperties ragConfigProperties) {
+        return new ContextBuilder(ragConfigProperties.getContext());
+    }
+
+    /**
+     * 注入 {@link SemanticAnswerCache} 语义回答缓存, 并注册为导入流水线的知识库变更监听器
+     *
+     * @param ragConfigProperties RAG 配置属性
+     * @param embeddingClient     嵌入客户端, 用于计算问题向量
+     * @param ingestionPipeline   知识库导入流水线
+     * @param blockingExecution   工作线程类型与下游并发上限
+     * @return {@link SemanticAnswerCache} Bean 对象
+     */
+    @Bean
+    public SemanticAnswerCache semanticAnswerCache(RagConfigProperties ragConfigProperties, EmbeddingClient embeddingClient, IngestionPipeline ingestionPipeline,
+                                                   BlockingExecution blockingExecution) {
+        SemanticAnswerCache semanticAnswerCache = new SemanticAnswerCache(ragConfigProperties.getSemanticCache(), embeddingClient, blockingExecution);
+        ingestionPipeline.addKnowledgeChangeListener(semanticAnswerCache);
+        return semanticAnswerCache;
+    }
+}
@@ -0,0 +1,231 @@
+package xin.eason;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.ollama.OllamaEmbeddingClient;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import xin.eason.trigger.embedding.BatchingEmbeddingClient;
+import xin.eason.trigger.embedding.EmbeddingBatchOptions;
+import xin.eason.trigger.embedding.OllamaBatchEmbeddingClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对比逐条嵌入与合并批量嵌入的吞吐量, 使用本地桩服务模拟 Ollama 的 /api/embeddings 与 /api/embed 接口.
+ * 桩服务统计收到的请求: 合并后的 HTTP 请求数远少于文本块数, 每批不超过 batchSize, 同时在途的请求不超过 maxInFlight
+ */
+@Slf4j
+public class TestBatchingEmbeddingClient {
+
+    /**
+     * 桩服务每个 HTTP 请求的固定开销 ( 毫秒 )
+     */
+    private static final int REQUEST_OVERHEAD_MILLIS = 8;
+    /**
+     * 桩服务每个文本块的计算开销 ( 微秒 )
+     */
+    private static final int PER_CHUNK_MICROS = 300;
+    /**
+     * 桩服务同时处理的请求数, 模拟 OLLAMA_NUM_PARALLEL
+     */
+    private static final int SERVER_PARALLEL = 4;
+    /**
+     * 合并客户端的在途请求上限, 小于桩服务的并行数, 使上限由客户端而不是桩服务保证
+     */
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final int BATCH_SIZE = 64;
+    private static final int DIMENSIONS = 768;
+    private static final int JOBS = 4;
+    private static final int CHUNKS_PER_JOB = 250;
+
+    static {
+        // 关闭桩服务的 Nagle 算法, 否则小响应会被延迟确认拖慢到每次请求数十毫秒
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String baseUrl;
+
+    /**
+     * 模拟 OLLAMA_NUM_PARALLEL, 超出的请求在桩服务中排队
+     */
+    private final Semaphore serverParallel = new Semaphore(SERVER_PARALLEL);
+    private final AtomicInteger singleRequests = new AtomicInteger();
+    private final AtomicInteger batchRequests = new AtomicInteger();
+    private final AtomicInteger batchedChunks = new AtomicInteger();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @Before
+    public void startStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 桩服务的线程数多于并行数, 客户端超发的请求能被观察到
+        serverExecutor = Executors.newFixedThreadPool(JOBS * 4);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/embeddings", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            singleRequests.incrementAndGet();
+            simulateLatency(1);
+            respond(exchange, "{\"embedding\":" + vectorJson() + "}");
+        });
+        server.createContext("/api/embed", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            int count = request.get("input").size();
+            batchRequests.incrementAndGet();
+            batchedChunks.addAndGet(count);
+            largestBatch.accumulateAndGet(count, Math::max);
+            simulateLatency(count);
+            inFlight.decrementAndGet();
+            StringBuilder body = new StringBuilder("{\"embeddings\":[");
+            for (int i = 0; i < count; i++)
+                body.append(i == 0 ? "" : ",").append(vectorJson());
+            respond(exchange, body.append("]}").toString());
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopStubServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPerChunkBaseline() throws Exception {
+        OllamaEmbeddingClient ollamaEmbeddingClient = new OllamaEmbeddingClient(new OllamaApi(baseUrl));
+        ollamaEmbeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
+        // PgVectorStore.add 对每个文本块调用一次 embed(Document)
+        double chunksPerSecond = runJobs(ollamaEmbeddingClient, 1);
+        log.info("逐条嵌入 ( 当前路径 ): {} chunks/s", String.format("%.1f", chunksPerSecond));
+        Assert.assertEquals(JOBS * CHUNKS_PER_JOB, singleRequests.get());
+    }
+
+    @Test
+    public void testBatchingClient() throws Exception {
+        EmbeddingBatchOptions options = new EmbeddingBatchOptions(BATCH_SIZE, 10, MAX_IN_FLIGHT);
+        BatchingEmbeddingClient batchingEmbeddingClient = new BatchingEmbeddingClient(new OllamaBatchEmbeddingClient(baseUrl, "nomic-embed-text"), options);
+        try {
+            double perChunkCallers = runJobs(batchingEmbeddingClient, 1);
+            log.info("合并批量嵌入 ( 调用方逐条提交 ): {} chunks/s, {} 次请求, 最大批 {}, 最大在途 {}", String.format("%.1f", perChunkCallers),
+                    batchRequests.get(), largestBatch.get(), peakInFlight.get());
+            // 逐条提交的文本块被合并: 每个并发任务同时只有一个文本块等待, 在途请求未满时批次立即发出, 平均每批至少 2 个
+            assertBatched(2);
+
+            resetStats();
+            double batchCallers = runJobs(batchingEmbeddingClient, 32);
+            log.info("合并批量嵌入 ( 调用方每次提交 32 条 ): {} chunks/s, {} 次请求, 最大批 {}, 最大在途 {}", String.format("%.1f", batchCallers),
+                    batchRequests.get(), largestBatch.get(), peakInFlight.get());
+            assertBatched(32);
+        } finally {
+            batchingEmbeddingClient.shutdown();
+        }
+    }
+
+    /**
+     * 断言桩服务收到的全部文本块经过合并: 请求数不超过 文本块数 / minAverageBatch, 每批不超过 batchSize, 在途请求不超过 maxInFlight
+     */
+    private void assertBatched(int minAverageBatch) {
+        int chunks = JOBS * CHUNKS_PER_JOB;
+        Assert.assertEquals(chunks, batchedChunks.get());
+        Assert.assertTrue("请求数 " + batchRequests.get() + " 过多", batchRequests.get() <= chunks / minAverageBatch);
+        Assert.assertTrue("单批 " + largestBatch.get() + " 超过 batchSize", largestBatch.get() <= BATCH_SIZE);
+        Assert.assertTrue("在途请求 " + peakInFlight.get() + " 超过 maxInFlight", peakInFlight.get() <= MAX_IN_FLIGHT);
+    }
+
+    private void resetStats() {
+        batchRequests.set(0);
+        batchedChunks.set(0);
+        largestBatch.set(0);
+        peakInFlight.set(0);
+    }
+
+    /**
+     * 模拟 JOBS 个并发导入任务, 每个任务按 callerBatch 条一次的粒度嵌入 CHUNKS_PER_JOB 个文本块
+     *
+     * @return 吞吐量 ( chunks/s )
+     */
+    private double runJobs(EmbeddingClient embeddingClient, int callerBatch) throws Exception {
+        ExecutorService jobs = Executors.newFixedThreadPool(JOBS);
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int job = 0; job < JOBS; job++) {
+            int jobId = job;
+            futures.add(jobs.submit(() -> {
+                int embedded = 0;
+                for (int from = 0; from < CHUNKS_PER_JOB; from += callerBatch) {
+                    List<String> texts = new ArrayList<>();
+                    for (int i = from; i < Math.min(from + callerBatch, CHUNKS_PER_JOB); i++)
+                        texts.add("job-" + jobId + " chunk-" + i);
+                    if (callerBatch == 1)
+                        embedded += embeddingClient.embed(new Document(texts.get(0))).size() == DIMENSIONS ? 1 : 0;
+                    else
+                        embedded += (int) embeddingClient.embed(texts).stream().filter(vector -> vector.size() == DIMENSIONS).count();
+                }
+                return embedded;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> future : futures)
+            total += future.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        jobs.shutdown();
+        jobs.awaitTermination(1, TimeUnit.MINUTES);
+        Assert.assertEquals(JOBS * CHUNKS_PER_JOB, total);
+        return total / seconds;
+    }
+
+    private void simulateLatency(int chunks) {
+        try {
+            serverParallel.acquire();
+            try {
+                Thread.sleep(REQUEST_OVERHEAD_MILLIS + chunks * PER_CHUNK_MICROS / 1000L);
+            } finally {
+                serverParallel.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String vectorJson() {
+        StringBuilder vector = new StringBuilder("[");
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector.append(i == 0 ? "" : ",").append(0.001 * i);
+        return vector.append(']').toString();
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.ConcurrencyOptions;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.concurrent.VirtualThreads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证阻塞调用执行方式: 每个下游的并发不超过许可数, 等待许可超时后失败; 执行器在虚拟线程时每个任务一个新的虚拟线程,
+ * 运行时不支持虚拟线程 ( 或未开启 ) 时回退为固定数量的平台线程. 在 Java 21 下运行才会覆盖虚拟线程分支
+ */
+@Slf4j
+public class TestBlockingExecution {
+
+    @Test
+    public void limitsConcurrencyPerDownstream() throws InterruptedException {
+        BlockingExecution blockingExecution = new BlockingExecution(new ConcurrencyOptions(true, 0, 3, 0, 10000));
+        ExecutorService executor = blockingExecution.executor("test-blocking-", 50);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+        try {
+            for (int i = 0; i < 50; i++) {
+                executor.execute(() -> {
+                    blockingExecution.run(Downstream.VECTOR_STORE, () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(5);
+                        running.decrementAndGet();
+                    });
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("虚拟线程: {}, 向量库最大并发: {}", blockingExecution.isVirtualThreads(), maxRunning.get());
+        Assert.assertEquals(VirtualThreads.isSupported(), blockingExecution.isVirtualThreads());
+        Assert.assertEquals(3, maxRunning.get());
+        // 未限制的下游直接执行
+        Assert.assertEquals("ok", blockingExecution.call(Downstream.REDIS, () -> "ok"));
+    }
+
+    @Test
+    public void runsEachTaskOnItsOwnThreadWhenVirtual() throws InterruptedException {
+        BlockingExecution blockingExecution = new BlockingExecution(new ConcurrencyOptions(true, 0, 0, 0, 10000));
+        Set<Thread> threads = runTasks(blockingExecution.executor("test-virtual-", 2), 20);
+        if (blockingExecution.isVirtualThreads()) {
+            // 不池化: 20 个任务各自一个虚拟线程, threads 参数不限制并发
+            Assert.assertEquals(20, threads.size());
+            Assert.assertTrue(threads.stream().allMatch(TestBlockingExecution::isVirtual));
+            Assert.assertTrue(threads.stream().allMatch(thread -> thread.getName().startsWith("test-virtual-")));
+        } else {
+            Assert.assertNull(VirtualThreads.perTaskExecutor("test-virtual-"));
+            Assert.assertEquals(2, threads.size());
+        }
+    }
+
+    @Test
+    public void fallsBackToFixedPlatformThreads() throws InterruptedException {
+        BlockingExecution blockingExecution = new BlockingExecution(new ConcurrencyOptions(false, 0, 0, 0, 10000));
+        Assert.assertFalse(blockingExecution.isVirtualThreads());
+        ExecutorService executor = blockingExecution.executor("test-platform-", 2);
+        Assert.assertTrue(executor instanceof ThreadPoolExecutor);
+        Assert.assertEquals(2, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        Set<Thread> threads = runTasks(executor, 20);
+        Assert.assertEquals(2, threads.size());
+        Assert.assertTrue(threads.stream().noneMatch(TestBlockingExecution::isVirtual));
+        Assert.assertTrue(threads.stream().allMatch(thread -> thread.getName().startsWith("test-platform-")));
+    }
+
+    @Test
+    public void failsWhenPermitIsNotAvailableInTime() throws InterruptedException {
+        BlockingExecution blockingExecution = new BlockingExecution(new ConcurrencyOptions(false, 1, 0, 0, 50));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> blockingExecution.run(Downstream.EMBEDDING, () -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        holder.start();
+        try {
+            Assert.assertTrue(holding.await(5, TimeUnit.SECONDS));
+            Assert.assertThrows(IllegalStateException.class, () -> blockingExecution.call(Downstream.EMBEDDING, () -> "late"));
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        Assert.assertEquals("ok", blockingExecution.call(Downstream.EMBEDDING, () -> "ok"));
+    }
+
+    /**
+     * 在执行器上并发执行 count 个任务, 所有任务同时在运行时才放行 ( 平台线程数不足时超时放行 ), 返回执行过任务的线程
+     */
+    private static Set<Thread> runTasks(ExecutorService executor, int count) throws InterruptedException {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch started = new CountDownLatch(count);
+        CountDownLatch done = new CountDownLatch(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                executor.execute(() -> {
+                    threads.add(Thread.currentThread());
+                    started.countDown();
+                    try {
+                        started.await(200, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        return threads;
+    }
+
+    /**
+     * Thread.isVirtual() 为 Java 21 API, 通过反射调用, 低版本运行时总是 false
+     */
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package xin.eason;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucketAsync;
+import org.redisson.api.RBuckets;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import xin.eason.api.dto.EmbeddingCacheStatsDTO;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.trigger.embedding.CachingEmbeddingClient;
+import xin.eason.trigger.embedding.EmbeddingCacheOptions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 验证嵌入缓存: 命中与未命中计数 ( 即 /query_embedding_cache_stats 返回的统计 ), 同一文本在不同嵌入模型下不共享向量,
+ * 进程内缓存按字节数淘汰. Redis 二级缓存以内存 Map 代替
+ */
+public class TestCachingEmbeddingClient {
+
+    private static final int DIMENSIONS = 16;
+
+    /**
+     * 进程内缓存中每个条目的字节数: 64 位十六进制键 ( 每字符 2 字节 ) + 16 维 float 向量 + 64 字节固定开销
+     */
+    private static final int ENTRY_BYTES = 64 * 2 + DIMENSIONS * Float.BYTES + 64;
+
+    /**
+     * 实际发往嵌入服务的文本
+     */
+    private final List<String> embedded = new ArrayList<>();
+
+    /**
+     * 代替 Redis 的共享存储, 键 -> 向量字节
+     */
+    private final Map<String, byte[]> redis = new ConcurrentHashMap<>();
+
+    private HashEmbeddingClient delegate;
+
+    @Before
+    public void setUp() {
+        delegate = new HashEmbeddingClient(DIMENSIONS) {
+            @Override
+            public List<List<Double>> embed(List<String> texts) {
+                embedded.addAll(texts);
+                return super.embed(texts);
+            }
+        };
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, "nomic-embed-text", new EmbeddingCacheOptions(), null);
+
+        List<List<Double>> first = client.embed(List.of("a", "b", "a"));
+        Assert.assertEquals(first.get(0), first.get(2));
+        // 同一请求内重复的文本只嵌入一次, 但两次都计为未命中
+        Assert.assertEquals(List.of("a", "b"), embedded);
+        assertStats(client.stats(), 3, 0, 0, 3, 2);
+
+        List<List<Double>> second = client.embed(List.of("a", "c"));
+        Assert.assertEquals(first.get(0), second.get(0));
+        Assert.assertEquals(List.of("a", "b", "c"), embedded);
+        EmbeddingCacheStatsDTO stats = client.stats();
+        assertStats(stats, 5, 1, 0, 4, 3);
+        Assert.assertEquals(0.2, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void separatesModelsInSharedCache() {
+        EmbeddingCacheOptions options = new EmbeddingCacheOptions();
+        options.setRedisEnabled(true);
+        RedissonClient redissonClient = fakeRedis();
+
+        List<Double> vector = new CachingEmbeddingClient(delegate, "model-a", options, redissonClient).embed("同一段文本");
+        Assert.assertEquals(1, redis.size());
+
+        // 另一个模型不能命中 model-a 写入的向量
+        CachingEmbeddingClient otherModel = new CachingEmbeddingClient(delegate, "model-b", options, redissonClient);
+        otherModel.embed("同一段文本");
+        assertStats(otherModel.stats(), 1, 0, 0, 1, 1);
+        Assert.assertEquals(2, embedded.size());
+        Assert.assertEquals(2, redis.size());
+
+        // 同一模型的另一个节点从 Redis 命中, 不再请求嵌入服务
+        CachingEmbeddingClient sameModel = new CachingEmbeddingClient(delegate, "model-a", options, redissonClient);
+        List<Double> cached = sameModel.embed("同一段文本");
+        assertStats(sameModel.stats(), 1, 0, 1, 0, 1);
+        Assert.assertEquals(2, embedded.size());
+        for (int i = 0; i < DIMENSIONS; i++)
+            Assert.assertEquals(vector.get(i), cached.get(i), 1e-6);
+        // 回填进程内缓存后命中一级缓存
+        sameModel.embed("同一段文本");
+        assertStats(sameModel.stats(), 2, 1, 1, 0, 1);
+    }
+
+    @Test
+    public void evictsByWeight() {
+        EmbeddingCacheOptions options = new EmbeddingCacheOptions();
+        options.setMaximumBytes(16L * ENTRY_BYTES);
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, "nomic-embed-text", options, null);
+        for (int i = 0; i < 200; i++)
+            client.embed("text-" + i);
+
+        long entries = client.stats().getLocalEntries();
+        Assert.assertTrue("缓存条目数 " + entries + " 超出字节上限", entries > 0 && entries * ENTRY_BYTES <= options.getMaximumBytes());
+        // 最早写入的文本已被淘汰, 最近写入的仍在缓存中
+        client.embed("text-0");
+        Assert.assertEquals(201, embedded.size());
+        client.embed("text-199");
+        Assert.assertEquals(201, embedded.size());
+        assertStats(client.stats(), 202, 1, 0, 201, client.stats().getLocalEntries());
+    }
+
+    private static void assertStats(EmbeddingCacheStatsDTO stats, long requests, long localHits, long redisHits, long misses, long localEntries) {
+        Assert.assertEquals(requests, stats.getRequests().longValue());
+        Assert.assertEquals(localHits, stats.getLocalHits().longValue());
+        Assert.assertEquals(redisHits, stats.getRedisHits().longValue());
+        Assert.assertEquals(misses, stats.getMisses().longValue());
+        Assert.assertEquals(localEntries, stats.getLocalEntries().longValue());
+    }
+
+    /**
+     * 只实现嵌入缓存用到的批量读取与批量写入
+     */
+    @SuppressWarnings("unchecked")
+    private RedissonClient fakeRedis() {
+        RBuckets buckets = Mockito.mock(RBuckets.class);
+        Mockito.when(buckets.get(Mockito.<String[]>any())).thenAnswer(invocation -> {
+            Map<String, byte[]> found = new HashMap<>();
+            for (Object key : invocation.getArguments()) {
+                byte[] value = redis.get((String) key);
+                if (value != null)
+                    found.put((String) key, value);
+            }
+            return found;
+        });
+        RBatch batch = Mockito.mock(RBatch.class);
+        Mockito.when(batch.getBucket(Mockito.anyString(), Mockito.any(Codec.class))).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            RBucketAsync<Object> bucket = Mockito.mock(RBucketAsync.class);
+            Mockito.when(bucket.setAsync(Mockito.any(), Mockito.any(Duration.class))).thenAnswer(set -> {
+                redis.put(key, set.getArgument(0));
+                return null;
+            });
+            return bucket;
+        });
+        RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+        Mockito.when(redissonClient.getBuckets(Mockito.any(Codec.class))).thenReturn(buckets);
+        Mockito.when(redissonClient.createBatch()).thenReturn(batch);
+        return redissonClient;
+    }
+}
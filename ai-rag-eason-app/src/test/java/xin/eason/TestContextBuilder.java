@@ -0,0 +1,104 @@
+package xin.eason;
+
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.ingest.DocumentConversions;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.ContextOptions;
+import xin.eason.trigger.retrieval.RagPrompts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 验证知识库上下文组装: 相邻文本块的重叠部分只保留一份, 近似重复的文本块被去掉, 上下文不超过模型的 token 预算
+ */
+@Slf4j
+public class TestContextBuilder {
+
+    @Test
+    public void mergesOverlappingNeighboursAndDropsDuplicates() {
+        String text = text(20000, 1);
+        List<Document> chunks = chunks(text);
+        Assert.assertTrue(chunks.size() > 6);
+        // 检索排名与文件顺序无关: 0 ~ 3 号块首尾相连, 5 号块单独成段, 另有一个重复块与一个其他文件的块
+        Document duplicate = new Document(chunks.get(5).getContent() + " ", Map.of("knowledge", "tag", "source", "copy.md"));
+        Document other = DocumentConversions.toChunk(text(800, 2), "tag", "other.md");
+        List<Document> ranked = List.of(chunks.get(3), chunks.get(1), chunks.get(5), duplicate, chunks.get(2), other, chunks.get(0));
+
+        ContextOptions options = new ContextOptions();
+        options.setMaxDocumentTokens(100_000);
+        options.setDefaultContextTokens(128_000);
+        ContextBuilder builder = new ContextBuilder(options);
+        ContextBuilder.Context context = builder.build("stub", ranked, "问题");
+        int naive = builder.countTokens(String.join("\n\n", ranked.stream().map(Document::getContent).toList()));
+        log.info("直接拼接 {} tokens, 组装后 {} tokens, {} 段", naive, context.tokens(), context.chunks());
+
+        Assert.assertEquals(3, context.chunks());
+        String[] segments = context.text().split("\n\n");
+        Assert.assertTrue(segments[0].startsWith(chunks.get(0).getContent()));
+        Assert.assertTrue(segments[0].endsWith(chunks.get(3).getContent()));
+        Assert.assertTrue("合并后的段落应是原文的连续片段", text.contains(segments[0]));
+        Assert.assertEquals(chunks.get(5).getContent(), segments[1]);
+        Assert.assertEquals(other.getContent(), segments[2]);
+        Assert.assertTrue(context.tokens() < naive);
+    }
+
+    @Test
+    public void respectsTokenBudget() {
+        List<Document> chunks = chunks(text(40000, 3));
+        List<Document> ranked = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i += 2)
+            ranked.add(chunks.get(i));
+
+        ContextOptions options = new ContextOptions();
+        options.setDefaultContextTokens(2048);
+        options.setReservedTokens(512);
+        ContextBuilder builder = new ContextBuilder(options);
+        String question = "如何配置 HNSW 索引?";
+        ContextBuilder.Context context = builder.build("stub", ranked, question);
+        int budget = 2048 - 512 - builder.countTokens(RagPrompts.SYSTEM_PROMPT.replace("{documents}", "")) - builder.countTokens(question);
+        log.info("预算 {} tokens, 组装后 {} tokens, {} / {} 段", budget, context.tokens(), context.chunks(), ranked.size());
+        Assert.assertTrue(context.tokens() <= budget);
+        Assert.assertTrue(builder.countTokens(context.text()) <= budget);
+        Assert.assertTrue(context.chunks() > 0 && context.chunks() < ranked.size());
+        Assert.assertTrue(context.text().startsWith(ranked.get(0).getContent()));
+
+        // 排名第一的文本块单独超出预算时截断写入
+        options.setMaxDocumentTokens(50);
+        ContextBuilder.Context truncated = new ContextBuilder(options).build("stub", ranked, question);
+        Assert.assertEquals(1, truncated.chunks());
+        Assert.assertTrue(truncated.tokens() <= 50);
+        Assert.assertTrue(ranked.get(0).getContent().startsWith(truncated.text()));
+    }
+
+    private static List<Document> chunks(String text) {
+        List<TextSegment> segments = new DocumentBySentenceSplitter(1000, 200).split(dev.langchain4j.data.document.Document.from(text));
+        return DocumentConversions.toChunks(segments, "tag", "file.md");
+    }
+
+    /**
+     * 生成由英文句子组成的文本, 句子之间以一个空格分隔
+     */
+    private static String text(int characters, long seed) {
+        String[] words = {"vector", "index", "query", "chunk", "embedding", "token", "latency", "cache", "graph", "store", "model", "prompt"};
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        int sentence = 0;
+        while (text.length() < characters) {
+            if (!text.isEmpty())
+                text.append(' ');
+            text.append("Sentence ").append(sentence++);
+            for (int i = 0, n = 6 + random.nextInt(10); i < n; i++)
+                text.append(' ').append(words[random.nextInt(words.length)]);
+            text.append('.');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,330 @@
+package xin.eason;
+
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.api.dto.IngestionJobStatusDTO;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.support.InMemoryGenerations;
+import xin.eason.trigger.git.GitIndexOptions;
+import xin.eason.trigger.git.GitIndexResult;
+import xin.eason.trigger.git.GitIndexState;
+import xin.eason.trigger.git.GitRepositoryIndexer;
+import xin.eason.trigger.git.RepositoryScanner;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 验证 Git 仓库增量索引: 首次索引在新版本中全量构建后切换, 新增, 修改, 删除的文件按 diff 增量更新,
+ * 部分文件失败后重试不会重复导入, 同名仓库与手动上传的知识库不会被覆盖, 空仓库不产生导入任务. 远程仓库为临时目录中的本地仓库, 索引记录以内存 Map 代替 Redis
+ */
+@Slf4j
+public class TestGitRepositoryIndexer {
+
+    private static final int DIMENSIONS = 16;
+
+    private Path directory;
+    private HnswVectorStore store;
+    private IngestionPipeline pipeline;
+    private RepositoryScanner scanner;
+    private InMemoryGenerations generations;
+    private GitRepositoryIndexer indexer;
+    private final Set<String> existingTags = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 为 true 时包含 "损坏" 的文本嵌入失败
+     */
+    private volatile boolean failing;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("rag-git-");
+        store = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), new HnswOptions());
+        IngestionOptions ingestionOptions = new IngestionOptions();
+        ingestionOptions.setSpoolDirectory(directory.resolve("spool").toString());
+        HashEmbeddingClient embeddingClient = new HashEmbeddingClient(DIMENSIONS) {
+            @Override
+            public List<List<Double>> embed(List<String> texts) {
+                if (failing && texts.stream().anyMatch(text -> text.contains("损坏")))
+                    throw new IllegalStateException("嵌入服务不可用");
+                return super.embed(texts);
+            }
+        };
+        pipeline = new IngestionPipeline(ingestionOptions, new DocumentBySentenceSplitter(200, 0), embeddingClient, store,
+                new RagMetrics(new SimpleMeterRegistry()));
+        generations = new InMemoryGenerations();
+        pipeline.resolveStorageTagsWith(generations::resolve);
+        GitIndexOptions gitOptions = new GitIndexOptions();
+        gitOptions.setRepositoryDirectory(directory.resolve("clones").toString());
+        scanner = new RepositoryScanner(gitOptions);
+        indexer = new GitRepositoryIndexer(gitOptions, pipeline, scanner, store, new InMemoryIndexState(), generations);
+        indexer.checkExistingTagsWith(existingTags::contains);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipeline.shutdown();
+        scanner.shutdown();
+        store.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void indexesFullThenIncrementally() throws Exception {
+        Path origin = directory.resolve("a").resolve("foo");
+        try (Git git = Git.init().setDirectory(origin.toFile()).call()) {
+            write(origin, "a.txt", "第一版的 a 文件. chunk");
+            write(origin, "b.txt", "将被删除的 b 文件. chunk");
+            commit(git, "init");
+
+            GitIndexResult first = index(origin);
+            Assert.assertTrue(first.isFullIndex());
+            Assert.assertEquals("foo", first.getRagTag());
+            Assert.assertEquals(2, first.getIndexedFiles());
+            await(first);
+            waitUntil(() -> !generations.resolve("foo").equals("foo"));
+            Assert.assertEquals(Set.of("a.txt", "b.txt"), sources("foo"));
+
+            write(origin, "a.txt", "第二版的 a 文件. chunk");
+            Files.delete(origin.resolve("b.txt"));
+            write(origin, "c.txt", "新增的 c 文件. chunk");
+            commit(git, "update");
+
+            GitIndexResult second = index(origin);
+            log.info("增量索引结果: {}", second);
+            Assert.assertFalse(second.isFullIndex());
+            Assert.assertEquals(first.getHeadCommit(), second.getPreviousCommit());
+            Assert.assertEquals(2, second.getIndexedFiles());
+            Assert.assertEquals(2, second.getRemovedFiles());
+            Assert.assertEquals(2, second.getRemovedChunks());
+            await(second);
+            Assert.assertEquals(Set.of("a.txt", "c.txt"), sources("foo"));
+            Assert.assertTrue(contents("foo").stream().noneMatch(content -> content.contains("第一版")));
+
+            GitIndexResult unchanged = index(origin);
+            Assert.assertNull(unchanged.getJobId());
+            Assert.assertEquals(second.getHeadCommit(), unchanged.getHeadCommit());
+        }
+    }
+
+    @Test
+    public void retriesFailedSyncWithoutDuplicates() throws Exception {
+        Path origin = directory.resolve("a").resolve("foo");
+        try (Git git = Git.init().setDirectory(origin.toFile()).call()) {
+            write(origin, "a.txt", "第一版的 a 文件. chunk");
+            commit(git, "init");
+            await(index(origin));
+            waitUntil(() -> !generations.resolve("foo").equals("foo"));
+
+            write(origin, "a.txt", "第二版的 a 文件. chunk");
+            write(origin, "c.txt", "新增的 c 文件. chunk");
+            write(origin, "d.txt", "暂时损坏的 d 文件. chunk");
+            commit(git, "update");
+
+            // 只有 d.txt 失败, a.txt 与 c.txt 已写入, 但不记录本次提交
+            failing = true;
+            GitIndexResult failed = index(origin);
+            IngestionJob job = pipeline.getJob(failed.getJobId());
+            IngestionJobStatusDTO partial = job.completion().get(10, TimeUnit.SECONDS).toStatus();
+            Assert.assertEquals(1, partial.getFailedFiles().intValue());
+            Assert.assertEquals("PARTIAL", partial.getStatus());
+            Assert.assertFalse(job.isSucceeded());
+            Assert.assertEquals(List.of("a.txt", "c.txt"), sourceList("foo"));
+
+            // 重试仍从同一个提交 diff, 已导入的文件先被删除再重新导入
+            failing = false;
+            GitIndexResult retried = index(origin);
+            Assert.assertEquals(failed.getPreviousCommit(), retried.getPreviousCommit());
+            Assert.assertEquals(3, retried.getIndexedFiles());
+            Assert.assertEquals(2, retried.getRemovedChunks());
+            await(retried);
+            Assert.assertEquals(List.of("a.txt", "c.txt", "d.txt"), sourceList("foo"));
+            Assert.assertTrue(contents("foo").stream().noneMatch(content -> content.contains("第一版")));
+            Assert.assertNull(index(origin).getJobId());
+        }
+    }
+
+    @Test
+    public void neverOverwritesTagsOwnedByOthers() throws Exception {
+        Path first = directory.resolve("a").resolve("foo");
+        Path second = directory.resolve("b").resolve("foo");
+        try (Git firstGit = Git.init().setDirectory(first.toFile()).call();
+             Git secondGit = Git.init().setDirectory(second.toFile()).call()) {
+            write(first, "first.txt", "第一个 foo 仓库. chunk");
+            commit(firstGit, "init");
+            write(second, "second.txt", "第二个 foo 仓库. chunk");
+            commit(secondGit, "init");
+
+            await(index(first));
+            waitUntil(() -> !generations.resolve("foo").equals("foo"));
+            GitIndexResult other = index(second);
+            Assert.assertNotEquals("foo", other.getRagTag());
+            Assert.assertTrue(other.isFullIndex());
+            await(other);
+            waitUntil(() -> !generations.resolve(other.getRagTag()).equals(other.getRagTag()));
+            Assert.assertEquals(Set.of("first.txt"), sources("foo"));
+            Assert.assertEquals(Set.of("second.txt"), sources(other.getRagTag()));
+            // 再次分析仍写入同一个 Tag
+            Assert.assertEquals(other.getRagTag(), index(second).getRagTag());
+        }
+
+        // 手动上传的知识库不会被同名仓库认领
+        Path manual = directory.resolve("bar.txt");
+        Files.writeString(manual, "手动上传的 bar 知识库. chunk", StandardCharsets.UTF_8);
+        pipeline.submit("bar", List.of(new IngestionSource("bar.txt", manual, false))).completion().get(10, TimeUnit.SECONDS);
+        existingTags.add("bar");
+        Path bar = directory.resolve("c").resolve("bar");
+        try (Git git = Git.init().setDirectory(bar.toFile()).call()) {
+            write(bar, "repo.txt", "名为 bar 的仓库. chunk");
+            commit(git, "init");
+            GitIndexResult result = index(bar);
+            Assert.assertNotEquals("bar", result.getRagTag());
+            await(result);
+            waitUntil(() -> !generations.resolve(result.getRagTag()).equals(result.getRagTag()));
+            Assert.assertEquals(Set.of("bar.txt"), sources("bar"));
+            Assert.assertEquals(Set.of("repo.txt"), sources(result.getRagTag()));
+        }
+    }
+
+    @Test
+    public void emptyRepositoryHasNothingToIndex() throws Exception {
+        Path origin = directory.resolve("empty");
+        try (Git ignored = Git.init().setDirectory(origin.toFile()).call()) {
+            GitIndexResult result = index(origin);
+            Assert.assertNull(result.getHeadCommit());
+            Assert.assertNull(result.getJobId());
+            // 本地克隆已存在时再次分析同样返回
+            Assert.assertNull(index(origin).getJobId());
+        }
+    }
+
+    /**
+     * 上一个导入任务结束后, 索引器在任务的完成回调中切换版本并释放仓库, 此前再次分析会被拒绝
+     */
+    private GitIndexResult index(Path origin) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                return indexer.index(origin.toString(), "", "");
+            } catch (IllegalStateException e) {
+                if (System.nanoTime() > deadline)
+                    throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private void await(GitIndexResult result) throws Exception {
+        IngestionJob job = pipeline.getJob(result.getJobId());
+        Assert.assertEquals(0, job.completion().get(10, TimeUnit.SECONDS).toStatus().getFailedFiles().intValue());
+    }
+
+    private Set<String> sources(String ragTag) {
+        return Set.copyOf(search(ragTag).stream().map(document -> String.valueOf(document.getMetadata().get("source"))).toList());
+    }
+
+    /**
+     * 每个文本块的来源文件, 已排序, 重复导入的文件会出现多次
+     */
+    private List<String> sourceList(String ragTag) {
+        return search(ragTag).stream().map(document -> String.valueOf(document.getMetadata().get("source"))).sorted().toList();
+    }
+
+    private List<String> contents(String ragTag) {
+        return search(ragTag).stream().map(Document::getContent).toList();
+    }
+
+    /**
+     * 每个测试文件都包含关键词 chunk, 以关键词检索列出知识库当前版本的全部文本块
+     */
+    private List<Document> search(String ragTag) {
+        return store.keywordSearch(generations.resolve(ragTag), "chunk", 100);
+    }
+
+    private static void write(Path root, String path, String content) throws Exception {
+        Files.writeString(root.resolve(path), content, StandardCharsets.UTF_8);
+    }
+
+    private static void commit(Git git, String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        git.commit().setMessage(message).setAuthor("test", "test@example.com").setCommitter("test", "test@example.com").call();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                Assert.fail("等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 以内存 Map 代替 Redis 的索引记录
+     */
+    private static class InMemoryIndexState extends GitIndexState {
+
+        private final Map<String, String> indexedCommits = new ConcurrentHashMap<>();
+        private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+        InMemoryIndexState() {
+            super(null);
+        }
+
+        @Override
+        public String indexedCommit(String repositoryUrl) {
+            return indexedCommits.get(repositoryUrl);
+        }
+
+        @Override
+        public void recordCommit(String repositoryUrl, String commit) {
+            indexedCommits.put(repositoryUrl, commit);
+        }
+
+        @Override
+        public String tagOf(String repositoryUrl) {
+            return owners.entrySet().stream().filter(entry -> entry.getValue().equals(repositoryUrl))
+                    .map(Map.Entry::getKey).findFirst().orElse(null);
+        }
+
+        @Override
+        public String owner(String ragTag) {
+            return owners.get(ragTag);
+        }
+
+        @Override
+        public String claim(String ragTag, String repositoryUrl) {
+            String owner = owners.putIfAbsent(ragTag, repositoryUrl);
+            return owner == null ? repositoryUrl : owner;
+        }
+
+        @Override
+        public int forget(String ragTag) {
+            String owner = owners.remove(ragTag);
+            return owner != null && indexedCommits.remove(owner) != null ? 1 : 0;
+        }
+    }
+}
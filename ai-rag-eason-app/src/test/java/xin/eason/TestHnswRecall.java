@@ -0,0 +1,174 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import xin.eason.support.QueryEmbeddingClient;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 验证 HNSW 图检索的召回率: 强制走图路径 ( 不做精确扫描 ), 与全精度暴力检索对比 recall@10, 分别在不过滤与按 knowledge 过滤两种情况下断言;
+ * 删除与覆盖写入部分文档后, 被删除的 ID 不再返回, 覆盖写入的 ID 只以新向量返回, 压缩后结果不变.
+ * 数据为聚类随机向量, 两个知识库 Tag 交错分布在同一张图中
+ */
+@Slf4j
+public class TestHnswRecall {
+
+    private static final int DIMENSIONS = 64;
+    private static final int DOCUMENTS = 6000;
+    private static final int CLUSTERS = 32;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+    private static final double MIN_RECALL = 0.95;
+
+    private final QueryEmbeddingClient embeddingClient = new QueryEmbeddingClient();
+    private final Random random = new Random(11);
+    private final float[][] centers = new float[CLUSTERS][];
+
+    /**
+     * 文档 ID -> 当前向量, 按写入顺序
+     */
+    private final Map<String, float[]> live = new LinkedHashMap<>();
+
+    @Test
+    public void graphSearchMatchesBruteForce() {
+        for (int c = 0; c < CLUSTERS; c++)
+            centers[c] = gaussian(1.0);
+        HnswOptions options = new HnswOptions();
+        options.setBruteForceThreshold(0);
+        HnswVectorStore store = new HnswVectorStore(embeddingClient, options);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String id = "doc-" + i;
+            float[] vector = around(centers[random.nextInt(CLUSTERS)]);
+            live.put(id, vector);
+            documents.add(document(id, vector));
+            if (documents.size() == 500) {
+                store.add(documents);
+                documents = new ArrayList<>();
+            }
+        }
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++)
+            queries.add(around(centers[random.nextInt(CLUSTERS)]));
+
+        assertRecall(store, queries, null, Set.of());
+        assertRecall(store, queries, "a", Set.of());
+
+        // 删除五分之一的文档, 另外十分之一覆盖写入到其他聚类
+        Set<String> deleted = new HashSet<>();
+        Set<String> upserted = new HashSet<>();
+        List<String> ids = new ArrayList<>(live.keySet());
+        for (String id : ids) {
+            int roll = random.nextInt(10);
+            if (roll < 2)
+                deleted.add(id);
+            else if (roll == 2)
+                upserted.add(id);
+        }
+        store.delete(new ArrayList<>(deleted));
+        deleted.forEach(live::remove);
+        List<Document> updates = new ArrayList<>();
+        for (String id : upserted) {
+            float[] vector = around(centers[random.nextInt(CLUSTERS)]);
+            live.put(id, vector);
+            updates.add(document(id, vector));
+        }
+        store.add(updates);
+        Assert.assertEquals(live.size(), store.size());
+        Assert.assertEquals(deleted.size() + upserted.size(), store.deletedCount());
+
+        assertRecall(store, queries, null, deleted);
+        assertRecall(store, queries, "a", deleted);
+
+        store.compact();
+        Assert.assertEquals(0, store.deletedCount());
+        assertRecall(store, queries, null, deleted);
+        assertRecall(store, queries, "b", deleted);
+    }
+
+    /**
+     * 断言平均 recall@10 不低于阈值, 结果中没有已删除的 ID, 且每个结果的距离与其当前向量一致 ( 覆盖写入前的旧节点不会返回 )
+     */
+    private void assertRecall(HnswVectorStore store, List<float[]> queries, String knowledge, Set<String> deleted) {
+        double recall = 0;
+        for (float[] query : queries) {
+            embeddingClient.setQuery(query);
+            SearchRequest request = SearchRequest.query("q").withTopK(TOP_K);
+            if (knowledge != null)
+                request = request.withFilterExpression("knowledge == '" + knowledge + "'");
+            List<Document> results = store.similaritySearch(request);
+            Set<String> expected = bruteForce(query, knowledge);
+            for (Document result : results) {
+                Assert.assertFalse("返回了已删除的文档 " + result.getId(), deleted.contains(result.getId()));
+                Assert.assertTrue(knowledge == null || knowledge.equals(result.getMetadata().get("knowledge")));
+                float distance = ((Number) result.getMetadata().get("distance")).floatValue();
+                Assert.assertEquals("文档 " + result.getId() + " 的距离与当前向量不一致", 1 - dot(live.get(result.getId()), query), distance, 1e-4);
+            }
+            recall += results.stream().filter(result -> expected.contains(result.getId())).count() / (double) TOP_K;
+        }
+        recall /= queries.size();
+        log.info("knowledge = {}, 已删除 {} 个文档, 图检索 recall@{} = {}", knowledge, deleted.size(), TOP_K, String.format("%.3f", recall));
+        Assert.assertTrue("图检索召回率过低: " + recall, recall >= MIN_RECALL);
+    }
+
+    private Set<String> bruteForce(float[] query, String knowledge) {
+        Set<String> ids = new HashSet<>();
+        live.entrySet().stream()
+                .filter(entry -> knowledge == null || knowledge.equals(knowledgeOf(entry.getKey())))
+                .sorted(Comparator.comparingDouble(entry -> -dot(entry.getValue(), query)))
+                .limit(TOP_K)
+                .forEach(entry -> ids.add(entry.getKey()));
+        return ids;
+    }
+
+    private static Document document(String id, float[] vector) {
+        Document document = new Document(id, "chunk " + id, Map.of("knowledge", knowledgeOf(id)));
+        document.setEmbedding(QueryEmbeddingClient.toList(vector));
+        return document;
+    }
+
+    /**
+     * 编号为偶数的文档属于 a, 奇数属于 b
+     */
+    private static String knowledgeOf(String id) {
+        return Integer.parseInt(id.substring("doc-".length())) % 2 == 0 ? "a" : "b";
+    }
+
+    private float[] around(float[] center) {
+        float[] noise = gaussian(0.6);
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector[i] = center[i] + noise[i];
+        double norm = Math.sqrt(dot(vector, vector));
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector[i] /= (float) norm;
+        return vector;
+    }
+
+    private float[] gaussian(double scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector[i] = (float) (random.nextGaussian() * scale);
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++)
+            dot += a[i] * b[i];
+        return dot;
+    }
+}
@@ -0,0 +1,166 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.retrieval.SearchMode;
+import xin.eason.trigger.vectorstore.Bm25Index;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+import xin.eason.trigger.vectorstore.LexicalTokenizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 验证混合检索: 标识符分词, BM25 关键词索引随写入与删除同步更新并在重启后恢复, 按 Tag 检索只读取该 Tag 的倒排表且快照可原样恢复,
+ * 以及标识符类问题在小 topK 下即可由混合检索召回.
+ * 嵌入为按文本哈希生成的随机向量, 与内容语义无关, 模拟向量检索对精确标识符无能为力的情况
+ */
+@Slf4j
+public class TestHybridSearch {
+
+    private static final int DIMENSIONS = 32;
+    private static final int DOCUMENTS = 500;
+    private static final String NEEDLE = "PgVectorDocumentDeleter 在 source 数组为空时抛出 ERR_CODE_42, 调用方需先过滤空列表";
+
+    @Test
+    public void tokenizesIdentifiers() {
+        Assert.assertEquals(List.of("hnswvectorstore", "hnsw", "vector", "store", "抛出", "err", "code", "42", "httpserver", "http", "server"),
+                LexicalTokenizer.tokenize("HnswVectorStore 抛出 ERR_CODE_42 (HTTPServer)"));
+        Assert.assertEquals(List.of("向量", "量检", "检索", "库"), LexicalTokenizer.tokenize("向量检索, 库"));
+    }
+
+    @Test
+    public void hybridSearchFindsIdentifiersWithSmallTopK() {
+        HnswVectorStore store = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), new HnswOptions());
+        store.add(corpus());
+        KnowledgeRetriever retriever = retriever(store);
+        try {
+            String question = "哪里会抛出 ERR_CODE_42?";
+            List<Document> vector = retriever.retrieve("repo", question, 5, SearchMode.VECTOR, RagMetrics.disabled().chat("ollama", "stub", "repo"));
+            List<Document> hybrid = retriever.retrieve("repo", question, 5, SearchMode.HYBRID, RagMetrics.disabled().chat("ollama", "stub", "repo"));
+            List<Document> keyword = retriever.retrieve("repo", "PgVectorDocumentDeleter", 5, SearchMode.KEYWORD, RagMetrics.disabled().chat("ollama", "stub", "repo"));
+            log.info("向量检索: {}, 混合检索: {}, 关键词检索: {}", ids(vector), ids(hybrid), ids(keyword));
+            Assert.assertFalse(ids(vector).contains("needle"));
+            Assert.assertTrue(ids(hybrid).contains("needle"));
+            Assert.assertEquals("needle", keyword.get(0).getId());
+            Assert.assertEquals(5, hybrid.size());
+        } finally {
+            retriever.shutdown();
+        }
+    }
+
+    @Test
+    public void keywordSearchSurvivesMostlyDeletedTerms() {
+        Bm25Index index = new Bm25Index();
+        index.add(0, "first chunk");
+        index.add(1, "second chunk");
+        index.add(2, "third chunk");
+        index.remove(0);
+        index.remove(1);
+        index.add(3, "fourth chunk");
+        long[] results = index.search("chunk", 10, document -> true);
+        Assert.assertEquals(2, results.length);
+        Assert.assertTrue(Bm25Index.score(results[0]) > 0);
+    }
+
+    @Test
+    public void keywordSearchIsScopedToTag() throws IOException {
+        Bm25Index index = new Bm25Index();
+        // b 中的文档词频更高, 指定 a 时也不能出现; 命中文档远多于初始容量, 稀疏累加表需要扩容
+        for (int document = 0; document < 3000; document++) {
+            if (document % 3 == 0)
+                index.add(document, "a", "shared term" + (document % 7) + " alpha");
+            else
+                index.add(document, "b", "shared shared shared beta");
+        }
+        index.remove(0);
+        long[] scoped = index.search("a", "shared alpha", 2000, document -> true);
+        Assert.assertEquals(999, scoped.length);
+        Assert.assertTrue(Arrays.stream(scoped).allMatch(result -> Bm25Index.document(result) % 3 == 0 && Bm25Index.document(result) != 0));
+        for (int i = 1; i < scoped.length; i++)
+            Assert.assertTrue(Bm25Index.score(scoped[i - 1]) >= Bm25Index.score(scoped[i]));
+        Assert.assertEquals(0, index.search("missing", "shared", 10, document -> true).length);
+        Assert.assertEquals(10, index.search(null, "shared", 10, document -> true).length);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        Bm25Index restored = Bm25Index.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertArrayEquals(scoped, restored.search("a", "shared alpha", 2000, document -> true));
+        Assert.assertEquals(index.size(), restored.size());
+        restored.add(3000, "a", "shared alpha");
+        Assert.assertEquals(1000, restored.search("a", "alpha", 2000, document -> true).length);
+    }
+
+    @Test
+    public void keywordIndexFollowsDeletesAndSurvivesRestart() throws IOException {
+        Path directory = Files.createTempDirectory("hybrid-search-");
+        HnswOptions options = new HnswOptions();
+        options.setDataDirectory(directory.toString());
+        try {
+            HnswVectorStore store = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), options);
+            store.add(corpus());
+            store.add(List.of(document("other", NEEDLE, "other", "Other.java")));
+            Assert.assertEquals(List.of("needle"), ids(store.keywordSearch("repo", "PgVectorDocumentDeleter", 5)));
+            Assert.assertEquals("needle", store.keywordSearch("repo", "ERR_CODE_42", 5).get(0).getId());
+            store.deleteBySources("repo", List.of("Deleter.java"));
+            Assert.assertTrue(store.keywordSearch("repo", "PgVectorDocumentDeleter", 5).isEmpty());
+            store.close();
+
+            HnswVectorStore reopened = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), options);
+            Assert.assertTrue(reopened.keywordSearch("repo", "PgVectorDocumentDeleter", 5).isEmpty());
+            Assert.assertEquals(List.of("other"), ids(reopened.keywordSearch("other", "vector document deleter", 5)));
+            Assert.assertEquals(5, reopened.keywordSearch("repo", "class", 5).size());
+            reopened.close();
+        } finally {
+            FileUtils.deleteQuietly(directory.toFile());
+        }
+    }
+
+    private static KnowledgeRetriever retriever(HnswVectorStore store) {
+        RetrievalCacheOptions cacheOptions = new RetrievalCacheOptions();
+        cacheOptions.setEnabled(false);
+        return new KnowledgeRetriever(store, store, new RetrievalCache("stub", cacheOptions, null),
+                new PrecomputedEmbeddingClient(new HashEmbeddingClient(DIMENSIONS)), new RetrievalOptions());
+    }
+
+    private static List<Document> corpus() {
+        Random random = new Random(11);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String content = "chunk" + i + " class Service" + random.nextInt(100) + " calls repository" + random.nextInt(100)
+                    + " 并写入向量库, 返回码 ERR_CODE_" + (100 + random.nextInt(100));
+            documents.add(document("doc-" + i, content, "repo", "Service" + i + ".java"));
+        }
+        documents.add(document("needle", NEEDLE, "repo", "Deleter.java"));
+        return documents;
+    }
+
+    private static Document document(String id, String content, String knowledge, String source) {
+        return new Document(id, content, Map.of("knowledge", knowledge, "source", source));
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
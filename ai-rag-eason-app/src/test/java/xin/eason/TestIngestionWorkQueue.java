@@ -0,0 +1,276 @@
+package xin.eason;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.embedding.EmbeddingClient;
+import xin.eason.api.dto.IngestionJobStatusDTO;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionQueueOptions;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.ingest.IngestionWorkItem;
+import xin.eason.trigger.ingest.IngestionWorkQueue;
+import xin.eason.trigger.ingest.IngestionWorkResult;
+import xin.eason.trigger.ingest.IngestionWorkers;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证分布式导入: 两个节点共享工作队列与向量库时共同处理一个节点提交的任务, 失败的批次被重试, 超时未确认的批次被其他消费者重新领取.
+ * 工作队列以进程内实现代替 Redis, 工作项同样以 JSON 序列化传递, 可见性超时与失败次数的语义与 Redis Stream 实现一致
+ */
+@Slf4j
+public class TestIngestionWorkQueue {
+
+    private static final int DIMENSIONS = 16;
+
+    private Path directory;
+    private HnswVectorStore store;
+    private SharedQueue sharedQueue;
+    private final List<IngestionPipeline> pipelines = new ArrayList<>();
+    private final List<IngestionWorkers> workers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rag-work-queue-");
+        store = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), new HnswOptions());
+        sharedQueue = new SharedQueue(200);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        workers.forEach(IngestionWorkers::shutdown);
+        pipelines.forEach(IngestionPipeline::shutdown);
+        store.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void sharesLoadAcrossNodes() throws Exception {
+        IngestionPipeline pipeline = pipeline("node-a");
+        IngestionWorkers workersA = workers("node-a", new HashEmbeddingClient(DIMENSIONS).delayed(10), 3);
+        IngestionWorkers workersB = workers("node-b", new HashEmbeddingClient(DIMENSIONS).delayed(10), 3);
+
+        IngestionJob job = pipeline.submit("kb", sources(8));
+        IngestionJobStatusDTO status = await(job);
+        log.info("节点 A 处理 {} 批, 节点 B 处理 {} 批, 任务状态: {}", workersA.getProcessed(), workersB.getProcessed(), status);
+
+        Assert.assertEquals("COMPLETED", status.getStatus());
+        Assert.assertEquals(0, status.getFailedFiles().intValue());
+        Assert.assertEquals(status.getTotalChunks(), status.getStoredChunks());
+        Assert.assertTrue(workersA.getProcessed() > 0);
+        Assert.assertTrue(workersB.getProcessed() > 0);
+        Assert.assertEquals(status.getTotalChunks().longValue(), store.usage().get(0).chunks());
+    }
+
+    @Test
+    public void retriesFailedBatches() throws Exception {
+        IngestionPipeline pipeline = pipeline("node-a");
+        workers("node-a", new HashEmbeddingClient(DIMENSIONS).failingFirst(2), 3);
+
+        IngestionJobStatusDTO status = await(pipeline.submit("kb", sources(2)));
+        Assert.assertEquals(0, status.getFailedFiles().intValue());
+        Assert.assertEquals(status.getTotalChunks(), status.getStoredChunks());
+    }
+
+    @Test
+    public void failsFileWhenAttemptsAreExhausted() throws Exception {
+        IngestionPipeline pipeline = pipeline("node-a");
+        workers("node-a", new HashEmbeddingClient(DIMENSIONS).failingFirst(HashEmbeddingClient.ALWAYS), 3);
+
+        IngestionJobStatusDTO status = await(pipeline.submit("kb", sources(1)));
+        Assert.assertEquals(1, status.getFailedFiles().intValue());
+        Assert.assertEquals("FAILED", status.getStatus());
+        Assert.assertTrue(status.getFiles().get(0).getError().contains("嵌入服务不可用"));
+    }
+
+    @Test
+    public void redeliversUnacknowledgedItems() throws Exception {
+        IngestionPipeline pipeline = pipeline("node-a");
+        IngestionJob job = pipeline.submit("kb", sources(1));
+        // 节点 B 领取第一批后宕机, 不确认也不回报
+        NodeQueue crashed = new NodeQueue(sharedQueue, "node-b");
+        List<IngestionWorkQueue.Delivery> lost = List.of();
+        while (lost.isEmpty())
+            lost = crashed.take("node-b-0");
+
+        IngestionWorkers workersA = workers("node-a", new HashEmbeddingClient(DIMENSIONS), 3);
+        IngestionJobStatusDTO status = await(job);
+        Assert.assertEquals(0, status.getFailedFiles().intValue());
+        Assert.assertEquals(status.getTotalChunks(), status.getStoredChunks());
+        Assert.assertTrue(workersA.getProcessed() > 0);
+        Assert.assertEquals(1, sharedQueue.redelivered.get());
+    }
+
+    private IngestionPipeline pipeline(String node) {
+        IngestionOptions options = new IngestionOptions();
+        options.setSpoolDirectory(directory.resolve("spool").toString());
+        options.setEmbedBatchSize(2);
+        IngestionPipeline pipeline = new IngestionPipeline(options, new DocumentBySentenceSplitter(40, 0), new HashEmbeddingClient(DIMENSIONS),
+                store, new RagMetrics(new SimpleMeterRegistry()));
+        pipeline.useWorkQueue(new NodeQueue(sharedQueue, node));
+        pipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private IngestionWorkers workers(String node, EmbeddingClient embeddingClient, int maxAttempts) {
+        IngestionQueueOptions options = new IngestionQueueOptions();
+        options.setEnabled(true);
+        options.setWorkerThreads(2);
+        options.setMaxAttempts(maxAttempts);
+        IngestionWorkers nodeWorkers = new IngestionWorkers(new NodeQueue(sharedQueue, node), embeddingClient, store,
+                new RagMetrics(new SimpleMeterRegistry()), BlockingExecution.platform(), options);
+        workers.add(nodeWorkers);
+        return nodeWorkers;
+    }
+
+    private List<IngestionSource> sources(int files) throws IOException {
+        List<IngestionSource> sources = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            Path file = directory.resolve("file-" + i + ".txt");
+            StringBuilder content = new StringBuilder();
+            for (int sentence = 0; sentence < 6; sentence++)
+                content.append("第 ").append(i).append(" 个文件的第 ").append(sentence).append(" 句话. ");
+            Files.writeString(file, content, StandardCharsets.UTF_8);
+            sources.add(new IngestionSource(file.getFileName().toString(), file, false));
+        }
+        return sources;
+    }
+
+    private static IngestionJobStatusDTO await(IngestionJob job) throws Exception {
+        return job.completion().get(20, TimeUnit.SECONDS).toStatus();
+    }
+
+    /**
+     * 多个节点共享的进程内工作队列
+     */
+    private static class SharedQueue {
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final BlockingQueue<String> ready = new LinkedBlockingQueue<>();
+        private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+        private final Map<String, BlockingQueue<String>> results = new ConcurrentHashMap<>();
+        private final AtomicInteger redelivered = new AtomicInteger();
+        private final long visibilityTimeoutMillis;
+
+        SharedQueue(long visibilityTimeoutMillis) {
+            this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+        }
+
+        String write(Object value) {
+            try {
+                return objectMapper.writeValueAsString(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        <T> T read(String json, Class<T> type) {
+            try {
+                return objectMapper.readValue(json, type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 已领取未确认的工作项
+     */
+    private record InFlight(String json, long deadline, int deliveries) {
+    }
+
+    /**
+     * 一个节点看到的工作队列
+     */
+    private static class NodeQueue implements IngestionWorkQueue {
+
+        private final SharedQueue shared;
+        private final String node;
+
+        NodeQueue(SharedQueue shared, String node) {
+            this.shared = shared;
+            this.node = node;
+        }
+
+        @Override
+        public String node() {
+            return node;
+        }
+
+        @Override
+        public void offer(IngestionWorkItem item) {
+            shared.ready.add(shared.write(item));
+        }
+
+        @Override
+        public List<Delivery> take(String consumer) throws InterruptedException {
+            long now = System.currentTimeMillis();
+            for (Iterator<Map.Entry<String, InFlight>> iterator = shared.inFlight.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, InFlight> entry = iterator.next();
+                InFlight expired = entry.getValue();
+                if (expired.deadline() > now || !shared.inFlight.remove(entry.getKey(), expired))
+                    continue;
+                shared.redelivered.incrementAndGet();
+                return List.of(deliver(expired.json(), expired.deliveries()));
+            }
+            String json = shared.ready.poll(50, TimeUnit.MILLISECONDS);
+            return json == null ? List.of() : List.of(deliver(json, 0));
+        }
+
+        private Delivery deliver(String json, int unacknowledged) {
+            String receipt = UUID.randomUUID().toString();
+            shared.inFlight.put(receipt, new InFlight(json, System.currentTimeMillis() + shared.visibilityTimeoutMillis, unacknowledged + 1));
+            IngestionWorkItem item = shared.read(json, IngestionWorkItem.class);
+            return new Delivery(receipt, item, item.getAttempts() + unacknowledged);
+        }
+
+        @Override
+        public void ack(Delivery delivery) {
+            shared.inFlight.remove(delivery.receipt());
+        }
+
+        @Override
+        public void report(IngestionWorkResult result) {
+            shared.results.computeIfAbsent(result.getNode(), key -> new LinkedBlockingQueue<>()).add(shared.write(result));
+        }
+
+        @Override
+        public List<IngestionWorkResult> results() throws InterruptedException {
+            BlockingQueue<String> queue = shared.results.computeIfAbsent(node, key -> new LinkedBlockingQueue<>());
+            String first = queue.poll(50, TimeUnit.MILLISECONDS);
+            if (first == null)
+                return List.of();
+            List<String> drained = new ArrayList<>(List.of(first));
+            queue.drainTo(drained);
+            return drained.stream().map(json -> shared.read(json, IngestionWorkResult.class)).toList();
+        }
+    }
+}
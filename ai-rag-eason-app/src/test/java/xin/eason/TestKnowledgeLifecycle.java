@@ -0,0 +1,221 @@
+package xin.eason;
+
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.api.dto.KnowledgeBaseStatsDTO;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.support.InMemoryGenerations;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.knowledge.KnowledgeLifecycle;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 验证知识库生命周期: 替换时新版本导入完成前检索仍命中旧版本, 切换后旧版本被删除, 删除后知识库不再有文本块,
+ * 替换期间所有节点上对该知识库的删除, 替换与上传都被拒绝, 旧版本留下的墓碑在比例达到阈值后被压缩回收.
+ * 版本表与知识库锁以内存 Map 代替 Redis, 向量库为 HNSW 向量库
+ */
+@Slf4j
+public class TestKnowledgeLifecycle {
+
+    private static final int DIMENSIONS = 16;
+
+    private Path directory;
+    private HnswVectorStore store;
+    private IngestionPipeline pipeline;
+    private InMemoryGenerations generations;
+    private KnowledgeLifecycle lifecycle;
+
+    /**
+     * 嵌入请求在此等待, 用于让替换任务停在构建中
+     */
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rag-lifecycle-");
+        generations = new InMemoryGenerations();
+        start(new HnswOptions());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        stop();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void replacesAndDeletesKnowledgeBase() throws Exception {
+        await(pipeline.submit("kb", List.of(source("v1.txt", "第一版的内容. 旧版本只有这一句话."))));
+        Assert.assertEquals("kb", generations.resolve("kb"));
+        Assert.assertTrue(contents("kb").stream().allMatch(content -> content.contains("第一版")));
+
+        IngestionJob job = lifecycle.replace("kb", List.of(source("v2.txt", "第二版的内容. 新版本替换了全部文本.")));
+        Assert.assertThrows(IllegalStateException.class, () -> lifecycle.delete("kb"));
+        await(job);
+        waitUntil(() -> !generations.resolve("kb").equals("kb") && !generations.isLocked("kb") && lifecycle.stats().size() == 1);
+
+        String storageTag = generations.resolve("kb");
+        Assert.assertTrue(contents(storageTag).stream().allMatch(content -> content.contains("第二版")));
+        Assert.assertTrue(contents("kb").isEmpty());
+        List<KnowledgeBaseStatsDTO> stats = lifecycle.stats();
+        log.info("替换后的用量: {}", stats);
+        Assert.assertEquals("kb", stats.get(0).getRagTag());
+        Assert.assertEquals(storageTag, stats.get(0).getStorageTag());
+        Assert.assertEquals("ACTIVE", stats.get(0).getState());
+
+        // 增量导入写入当前版本
+        await(pipeline.submit("kb", List.of(source("v2-extra.txt", "第二版追加的内容."))));
+        Assert.assertEquals(1, lifecycle.stats().size());
+
+        Assert.assertTrue(lifecycle.delete("kb") > 0);
+        Assert.assertEquals("kb", generations.resolve("kb"));
+        Assert.assertTrue(lifecycle.stats().isEmpty());
+    }
+
+    @Test
+    public void keepsCurrentVersionWhenReplacementFails() throws Exception {
+        await(pipeline.submit("kb", List.of(source("v1.txt", "第一版的内容."))));
+        IngestionJob job = lifecycle.replace("kb", List.of(new IngestionSource("missing.txt", directory.resolve("missing.txt"), false)));
+        await(job);
+        waitUntil(() -> lifecycle.stats().size() == 1);
+
+        Assert.assertEquals("kb", generations.resolve("kb"));
+        Assert.assertEquals("kb", lifecycle.stats().get(0).getStorageTag());
+        Assert.assertFalse(contents("kb").isEmpty());
+    }
+
+    @Test
+    public void rejectsWritesWhileReplacingOnAnyNode() throws Exception {
+        await(pipeline.submit("kb", List.of(source("v1.txt", "第一版的内容."))));
+        gate = new CountDownLatch(1);
+        IngestionJob job = lifecycle.replace("kb", List.of(source("v2.txt", "第二版的内容.")));
+
+        // 另一个节点共享同一张版本表, 同样看到锁
+        KnowledgeLifecycle otherNode = new KnowledgeLifecycle(pipeline, store, store, generations, null);
+        try {
+            Assert.assertThrows(IllegalStateException.class, () -> otherNode.delete("kb"));
+            Assert.assertThrows(IllegalStateException.class, () -> otherNode.replace("kb", List.of(source("v3.txt", "第三版的内容."))));
+        } finally {
+            otherNode.shutdown();
+        }
+        // 写入旧版本的上传会在切换后丢失, 因此被拒绝
+        IngestionSource upload = source("upload.txt", "替换期间上传的内容.");
+        Assert.assertThrows(IllegalStateException.class, () -> pipeline.submit("kb", List.of(upload)));
+        Assert.assertThrows(IllegalStateException.class, () -> pipeline.open("kb"));
+        Assert.assertNotNull(pipeline.submit("other", List.of(source("other.txt", "其他知识库的内容."))));
+
+        gate.countDown();
+        await(job);
+        waitUntil(() -> !generations.isLocked("kb"));
+        await(pipeline.submit("kb", List.of(source("after.txt", "替换完成后上传的内容."))));
+        Assert.assertEquals(List.of("替换完成后上传的内容.", "第二版的内容."), contents(generations.resolve("kb")));
+    }
+
+    @Test
+    public void compactsTombstonesLeftByReplacement() throws Exception {
+        stop();
+        HnswOptions options = new HnswOptions();
+        options.setDataDirectory(directory.resolve("segment").toString());
+        options.setCompactionMinDeleted(1);
+        start(options);
+
+        await(pipeline.submit("kb", List.of(source("v1.txt", "第一版的内容. 旧版本的第二句内容. 旧版本的第三句内容."))));
+        await(pipeline.submit("other", List.of(source("other.txt", "其他知识库的内容."))));
+        await(lifecycle.replace("kb", List.of(source("v2.txt", "第二版的内容."))));
+        waitUntil(() -> !generations.resolve("kb").equals("kb") && !generations.isLocked("kb") && lifecycle.stats().size() == 2);
+
+        // 旧版本的墓碑占比超过阈值, 删除旧版本时即被压缩
+        String storageTag = generations.resolve("kb");
+        Assert.assertEquals(0, store.deletedCount());
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(List.of("第二版的内容."), contents(storageTag));
+        Assert.assertEquals(List.of("其他知识库的内容."), contents("other"));
+        Assert.assertTrue(contents("kb").isEmpty());
+        Assert.assertFalse(Files.exists(directory.resolve("segment.compacting")));
+
+        // 压缩后的磁盘段重新打开后内容不变, 继续写入与删除正常
+        stop();
+        start(options);
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(List.of("第二版的内容."), contents(storageTag));
+        await(pipeline.submit("kb", List.of(source("v2-extra.txt", "第二版追加的内容."))));
+        Assert.assertEquals(2, contents(storageTag).size());
+        Assert.assertEquals(1, store.deleteByKnowledge("other"));
+        Assert.assertEquals(0, store.deletedCount());
+        Assert.assertTrue(contents("other").isEmpty());
+        Assert.assertEquals(2, contents(storageTag).size());
+    }
+
+    private void start(HnswOptions hnswOptions) {
+        store = new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), hnswOptions);
+        IngestionOptions options = new IngestionOptions();
+        options.setSpoolDirectory(directory.resolve("spool").toString());
+        HashEmbeddingClient embeddingClient = new HashEmbeddingClient(DIMENSIONS) {
+            @Override
+            public List<List<Double>> embed(List<String> texts) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.embed(texts);
+            }
+        };
+        pipeline = new IngestionPipeline(options, new DocumentBySentenceSplitter(200, 0), embeddingClient, store, new RagMetrics(new SimpleMeterRegistry()));
+        pipeline.resolveStorageTagsWith(generations::resolveForWrite);
+        lifecycle = new KnowledgeLifecycle(pipeline, store, store, generations, null);
+    }
+
+    private void stop() throws IOException {
+        lifecycle.shutdown();
+        pipeline.shutdown();
+        store.close();
+    }
+
+    private IngestionSource source(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return new IngestionSource(name, file, false);
+    }
+
+    /**
+     * 每个测试文件都包含 "内容", 以关键词检索列出 Tag 下的全部文本块, 不受向量相似度阈值影响
+     */
+    private List<String> contents(String storageTag) {
+        return store.keywordSearch(storageTag, "内容", 100).stream().map(Document::getContent).sorted().toList();
+    }
+
+    private static void await(IngestionJob job) throws Exception {
+        job.completion().get(10, TimeUnit.SECONDS);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                Assert.fail("等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
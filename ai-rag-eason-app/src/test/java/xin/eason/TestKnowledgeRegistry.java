@@ -0,0 +1,118 @@
+package xin.eason;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RList;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.knowledge.KnowledgeRegistry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 验证知识库 Tag 登记表与旧 Tag 列表的迁移: 兼容模式下旧列表保留, 新节点的登记与移除同时写入旧列表, 旧节点登记的 Tag 被补登记,
+ * 旧节点移除的 Tag 不再列出; 关闭兼容模式后启动时迁移剩余的 Tag 并删除旧列表, 之后的登记只写登记表, 并同步到其他节点的本地缓存.
+ * 旧节点以直接读写 "ragTag" 列表模拟, 在 Docker 中启动 Redis, 没有 Docker 时跳过
+ */
+public class TestKnowledgeRegistry {
+
+    private static GenericContainer<?> redis;
+    private static RedissonClient redissonClient;
+
+    private RList<String> legacyTags;
+
+    @BeforeClass
+    public static void startRedis() {
+        Assume.assumeTrue("没有可用的 Docker", DockerClientFactory.instance().isDockerAvailable());
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + redis.getHost() + ":" + redis.getMappedPort(6379));
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if (redissonClient != null)
+            redissonClient.shutdown();
+        if (redis != null)
+            redis.stop();
+    }
+
+    @Before
+    public void setUp() {
+        redissonClient.getKeys().flushall();
+        legacyTags = redissonClient.getList("ragTag");
+    }
+
+    @Test
+    public void keepsLegacyListInSyncWhileOldNodesRun() {
+        legacyTags.addAll(List.of("a", "b"));
+        KnowledgeRegistry registry = open(true);
+        Assert.assertEquals(List.of("a", "b"), registry.tags());
+        Assert.assertEquals(List.of("a", "b"), legacyTags.readAll());
+
+        // 旧节点登记与移除只写旧列表
+        legacyTags.add("c");
+        legacyTags.remove("a");
+        Assert.assertEquals(List.of("b", "c"), registry.tags());
+        Assert.assertTrue(registry.contains("c"));
+        Assert.assertFalse(registry.contains("a"));
+
+        // 新节点的登记与移除对旧节点可见
+        Assert.assertTrue(registry.register("d"));
+        Assert.assertFalse(registry.register("d"));
+        Assert.assertTrue(registry.remove("b"));
+        Assert.assertEquals(List.of("c", "d"), legacyTags.readAll());
+        Assert.assertEquals(List.of("c", "d"), registry.tags());
+
+        // 被旧节点移除的 Tag 重新登记
+        Assert.assertTrue(registry.register("a"));
+        Assert.assertEquals(List.of("c", "d", "a"), legacyTags.readAll());
+        Assert.assertEquals(List.of("c", "d", "a"), registry.tags());
+    }
+
+    @Test
+    public void deletesLegacyListOnceEveryNodeIsUpgraded() throws InterruptedException {
+        legacyTags.addAll(List.of("a", "b"));
+        open(true).register("c");
+
+        KnowledgeRegistry registry = open(false);
+        Assert.assertFalse(legacyTags.isExists());
+        Assert.assertEquals(List.of("a", "b", "c"), registry.tags());
+
+        KnowledgeRegistry other = open(false);
+        Assert.assertTrue(registry.register("d"));
+        Assert.assertFalse(legacyTags.isExists());
+        waitUntil(() -> other.contains("d"));
+        Assert.assertFalse(other.register("d"));
+        Assert.assertEquals(List.of("a", "b", "c", "d"), other.tags());
+
+        Assert.assertTrue(registry.remove("a"));
+        waitUntil(() -> !other.contains("a"));
+    }
+
+    private static KnowledgeRegistry open(boolean legacyTagList) {
+        return new KnowledgeRegistry(redissonClient, "stub", legacyTagList, BlockingExecution.platform());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                Assert.fail("等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.support.ConstantEmbeddingClient;
+import xin.eason.support.SlowVectorStore;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.QueryExpander;
+import xin.eason.trigger.retrieval.RankFusion;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 验证多路子查询检索: 问题扩展, 倒数排名融合, 近似重复去重, 以及并行检索的总耗时不超过最慢的一路
+ */
+@Slf4j
+public class TestKnowledgeRetriever {
+
+    private static final long SEARCH_MILLIS = 200;
+
+    @Test
+    public void expandsQueryIntoKeywordAndClauseQueries() {
+        List<QueryExpander.SubQuery> queries = new QueryExpander(4).expand("请问 HNSW 的参数 m 是什么? 如何设置 ef-search?");
+        log.info("子查询: {}", queries);
+        Assert.assertEquals("请问 HNSW 的参数 m 是什么? 如何设置 ef-search?", queries.get(0).text());
+        Assert.assertTrue(queries.get(1).keyword());
+        Assert.assertEquals(List.of("hnsw", "参数", "m", "设置", "ef", "search"), QueryExpander.keywords(queries.get(0).text()));
+        Assert.assertEquals(4, queries.size());
+    }
+
+    @Test
+    public void fusesRankingsAndDropsNearDuplicates() {
+        Document a = document("a", "向量检索使用 HNSW 图, 查询复杂度约为 O(log n).");
+        Document b = document("b", "BM25 关键词检索对专有名词与代码标识符更准确.");
+        Document c = document("c", "向量检索使用 HNSW 图, 查询复杂度约为 O(log n). ");
+        Document d = document("d", "倒数排名融合只依赖排名.");
+        List<Document> fused = RankFusion.reciprocalRank(List.of(List.of(a, b, d), List.of(b, c, a), List.of(b, d)), 60);
+        Assert.assertEquals(List.of("b", "a", "d", "c"), fused.stream().map(Document::getId).toList());
+        List<Document> deduped = RankFusion.dedupe(fused, 0.9, 10);
+        Assert.assertEquals(List.of("b", "a", "d"), deduped.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    public void parallelSearchTakesAboutOneSearch() {
+        SlowVectorStore slowStore = new SlowVectorStore(SEARCH_MILLIS, request -> {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < request.getTopK(); i++)
+                documents.add(document(request.getQuery().length() % 3 + "-" + i, UUID.randomUUID() + " " + UUID.randomUUID()));
+            return documents;
+        });
+        Set<String> searched = slowStore.getQueries();
+        RetrievalCacheOptions cacheOptions = new RetrievalCacheOptions();
+        cacheOptions.setEnabled(false);
+        KnowledgeRetriever retriever = new KnowledgeRetriever(slowStore, null, new RetrievalCache("stub", cacheOptions, null),
+                new PrecomputedEmbeddingClient(new ConstantEmbeddingClient()), new RetrievalOptions());
+        try {
+            // 预热一次, 计时不包含首次调用的类加载与线程创建
+            retriever.retrieve("tag", "warm up", 5, RagMetrics.disabled().chat("ollama", "stub", "tag"));
+            searched.clear();
+            long start = System.nanoTime();
+            List<Document> documents = retriever.retrieve("tag", "What is HNSW? How does BM25 rank documents?", 5,
+                    RagMetrics.disabled().chat("ollama", "stub", "tag"));
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            log.info("{} 路子查询, 总耗时 {} ms, 单路 {} ms, 返回 {} 个文本块", searched.size(), elapsed, SEARCH_MILLIS, documents.size());
+            Assert.assertEquals(4, searched.size());
+            Assert.assertTrue("子查询没有并行执行: " + elapsed + " ms", elapsed < SEARCH_MILLIS * 2);
+            Assert.assertEquals(5, documents.size());
+        } finally {
+            retriever.shutdown();
+        }
+    }
+
+    private static Document document(String id, String content) {
+        return new Document(id, content, Map.of("knowledge", "tag"));
+    }
+}
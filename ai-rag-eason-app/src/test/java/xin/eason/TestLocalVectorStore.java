@@ -0,0 +1,210 @@
+package xin.eason;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 验证磁盘模式的本地向量库在重新打开后的状态: 覆盖写入与删除在重放后生效, 覆盖写入的墓碑丢失时同一 ID 以最后一条记录为准,
+ * 覆盖写入的新记录提交之前宕机时旧记录仍在, 删除返回时墓碑已落盘, 从文档索引快照恢复后只重放快照之后的记录,
+ * 宕机留下的不完整记录, 悬空的偏移量与写了一半的墓碑在打开时被截断, 之后可以继续写入.
+ * "宕机" 以不关闭旧实例直接打开新实例模拟: 未提交的数据不会在关闭时补写
+ */
+public class TestLocalVectorStore {
+
+    private static final int DIMENSIONS = 16;
+
+    private Path directory;
+    private HnswOptions options;
+    private HnswVectorStore store;
+
+    /**
+     * 模拟宕机时丢弃的实例, 不关闭
+     */
+    private final List<HnswVectorStore> crashed = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rag-segment-");
+        options = new HnswOptions();
+        options.setDataDirectory(directory.resolve("segment").toString());
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void replaysUpsertsAndTombstones() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b"), document("c", "chunk c")));
+        store.add(List.of(document("b", "chunk b2")));
+        store.delete(List.of("c"));
+        reopen();
+
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b2"), chunks());
+    }
+
+    @Test
+    public void upsertWinsWhenItsTombstoneIsLost() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b")));
+        store.add(List.of(document("b", "chunk b2")));
+        store.close();
+        truncate("tombstones.i32", 0);
+        store = open();
+
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b2"), chunks());
+    }
+
+    @Test
+    public void keepsOldRecordWhenUpsertIsNotCommitted() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b")));
+        // 第二个文档维度不一致, 覆盖 b 的新记录已追加但整批未提交
+        Document invalid = document("c", "chunk c");
+        invalid.setEmbedding(List.of(1.0, 0.0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> store.add(List.of(document("b", "chunk b2"), invalid)));
+        crash();
+
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b"), chunks());
+    }
+
+    @Test
+    public void persistsTombstonesOnDelete() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b"), document("c", "chunk c")));
+        store.delete(List.of("a"));
+        store.deleteBySources("kb", List.of("c.txt"));
+        Assert.assertEquals(2 * Integer.BYTES, Files.size(directory.resolve("segment").resolve("tombstones.i32")));
+        crash();
+
+        Assert.assertEquals(Map.of("b", "chunk b"), chunks());
+    }
+
+    @Test
+    public void restoresIndexSnapshotAndReplaysTail() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b"), document("c", "chunk c")));
+        reopen();
+        Assert.assertTrue(Files.isRegularFile(directory.resolve("segment").resolve("index.bin")));
+        // 快照之后: 新增, 覆盖写入与删除都只在记录与墓碑中
+        store.add(List.of(document("d", "chunk d"), document("a", "chunk a2")));
+        store.delete(List.of("b"));
+        crash();
+
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals(Map.of("a", "chunk a2", "c", "chunk c", "d", "chunk d"), chunks());
+        // 按 Tag 过滤走内存中的 Tag, 其他字段的过滤从磁盘读取元数据
+        SearchRequest byTag = SearchRequest.query("chunk c").withTopK(10).withFilterExpression("knowledge == 'kb'");
+        Assert.assertEquals("c", store.similaritySearch(byTag).get(0).getId());
+        Assert.assertTrue(store.similaritySearch(byTag.withFilterExpression("knowledge == 'other'")).isEmpty());
+        SearchRequest bySource = SearchRequest.query("chunk c").withTopK(10).withFilterExpression("source == 'c.txt'");
+        List<Document> results = store.similaritySearch(bySource);
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("c", results.get(0).getId());
+        Assert.assertEquals("kb", results.get(0).getMetadata().get("knowledge"));
+
+        // 快照损坏时回退为重放全部记录
+        store.close();
+        Files.write(directory.resolve("segment").resolve("index.bin"), new byte[]{1, 2, 3});
+        store = open();
+        Assert.assertEquals(Map.of("a", "chunk a2", "c", "chunk c", "d", "chunk d"), chunks());
+    }
+
+    @Test
+    public void truncatesRecordCutShortByCrash() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b"), document("c", "chunk c")));
+        store.close();
+        Path records = directory.resolve("segment").resolve("records.dat");
+        truncate("records.dat", Files.size(records) - 3);
+        store = open();
+
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b"), chunks());
+        store.add(List.of(document("d", "chunk d")));
+        reopen();
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b", "d", "chunk d"), chunks());
+    }
+
+    @Test
+    public void ignoresDanglingOffsetsAndPartialTombstones() throws IOException {
+        store.add(List.of(document("a", "chunk a"), document("b", "chunk b")));
+        store.close();
+        long recordsSize = Files.size(directory.resolve("segment").resolve("records.dat"));
+        // 偏移量先于记录落盘: 一个指向记录文件末尾, 一个与上一条记录不连续, 再加写了一半的偏移量与墓碑
+        ByteBuffer dangling = ByteBuffer.allocate(2 * Long.BYTES + 3).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(recordsSize).putLong(7).put(new byte[3]).flip();
+        append("offsets.i64", dangling);
+        append("tombstones.i32", ByteBuffer.wrap(new byte[]{0, 0}));
+        store = open();
+
+        Assert.assertEquals(Map.of("a", "chunk a", "b", "chunk b"), chunks());
+        store.add(List.of(document("c", "chunk c")));
+        store.delete(List.of("a"));
+        reopen();
+        Assert.assertEquals(Map.of("b", "chunk b", "c", "chunk c"), chunks());
+    }
+
+    private HnswVectorStore open() {
+        return new HnswVectorStore(new HashEmbeddingClient(DIMENSIONS), options);
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = open();
+    }
+
+    /**
+     * 不关闭当前实例, 直接从磁盘上已写入的数据重新打开
+     */
+    private void crash() {
+        crashed.add(store);
+        store = open();
+    }
+
+    /**
+     * 以关键词检索列出全部文本块, 文档 ID -> 文本内容
+     */
+    private Map<String, String> chunks() {
+        Map<String, String> chunks = new TreeMap<>();
+        for (Document document : store.keywordSearch(null, "chunk", 100))
+            Assert.assertNull("文档 " + document.getId() + " 重复出现", chunks.put(document.getId(), document.getContent()));
+        return chunks;
+    }
+
+    private void truncate(String file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve("segment").resolve(file), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private void append(String file, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve("segment").resolve(file), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+    }
+
+    private static Document document(String id, String content) {
+        return new Document(id, content, Map.of("knowledge", "kb", "source", id + ".txt"));
+    }
+}
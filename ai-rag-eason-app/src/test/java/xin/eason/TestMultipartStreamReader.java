@@ -0,0 +1,103 @@
+package xin.eason;
+
+import org.junit.Assert;
+import org.junit.Test;
+import xin.eason.trigger.ingest.MultipartStreamReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 验证流式 multipart 解析: 请求体以任意长度的片段到达, 文件内容中夹杂与分隔符相似的字节时, 各部分内容仍逐字节一致
+ */
+public class TestMultipartStreamReader {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    @Test
+    public void readsEveryPartExactly() throws IOException {
+        Random random = new Random(11);
+        List<byte[]> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            byte[] content = new byte[random.nextInt(300_000)];
+            random.nextBytes(content);
+            // 夹杂分隔符的前缀, 检验不会被误判为部分结束
+            byte[] almost = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes(StandardCharsets.ISO_8859_1);
+            if (content.length > almost.length * 2)
+                System.arraycopy(almost, 0, content, content.length / 2, almost.length);
+            files.add(content);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "preamble\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"ragTag\"\r\n\r\n知识库");
+        for (int i = 0; i < files.size(); i++) {
+            write(body, "\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\"文件-" + i + ".pdf\"\r\n"
+                    + "Content-Type: application/pdf\r\n\r\n");
+            body.write(files.get(i));
+        }
+        write(body, "\r\n--" + BOUNDARY + "--\r\n");
+
+        MultipartStreamReader reader = new MultipartStreamReader(new TrickleInputStream(body.toByteArray(), random), BOUNDARY);
+        MultipartStreamReader.Part field = reader.next();
+        Assert.assertFalse(field.isFile());
+        Assert.assertEquals("ragTag", field.getName());
+        Assert.assertEquals("知识库", new String(field.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        for (int i = 0; i < files.size(); i++) {
+            MultipartStreamReader.Part part = reader.next();
+            Assert.assertEquals("文件-" + i + ".pdf", part.getFilename());
+            Assert.assertEquals("application/pdf", part.getContentType());
+            // 跳过一个文件不读, 检验下一部分仍能正确定位
+            if (i == 2)
+                continue;
+            Assert.assertArrayEquals(files.get(i), part.getContent().readAllBytes());
+        }
+        Assert.assertNull(reader.next());
+        Assert.assertEquals(BOUNDARY, MultipartStreamReader.boundaryOf("multipart/form-data; boundary=" + BOUNDARY));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBodyFails() throws IOException {
+        String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n\r\nhello";
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), BOUNDARY);
+        reader.next().getContent().readAllBytes();
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每次只返回随机长度的一小段, 模拟网络分包
+     */
+    private static class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private final Random random;
+        private int position;
+
+        TrickleInputStream(byte[] data, Random random) {
+            this.data = data;
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (position >= data.length)
+                return -1;
+            int count = Math.min(Math.min(length, 1 + random.nextInt(5000)), data.length - position);
+            System.arraycopy(data, position, target, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package xin.eason;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.vectorstore.PgCopyWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 验证 COPY 二进制格式的布局: 文件头, 每行 4 列 ( uuid, text, jsonb, vector ), 文件尾
+ */
+public class TestPgCopyWriter {
+
+    @Test
+    public void writesBinaryCopyLayout() throws IOException {
+        UUID id = UUID.randomUUID();
+        Document document = new Document(id.toString(), "知识库", Map.of("knowledge", "tag"));
+        document.setEmbedding(List.of(0.5, -1.0, 2.0));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgCopyWriter writer = new PgCopyWriter(bytes, true);
+        writer.writeHeader();
+        writer.writeRow(document);
+        writer.writeTrailer();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        Assert.assertEquals("PGCOPY\n", new String(signature, 0, 7, StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(0, in.readInt());
+        Assert.assertEquals(0, in.readInt());
+
+        Assert.assertEquals(4, in.readShort());
+        Assert.assertEquals(16, in.readInt());
+        Assert.assertEquals(id, new UUID(in.readLong(), in.readLong()));
+
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        Assert.assertEquals("知识库", new String(content, StandardCharsets.UTF_8));
+
+        byte[] metadata = new byte[in.readInt() - 1];
+        Assert.assertEquals(1, in.readByte());
+        in.readFully(metadata);
+        Assert.assertEquals("{\"knowledge\":\"tag\"}", new String(metadata, StandardCharsets.UTF_8));
+
+        Assert.assertEquals(4 + 4 * 3, in.readInt());
+        Assert.assertEquals(3, in.readShort());
+        Assert.assertEquals(0, in.readShort());
+        Assert.assertEquals(0.5f, in.readFloat(), 0);
+        Assert.assertEquals(-1.0f, in.readFloat(), 0);
+        Assert.assertEquals(2.0f, in.readFloat(), 0);
+
+        Assert.assertEquals(-1, in.readShort());
+        Assert.assertEquals(0, in.available());
+    }
+
+    @Test
+    public void rejectsDocumentWithoutEmbedding() {
+        PgCopyWriter writer = new PgCopyWriter(new ByteArrayOutputStream(), false);
+        Assert.assertThrows(IllegalArgumentException.class, () -> writer.writeRow(new Document(UUID.randomUUID().toString(), "x", Map.of())));
+    }
+}
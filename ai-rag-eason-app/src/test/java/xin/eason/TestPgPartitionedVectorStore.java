@@ -0,0 +1,159 @@
+package xin.eason;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.trigger.vectorstore.KnowledgeInventory;
+import xin.eason.trigger.vectorstore.PgPartitionOptions;
+import xin.eason.trigger.vectorstore.PgPartitionedVectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证按 Tag 分区的 PG 向量库: 写入按 knowledge 路由到各自的分区, 检索只返回该 Tag 的文本块; 删除 Tag 卸下并删除其分区,
+ * 不影响其他 Tag, 返回统计信息中的行数; 卸下失败时分区保持原状; 分区被其他节点删除后写入重新创建分区.
+ * 在 Docker 中启动 pgvector 镜像, 没有 Docker 时跳过
+ */
+public class TestPgPartitionedVectorStore {
+
+    private static final int DIMENSIONS = 16;
+
+    private static PostgreSQLContainer<?> postgres;
+    private static JdbcTemplate jdbcTemplate;
+
+    private PgPartitionedVectorStore store;
+
+    @BeforeClass
+    public static void startPostgres() {
+        Assume.assumeTrue("没有可用的 Docker", DockerClientFactory.instance().isDockerAvailable());
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+        postgres.start();
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+    }
+
+    @AfterClass
+    public static void stopPostgres() {
+        if (postgres != null)
+            postgres.stop();
+    }
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + PgPartitionedVectorStore.TABLE + " CASCADE");
+        store = open();
+    }
+
+    @Test
+    public void routesDocumentsToPartitions() {
+        List<Document> a = documents("a", 3);
+        store.add(a);
+        store.add(documents("b", 2));
+
+        Assert.assertEquals(3, rows("a"));
+        Assert.assertEquals(2, rows("b"));
+        SearchRequest request = SearchRequest.query(a.get(1).getContent()).withTopK(10).withFilterExpression("knowledge == 'a'");
+        List<Document> results = store.similaritySearch(request);
+        Assert.assertEquals(a.get(1).getId(), results.get(0).getId());
+        Assert.assertTrue(results.stream().allMatch(document -> "a".equals(document.getMetadata().get("knowledge"))));
+        List<Document> keywords = store.keywordSearch("b", "chunk", 10);
+        Assert.assertEquals(2, keywords.size());
+        Assert.assertTrue(keywords.stream().allMatch(document -> "b".equals(document.getMetadata().get("knowledge"))));
+    }
+
+    @Test
+    public void deletesPartitionWithoutTouchingOthers() throws InterruptedException {
+        store.add(documents("a", 5));
+        store.add(documents("b", 2));
+        awaitUsage("a", 5);
+
+        Assert.assertEquals(5, store.deleteByKnowledge("a"));
+        Assert.assertFalse(exists("a"));
+        Assert.assertEquals(0, rows("a"));
+        Assert.assertEquals(2, rows("b"));
+        Assert.assertTrue(store.usage().stream().noneMatch(usage -> "a".equals(usage.knowledge())));
+        Assert.assertEquals(0, store.deleteByKnowledge("a"));
+
+        // 删除后再次写入时重新创建分区
+        store.add(documents("a", 1));
+        Assert.assertEquals(1, rows("a"));
+    }
+
+    @Test
+    public void keepsPartitionWhenDetachFails() {
+        store.add(documents("a", 3));
+        // 存在默认分区时不能并发卸下分区, 此时不能退回到阻塞整张分区表的 DROP
+        jdbcTemplate.execute("CREATE TABLE " + PgPartitionedVectorStore.TABLE + "_default PARTITION OF " + PgPartitionedVectorStore.TABLE + " DEFAULT");
+        Assert.assertThrows(DataAccessException.class, () -> store.deleteByKnowledge("a"));
+        Assert.assertTrue(exists("a"));
+        Assert.assertEquals(3, rows("a"));
+
+        jdbcTemplate.execute("DROP TABLE " + PgPartitionedVectorStore.TABLE + "_default");
+        store.deleteByKnowledge("a");
+        Assert.assertFalse(exists("a"));
+    }
+
+    @Test
+    public void recreatesPartitionDroppedByAnotherNode() {
+        store.add(documents("a", 2));
+        // 另一个节点删除了分区, 本节点缓存的分区已不存在
+        open().deleteByKnowledge("a");
+        store.add(documents("a", 3));
+        Assert.assertEquals(3, rows("a"));
+    }
+
+    private PgPartitionedVectorStore open() {
+        PgPartitionedVectorStore store = new PgPartitionedVectorStore(new PgPartitionOptions(), jdbcTemplate, new HashEmbeddingClient(DIMENSIONS));
+        store.initialize();
+        return store;
+    }
+
+    /**
+     * 行数统计来自累计统计信息, 写入后稍有延迟
+     */
+    private void awaitUsage(String knowledge, long chunks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (store.usage().stream().noneMatch(usage -> knowledge.equals(usage.knowledge()) && usage.chunks() == chunks)) {
+            if (System.nanoTime() > deadline)
+                Assert.fail("等待统计信息超时: " + store.usage());
+            Thread.sleep(100);
+        }
+        KnowledgeInventory.Usage usage = store.usage().stream().filter(item -> knowledge.equals(item.knowledge())).findFirst().orElseThrow();
+        Assert.assertTrue(usage.bytes() > 0);
+    }
+
+    private long rows(String knowledge) {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + PgPartitionedVectorStore.TABLE + " WHERE knowledge = ?", Long.class, knowledge);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * 分区表是否存在 ( 无论是否挂在分区表上 )
+     */
+    private boolean exists(String knowledge) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class,
+                PgPartitionedVectorStore.partitionName(knowledge)));
+    }
+
+    private static List<Document> documents(String knowledge, int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            documents.add(new Document(UUID.randomUUID().toString(), "chunk " + knowledge + " " + i, Map.of("knowledge", knowledge, "source", knowledge + ".txt")));
+        return documents;
+    }
+}
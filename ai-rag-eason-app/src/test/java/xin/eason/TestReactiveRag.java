@@ -0,0 +1,69 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.ollama.OllamaChatClient;
+import org.springframework.ai.ollama.api.OllamaApi;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import xin.eason.support.ConstantEmbeddingClient;
+import xin.eason.support.SlowVectorStore;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.http.OllamaController;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.ContextOptions;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.retrieval.SemanticAnswerCache;
+import xin.eason.trigger.retrieval.SemanticCacheOptions;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 验证流式 RAG 对话不阻塞请求线程: generateStreamWithRag 立即返回, 检索在订阅后于 ragScheduler 的线程上执行
+ */
+@Slf4j
+public class TestReactiveRag {
+
+    private static final long SEARCH_MILLIS = 300;
+
+    @Test
+    public void retrievalRunsOnSchedulerAfterSubscribe() {
+        SlowVectorStore store = new SlowVectorStore(SEARCH_MILLIS,
+                request -> List.of(new Document("hnsw", "HNSW 是分层可导航小世界图.", Map.of("knowledge", "tag", "source", "hnsw.md"))));
+        RetrievalCacheOptions cacheOptions = new RetrievalCacheOptions();
+        cacheOptions.setEnabled(false);
+        RetrievalOptions retrievalOptions = new RetrievalOptions();
+        retrievalOptions.setMultiQuery(false);
+        KnowledgeRetriever retriever = new KnowledgeRetriever(store, null, new RetrievalCache("stub", cacheOptions, null),
+                new PrecomputedEmbeddingClient(new ConstantEmbeddingClient()), retrievalOptions);
+        SemanticCacheOptions semanticCacheOptions = new SemanticCacheOptions();
+        semanticCacheOptions.setEnabled(false);
+        Scheduler scheduler = Schedulers.newBoundedElastic(4, 100, "rag-chat");
+        // 没有 Ollama 服务, 大模型调用失败不影响本测试, 只关心检索在哪个线程上执行
+        OllamaController controller = new OllamaController(new OllamaChatClient(new OllamaApi("http://127.0.0.1:1")), retriever,
+                new ContextBuilder(new ContextOptions()), new SemanticAnswerCache(semanticCacheOptions, new ConstantEmbeddingClient()),
+                RagMetrics.disabled(), scheduler);
+        try {
+            long start = System.nanoTime();
+            Flux<?> responses = controller.generateStreamWithRag("stub", "tag", "什么是 HNSW?", 5, "vector");
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            Assert.assertNull("订阅前不应检索", store.getLastSearchThread());
+            Assert.assertTrue("请求线程被检索阻塞: " + elapsed + " ms", elapsed < SEARCH_MILLIS);
+
+            responses.onErrorResume(e -> Flux.empty()).blockLast();
+            log.info("返回 Flux 耗时 {} ms, 检索线程: {}", elapsed, store.getLastSearchThread());
+            Assert.assertTrue(store.getLastSearchThread(), store.getLastSearchThread().startsWith("rag-chat"));
+        } finally {
+            retriever.shutdown();
+            scheduler.dispose();
+        }
+    }
+}
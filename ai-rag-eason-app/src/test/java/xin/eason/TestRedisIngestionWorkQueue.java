@@ -0,0 +1,165 @@
+package xin.eason;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+import xin.eason.trigger.ingest.IngestionQueueOptions;
+import xin.eason.trigger.ingest.IngestionWorkItem;
+import xin.eason.trigger.ingest.IngestionWorkQueue;
+import xin.eason.trigger.ingest.IngestionWorkResult;
+import xin.eason.trigger.ingest.RedisIngestionWorkQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证基于 Redis Stream 的导入工作队列: 每个工作项只投递给一个消费者, 结果回报到任务所在节点;
+ * 超过可见性超时未确认的工作项被其他消费者重新领取并计入失败次数; 协调节点下线后, 其已读取未确认与尚未读取的结果由其他节点接管,
+ * 每条只接管一次, 取完后删除其结果 Stream. 两个节点以同一 Redis 上的两个队列实例模拟, 在 Docker 中启动 Redis, 没有 Docker 时跳过
+ */
+public class TestRedisIngestionWorkQueue {
+
+    private static GenericContainer<?> redis;
+    private static RedissonClient redissonClient;
+
+    private IngestionQueueOptions options;
+
+    @BeforeClass
+    public static void startRedis() {
+        Assume.assumeTrue("没有可用的 Docker", DockerClientFactory.instance().isDockerAvailable());
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + redis.getHost() + ":" + redis.getMappedPort(6379));
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if (redissonClient != null)
+            redissonClient.shutdown();
+        if (redis != null)
+            redis.stop();
+    }
+
+    @Before
+    public void setUp() {
+        redissonClient.getKeys().flushall();
+        options = new IngestionQueueOptions();
+        options.setBatchesPerPoll(10);
+        options.setPollTimeoutMillis(100);
+    }
+
+    @Test
+    public void deliversEachItemOnceAndReportsToOwner() throws Exception {
+        RedisIngestionWorkQueue a = new RedisIngestionWorkQueue(redissonClient, options);
+        RedisIngestionWorkQueue b = new RedisIngestionWorkQueue(redissonClient, options);
+        for (int i = 0; i < 4; i++)
+            a.offer(item("item-" + i, a.node()));
+
+        Map<String, IngestionWorkQueue.Delivery> delivered = new TreeMap<>();
+        long deadline = deadline();
+        while (delivered.size() < 4 && System.nanoTime() < deadline) {
+            for (RedisIngestionWorkQueue consumer : List.of(a, b)) {
+                for (IngestionWorkQueue.Delivery delivery : consumer.take(consumer.node() + "-worker")) {
+                    Assert.assertNull("工作项重复投递", delivered.put(delivery.item().getId(), delivery));
+                    Assert.assertEquals(0, delivery.attempts());
+                    consumer.report(result(delivery.item()));
+                    consumer.ack(delivery);
+                }
+            }
+        }
+        Assert.assertEquals(List.of("item-0", "item-1", "item-2", "item-3"), List.copyOf(delivered.keySet()));
+        Assert.assertTrue(a.take("a-worker").isEmpty());
+
+        Assert.assertEquals(List.of("item-0", "item-1", "item-2", "item-3"), collect(a, 4));
+        Assert.assertTrue(b.results().isEmpty());
+        Assert.assertTrue(a.results().isEmpty());
+    }
+
+    @Test
+    public void redeliversUnacknowledgedItem() throws Exception {
+        options.setVisibilityTimeoutMillis(300);
+        RedisIngestionWorkQueue a = new RedisIngestionWorkQueue(redissonClient, options);
+        RedisIngestionWorkQueue b = new RedisIngestionWorkQueue(redissonClient, options);
+        a.offer(item("item", a.node()));
+
+        // 节点 B 领取后宕机, 不确认也不回报
+        List<IngestionWorkQueue.Delivery> lost = b.take("b-worker");
+        Assert.assertEquals(1, lost.size());
+        Assert.assertTrue(a.take("a-worker").isEmpty());
+
+        TimeUnit.MILLISECONDS.sleep(400);
+        List<IngestionWorkQueue.Delivery> redelivered = a.take("a-worker");
+        Assert.assertEquals(1, redelivered.size());
+        Assert.assertEquals("item", redelivered.get(0).item().getId());
+        Assert.assertEquals(1, redelivered.get(0).attempts());
+        a.ack(redelivered.get(0));
+        TimeUnit.MILLISECONDS.sleep(400);
+        Assert.assertTrue(b.take("b-worker").isEmpty());
+    }
+
+    @Test
+    public void takesOverResultsOfDeadCoordinator() throws Exception {
+        options.setVisibilityTimeoutMillis(300);
+        RedisIngestionWorkQueue dead = new RedisIngestionWorkQueue(redissonClient, options);
+        RedisIngestionWorkQueue alive = new RedisIngestionWorkQueue(redissonClient, options);
+
+        // 协调线程读取了第一条结果但未处理完就宕机, 第二条结果在宕机后才写入
+        alive.report(result(item("read", dead.node())));
+        Assert.assertEquals(List.of("read"), collect(dead, 1));
+        alive.report(result(item("unread", dead.node())));
+
+        List<IngestionWorkResult> takenOver = new ArrayList<>();
+        long deadline = deadline();
+        while (takenOver.size() < 2 && System.nanoTime() < deadline)
+            takenOver.addAll(alive.results());
+        Assert.assertEquals(List.of("read", "unread"), takenOver.stream().map(IngestionWorkResult::getItemId).sorted().toList());
+        Assert.assertTrue(takenOver.stream().allMatch(result -> dead.node().equals(result.getNode()) && "kb".equals(result.getRagTag())));
+
+        // 每条只接管一次, 取完后删除下线节点的结果 Stream
+        deadline = deadline();
+        while (redissonClient.getKeys().countExists("ragIngestResultStream:" + dead.node()) > 0 && System.nanoTime() < deadline)
+            Assert.assertTrue(alive.results().isEmpty());
+        Assert.assertEquals(0, redissonClient.getKeys().countExists("ragIngestResultStream:" + dead.node()));
+        Assert.assertFalse(redissonClient.getSet("ragIngestCoordinators", StringCodec.INSTANCE).contains(dead.node()));
+    }
+
+    /**
+     * 反复读取直到收到 expected 条结果, 返回按 ID 排序的工作项 ID
+     */
+    private static List<String> collect(IngestionWorkQueue queue, int expected) throws InterruptedException {
+        List<String> itemIds = new ArrayList<>();
+        long deadline = deadline();
+        while (itemIds.size() < expected && System.nanoTime() < deadline) {
+            for (IngestionWorkResult result : queue.results())
+                itemIds.add(result.getItemId());
+        }
+        return itemIds.stream().sorted().toList();
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    }
+
+    private static IngestionWorkItem item(String id, String node) {
+        return new IngestionWorkItem(id, "job", node, "kb", 0, List.of());
+    }
+
+    private static IngestionWorkResult result(IngestionWorkItem item) {
+        return new IngestionWorkResult(item.getId(), item.getJobId(), item.getNode(), item.getRagTag(), 1, null);
+    }
+}
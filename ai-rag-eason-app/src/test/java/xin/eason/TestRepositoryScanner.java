@@ -0,0 +1,138 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import xin.eason.trigger.git.GitIndexOptions;
+import xin.eason.trigger.git.RepositoryScanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 验证仓库扫描的过滤规则: include / exclude glob, 根目录与嵌套目录的 .gitignore ( 含否定规则 ) 以及 .git/info/exclude,
+ * 文件大小上限, 文件头中的 NUL 字节检测与允许的二进制文档; 并对比单线程与多线程扫描同一棵目录树的耗时
+ */
+@Slf4j
+public class TestRepositoryScanner {
+
+    private Path root;
+    private RepositoryScanner scanner;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("rag-scan-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (scanner != null)
+            scanner.shutdown();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void appliesFilters() throws IOException {
+        write("src/Main.java", "class Main {}");
+        write(".gitignore", "*.log\nsecret/\n");
+        write("src/app.log", "被根目录 .gitignore 忽略");
+        write("src/.gitignore", "gen/\n!keep.log\n");
+        write("src/keep.log", "被嵌套 .gitignore 重新包含");
+        write("src/gen/Generated.java", "class Generated {}");
+        write("secret/key.txt", "被忽略的目录");
+        write(".git/info/exclude", "local.txt\n");
+        write(".git/config", "[core]");
+        write("local.txt", "被 .git/info/exclude 忽略");
+        write("node_modules/lib/index.js", "module.exports = {}");
+        write("docs/readme.md", "# 文档");
+        write("docs/logo.png", "被默认 exclude 排除");
+        write("docs/big.txt", "x".repeat(2048));
+        write("docs/empty.txt", "");
+        Files.write(file("docs/data.bin"), new byte[]{'a', 'b', 0, 'c'});
+        Files.write(file("docs/manual.pdf"), new byte[]{'%', 'P', 'D', 'F', 0, 1});
+        // NUL 字节在检测窗口之外, 视为文本
+        Files.write(file("docs/late-nul.txt"), ("0123456789abcdef" + "tail\0").getBytes(StandardCharsets.UTF_8));
+
+        GitIndexOptions options = options(4);
+        scanner = new RepositoryScanner(options);
+        // .gitignore 本身由 git 跟踪, 同样导入
+        List<String> expected = List.of(".gitignore", "docs/late-nul.txt", "docs/manual.pdf", "docs/readme.md", "src/.gitignore", "src/Main.java", "src/keep.log");
+        Assert.assertEquals(expected, scanner.scan(root));
+
+        // 增量索引时对 diff 中的文件应用相同的规则
+        Assert.assertEquals(List.of("docs/readme.md", "src/Main.java"), scanner.filter(root, List.of("src/gen/Generated.java", "src/Main.java",
+                "src/app.log", "secret/key.txt", "local.txt", "docs/data.bin", "docs/big.txt", "node_modules/lib/index.js", "docs/readme.md")));
+        scanner.shutdown();
+
+        // include 只保留匹配的文件, 仍然应用 exclude 与 .gitignore
+        options.setIncludes(List.of("**/*.java"));
+        scanner = new RepositoryScanner(options);
+        Assert.assertEquals(List.of("src/Main.java"), scanner.scan(root));
+        scanner.shutdown();
+
+        // 不遵循 .gitignore 时被忽略的文件重新出现
+        options.setIncludes(List.of());
+        options.setRespectGitignore(false);
+        scanner = new RepositoryScanner(options);
+        Assert.assertTrue(scanner.scan(root).containsAll(List.of("src/app.log", "src/gen/Generated.java", "secret/key.txt", "local.txt")));
+    }
+
+    @Test
+    public void comparesSequentialAndParallelScans() throws IOException {
+        for (int directory = 0; directory < 40; directory++) {
+            for (int file = 0; file < 100; file++)
+                write("module-" + directory + "/src/file-" + file + ".txt", "第 " + file + " 个文件的内容");
+            write("module-" + directory + "/.gitignore", "*.tmp\n");
+            write("module-" + directory + "/build/output.txt", "构建产物");
+        }
+
+        List<String> sequential = null;
+        List<String> parallel = null;
+        long sequentialNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        int parallelism = Math.max(Runtime.getRuntime().availableProcessors(), 4);
+        // 交替运行多轮取最短耗时, 排除首次读取目录的冷缓存影响
+        for (int round = 0; round < 3; round++) {
+            RepositoryScanner single = new RepositoryScanner(options(1));
+            long start = System.nanoTime();
+            sequential = single.scan(root);
+            sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+            single.shutdown();
+
+            RepositoryScanner multiple = new RepositoryScanner(options(parallelism));
+            start = System.nanoTime();
+            parallel = multiple.scan(root);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+            multiple.shutdown();
+        }
+        log.info("扫描 {} 个文件: 单线程 {} ms, {} 线程 {} ms ( {} 个 CPU ), 加速比 {}", sequential.size(), sequentialNanos / 1_000_000,
+                parallelism, parallelNanos / 1_000_000, Runtime.getRuntime().availableProcessors(),
+                String.format("%.2f", (double) sequentialNanos / parallelNanos));
+        Assert.assertEquals(40 * 101, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    private GitIndexOptions options(int parallelism) {
+        GitIndexOptions options = new GitIndexOptions();
+        options.setMaxFileBytes(1024);
+        options.setSniffBytes(16);
+        options.setScanParallelism(parallelism);
+        return options;
+    }
+
+    private Path file(String path) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        return file;
+    }
+
+    private void write(String path, String content) throws IOException {
+        Files.writeString(file(path), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+package xin.eason;
+
+import com.google.common.base.Ticker;
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import xin.eason.bench.HashEmbeddingClient;
+import xin.eason.support.InMemoryGenerations;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.knowledge.KnowledgeLifecycle;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.SearchMode;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 验证检索结果缓存: 问题的大小写, 全半角与空白差异命中同一条目, topK, 检索方式或 Tag 不同时不命中;
+ * 上传与删除知识库后该 Tag 的版本号递增, 旧条目不再命中; 条目在过期时间之后不再命中
+ */
+public class TestRetrievalCache {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void normalizesQueryInKey() {
+        RetrievalCache cache = open();
+        get(cache, "kb", "What is  HNSW?", 5, SearchMode.HYBRID);
+        get(cache, "kb", "  what is hnsw? ", 5, SearchMode.HYBRID);
+        get(cache, "kb", "ｗｈａｔ\tis\nＨＮＳＷ?", 5, SearchMode.HYBRID);
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(2, cache.getHits());
+
+        get(cache, "kb", "What is HNSW", 5, SearchMode.HYBRID);
+        get(cache, "kb", "What is HNSW?", 10, SearchMode.HYBRID);
+        get(cache, "kb", "What is HNSW?", 5, SearchMode.VECTOR);
+        get(cache, "other", "What is HNSW?", 5, SearchMode.HYBRID);
+        Assert.assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        RetrievalCacheOptions options = new RetrievalCacheOptions();
+        options.setTtlMinutes(10);
+        RetrievalCache cache = new RetrievalCache("model", options, null, ticker());
+        get(cache, "kb", "问题", 5, SearchMode.HYBRID);
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        get(cache, "kb", "问题", 5, SearchMode.HYBRID);
+        Assert.assertEquals(1, loads.get());
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        get(cache, "kb", "问题", 5, SearchMode.HYBRID);
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void invalidatesTagAfterUploadAndDelete() throws Exception {
+        Path directory = Files.createTempDirectory("rag-retrieval-cache-");
+        HnswVectorStore store = new HnswVectorStore(new HashEmbeddingClient(16), new HnswOptions());
+        IngestionOptions ingestionOptions = new IngestionOptions();
+        ingestionOptions.setSpoolDirectory(directory.resolve("spool").toString());
+        IngestionPipeline pipeline = new IngestionPipeline(ingestionOptions, new DocumentBySentenceSplitter(200, 0), new HashEmbeddingClient(16),
+                store, new RagMetrics(new SimpleMeterRegistry()));
+        KnowledgeLifecycle lifecycle = new KnowledgeLifecycle(pipeline, store, store, new InMemoryGenerations(), null);
+        RetrievalCache cache = open();
+        pipeline.addKnowledgeChangeListener(cache);
+        Supplier<List<String>> search = () -> cache.get("kb", "内容", 10, SearchMode.KEYWORD,
+                () -> store.keywordSearch("kb", "内容", 10)).stream().map(Document::getContent).sorted().toList();
+        Supplier<List<String>> other = () -> cache.get("other", "内容", 10, SearchMode.KEYWORD,
+                () -> store.keywordSearch("other", "内容", 10)).stream().map(Document::getContent).sorted().toList();
+        try {
+            pipeline.submit("other", List.of(source(directory, "other.txt", "其他知识库的内容."))).completion().get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(List.of(), search.get());
+            Assert.assertEquals(List.of("其他知识库的内容."), other.get());
+
+            pipeline.submit("kb", List.of(source(directory, "a.txt", "上传的内容."))).completion().get(10, TimeUnit.SECONDS);
+            waitUntil(() -> search.get().equals(List.of("上传的内容.")));
+            long hits = cache.getHits();
+            Assert.assertEquals(List.of("上传的内容."), search.get());
+            Assert.assertEquals(hits + 1, cache.getHits());
+
+            Assert.assertEquals(1, lifecycle.delete("kb"));
+            Assert.assertEquals(List.of(), search.get());
+            // 其他 Tag 的条目仍然命中
+            hits = cache.getHits();
+            Assert.assertEquals(List.of("其他知识库的内容."), other.get());
+            Assert.assertEquals(hits + 1, cache.getHits());
+        } finally {
+            lifecycle.shutdown();
+            pipeline.shutdown();
+            store.close();
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    private RetrievalCache open() {
+        return new RetrievalCache("model", new RetrievalCacheOptions(), null, ticker());
+    }
+
+    private Ticker ticker() {
+        return new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+    }
+
+    /**
+     * 查询缓存, 未命中时返回以问题为内容的一个文本块并计数
+     */
+    private List<Document> get(RetrievalCache cache, String ragTag, String query, int topK, SearchMode mode) {
+        return cache.get(ragTag, query, topK, mode, () -> {
+            loads.incrementAndGet();
+            return List.of(new Document(query, Map.of("knowledge", ragTag)));
+        });
+    }
+
+    private static IngestionSource source(Path directory, String name, String content) throws Exception {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return new IngestionSource(name, file, false);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                Assert.fail("等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
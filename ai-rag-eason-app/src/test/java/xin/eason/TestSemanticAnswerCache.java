@@ -0,0 +1,138 @@
+package xin.eason;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import reactor.core.publisher.Flux;
+import xin.eason.support.QueryEmbeddingClient;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.retrieval.SemanticAnswerCache;
+import xin.eason.trigger.retrieval.SemanticCacheOptions;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 验证语义回答缓存: 与已缓存问题的余弦距离不超过阈值时命中, 超过时调用大模型; 回答过期后不再命中;
+ * 知识库内容变化后该 Tag 的回答失效, 其他 Tag 不受影响; 每个 Tag 的回答数有上限, 超出时淘汰最早写入的回答
+ */
+public class TestSemanticAnswerCache {
+
+    private static final String MODEL = "ollama:stub";
+
+    private final QueryEmbeddingClient embeddingClient = new QueryEmbeddingClient();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger generated = new AtomicInteger();
+
+    private SemanticCacheOptions options;
+    private SemanticAnswerCache cache;
+
+    @Before
+    public void setUp() {
+        options = new SemanticCacheOptions();
+        options.setEnabled(true);
+        options.setMaxDistance(0.05);
+        options.setTtlMinutes(10);
+        cache = open();
+    }
+
+    @Test
+    public void hitsWithinMaxDistance() {
+        Assert.assertEquals("answer 1", answer("kb", new float[]{1, 0}));
+        // 余弦距离约 0.005
+        Assert.assertEquals("answer 1", answer("kb", new float[]{1, 0.1f}));
+        Assert.assertEquals(1, generated.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void missesBeyondMaxDistance() {
+        answer("kb", new float[]{1, 0});
+        // 余弦距离约 0.29
+        Assert.assertEquals("answer 2", answer("kb", new float[]{1, 1}));
+        // 不同模型或不同 Tag 下的相同问题也不命中
+        Assert.assertEquals("answer 3", cache.answer("kb", "openai:stub", "问题", this::generate).map(this::content).blockLast());
+        Assert.assertEquals("answer 4", answer("other", new float[]{1, 0}));
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        answer("kb", new float[]{1, 0});
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        Assert.assertEquals("answer 1", answer("kb", new float[]{1, 0}));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        Assert.assertEquals("answer 2", answer("kb", new float[]{1, 0}));
+        Assert.assertEquals(2, generated.get());
+    }
+
+    @Test
+    public void invalidatesTagWhenKnowledgeChanges() {
+        answer("kb", new float[]{1, 0});
+        answer("other", new float[]{1, 0});
+        cache.onKnowledgeChanged("kb");
+
+        Assert.assertEquals("answer 3", answer("kb", new float[]{1, 0}));
+        Assert.assertEquals("answer 2", answer("other", new float[]{1, 0}));
+        Assert.assertEquals("answer 3", answer("kb", new float[]{1, 0}));
+    }
+
+    @Test
+    public void discardsAnswerGeneratedBeforeKnowledgeChanged() {
+        embeddingClient.setQuery(new float[]{1, 0});
+        Flux<String> pending = cache.answer("kb", MODEL, "问题", this::generate).map(this::content);
+        cache.onKnowledgeChanged("kb");
+        pending.blockLast();
+
+        Assert.assertEquals("answer 2", answer("kb", new float[]{1, 0}));
+    }
+
+    @Test
+    public void evictsOldestAnswerOfTagWhenFull() {
+        options.setMaxEntriesPerTag(2);
+        cache = open();
+        answer("kb", new float[]{1, 0});
+        answer("kb", new float[]{0, 1});
+        answer("kb", new float[]{-1, 0});
+
+        Assert.assertEquals("answer 4", answer("kb", new float[]{1, 0}));
+        Assert.assertEquals("answer 3", answer("kb", new float[]{-1, 0}));
+        Assert.assertEquals(4, generated.get());
+    }
+
+    private SemanticAnswerCache open() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        return new SemanticAnswerCache(options, embeddingClient, BlockingExecution.platform(), ticker);
+    }
+
+    /**
+     * 以给定的问题向量提问, 返回完整回答
+     */
+    private String answer(String ragTag, float[] query) {
+        embeddingClient.setQuery(query);
+        return cache.answer(ragTag, MODEL, "问题", this::generate).map(this::content).blockLast();
+    }
+
+    /**
+     * 模拟大模型, 每次调用生成编号递增的回答
+     */
+    private Flux<ChatResponse> generate() {
+        return Flux.defer(() -> Flux.just(new ChatResponse(List.of(new Generation("answer " + generated.incrementAndGet())))));
+    }
+
+    private String content(ChatResponse response) {
+        return response.getResult().getOutput().getContent();
+    }
+}
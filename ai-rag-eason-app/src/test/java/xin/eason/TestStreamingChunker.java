@@ -0,0 +1,103 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import xin.eason.trigger.ingest.StreamingChunker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 验证流式分片器的分片规则 ( 文本块大小, 整句重叠, 内容不丢失 ), 以及处理超大输入时堆内存不随输入增长
+ */
+@Slf4j
+public class TestStreamingChunker {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int OVERLAP_SIZE = 200;
+
+    @Test
+    public void chunksKeepEverySentenceInOrder() {
+        Random random = new Random(3);
+        List<String> sentences = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String sentence = sentence(random, i);
+            sentences.add(sentence);
+            text.append(sentence).append(i % 7 == 6 ? "\n\n" : random.nextBoolean() ? " " : "\n");
+        }
+
+        List<String> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(CHUNK_SIZE, OVERLAP_SIZE, chunks::add);
+        // 以随机长度的片段喂入, 模拟 SAX characters 回调的任意切分
+        char[] chars = text.toString().toCharArray();
+        for (int from = 0; from < chars.length; ) {
+            int length = Math.min(1 + random.nextInt(300), chars.length - from);
+            chunker.characters(chars, from, length);
+            from += length;
+        }
+        chunker.endDocument();
+
+        List<String> restored = new ArrayList<>();
+        for (String chunk : chunks) {
+            Assert.assertTrue("文本块超长: " + chunk.length(), chunk.length() <= CHUNK_SIZE);
+            List<String> chunkSentences = List.of(chunk.split("(?<=\\.) "));
+            // 与上一个文本块重叠的句子必须位于开头, 且不超过重叠上限
+            int overlap = 0;
+            int overlapSize = 0;
+            while (overlap < chunkSentences.size() && !restored.isEmpty()
+                    && restored.subList(Math.max(0, restored.size() - chunkSentences.size()), restored.size()).contains(chunkSentences.get(overlap)))
+                overlapSize += chunkSentences.get(overlap++).length() + 1;
+            Assert.assertTrue("重叠超长: " + overlapSize, overlapSize - 1 <= OVERLAP_SIZE);
+            restored.addAll(chunkSentences.subList(overlap, chunkSentences.size()));
+        }
+        Assert.assertEquals(sentences, restored);
+        log.info("{} 个句子, {} 个字符 -> {} 个文本块", sentences.size(), text.length(), chunks.size());
+    }
+
+    @Test
+    public void heapStaysFlatForLargeInput() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Random random = new Random(5);
+        long[] chunks = new long[1];
+        long[] peak = new long[1];
+        StreamingChunker chunker = new StreamingChunker(CHUNK_SIZE, OVERLAP_SIZE, chunk -> {
+            // 文本块交给下游后即被丢弃, 与导入流水线的批次在写入后释放相同
+            if (++chunks[0] % 20000 == 0) {
+                System.gc();
+                peak[0] = Math.max(peak[0], memory.getHeapMemoryUsage().getUsed());
+            }
+        });
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        long characters = 0;
+        char[] buffer = new char[8192];
+        int index = 0;
+        while (characters < 256L * 1024 * 1024) {
+            String sentence = sentence(random, index++) + " ";
+            for (int i = 0; i < sentence.length(); i++) {
+                buffer[(int) (characters++ % buffer.length)] = sentence.charAt(i);
+                if (characters % buffer.length == 0)
+                    chunker.characters(buffer, 0, buffer.length);
+            }
+        }
+        chunker.endDocument();
+
+        long growth = Math.max(0, peak[0] - baseline);
+        log.info("输入 {} MB 字符, 输出 {} 个文本块, 堆内存增长 {} KB", characters >> 20, chunks[0], growth >> 10);
+        Assert.assertTrue("堆内存随输入增长: " + (growth >> 20) + " MB", growth < 32L * 1024 * 1024);
+    }
+
+    private static String sentence(Random random, int index) {
+        StringBuilder sentence = new StringBuilder("S").append(index);
+        int words = 3 + random.nextInt(30);
+        for (int i = 0; i < words; i++)
+            sentence.append(' ').append((char) ('a' + random.nextInt(26))).append("word").append(random.nextInt(100));
+        return sentence.append('.').toString();
+    }
+}
@@ -0,0 +1,142 @@
+package xin.eason;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import xin.eason.support.QueryEmbeddingClient;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 对比不量化, int8 标量量化与乘积量化在精确扫描与 HNSW 图两种检索路径下的召回率与查询延迟.
+ * 数据为 768 维 ( 与 nomic-embed-text 相同 ) 的聚类随机向量, 真实结果由全精度暴力检索得到
+ */
+@Slf4j
+public class TestVectorQuantization {
+
+    private static final int DIMENSIONS = 768;
+    private static final int DOCUMENTS = 10000;
+    private static final int CLUSTERS = 64;
+    private static final int QUERIES = 200;
+    private static final int TOP_K = 10;
+
+    /**
+     * 桩嵌入客户端, 查询返回当前查询向量
+     */
+    private final QueryEmbeddingClient embeddingClient = new QueryEmbeddingClient();
+
+    @Test
+    public void compareRecallAndLatency() {
+        Random random = new Random(7);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++)
+            centers[c] = gaussian(random, 1.0);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++)
+            vectors.add(around(centers[random.nextInt(CLUSTERS)], random));
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++)
+            queries.add(around(centers[random.nextInt(CLUSTERS)], random));
+        List<Set<String>> truth = queries.stream().map(query -> bruteForce(vectors, query)).toList();
+
+        log.info("{} 个 {} 维向量, {} 次查询, topK = {}", DOCUMENTS, DIMENSIONS, QUERIES, TOP_K);
+        log.info(String.format("%-6s %-6s %-7s %-8s %-10s", "量化", "路径", "重排倍数", "召回率", "平均延迟(ms)"));
+        for (String quantization : List.of("none", "int8", "pq")) {
+            HnswOptions options = new HnswOptions();
+            options.setM(12);
+            options.setEfConstruction(64);
+            options.setEfSearch(64);
+            options.setQuantization(quantization);
+            options.setTrainingSize(5000);
+            options.setPqSubspaces(96);
+            HnswVectorStore store = new HnswVectorStore(embeddingClient, options);
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < DOCUMENTS; i++) {
+                Document document = new Document("doc-" + i, "chunk " + i, Map.of("knowledge", "bench"));
+                document.setEmbedding(QueryEmbeddingClient.toList(vectors.get(i)));
+                documents.add(document);
+                if (documents.size() == 500) {
+                    store.add(documents);
+                    documents = new ArrayList<>();
+                }
+            }
+
+            for (boolean scan : List.of(true, false)) {
+                options.setBruteForceThreshold(scan ? Integer.MAX_VALUE : 0);
+                for (int rerankFactor : "none".equals(quantization) ? List.of(1) : List.of(1, 4, 10)) {
+                    options.setRerankFactor(rerankFactor);
+                    double recall = 0;
+                    long elapsed = 0;
+                    for (int q = 0; q < QUERIES; q++) {
+                        embeddingClient.setQuery(queries.get(q));
+                        long start = System.nanoTime();
+                        List<Document> results = store.similaritySearch(SearchRequest.query("q").withTopK(TOP_K)
+                                .withFilterExpression("knowledge == 'bench'"));
+                        elapsed += System.nanoTime() - start;
+                        Set<String> expected = truth.get(q);
+                        recall += results.stream().filter(result -> expected.contains(result.getId())).count() / (double) TOP_K;
+                    }
+                    recall /= QUERIES;
+                    log.info(String.format("%-6s %-6s %-7d %-8.3f %-10.3f", quantization, scan ? "scan" : "graph",
+                            rerankFactor, recall, elapsed / 1e6 / QUERIES));
+                    // 乘积量化的召回率强烈依赖数据分布与重排倍数, 只输出结果供选择参数, 不做断言
+                    if ("none".equals(quantization) || "int8".equals(quantization) && rerankFactor >= 4)
+                        Assert.assertTrue(quantization + (scan ? " 精确扫描" : " 图检索") + "召回率过低: " + recall, recall >= 0.9);
+                }
+            }
+        }
+    }
+
+    private Set<String> bruteForce(List<float[]> vectors, float[] query) {
+        Integer[] order = new Integer[vectors.size()];
+        double[] scores = new double[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            order[i] = i;
+            scores[i] = dot(vectors.get(i), query);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < TOP_K; i++)
+            ids.add("doc-" + order[i]);
+        return ids;
+    }
+
+    private static float[] around(float[] center, Random random) {
+        float[] noise = gaussian(random, 0.6);
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector[i] = center[i] + noise[i];
+        return normalize(vector);
+    }
+
+    private static float[] gaussian(Random random, double scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++)
+            vector[i] = (float) (random.nextGaussian() * scale);
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        for (int i = 0; i < vector.length; i++)
+            vector[i] /= (float) norm;
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++)
+            dot += a[i] * b[i];
+        return dot;
+    }
+}
@@ -0,0 +1,34 @@
+package xin.eason.support;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * 测试用嵌入客户端: 任何文本都返回同一个一维向量, 用于不关心检索结果的测试
+ */
+public class ConstantEmbeddingClient implements EmbeddingClient {
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return List.of(1.0);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return List.of(1.0);
+    }
+
+    @Override
+    public int dimensions() {
+        return 1;
+    }
+}
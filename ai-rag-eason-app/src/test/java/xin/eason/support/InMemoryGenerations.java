@@ -0,0 +1,62 @@
+package xin.eason.support;
+
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.knowledge.KnowledgeGenerations;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以内存 Map 代替 Redis 的知识库版本表与知识库锁, 同一实例可被多个 {@link xin.eason.trigger.knowledge.KnowledgeLifecycle} 共享以模拟多个节点
+ */
+public class InMemoryGenerations extends KnowledgeGenerations {
+
+    private final Map<String, String> generations = new ConcurrentHashMap<>();
+    private final Map<String, String> locks = new ConcurrentHashMap<>();
+
+    public InMemoryGenerations() {
+        super(null, BlockingExecution.platform());
+    }
+
+    @Override
+    public String resolve(String ragTag) {
+        return generations.getOrDefault(ragTag, ragTag);
+    }
+
+    @Override
+    public String swap(String ragTag, String storageTag) {
+        String previous = generations.put(ragTag, storageTag);
+        return previous == null ? ragTag : previous;
+    }
+
+    @Override
+    public String remove(String ragTag) {
+        String previous = generations.remove(ragTag);
+        return previous == null ? ragTag : previous;
+    }
+
+    @Override
+    public Map<String, String> all() {
+        return Map.copyOf(generations);
+    }
+
+    @Override
+    public boolean lock(String ragTag, String storageTag) {
+        return locks.putIfAbsent(ragTag, storageTag) == null;
+    }
+
+    @Override
+    public void unlock(String ragTag) {
+        locks.remove(ragTag);
+    }
+
+    @Override
+    public boolean isLocked(String ragTag) {
+        return locks.containsKey(ragTag);
+    }
+
+    @Override
+    public Map<String, String> building() {
+        return Map.copyOf(locks);
+    }
+}
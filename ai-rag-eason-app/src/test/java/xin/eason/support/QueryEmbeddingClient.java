@@ -0,0 +1,46 @@
+package xin.eason.support;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用嵌入客户端: 文档均已携带向量, 查询返回由 {@link #setQuery} 设置的当前查询向量, 用于按给定向量检索的召回率测试
+ */
+public class QueryEmbeddingClient implements EmbeddingClient {
+
+    private volatile List<Double> query;
+
+    /**
+     * 设置此后查询返回的向量
+     */
+    public void setQuery(float[] vector) {
+        this.query = toList(vector);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return query;
+    }
+
+    public static List<Double> toList(float[] vector) {
+        List<Double> list = new ArrayList<>(vector.length);
+        for (float value : vector)
+            list.add((double) value);
+        return list;
+    }
+}
@@ -0,0 +1,62 @@
+package xin.eason.support;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 测试用向量库: 每次检索固定耗时, 记录检索过的查询与最近一次执行检索的线程, 结果由调用方给出
+ */
+public class SlowVectorStore implements VectorStore {
+
+    private final long searchMillis;
+    private final Function<SearchRequest, List<Document>> results;
+    private final Set<String> queries = ConcurrentHashMap.newKeySet();
+    private volatile String lastSearchThread;
+
+    public SlowVectorStore(long searchMillis, Function<SearchRequest, List<Document>> results) {
+        this.searchMillis = searchMillis;
+        this.results = results;
+    }
+
+    /**
+     * @return 检索过的查询文本
+     */
+    public Set<String> getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return 最近一次执行检索的线程名称, 尚未检索时为 null
+     */
+    public String getLastSearchThread() {
+        return lastSearchThread;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        return Optional.of(false);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        queries.add(request.getQuery());
+        lastSearchThread = Thread.currentThread().getName();
+        try {
+            Thread.sleep(searchMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return results.apply(request);
+    }
+}
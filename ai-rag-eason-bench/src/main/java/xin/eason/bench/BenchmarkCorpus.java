@@ -0,0 +1,81 @@
+package xin.eason.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * 确定性生成的基准测试语料: 中英文混合的句子与段落, 可写成 txt, md, html 文件
+ */
+public final class BenchmarkCorpus {
+
+    private static final String[] WORDS = {
+            "知识库", "向量", "检索", "嵌入", "模型", "文档", "分片", "缓存", "索引", "查询",
+            "vector", "store", "embedding", "retrieval", "chunk", "token", "index", "latency", "recall", "pipeline",
+            "the", "a", "of", "and", "is", "for", "with", "from", "into", "by"
+    };
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * 生成指定长度 ( 字符数 ) 的纯文本, 由句子组成, 每若干句一个段落
+     *
+     * @param characters 字符数
+     * @param seed       随机数种子
+     */
+    public static String text(int characters, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder text = new StringBuilder(characters + 64);
+        int sentences = 0;
+        while (text.length() < characters) {
+            int words = 8 + random.nextInt(16);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentences % 6 == 0)
+                text.append("\n\n");
+        }
+        return text.substring(0, characters);
+    }
+
+    /**
+     * 将文本写成指定格式的文件
+     *
+     * @param directory 目录
+     * @param name      文件名 ( 不含扩展名 )
+     * @param format    txt, md 或 html
+     * @param text      文本
+     * @return 文件路径
+     */
+    public static Path write(Path directory, String name, String format, String text) throws IOException {
+        String[] paragraphs = text.split("\n\n");
+        StringBuilder content = new StringBuilder(text.length() * 2);
+        switch (format) {
+            case "md" -> {
+                for (int i = 0; i < paragraphs.length; i++) {
+                    if (i % 4 == 0)
+                        content.append("## Section ").append(i / 4 + 1).append("\n\n");
+                    content.append(paragraphs[i]).append("\n\n");
+                }
+            }
+            case "html" -> {
+                content.append("<html><head><title>").append(name).append("</title></head><body>\n");
+                for (int i = 0; i < paragraphs.length; i++) {
+                    if (i % 4 == 0)
+                        content.append("<h2>Section ").append(i / 4 + 1).append("</h2>\n");
+                    content.append("<p>").append(paragraphs[i]).append("</p>\n");
+                }
+                content.append("</body></html>\n");
+            }
+            default -> content.append(text);
+        }
+        Path file = directory.resolve(name + "." + format);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
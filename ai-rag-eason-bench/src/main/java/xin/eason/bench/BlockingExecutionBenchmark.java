@@ -0,0 +1,89 @@
+package xin.eason.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.ConcurrencyOptions;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.concurrent.VirtualThreads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 阻塞式请求处理的负载基准: 一次涌入 requests 个请求, 测量全部完成的耗时. 每个请求依次
+ * 读 Redis ( 1 ms ), 嵌入问题 ( 10 ms ), 检索向量库 ( 5 ms ), 再同步等待大模型回答 ( 1 s, 如 generate 接口, 不占下游许可 ).
+ * 下游许可与 application-dev.yml 的默认值一致 ( 嵌入 8, 向量库 8, Redis 64 ):
+ * <ul>
+ *     <li>platform: Tomcat 默认的 200 个平台线程</li>
+ *     <li>virtual: 每个请求一个虚拟线程 ( spring.threads.virtual.enabled ), 需要 Java 21, 低版本运行时该组基准直接失败</li>
+ * </ul>
+ * 两种模式的下游并发相同, 差别在于等待大模型期间是否占住有限的请求线程
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingExecutionBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"1000"})
+    public int requests;
+
+    private BlockingExecution blockingExecution;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        if ("virtual".equals(mode) && !VirtualThreads.isSupported())
+            throw new IllegalStateException("当前运行时 ( Java " + Runtime.version().feature() + " ) 不支持虚拟线程, 需要 Java 21");
+        blockingExecution = new BlockingExecution(new ConcurrencyOptions("virtual".equals(mode), 8, 8, 64, 60000));
+        executor = "virtual".equals(mode)
+                ? blockingExecution.executor("bench-request-", 0)
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS, new CustomizableThreadFactory("bench-request-"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < requests; i++) {
+            executor.execute(() -> {
+                try {
+                    blockingExecution.run(Downstream.REDIS, () -> sleep(1));
+                    blockingExecution.run(Downstream.EMBEDDING, () -> sleep(10));
+                    blockingExecution.run(Downstream.VECTOR_STORE, () -> sleep(5));
+                    sleep(1000);
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return failed.get();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package xin.eason.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.ingest.DocumentConversions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring AI 与 langchain4j 的 Document 互相转换的基准, 直接调用导入流水线所用的 {@link DocumentConversions}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentConversionBenchmark {
+
+    @Param({"100", "1000"})
+    public int documents;
+
+    private List<Document> springDocuments;
+    private List<TextSegment> segments;
+
+    @Setup
+    public void setUp() {
+        springDocuments = new ArrayList<>(documents);
+        segments = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            String text = BenchmarkCorpus.text(1000, i);
+            springDocuments.add(new Document(text));
+            segments.add(TextSegment.from(text));
+        }
+    }
+
+    @Benchmark
+    public List<dev.langchain4j.data.document.Document> toLangChain() {
+        return DocumentConversions.toLangChain(springDocuments);
+    }
+
+    @Benchmark
+    public List<Document> toChunks() {
+        return DocumentConversions.toChunks(segments, "bench", "corpus.md");
+    }
+}
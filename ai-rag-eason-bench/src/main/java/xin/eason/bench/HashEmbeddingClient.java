@@ -0,0 +1,95 @@
+package xin.eason.bench;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.AbstractEmbeddingClient;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的嵌入客户端, 与 {@link StubOllamaServer} 生成完全相同的向量: 以文本哈希为种子的单位高斯向量, 与内容语义无关, 同一文本的向量恒定.
+ * 用于只关心向量库本身开销的基准, 也是应用模块测试共用的嵌入客户端, 可模拟批量嵌入的耗时与前若干次批量调用失败
+ */
+public class HashEmbeddingClient extends AbstractEmbeddingClient {
+
+    /**
+     * 一直失败
+     */
+    public static final int ALWAYS = Integer.MAX_VALUE;
+
+    private final int dimensions;
+    private final AtomicInteger remainingFailures = new AtomicInteger();
+    private volatile long delayMillis;
+
+    public HashEmbeddingClient(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * 每次批量嵌入耗时 delayMillis 毫秒
+     *
+     * @param delayMillis 耗时毫秒数
+     * @return 当前对象
+     */
+    public HashEmbeddingClient delayed(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * 前 calls 次批量嵌入抛出异常, 为 {@link #ALWAYS} 时一直失败
+     *
+     * @param calls 失败次数
+     * @return 当前对象
+     */
+    public HashEmbeddingClient failingFirst(int calls) {
+        remainingFailures.set(calls);
+        return this;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<List<Double>> vectors = embed(request.getInstructions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (List<Double> vector : vectors)
+            embeddings.add(new Embedding(vector, embeddings.size()));
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        float[] vector = StubOllamaServer.vectorOf(text, dimensions);
+        List<Double> embedding = new ArrayList<>(vector.length);
+        for (float value : vector)
+            embedding.add((double) value);
+        return embedding;
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        if (remainingFailures.getAndUpdate(remaining -> remaining == ALWAYS ? remaining : Math.max(remaining - 1, 0)) > 0)
+            throw new IllegalStateException("嵌入服务不可用");
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return texts.stream().map(this::embed).toList();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+}
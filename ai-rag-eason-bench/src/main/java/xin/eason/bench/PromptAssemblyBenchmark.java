@@ -0,0 +1,60 @@
+package xin.eason.bench;
+
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.ingest.DocumentConversions;
+import xin.eason.trigger.metrics.ChatRequestMetrics;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.ContextOptions;
+import xin.eason.trigger.retrieval.RagPrompts;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateStreamWithRag 中提示词组装的基准. 文本块由 DocumentBySentenceSplitter(1000, 200) 从同一文件切出, 相邻块首尾重叠:
+ * <ul>
+ *     <li>assemble: 直接拼接全部文本块 ( {@link RagPrompts#messages(List, String)} )</li>
+ *     <li>budgeted: 合并重叠, 去重并按 token 预算装填 ( 控制器所用的 {@link ContextBuilder} )</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    @Param({"10", "31"})
+    public int topK;
+
+    private List<Document> documents;
+    private String question;
+    private ContextBuilder contextBuilder;
+    private ChatRequestMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        List<TextSegment> segments = new DocumentBySentenceSplitter(1000, 200)
+                .split(dev.langchain4j.data.document.Document.from(BenchmarkCorpus.text(topK * 900, 1)));
+        documents = DocumentConversions.toChunks(segments.subList(0, Math.min(topK, segments.size())), "bench", "corpus.md");
+        question = BenchmarkCorpus.text(120, 99);
+        contextBuilder = new ContextBuilder(new ContextOptions());
+        metrics = RagMetrics.disabled().chat("ollama", "stub", "bench");
+    }
+
+    @Benchmark
+    public List<Message> assemble() {
+        return RagPrompts.messages(documents, question);
+    }
+
+    @Benchmark
+    public List<Message> budgeted() {
+        return contextBuilder.messages("stub", documents, question, metrics);
+    }
+}
@@ -0,0 +1,131 @@
+package xin.eason.bench;
+
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.ollama.OllamaChatClient;
+import org.springframework.ai.ollama.api.OllamaApi;
+import reactor.core.scheduler.Schedulers;
+import xin.eason.trigger.embedding.BatchingEmbeddingClient;
+import xin.eason.trigger.embedding.EmbeddingBatchOptions;
+import xin.eason.trigger.embedding.OllamaBatchEmbeddingClient;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.http.OllamaController;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionOptions;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.ContextOptions;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.retrieval.SemanticAnswerCache;
+import xin.eason.trigger.retrieval.SemanticCacheOptions;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 端到端基准, 所有模型调用都经过 HTTP 发往 {@link StubOllamaServer}:
+ * <ul>
+ *     <li>ingest: 一个文件走完整条导入流水线 ( Tika 解析 -> 分片 -> 批量嵌入 -> 写入 HNSW 向量库 )</li>
+ *     <li>generateStreamWithRag: 按 searchMode 检索知识库 ( 纯向量或混合 BM25 ), 组装提示词并消费完整的流式回答</li>
+ * </ul>
+ * 检索缓存与语义缓存均关闭, 每次调用都经过完整路径; 指标写入进程内的 SimpleMeterRegistry, 计入埋点开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RagEndToEndBenchmark {
+
+    private static final String RAG_TAG = "bench";
+    private static final int DIMENSIONS = 768;
+
+    @Param({"65536"})
+    public int fileCharacters;
+
+    @Param({"0"})
+    public long requestDelayMicros;
+
+    @Param({"vector", "hybrid"})
+    public String searchMode;
+
+    private StubOllamaServer server;
+    private Path directory;
+    private Path file;
+    private BatchingEmbeddingClient batchingEmbeddingClient;
+    private HnswVectorStore vectorStore;
+    private IngestionPipeline pipeline;
+    private KnowledgeRetriever knowledgeRetriever;
+    private OllamaController controller;
+    private final List<String> questions = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new StubOllamaServer(DIMENSIONS, 64, requestDelayMicros);
+        directory = Files.createTempDirectory("rag-bench-e2e-");
+        file = BenchmarkCorpus.write(directory, "corpus", "md", BenchmarkCorpus.text(fileCharacters, 3));
+
+        batchingEmbeddingClient = new BatchingEmbeddingClient(new OllamaBatchEmbeddingClient(server.baseUrl(), "stub"), new EmbeddingBatchOptions());
+        PrecomputedEmbeddingClient embeddingClient = new PrecomputedEmbeddingClient(batchingEmbeddingClient);
+        RagMetrics ragMetrics = new RagMetrics(new SimpleMeterRegistry());
+        vectorStore = new HnswVectorStore(embeddingClient, new HnswOptions());
+        IngestionOptions ingestionOptions = new IngestionOptions();
+        ingestionOptions.setSpoolDirectory(directory.resolve("spool").toString());
+        pipeline = new IngestionPipeline(ingestionOptions, new DocumentBySentenceSplitter(1000, 200), embeddingClient, vectorStore, ragMetrics);
+
+        RetrievalCacheOptions retrievalCacheOptions = new RetrievalCacheOptions();
+        retrievalCacheOptions.setEnabled(false);
+        knowledgeRetriever = new KnowledgeRetriever(vectorStore, vectorStore, new RetrievalCache("stub", retrievalCacheOptions, null), embeddingClient, new RetrievalOptions());
+        controller = new OllamaController(new OllamaChatClient(new OllamaApi(server.baseUrl())), knowledgeRetriever, new ContextBuilder(new ContextOptions()),
+                new SemanticAnswerCache(new SemanticCacheOptions(), embeddingClient), ragMetrics, Schedulers.boundedElastic());
+
+        // 预先导入一批文件, 让检索面对一个非空的知识库
+        for (int i = 0; i < 8; i++)
+            ingest();
+        for (int i = 0; i < 32; i++)
+            questions.add(BenchmarkCorpus.text(80, 100 + i));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pipeline.shutdown();
+        knowledgeRetriever.shutdown();
+        batchingEmbeddingClient.shutdown();
+        vectorStore.close();
+        server.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.deleteIfExists(path);
+        }
+    }
+
+    @Benchmark
+    public IngestionJob ingest() throws Exception {
+        IngestionJob job = pipeline.submit(RAG_TAG, List.of(new IngestionSource(file.getFileName().toString(), file, false)));
+        return job.completion().get(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public ChatResponse generateStreamWithRag() {
+        String question = questions.get(next);
+        next = (next + 1) % questions.size();
+        return controller.generateStreamWithRag("stub", RAG_TAG, question, null, searchMode).blockLast();
+    }
+}
@@ -0,0 +1,88 @@
+package xin.eason.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.RetrievalCache;
+import xin.eason.trigger.retrieval.RetrievalCacheOptions;
+import xin.eason.trigger.retrieval.RetrievalOptions;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检索结果缓存基准: 同一组问题反复检索 HNSW 向量库 ( 混合检索 ), 以采样模式记录每次调用的耗时, 结果中的 p0.50 即 p50 延迟.
+ * <ul>
+ *     <li>off: 关闭检索缓存, 每次都走问题扩展, 嵌入与向量 / 关键词检索</li>
+ *     <li>on: 开启检索缓存, 预热后全部命中, 只剩问题规范化与缓存键计算</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RetrievalCacheBenchmark {
+
+    private static final String RAG_TAG = "bench";
+    private static final int QUESTIONS = 64;
+
+    @Param({"off", "on"})
+    public String cache;
+
+    @Param({"10000"})
+    public int documents;
+
+    @Param({"768"})
+    public int dimensions;
+
+    private HnswVectorStore vectorStore;
+    private KnowledgeRetriever knowledgeRetriever;
+    private final List<String> questions = new ArrayList<>(QUESTIONS);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        HashEmbeddingClient embeddingClient = new HashEmbeddingClient(dimensions);
+        vectorStore = new HnswVectorStore(embeddingClient, new HnswOptions());
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            String content = BenchmarkCorpus.text(200, i);
+            Document document = new Document("doc-" + i, content, Map.of("knowledge", RAG_TAG));
+            document.setEmbedding(embeddingClient.embed(content));
+            batch.add(document);
+            if (batch.size() == 500 || i == documents - 1) {
+                vectorStore.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        RetrievalCacheOptions cacheOptions = new RetrievalCacheOptions();
+        cacheOptions.setEnabled("on".equals(cache));
+        knowledgeRetriever = new KnowledgeRetriever(vectorStore, vectorStore, new RetrievalCache("bench", cacheOptions, null),
+                new PrecomputedEmbeddingClient(embeddingClient), new RetrievalOptions());
+        for (int i = 0; i < QUESTIONS; i++)
+            questions.add(BenchmarkCorpus.text(80, 100_000 + i));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        knowledgeRetriever.shutdown();
+        vectorStore.close();
+    }
+
+    @Benchmark
+    public List<Document> retrieve() {
+        String question = questions.get(next);
+        next = (next + 1) % QUESTIONS;
+        return knowledgeRetriever.retrieve(RAG_TAG, question, 5, RagMetrics.disabled().chat("ollama", "bench", RAG_TAG));
+    }
+}
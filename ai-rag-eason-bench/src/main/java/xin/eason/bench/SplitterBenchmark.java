@@ -0,0 +1,39 @@
+package xin.eason.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片阶段基准: 使用与应用相同参数的 {@link DocumentBySentenceSplitter} ( 1000 字符, 重叠 200 ) 切分文本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"16384", "262144"})
+    public int characters;
+
+    private DocumentSplitter splitter;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        splitter = new DocumentBySentenceSplitter(1000, 200);
+        documents = List.of(Document.from(BenchmarkCorpus.text(characters, 2)));
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.splitAll(documents);
+    }
+}
@@ -0,0 +1,158 @@
+package xin.eason.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地桩 Ollama 服务, 实现基准测试用到的三个接口:
+ * <ul>
+ *     <li>/api/embed: 批量嵌入</li>
+ *     <li>/api/embeddings: 逐条嵌入 ( Spring AI 自带的 OllamaEmbeddingClient )</li>
+ *     <li>/api/chat: 流式对话, 以 NDJSON 逐个返回 token</li>
+ * </ul>
+ * 向量由文本哈希确定性生成并归一化, 相同文本总是得到相同向量. 可为每个请求附加固定延迟, 模拟模型推理耗时
+ */
+public class StubOllamaServer implements AutoCloseable {
+
+    static {
+        // 关闭桩服务的 Nagle 算法, 否则小响应会被延迟确认拖慢到每次请求数十毫秒
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int dimensions;
+    private final int chatTokens;
+    private final long requestDelayMicros;
+
+    /**
+     * @param dimensions         嵌入向量维度
+     * @param chatTokens         每次对话返回的 token 数
+     * @param requestDelayMicros 每个请求的固定延迟 ( 微秒 ), 0 表示不延迟
+     */
+    public StubOllamaServer(int dimensions, int chatTokens, long requestDelayMicros) throws IOException {
+        this.dimensions = dimensions;
+        this.chatTokens = chatTokens;
+        this.requestDelayMicros = requestDelayMicros;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/api/embed", this::embed);
+        server.createContext("/api/embeddings", this::embeddings);
+        server.createContext("/api/chat", this::chat);
+        server.start();
+    }
+
+    /**
+     * @return 服务地址, 例如 http://127.0.0.1:12345
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 文本对应的确定性单位向量
+     */
+    public static float[] vectorOf(String text, int dimensions) {
+        SplittableRandom random = new SplittableRandom(text.hashCode());
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++)
+            vector[i] *= scale;
+        return vector;
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        JsonNode input = objectMapper.readTree(exchange.getRequestBody()).get("input");
+        delay();
+        StringBuilder body = new StringBuilder("{\"model\":\"stub\",\"embeddings\":[");
+        for (int i = 0; i < input.size(); i++) {
+            if (i > 0)
+                body.append(',');
+            appendVector(body, input.get(i).asText());
+        }
+        body.append("]}");
+        respond(exchange, "application/json", body.toString());
+    }
+
+    private void embeddings(HttpExchange exchange) throws IOException {
+        String prompt = objectMapper.readTree(exchange.getRequestBody()).get("prompt").asText();
+        delay();
+        StringBuilder body = new StringBuilder("{\"embedding\":");
+        appendVector(body, prompt);
+        body.append('}');
+        respond(exchange, "application/json", body.toString());
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String model = request.path("model").asText("stub");
+        delay();
+        exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < chatTokens; i++) {
+                String line = "{\"model\":\"" + model + "\",\"created_at\":\"2024-01-01T00:00:00Z\","
+                        + "\"message\":{\"role\":\"assistant\",\"content\":\"token" + i + " \"},\"done\":false}\n";
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            String last = "{\"model\":\"" + model + "\",\"created_at\":\"2024-01-01T00:00:00Z\","
+                    + "\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true,\"eval_count\":" + chatTokens + "}\n";
+            out.write(last.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void appendVector(StringBuilder body, String text) {
+        float[] vector = vectorOf(text, dimensions);
+        body.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0)
+                body.append(',');
+            body.append(vector[i]);
+        }
+        body.append(']');
+    }
+
+    private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void delay() {
+        if (requestDelayMicros <= 0)
+            return;
+        try {
+            TimeUnit.MICROSECONDS.sleep(requestDelayMicros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
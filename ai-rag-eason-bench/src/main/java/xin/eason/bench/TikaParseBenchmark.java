@@ -0,0 +1,50 @@
+package xin.eason.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.PathResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析阶段基准: 使用 Tika 读取不同格式的文件 ( 与 IngestionPipeline 的解析阶段相同的调用方式 )
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TikaParseBenchmark {
+
+    @Param({"txt", "md", "html"})
+    public String format;
+
+    @Param({"65536"})
+    public int characters;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rag-bench-tika-");
+        file = BenchmarkCorpus.write(directory, "corpus", format, BenchmarkCorpus.text(characters, 1));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<Document> parse() {
+        return new TikaDocumentReader(new PathResource(file)).get();
+    }
+}
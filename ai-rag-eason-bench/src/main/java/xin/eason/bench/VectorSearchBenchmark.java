@@ -0,0 +1,100 @@
+package xin.eason.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import xin.eason.trigger.vectorstore.HnswOptions;
+import xin.eason.trigger.vectorstore.HnswVectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量相似度检索基准, 对比:
+ * <ul>
+ *     <li>simple: Spring AI 自带的 SimpleVectorStore, 基于 List&lt;Double&gt; 的逐条余弦计算</li>
+ *     <li>hnsw-scan: HnswVectorStore 按知识库精确扫描</li>
+ *     <li>hnsw-graph: HnswVectorStore 走 HNSW 图</li>
+ *     <li>hnsw-int8: HnswVectorStore 走 HNSW 图, int8 量化距离 + 全精度重排</li>
+ * </ul>
+ * SimpleVectorStore 不支持过滤表达式, 因此 simple 查询不带知识库过滤
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorSearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"simple", "hnsw-scan", "hnsw-graph", "hnsw-int8"})
+    public String store;
+
+    @Param({"10000"})
+    public int documents;
+
+    @Param({"768"})
+    public int dimensions;
+
+    @Param({"10"})
+    public int topK;
+
+    private VectorStore vectorStore;
+    private final List<SearchRequest> requests = new ArrayList<>(QUERIES);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        HashEmbeddingClient embeddingClient = new HashEmbeddingClient(dimensions);
+        if ("simple".equals(store)) {
+            vectorStore = new SimpleVectorStore(embeddingClient);
+        } else {
+            HnswOptions options = new HnswOptions();
+            options.setM(12);
+            options.setEfConstruction(64);
+            options.setEfSearch(64);
+            options.setBruteForceThreshold("hnsw-scan".equals(store) ? Integer.MAX_VALUE : 0);
+            if ("hnsw-int8".equals(store)) {
+                options.setQuantization("int8");
+                options.setTrainingSize(documents);
+            }
+            vectorStore = new HnswVectorStore(embeddingClient, options);
+        }
+
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            String content = "chunk " + i;
+            Document document = new Document("doc-" + i, content, Map.of("knowledge", "bench"));
+            document.setEmbedding(embeddingClient.embed(content));
+            batch.add(document);
+            if (batch.size() == 500 || i == documents - 1) {
+                vectorStore.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        for (int i = 0; i < QUERIES; i++) {
+            SearchRequest request = SearchRequest.query("query " + i).withTopK(topK);
+            requests.add("simple".equals(store) ? request : request.withFilterExpression("knowledge == 'bench'"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (vectorStore instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        SearchRequest request = requests.get(next);
+        next = (next + 1) % QUERIES;
+        return vectorStore.similaritySearch(request);
+    }
+}
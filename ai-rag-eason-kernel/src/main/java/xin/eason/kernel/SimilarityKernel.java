@@ -0,0 +1,39 @@
+package xin.eason.kernel;
+
+/**
+ * 向量相似度计算内核, 所有方法都作用于 float[] 中从指定偏移开始的一段连续元素
+ */
+public interface SimilarityKernel {
+
+    /**
+     * @return 实现名称
+     */
+    String name();
+
+    /**
+     * 点积
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 余弦相似度, 任一向量为零向量时返回 0
+     */
+    float cosine(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 欧氏距离的平方
+     */
+    float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    default float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    default float cosine(float[] a, float[] b) {
+        return cosine(a, 0, b, 0, a.length);
+    }
+
+    default float squaredL2(float[] a, float[] b) {
+        return squaredL2(a, 0, b, 0, a.length);
+    }
+}
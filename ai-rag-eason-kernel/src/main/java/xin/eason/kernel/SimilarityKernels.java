@@ -0,0 +1,148 @@
+package xin.eason.kernel;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+/**
+ * 相似度内核的选择入口. 类加载时做一次自检: 尝试加载 Vector API 实现, 校验其结果与双精度参考值一致,
+ * 再与标量实现做简短的计时对比, 选出更快的实现. 可通过系统属性 rag.similarity.kernel ( auto, scalar, vector ) 强制指定
+ */
+@Slf4j
+public final class SimilarityKernels {
+
+    /**
+     * 指定内核实现的系统属性
+     */
+    public static final String PROPERTY = "rag.similarity.kernel";
+
+    private static final String VECTOR_API_CLASS = "xin.eason.kernel.VectorApiSimilarityKernel";
+
+    /**
+     * 计时使用的向量维度与向量数
+     */
+    private static final int PROBE_DIMENSIONS = 768;
+    private static final int PROBE_VECTORS = 64;
+
+    private static final SimilarityKernel SCALAR = new ScalarSimilarityKernel();
+    private static final SimilarityKernel VECTOR_API = loadVectorApi();
+    private static final SimilarityKernel SELECTED = select();
+
+    private SimilarityKernels() {
+    }
+
+    /**
+     * @return 自检选出的内核
+     */
+    public static SimilarityKernel get() {
+        return SELECTED;
+    }
+
+    /**
+     * @return 标量内核
+     */
+    public static SimilarityKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return Vector API 内核, 运行时未启用 jdk.incubator.vector 模块或自检失败时为空
+     */
+    public static Optional<SimilarityKernel> vectorApi() {
+        return Optional.ofNullable(VECTOR_API);
+    }
+
+    private static SimilarityKernel loadVectorApi() {
+        SimilarityKernel kernel;
+        try {
+            kernel = (SimilarityKernel) Class.forName(VECTOR_API_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.info("Vector API 不可用 ( 需要 JVM 参数 --add-modules jdk.incubator.vector ), 使用标量相似度内核");
+            return null;
+        }
+        try {
+            verify(kernel);
+        } catch (RuntimeException e) {
+            log.warn("Vector API 相似度内核自检失败, 使用标量实现", e);
+            return null;
+        }
+        return kernel;
+    }
+
+    private static SimilarityKernel select() {
+        String requested = System.getProperty(PROPERTY, "auto").trim().toLowerCase();
+        if ("scalar".equals(requested) || VECTOR_API == null) {
+            log.info("相似度内核: {}", SCALAR.name());
+            return SCALAR;
+        }
+        if ("vector".equals(requested)) {
+            log.info("相似度内核: {}", VECTOR_API.name());
+            return VECTOR_API;
+        }
+        long scalarNanos = measure(SCALAR);
+        long vectorNanos = measure(VECTOR_API);
+        SimilarityKernel selected = vectorNanos < scalarNanos ? VECTOR_API : SCALAR;
+        log.info("相似度内核: {} ( {} 维点积, {}: {} ns, {}: {} ns )", selected.name(), PROBE_DIMENSIONS,
+                SCALAR.name(), scalarNanos, VECTOR_API.name(), vectorNanos);
+        return selected;
+    }
+
+    /**
+     * 与双精度参考值比较, 覆盖带偏移的调用以及不是向量宽度整数倍的长度
+     */
+    private static void verify(SimilarityKernel kernel) {
+        SplittableRandom random = new SplittableRandom(17);
+        for (int length : new int[]{1, 7, 31, 384, 769, 1536}) {
+            int offset = 3;
+            float[] a = randomVector(random, length + offset);
+            float[] b = randomVector(random, length + offset);
+            double dot = 0, normA = 0, normB = 0, l2 = 0, magnitude = 0;
+            for (int i = offset; i < offset + length; i++) {
+                dot += (double) a[i] * b[i];
+                normA += (double) a[i] * a[i];
+                normB += (double) b[i] * b[i];
+                l2 += ((double) a[i] - b[i]) * ((double) a[i] - b[i]);
+                magnitude += Math.abs((double) a[i] * b[i]);
+            }
+            double tolerance = 1e-4 * (magnitude + normA + normB + 1);
+            check(kernel, "dot", length, kernel.dot(a, offset, b, offset, length), dot, tolerance);
+            check(kernel, "squaredL2", length, kernel.squaredL2(a, offset, b, offset, length), l2, tolerance);
+            check(kernel, "cosine", length, kernel.cosine(a, offset, b, offset, length), dot / Math.sqrt(normA * normB), 1e-4);
+        }
+    }
+
+    private static void check(SimilarityKernel kernel, String operation, int length, float actual, double expected, double tolerance) {
+        if (!(Math.abs(actual - expected) <= tolerance))
+            throw new IllegalStateException(kernel.name() + " " + operation + " 结果错误, 长度 " + length + ": " + actual + " != " + expected);
+    }
+
+    /**
+     * 预热后取多轮中最快一轮的平均单次点积耗时
+     */
+    private static long measure(SimilarityKernel kernel) {
+        SplittableRandom random = new SplittableRandom(29);
+        float[] query = randomVector(random, PROBE_DIMENSIONS);
+        float[] vectors = randomVector(random, PROBE_DIMENSIONS * PROBE_VECTORS);
+        float sink = 0;
+        for (int i = 0; i < 20_000; i++)
+            sink += kernel.dot(query, 0, vectors, (i % PROBE_VECTORS) * PROBE_DIMENSIONS, PROBE_DIMENSIONS);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 2_000; i++)
+                sink += kernel.dot(query, 0, vectors, (i % PROBE_VECTORS) * PROBE_DIMENSIONS, PROBE_DIMENSIONS);
+            best = Math.min(best, (System.nanoTime() - start) / 2_000);
+        }
+        if (Float.isNaN(sink))
+            log.debug("相似度内核计时结果异常");
+        return best;
+    }
+
+    private static float[] randomVector(SplittableRandom random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++)
+            vector[i] = (float) (random.nextDouble() * 2 - 1);
+        return vector;
+    }
+}
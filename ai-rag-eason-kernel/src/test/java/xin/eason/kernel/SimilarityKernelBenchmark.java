@@ -0,0 +1,109 @@
+package xin.eason.kernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 对比 SimpleVectorStore 使用的 List&lt;Double&gt; 装箱余弦相似度, 标量内核与 Vector API 内核.
+ * 运行: mvn -pl ai-rag-eason-kernel test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=xin.eason.kernel.SimilarityKernelBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SimilarityKernelBenchmark {
+
+    @Param({"384", "768", "1536"})
+    private int dimensions;
+
+    private float[] a;
+    private float[] b;
+    private List<Double> boxedA;
+    private List<Double> boxedB;
+    private SimilarityKernel scalar;
+    private SimilarityKernel vectorApi;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        a = new float[dimensions];
+        b = new float[dimensions];
+        boxedA = new ArrayList<>(dimensions);
+        boxedB = new ArrayList<>(dimensions);
+        for (int i = 0; i < dimensions; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+            boxedA.add((double) a[i]);
+            boxedB.add((double) b[i]);
+        }
+        scalar = SimilarityKernels.scalar();
+        vectorApi = SimilarityKernels.vectorApi().orElseThrow(() -> new IllegalStateException("Vector API 不可用"));
+    }
+
+    /**
+     * 与 SimpleVectorStore.EmbeddingMath.cosineSimilarity 相同的装箱实现
+     */
+    @Benchmark
+    public double boxedCosine() {
+        double dot = boxedDot(boxedA, boxedB);
+        return dot / (Math.sqrt(boxedDot(boxedA, boxedA)) * Math.sqrt(boxedDot(boxedB, boxedB)));
+    }
+
+    @Benchmark
+    public float scalarCosine() {
+        return scalar.cosine(a, b);
+    }
+
+    @Benchmark
+    public float vectorApiCosine() {
+        return vectorApi.cosine(a, b);
+    }
+
+    @Benchmark
+    public float scalarDot() {
+        return scalar.dot(a, b);
+    }
+
+    @Benchmark
+    public float vectorApiDot() {
+        return vectorApi.dot(a, b);
+    }
+
+    @Benchmark
+    public float scalarSquaredL2() {
+        return scalar.squaredL2(a, b);
+    }
+
+    @Benchmark
+    public float vectorApiSquaredL2() {
+        return vectorApi.squaredL2(a, b);
+    }
+
+    private static double boxedDot(List<Double> x, List<Double> y) {
+        return IntStream.range(0, x.size()).mapToDouble(i -> x.get(i) * y.get(i)).sum();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SimilarityKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package xin.eason.trigger.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 阻塞调用的执行方式: 后台工作线程的类型 ( 虚拟线程或平台线程 ), 以及每个下游服务的并发上限.
+ * 使用虚拟线程后每个任务一个新的虚拟线程 ( 不池化 ), 线程数不再约束并发, 由这里的许可数保护 HikariCP 连接池, 嵌入服务与 Redis 不被大量并发请求压垮
+ */
+@Slf4j
+public class BlockingExecution {
+
+    /**
+     * 执行参数
+     */
+    private final ConcurrencyOptions options;
+
+    /**
+     * 是否使用虚拟线程 ( 已开启且运行时支持 )
+     */
+    private final boolean virtualThreads;
+
+    /**
+     * 下游服务 -> 并发许可, 不限制的下游不在其中
+     */
+    private final Map<Downstream, Semaphore> permits = new EnumMap<>(Downstream.class);
+
+    public BlockingExecution(ConcurrencyOptions options) {
+        this.options = options;
+        this.virtualThreads = options.isVirtualThreads() && VirtualThreads.isSupported();
+        if (options.isVirtualThreads() && !virtualThreads)
+            log.warn("当前运行时 ( Java {} ) 不支持虚拟线程, 回退为平台线程", Runtime.version().feature());
+        addPermits(Downstream.EMBEDDING, options.getEmbeddingPermits());
+        addPermits(Downstream.VECTOR_STORE, options.getVectorStorePermits());
+        addPermits(Downstream.REDIS, options.getRedisPermits());
+    }
+
+    /**
+     * @return 使用平台线程, 不限制下游并发的执行方式
+     */
+    public static BlockingExecution platform() {
+        return new BlockingExecution(new ConcurrencyOptions(false, 0, 0, 0, 0));
+    }
+
+    /**
+     * @return 工作线程是否为虚拟线程
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * 创建执行阻塞任务的执行器. 虚拟线程时每个任务使用一个新的虚拟线程, threads 不起作用, 并发由下游许可 ( 以及调用方自己的容量 ) 约束;
+     * 平台线程时为 threads 个线程的固定线程池, 任务在无界队列中排队
+     *
+     * @param prefix  线程名前缀
+     * @param threads 平台线程数
+     * @return 执行器
+     */
+    public ExecutorService executor(String prefix, int threads) {
+        if (virtualThreads)
+            return VirtualThreads.perTaskExecutor(prefix);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory(prefix));
+    }
+
+    /**
+     * 创建工作线程工厂, 用于数量固定的常驻线程 ( 例如轮询队列的消费者 ); 执行一个个阻塞任务时使用 {@link #executor(String, int)}
+     *
+     * @param prefix 线程名前缀
+     * @return 虚拟线程或平台线程工厂
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        return virtualThreads ? VirtualThreads.factory(prefix) : new CustomizableThreadFactory(prefix);
+    }
+
+    /**
+     * 在下游服务的并发许可内执行阻塞调用, 许可用尽时等待, 超过 acquireTimeoutMillis 仍未获得则失败
+     *
+     * @param downstream 下游服务
+     * @param action     阻塞调用
+     * @return 调用结果
+     */
+    public <T> T call(Downstream downstream, Supplier<T> action) {
+        Semaphore semaphore = permits.get(downstream);
+        if (semaphore == null)
+            return action.get();
+        try {
+            if (!semaphore.tryAcquire(options.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS))
+                throw new IllegalStateException("等待 " + downstream + " 并发许可超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 " + downstream + " 并发许可时被中断", e);
+        }
+        try {
+            return action.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 在下游服务的并发许可内执行没有返回值的阻塞调用
+     *
+     * @param downstream 下游服务
+     * @param action     阻塞调用
+     */
+    public void run(Downstream downstream, Runnable action) {
+        call(downstream, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void addPermits(Downstream downstream, int count) {
+        if (count > 0)
+            permits.put(downstream, new Semaphore(count, true));
+    }
+}
@@ -0,0 +1,34 @@
+package xin.eason.trigger.concurrent;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 阻塞调用执行参数, 由 spring.ai.rag.concurrency 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConcurrencyOptions {
+    /**
+     * 导入流水线, 子查询检索与流式对话调度器的工作线程是否使用虚拟线程 ( 需要 Java 21, 低版本时回退为平台线程 )
+     */
+    private boolean virtualThreads = false;
+    /**
+     * 同时进行的嵌入请求数上限, 不大于 0 时不限制
+     */
+    private int embeddingPermits = 8;
+    /**
+     * 同时进行的向量库读写数上限, 不大于 0 时不限制. PG 向量库应小于 HikariCP 的 maximum-pool-size, 为删除等其他操作留出连接
+     */
+    private int vectorStorePermits = 8;
+    /**
+     * 同时进行的 Redis 同步调用数上限, 不大于 0 时不限制
+     */
+    private int redisPermits = 64;
+    /**
+     * 等待许可的最长时间 ( 毫秒 ), 超时后调用失败
+     */
+    private long acquireTimeoutMillis = 30000;
+}
@@ -0,0 +1,19 @@
+package xin.eason.trigger.concurrent;
+
+/**
+ * 阻塞调用的下游服务, 各自独立限制并发
+ */
+public enum Downstream {
+    /**
+     * 嵌入服务 ( Ollama / OpenAI 嵌入接口 )
+     */
+    EMBEDDING,
+    /**
+     * 向量库 ( PostgreSQL 时受 HikariCP 连接池大小约束 )
+     */
+    VECTOR_STORE,
+    /**
+     * Redis
+     */
+    REDIS
+}
@@ -0,0 +1,95 @@
+package xin.eason.trigger.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具. 项目以 Java 17 编译, 虚拟线程 API ( Java 21 ) 通过反射调用, 运行时不支持时回退为平台线程
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    /**
+     * Thread.ofVirtual().name(prefix, 0).factory(), 不支持虚拟线程时为 null
+     */
+    private static final MethodHandle FACTORY = lookupFactory();
+
+    /**
+     * Executors.newThreadPerTaskExecutor(ThreadFactory), 不支持虚拟线程时为 null
+     */
+    private static final MethodHandle PER_TASK_EXECUTOR = FACTORY == null ? null : lookupPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前运行时是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    /**
+     * 创建虚拟线程工厂, 线程名为 prefix 加递增序号
+     *
+     * @param prefix 线程名前缀
+     * @return 虚拟线程工厂, 不支持虚拟线程时返回 null
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (FACTORY == null)
+            return null;
+        try {
+            return (ThreadFactory) FACTORY.invoke(prefix);
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    /**
+     * 创建每个任务一个新虚拟线程的执行器. 虚拟线程不应池化: 池化后线程数重新成为并发上限, 并失去按需创建的意义
+     *
+     * @param prefix 线程名前缀
+     * @return 执行器, 不支持虚拟线程时返回 null
+     */
+    public static ExecutorService perTaskExecutor(String prefix) {
+        if (PER_TASK_EXECUTOR == null)
+            return null;
+        try {
+            return (ExecutorService) PER_TASK_EXECUTOR.invoke(factory(prefix));
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static MethodHandle lookupPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException e) {
+            log.debug("当前运行时不支持 Executors.newThreadPerTaskExecutor: {}", Runtime.version());
+            return null;
+        }
+    }
+
+    private static MethodHandle lookupFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builder));
+            MethodHandle name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            // prefix -> Thread.ofVirtual().name(prefix, 0).factory()
+            MethodHandle named = MethodHandles.foldArguments(MethodHandles.insertArguments(name, 2, 0L), ofVirtual);
+            return MethodHandles.filterReturnValue(named, factory);
+        } catch (ReflectiveOperationException e) {
+            log.debug("当前运行时不支持虚拟线程: {}", Runtime.version());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package xin.eason.trigger.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 嵌入客户端装饰器: 将来自不同线程 ( 不同导入任务 ) 的文本块合并成批次后再发往嵌入服务.
+ * 一个批次在凑满 batchSize 或等待超过 lingerMillis 后发出, 同时在途的批次数不超过 maxInFlight
+ */
+@Slf4j
+public class BatchingEmbeddingClient implements EmbeddingClient {
+
+    /**
+     * 凑批等待时检查嵌入服务是否空闲的时间粒度
+     */
+    private static final long LINGER_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 实际执行批量嵌入的客户端
+     */
+    private final EmbeddingClient delegate;
+
+    /**
+     * 合并参数
+     */
+    private final EmbeddingBatchOptions options;
+
+    /**
+     * 等待合并的文本块
+     */
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * 在途请求许可
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * 凑批线程
+     */
+    private final Thread dispatcher;
+
+    /**
+     * 发送批次请求的线程池
+     */
+    private final ExecutorService senders;
+
+    private volatile boolean running = true;
+
+    public BatchingEmbeddingClient(EmbeddingClient delegate, EmbeddingBatchOptions options) {
+        this.delegate = delegate;
+        this.options = options;
+        this.inFlight = new Semaphore(Math.max(options.getMaxInFlight(), 1));
+        this.senders = Executors.newFixedThreadPool(Math.max(options.getMaxInFlight(), 1), new CustomizableThreadFactory("rag-embedding-batch-"));
+        this.dispatcher = new CustomizableThreadFactory("rag-embedding-dispatch-").newThread(this::dispatchLoop);
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        // 带有自定义选项的请求无法与其他请求合并, 直接交给被装饰的客户端
+        if (request.getOptions() != null && request.getOptions() != EmbeddingOptions.EMPTY)
+            return delegate.call(request);
+        List<List<Double>> embeddings = embed(request.getInstructions());
+        List<Embedding> results = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++)
+            results.add(new Embedding(embeddings.get(i), i));
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return embed(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        List<CompletableFuture<List<Double>>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            PendingEmbedding pending = new PendingEmbedding(text, new CompletableFuture<>());
+            futures.add(pending.future());
+            queue.add(pending);
+        }
+        List<List<Double>> embeddings = new ArrayList<>(texts.size());
+        try {
+            for (CompletableFuture<List<Double>> future : futures)
+                embeddings.add(future.join());
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException("批量嵌入请求失败", cause);
+        }
+        return embeddings;
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return call(new EmbeddingRequest(texts, EmbeddingOptions.EMPTY));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 凑批循环: 阻塞等待第一个文本块, 然后尽量凑满一个批次, 拿到在途许可后异步发送.
+     * 只有在已有请求在途 ( 嵌入服务忙 ) 时才会最多等待 linger 时间继续凑批, 服务空闲时立即发送, 避免无谓的等待
+     */
+    private void dispatchLoop() {
+        int batchSize = Math.max(options.getBatchSize(), 1);
+        int maxInFlight = Math.max(options.getMaxInFlight(), 1);
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(options.getLingerMillis(), 0));
+        while (running) {
+            List<PendingEmbedding> batch = new ArrayList<>(batchSize);
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - batch.size());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize && inFlight.availablePermits() < maxInFlight) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+                    // 以 1ms 为粒度等待, 以便在途请求返回 ( 服务变为空闲 ) 时尽快发出当前批次
+                    PendingEmbedding next = queue.poll(Math.min(remaining, LINGER_SLICE_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+                inFlight.acquire();
+                // 等待许可期间到达的文本块一并发出
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                batch.forEach(pending -> pending.future().cancel(false));
+                Thread.currentThread().interrupt();
+                return;
+            }
+            senders.execute(() -> send(batch));
+        }
+    }
+
+    /**
+     * 发送一个批次, 并把结果按顺序分发给各个等待者
+     */
+    private void send(List<PendingEmbedding> batch) {
+        try {
+            List<String> texts = batch.stream().map(PendingEmbedding::text).toList();
+            List<Embedding> results = delegate.call(new EmbeddingRequest(texts, EmbeddingOptions.EMPTY)).getResults();
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).future().complete(results.get(i).getOutput());
+        } catch (Exception e) {
+            log.error("批量嵌入请求失败, 批次大小: {}", batch.size(), e);
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 停止凑批线程与发送线程池, 未完成的请求将被取消
+     */
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        senders.shutdownNow();
+        queue.forEach(pending -> pending.future().cancel(false));
+    }
+
+    /**
+     * 等待嵌入的文本块
+     *
+     * @param text   文本
+     * @param future 嵌入结果
+     */
+    private record PendingEmbedding(String text, CompletableFuture<List<Double>> future) {
+    }
+}
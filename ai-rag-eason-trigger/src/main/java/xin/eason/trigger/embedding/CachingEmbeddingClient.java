@@ -0,0 +1,242 @@
+package xin.eason.trigger.embedding;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import xin.eason.api.dto.EmbeddingCacheStatsDTO;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 嵌入客户端装饰器: 以 hash(嵌入模型, 文本) 为键缓存向量, 内容未变化的文本块不再重复嵌入.
+ * 一级缓存为进程内按字节数限制的 LRU 缓存, 二级缓存 ( 可选 ) 为 Redis, 向量以 float32 二进制存储
+ */
+@Slf4j
+public class CachingEmbeddingClient implements EmbeddingClient {
+
+    /**
+     * Redis 缓存键前缀
+     */
+    private static final String REDIS_KEY_PREFIX = "rag:embedding:";
+
+    /**
+     * 实际执行嵌入的客户端
+     */
+    private final EmbeddingClient delegate;
+
+    /**
+     * 嵌入模型名称, 参与缓存键计算, 切换模型后旧向量自然失效
+     */
+    private final String model;
+
+    /**
+     * 缓存参数
+     */
+    private final EmbeddingCacheOptions options;
+
+    /**
+     * Redisson 客户端, 未开启 Redis 缓存时为 null
+     */
+    private final RedissonClient redissonClient;
+
+    /**
+     * 进程内缓存, 向量以 float[] 存储以减少内存占用
+     */
+    private final Cache<String, float[]> localCache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingEmbeddingClient(EmbeddingClient delegate, String model, EmbeddingCacheOptions options, RedissonClient redissonClient) {
+        this.delegate = delegate;
+        this.model = model;
+        this.options = options;
+        this.redissonClient = options.isRedisEnabled() ? redissonClient : null;
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumWeight(options.getMaximumBytes())
+                .weigher((String key, float[] vector) -> key.length() * 2 + vector.length * Float.BYTES + 64)
+                .build();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        // 带有自定义选项的请求可能产生不同的向量, 不走缓存
+        if (request.getOptions() != null && request.getOptions() != EmbeddingOptions.EMPTY)
+            return delegate.call(request);
+        List<List<Double>> embeddings = embed(request.getInstructions());
+        List<Embedding> results = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++)
+            results.add(new Embedding(embeddings.get(i), i));
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return embed(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        if (!options.isEnabled())
+            return delegate.embed(texts);
+        requests.add(texts.size());
+
+        // 1. 进程内缓存
+        float[][] vectors = new float[texts.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = cacheKey(texts.get(i));
+            float[] cached = localCache.getIfPresent(key);
+            if (cached != null) {
+                vectors[i] = cached;
+                localHits.increment();
+            } else {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // 2. Redis 缓存
+        if (!missing.isEmpty() && redissonClient != null)
+            loadFromRedis(missing, vectors);
+
+        // 3. 仍未命中的文本 ( 同一请求内的重复文本只嵌入一次 ) 交给被装饰的客户端
+        if (!missing.isEmpty()) {
+            List<String> keys = new ArrayList<>(missing.keySet());
+            misses.add(missing.values().stream().mapToInt(List::size).sum());
+            List<String> missTexts = keys.stream().map(key -> texts.get(missing.get(key).get(0))).toList();
+            List<List<Double>> embedded = delegate.embed(missTexts);
+            Map<String, float[]> fresh = new LinkedHashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                float[] vector = toFloatArray(embedded.get(i));
+                fresh.put(keys.get(i), vector);
+                localCache.put(keys.get(i), vector);
+                for (int index : missing.get(keys.get(i)))
+                    vectors[index] = vector;
+            }
+            if (redissonClient != null)
+                saveToRedis(fresh);
+        }
+
+        List<List<Double>> result = new ArrayList<>(texts.size());
+        for (float[] vector : vectors)
+            result.add(toDoubleList(vector));
+        return result;
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return call(new EmbeddingRequest(texts, EmbeddingOptions.EMPTY));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * @return 缓存命中统计
+     */
+    public EmbeddingCacheStatsDTO stats() {
+        long total = requests.sum();
+        long hits = localHits.sum() + redisHits.sum();
+        return new EmbeddingCacheStatsDTO(total, localHits.sum(), redisHits.sum(), misses.sum(),
+                total == 0 ? 0.0 : (double) hits / total, localCache.size());
+    }
+
+    /**
+     * 批量读取 Redis 缓存, 命中的向量同时回填进程内缓存, 并从 missing 中移除
+     */
+    private void loadFromRedis(Map<String, List<Integer>> missing, float[][] vectors) {
+        try {
+            String[] redisKeys = missing.keySet().stream().map(key -> REDIS_KEY_PREFIX + key).toArray(String[]::new);
+            Map<String, byte[]> found = redissonClient.getBuckets(ByteArrayCodec.INSTANCE).get(redisKeys);
+            for (Map.Entry<String, byte[]> entry : found.entrySet()) {
+                String key = entry.getKey().substring(REDIS_KEY_PREFIX.length());
+                float[] vector = fromBytes(entry.getValue());
+                localCache.put(key, vector);
+                for (int index : missing.remove(key))
+                    vectors[index] = vector;
+                redisHits.increment();
+            }
+        } catch (Exception e) {
+            log.warn("读取 Redis 嵌入缓存失败, 本次直接请求嵌入服务", e);
+        }
+    }
+
+    /**
+     * 异步批量写入 Redis 缓存
+     */
+    private void saveToRedis(Map<String, float[]> fresh) {
+        try {
+            RBatch batch = redissonClient.createBatch();
+            Duration ttl = Duration.ofHours(options.getRedisTtlHours());
+            fresh.forEach((key, vector) -> batch.getBucket(REDIS_KEY_PREFIX + key, ByteArrayCodec.INSTANCE).setAsync(toBytes(vector), ttl));
+            batch.executeAsync();
+        } catch (Exception e) {
+            log.warn("写入 Redis 嵌入缓存失败", e);
+        }
+    }
+
+    /**
+     * 缓存键: sha256(模型名称 + '\0' + 文本)
+     */
+    private String cacheKey(String text) {
+        return Hashing.sha256().newHasher()
+                .putString(model, StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(text, StandardCharsets.UTF_8)
+                .hash()
+                .toString();
+    }
+
+    private static float[] toFloatArray(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++)
+            vector[i] = embedding.get(i).floatValue();
+        return vector;
+    }
+
+    private static List<Double> toDoubleList(float[] vector) {
+        List<Double> embedding = new ArrayList<>(vector.length);
+        for (float value : vector)
+            embedding.add((double) value);
+        return embedding;
+    }
+
+    private static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] fromBytes(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,26 @@
+package xin.eason.trigger.embedding;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 嵌入请求合并参数, 由 spring.ai.rag.embedding 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingBatchOptions {
+    /**
+     * 单次发往嵌入服务的最大文本块数量
+     */
+    private int batchSize = 64;
+    /**
+     * 凑批等待的最长时间 ( 毫秒 ), 超时后即使未凑满也立即发送
+     */
+    private long lingerMillis = 10;
+    /**
+     * 同时发往嵌入服务的最大请求数
+     */
+    private int maxInFlight = 4;
+}
@@ -0,0 +1,30 @@
+package xin.eason.trigger.embedding;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 嵌入缓存参数, 由 spring.ai.rag.embedding-cache 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheOptions {
+    /**
+     * 是否开启嵌入缓存
+     */
+    private boolean enabled = true;
+    /**
+     * 进程内缓存可占用的最大字节数, 超出后按最近最少使用淘汰
+     */
+    private long maximumBytes = 256L * 1024 * 1024;
+    /**
+     * 是否开启 Redis 二级缓存, 供多个节点以及重启后共享
+     */
+    private boolean redisEnabled = false;
+    /**
+     * Redis 缓存的过期时间 ( 小时 )
+     */
+    private long redisTtlHours = 24 * 7;
+}
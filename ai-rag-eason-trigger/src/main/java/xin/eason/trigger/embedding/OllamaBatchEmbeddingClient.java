@@ -0,0 +1,112 @@
+package xin.eason.trigger.embedding;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.AbstractEmbeddingClient;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 使用 Ollama 批量嵌入接口 ( /api/embed ) 的嵌入客户端, 一次 HTTP 请求嵌入多个文本块.
+ * Spring AI 自带的 {@link org.springframework.ai.ollama.OllamaEmbeddingClient} 只会逐条调用 /api/embeddings,
+ * 若服务端版本过旧不支持 /api/embed, 则自动退回逐条调用
+ */
+@Slf4j
+public class OllamaBatchEmbeddingClient extends AbstractEmbeddingClient {
+
+    /**
+     * 嵌入模型名称
+     */
+    private final String model;
+
+    /**
+     * 调用 /api/embed 的 HTTP 客户端
+     */
+    private final RestClient restClient;
+
+    /**
+     * 旧版本服务端的逐条嵌入接口
+     */
+    private final OllamaApi ollamaApi;
+
+    /**
+     * 服务端是否不支持批量接口
+     */
+    private volatile boolean legacyEndpoint = false;
+
+    public OllamaBatchEmbeddingClient(String baseUrl, String model) {
+        this.model = model;
+        this.restClient = RestClient.builder().baseUrl(baseUrl).build();
+        this.ollamaApi = new OllamaApi(baseUrl);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<List<Double>> embeddings = legacyEndpoint ? embedOneByOne(texts) : embedBatch(texts);
+        List<Embedding> results = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++)
+            results.add(new Embedding(embeddings.get(i), i));
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    /**
+     * 调用批量接口, 服务端返回 404 时切换为逐条调用
+     */
+    private List<List<Double>> embedBatch(List<String> texts) {
+        try {
+            EmbedResponse response = restClient.post()
+                    .uri("/api/embed")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new EmbedRequest(model, texts))
+                    .retrieve()
+                    .body(EmbedResponse.class);
+            if (response == null || response.embeddings() == null || response.embeddings().size() != texts.size())
+                throw new IllegalStateException("Ollama 批量嵌入返回的向量数量与请求不一致");
+            return response.embeddings();
+        } catch (HttpClientErrorException.NotFound e) {
+            log.warn("Ollama 服务端不支持 /api/embed 批量嵌入接口, 退回逐条调用 /api/embeddings");
+            legacyEndpoint = true;
+            return embedOneByOne(texts);
+        }
+    }
+
+    private List<List<Double>> embedOneByOne(List<String> texts) {
+        List<List<Double>> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts)
+            embeddings.add(ollamaApi.embeddings(new OllamaApi.EmbeddingRequest(model, text, null)).embedding());
+        return embeddings;
+    }
+
+    /**
+     * /api/embed 请求体
+     *
+     * @param model 模型名称
+     * @param input 待嵌入的文本列表
+     */
+    record EmbedRequest(String model, List<String> input) {
+    }
+
+    /**
+     * /api/embed 响应体
+     *
+     * @param embeddings 与输入一一对应的向量列表
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record EmbedResponse(List<List<Double>> embeddings) {
+    }
+}
@@ -0,0 +1,88 @@
+package xin.eason.trigger.embedding;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 嵌入客户端装饰器: 若 Document 已经携带向量 ( 由导入流水线的嵌入阶段预先批量计算 ), 则直接复用该向量,
+ * 避免 {@link org.springframework.ai.vectorstore.PgVectorStore#add(List)} 对每个文本块再发起一次嵌入请求.
+ * 同理, 检索方预先算好的问题向量可通过 {@link #withQueryEmbedding(String, List, Supplier)} 交给向量库复用
+ */
+@RequiredArgsConstructor
+public class PrecomputedEmbeddingClient implements EmbeddingClient {
+
+    /**
+     * 实际执行嵌入的客户端
+     */
+    private final EmbeddingClient delegate;
+
+    /**
+     * 当前线程上预先计算好的问题向量 ( 问题 -> 向量 )
+     */
+    private final ThreadLocal<Map.Entry<String, List<Double>>> queryEmbedding = new ThreadLocal<>();
+
+    /**
+     * 在当前线程上执行 action, 期间对同一问题的 {@link #embed(String)} 直接返回给定的向量.
+     * 向量库的 similaritySearch 只接受问题文本, 借此可以在检索前单独计量问题嵌入的耗时而不重复嵌入
+     *
+     * @param query     问题
+     * @param embedding 问题向量
+     * @param action    使用该问题检索向量库的逻辑
+     * @return action 的结果
+     */
+    public <T> T withQueryEmbedding(String query, List<Double> embedding, Supplier<T> action) {
+        Map.Entry<String, List<Double>> previous = queryEmbedding.get();
+        queryEmbedding.set(Map.entry(query, embedding));
+        try {
+            return action.get();
+        } finally {
+            if (previous == null)
+                queryEmbedding.remove();
+            else
+                queryEmbedding.set(previous);
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        List<Double> embedding = document.getEmbedding();
+        if (embedding != null && !embedding.isEmpty())
+            return embedding;
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        Map.Entry<String, List<Double>> precomputed = queryEmbedding.get();
+        if (precomputed != null && precomputed.getKey().equals(text))
+            return precomputed.getValue();
+        return delegate.embed(text);
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        return delegate.embed(texts);
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return delegate.embedForResponse(texts);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
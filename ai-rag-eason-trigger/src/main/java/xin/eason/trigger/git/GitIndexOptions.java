@@ -0,0 +1,53 @@
+package xin.eason.trigger.git;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Git 仓库索引参数, 由 spring.ai.rag.git 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GitIndexOptions {
+    /**
+     * 本地仓库的持久化目录, 每个远程仓库在其中保留一份克隆
+     */
+    private String repositoryDirectory = "./git-repositories";
+    /**
+     * 需要导入的文件 glob ( 相对仓库根目录 ), 为空时导入全部文件
+     */
+    private List<String> includes = new ArrayList<>();
+    /**
+     * 不导入的文件 glob ( 相对仓库根目录 ), 以 /** 结尾的规则会直接跳过整个目录
+     */
+    private List<String> excludes = new ArrayList<>(List.of(
+            "**/node_modules/**", "**/vendor/**", "**/target/**", "**/build/**", "**/dist/**", "**/.idea/**",
+            "**/*.lock", "**/package-lock.json", "**/pnpm-lock.yaml", "**/*.min.js", "**/*.map", "**/*.sh",
+            "**/*.png", "**/*.jpg", "**/*.jpeg", "**/*.gif", "**/*.ico", "**/*.svg"));
+    /**
+     * 允许导入的二进制文档 glob, 这些文件交给 Tika 解析, 不做二进制检测
+     */
+    private List<String> binaryDocuments = new ArrayList<>(List.of(
+            "**/*.pdf", "**/*.doc", "**/*.docx", "**/*.ppt", "**/*.pptx", "**/*.xls", "**/*.xlsx"));
+    /**
+     * 是否遵循仓库中的 .gitignore ( 以及 .git/info/exclude ) 规则
+     */
+    private boolean respectGitignore = true;
+    /**
+     * 单个文件的大小上限 ( 字节 ), 超出的文件不导入
+     */
+    private long maxFileBytes = 1024 * 1024;
+    /**
+     * 二进制检测读取的文件头字节数, 其中出现 NUL 字节即视为二进制文件
+     */
+    private int sniffBytes = 8000;
+    /**
+     * 扫描仓库的并行度
+     */
+    private int scanParallelism = Runtime.getRuntime().availableProcessors();
+}
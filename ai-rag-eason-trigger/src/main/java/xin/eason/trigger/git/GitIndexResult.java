@@ -0,0 +1,53 @@
+package xin.eason.trigger.git;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一次 Git 仓库索引的结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GitIndexResult {
+    /**
+     * 仓库名称
+     */
+    private String repositoryName;
+    /**
+     * 仓库写入的知识库 Tag, 默认为仓库名称, 名称已被占用时追加仓库 URL 的哈希; 仓库为空且从未索引过时为 null
+     */
+    private String ragTag;
+    /**
+     * 上次已索引的提交, 首次索引时为 null
+     */
+    private String previousCommit;
+    /**
+     * 本次索引的提交, 仓库还没有任何提交时为 null
+     */
+    private String headCommit;
+    /**
+     * 需要 ( 重新 ) 导入的文件数
+     */
+    private int indexedFiles;
+    /**
+     * 删除了向量的文件数 ( 已删除或已修改的文件 )
+     */
+    private int removedFiles;
+    /**
+     * 提交任务前删除的旧文本块数. 全量索引不在提交前删除, 旧版本在新版本构建成功后整体删除, 此值为 0
+     */
+    private int removedChunks;
+    /**
+     * 导入任务 ID, 仓库没有变化时为 null
+     */
+    private String jobId;
+
+    /**
+     * @return 是否为全量索引
+     */
+    public boolean isFullIndex() {
+        return previousCommit == null;
+    }
+}
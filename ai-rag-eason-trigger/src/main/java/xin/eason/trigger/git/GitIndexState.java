@@ -0,0 +1,114 @@
+package xin.eason.trigger.git;
+
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Git 仓库的索引记录, 保存在 Redis 中: 仓库 URL -> 最后一次索引成功的提交, 以及 知识库 Tag -> 拥有该 Tag 的仓库 URL.
+ * 一个知识库 Tag 只属于一个仓库, 索引器只删除本仓库拥有的 Tag 中的文本块
+ */
+public class GitIndexState {
+
+    /**
+     * Redis 中记录 仓库 URL -> 最后索引提交 的 Map 名称
+     */
+    private static final String INDEXED_COMMIT_MAP = "gitIndexedCommit";
+
+    /**
+     * Redis 中记录 知识库 Tag -> 仓库 URL 的 Map 名称
+     */
+    private static final String OWNER_MAP = "gitRepositoryOwner";
+
+    /**
+     * Redisson 客户端
+     */
+    private final RedissonClient redissonClient;
+
+    public GitIndexState(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * @param repositoryUrl 仓库 URL
+     * @return 该仓库最后一次索引成功的提交, 从未索引过时为 null
+     */
+    public String indexedCommit(String repositoryUrl) {
+        return indexedCommits().get(repositoryUrl);
+    }
+
+    /**
+     * 记录仓库最后一次索引成功的提交
+     *
+     * @param repositoryUrl 仓库 URL
+     * @param commit        提交
+     */
+    public void recordCommit(String repositoryUrl, String commit) {
+        indexedCommits().fastPut(repositoryUrl, commit);
+    }
+
+    /**
+     * @param repositoryUrl 仓库 URL
+     * @return 该仓库拥有的知识库 Tag, 没有时为 null
+     */
+    public String tagOf(String repositoryUrl) {
+        for (Map.Entry<String, String> entry : owners().readAllMap().entrySet()) {
+            if (entry.getValue().equals(repositoryUrl))
+                return entry.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * @param ragTag 知识库 Tag
+     * @return 拥有该 Tag 的仓库 URL, 不属于任何仓库时为 null
+     */
+    public String owner(String ragTag) {
+        return owners().get(ragTag);
+    }
+
+    /**
+     * 尝试让仓库拥有知识库 Tag, 已被其他仓库拥有时不做修改
+     *
+     * @param ragTag        知识库 Tag
+     * @param repositoryUrl 仓库 URL
+     * @return 该 Tag 当前的拥有者, 与 repositoryUrl 相同即拥有成功
+     */
+    public String claim(String ragTag, String repositoryUrl) {
+        String owner = owners().putIfAbsent(ragTag, repositoryUrl);
+        return owner == null ? repositoryUrl : owner;
+    }
+
+    /**
+     * 释放知识库 Tag 并忘记其仓库已索引的提交, 知识库被删除或替换后, 下次分析该仓库时重新认领 Tag 并全量重建.
+     * 同时清除未登记拥有者的旧记录中仓库名称与该 Tag 相同的提交
+     *
+     * @param ragTag 知识库 Tag
+     * @return 忘记的仓库数
+     */
+    public int forget(String ragTag) {
+        RMap<String, String> indexedCommits = indexedCommits();
+        RMap<String, String> owners = owners();
+        int forgotten = 0;
+        String owner = owners.remove(ragTag);
+        if (owner != null && indexedCommits.fastRemove(owner) > 0)
+            forgotten++;
+        Collection<String> ownedUrls = owners.readAllValues();
+        for (String repositoryUrl : indexedCommits.readAllKeySet()) {
+            if (GitRepositoryIndexer.getRepositoryName(repositoryUrl).equals(ragTag) && !ownedUrls.contains(repositoryUrl)
+                    && indexedCommits.fastRemove(repositoryUrl) > 0)
+                forgotten++;
+        }
+        return forgotten;
+    }
+
+    private RMap<String, String> indexedCommits() {
+        return redissonClient.getMap(INDEXED_COMMIT_MAP);
+    }
+
+    private RMap<String, String> owners() {
+        return redissonClient.getMap(OWNER_MAP);
+    }
+}
@@ -0,0 +1,344 @@
+package xin.eason.trigger.git;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.knowledge.KnowledgeGenerations;
+import xin.eason.trigger.vectorstore.VectorDocumentDeleter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Git 仓库增量索引器. 每个远程仓库在本地保留一份持久化克隆, 并在 Redis 中记录最后一次索引成功的提交;
+ * 再次分析时只 fetch 新提交, 通过 diff 找出变化的文件: 所有变化文件的已有向量先被删除, 新增 ( 或修改 ) 的文件再交给导入流水线重新嵌入,
+ * 因此上次同步部分失败后重试不会重复导入.
+ * 首次索引 ( 或历史被改写 ) 时在知识库的新版本中全量构建, 全部成功后才切换版本并删除旧版本.
+ * 知识库 Tag 默认为仓库名称, 该名称已属于其他仓库 ( 或是手动上传的知识库 ) 时追加仓库 URL 的哈希, 索引器只修改本仓库拥有的 Tag
+ */
+@Slf4j
+public class GitRepositoryIndexer {
+
+    /**
+     * 知识库导入流水线
+     */
+    private final IngestionPipeline ingestionPipeline;
+
+    /**
+     * 并行仓库扫描器
+     */
+    private final RepositoryScanner repositoryScanner;
+
+    /**
+     * 向量删除器
+     */
+    private final VectorDocumentDeleter vectorDocumentDeleter;
+
+    /**
+     * 仓库的索引记录与知识库 Tag 的拥有者
+     */
+    private final GitIndexState indexState;
+
+    /**
+     * 知识库版本表, 全量构建写入新版本, 增量更新作用于当前版本
+     */
+    private final KnowledgeGenerations knowledgeGenerations;
+
+    /**
+     * 本地仓库根目录
+     */
+    private final Path repositoryDirectory;
+
+    /**
+     * 正在索引的仓库 ( 本地目录名 ), 同一仓库同一时间只允许一个索引任务, 避免工作区被并发重置.
+     * 不同仓库的知识库 Tag 互不相同, 因此同一 Tag 同一时间也只有一个索引任务
+     */
+    private final Set<String> indexing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 判断知识库 Tag 是否已存在 ( 例如手动上传的知识库 ), 已存在且不属于任何仓库的 Tag 不会被认领
+     */
+    private volatile Predicate<String> existingTags = ragTag -> false;
+
+    public GitRepositoryIndexer(GitIndexOptions options, IngestionPipeline ingestionPipeline, RepositoryScanner repositoryScanner,
+                                VectorDocumentDeleter vectorDocumentDeleter, GitIndexState indexState, KnowledgeGenerations knowledgeGenerations) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.repositoryScanner = repositoryScanner;
+        this.vectorDocumentDeleter = vectorDocumentDeleter;
+        this.indexState = indexState;
+        this.knowledgeGenerations = knowledgeGenerations;
+        this.repositoryDirectory = Paths.get(options.getRepositoryDirectory()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 同步远程仓库并增量索引变化的文件. 方法在提交导入任务后立即返回, 任务全部成功后才记录本次提交
+     *
+     * @param repositoryUrl 仓库 URL
+     * @param userName      用户名
+     * @param token         用户 Token
+     * @return 索引结果
+     * @throws GitAPIException       克隆或拉取仓库失败
+     * @throws IOException           读取本地仓库失败
+     * @throws IllegalStateException 该仓库已有正在进行的索引任务, 或其知识库正在删除或替换
+     */
+    public GitIndexResult index(String repositoryUrl, String userName, String token) throws GitAPIException, IOException {
+        String repositoryName = getRepositoryName(repositoryUrl);
+        String urlHash = Hashing.sha256().hashString(repositoryUrl, StandardCharsets.UTF_8).toString();
+        String localName = repositoryName + "-" + urlHash.substring(0, 12);
+        if (!indexing.add(localName))
+            throw new IllegalStateException("代码仓库 \"" + repositoryName + "\" 正在索引中, 请稍后再试");
+
+        boolean submitted = false;
+        String lockedTag = null;
+        try {
+            CredentialsProvider credentialsProvider = new UsernamePasswordCredentialsProvider(userName, token);
+            File localRepositoryFile = repositoryDirectory.resolve(localName).toFile();
+            try (Git git = openOrClone(repositoryUrl, localRepositoryFile, credentialsProvider)) {
+                Repository repository = git.getRepository();
+                ObjectId head = repository.resolve(Constants.HEAD);
+                if (head == null) {
+                    log.info("代码仓库 {} 还没有任何提交, 没有需要索引的文件", repositoryName);
+                    return new GitIndexResult(repositoryName, indexState.tagOf(repositoryUrl), null, null, 0, 0, 0, null);
+                }
+
+                String previousCommit = indexState.indexedCommit(repositoryUrl);
+                boolean owned = indexState.tagOf(repositoryUrl) != null;
+                String ragTag = claimTag(repositoryName, repositoryUrl, urlHash, previousCommit != null);
+                // 新认领的 Tag 中没有该仓库的文本块 ( 旧版本索引记录对应的仓库名称除外 ), 全量构建
+                if (!owned && !ragTag.equals(repositoryName))
+                    previousCommit = null;
+                if (head.name().equals(previousCommit)) {
+                    log.info("代码仓库 {} 没有新的提交, 当前提交: {}", repositoryName, previousCommit);
+                    return new GitIndexResult(repositoryName, ragTag, previousCommit, head.name(), 0, 0, 0, null);
+                }
+
+                Path workTree = localRepositoryFile.toPath();
+                String storageTag;
+                List<String> toIndex;
+                Set<String> toRemove = new LinkedHashSet<>();
+                int removedChunks = 0;
+                ObjectId previous = previousCommit == null ? null : ObjectId.fromString(previousCommit);
+                if (previous != null && repository.getObjectDatabase().has(previous)) {
+                    Set<String> changed = new LinkedHashSet<>();
+                    diff(repository, previous, head, changed, toRemove);
+                    toIndex = repositoryScanner.filter(workTree, changed);
+                    storageTag = knowledgeGenerations.resolveForWrite(ragTag);
+                    // 上次同步失败 ( 或进程中途退出 ) 时不会记录提交, 这次仍从同一个提交 diff, 已导入成功的新增文件与失败文件已写入的批次
+                    // 会再次导入; 文本块 ID 是随机的, 因此导入前先删除所有变化文件的已有向量, 重试不会产生重复的文本块
+                    Set<String> stale = new LinkedHashSet<>(toRemove);
+                    stale.addAll(changed);
+                    removedChunks = vectorDocumentDeleter.deleteBySources(storageTag, stale);
+                } else {
+                    // 首次索引, 或上次索引的提交已不存在 ( 历史被改写 ), 在新版本中全量构建, 构建期间检索仍使用当前版本
+                    if (previous != null)
+                        log.warn("代码仓库 {} 上次索引的提交 {} 已不存在, 将全量重建索引", repositoryName, previousCommit);
+                    previousCommit = null;
+                    toIndex = repositoryScanner.scan(workTree);
+                    storageTag = knowledgeGenerations.next(ragTag);
+                    // 与替换知识库相同, 构建期间锁定知识库, 写入当前版本的上传会在切换后丢失, 因此被拒绝
+                    if (!knowledgeGenerations.lock(ragTag, storageTag))
+                        throw new IllegalStateException("知识库 \"" + ragTag + "\" 正在删除或替换中, 请稍后再试");
+                    lockedTag = ragTag;
+                }
+
+                List<IngestionSource> sources = new ArrayList<>();
+                for (String path : toIndex)
+                    sources.add(new IngestionSource(path, workTree.resolve(path), false));
+                log.info("代码仓库 {} ( 知识库 {} ) 从 {} 更新到 {}: 导入 {} 个文件, 删除 {} 个文件的旧向量",
+                        repositoryName, ragTag, previousCommit, head.name(), sources.size(), toRemove.size());
+
+                IngestionJob job = ingestionPipeline.submit(ragTag, storageTag, sources);
+                String headCommit = head.name();
+                boolean fullIndex = previousCommit == null;
+                job.completion().whenComplete((finished, throwable) -> {
+                    try {
+                        boolean succeeded = throwable == null && finished.isSucceeded();
+                        if (fullIndex)
+                            publish(ragTag, storageTag, succeeded);
+                        if (succeeded)
+                            indexState.recordCommit(repositoryUrl, headCommit);
+                        else
+                            log.warn("代码仓库 {} 的导入任务 {} 存在失败的文件, 不记录本次提交, 下次分析时将重新处理这些变化", repositoryName, job.getId());
+                    } finally {
+                        if (fullIndex)
+                            knowledgeGenerations.unlock(ragTag);
+                        indexing.remove(localName);
+                    }
+                });
+                submitted = true;
+                return new GitIndexResult(repositoryName, ragTag, previousCommit, headCommit, sources.size(), toRemove.size(), removedChunks, job.getId());
+            }
+        } finally {
+            if (!submitted) {
+                if (lockedTag != null)
+                    knowledgeGenerations.unlock(lockedTag);
+                indexing.remove(localName);
+            }
+        }
+    }
+
+    /**
+     * 设置判断知识库 Tag 是否已存在的方式
+     *
+     * @param predicate 判断方式
+     */
+    public void checkExistingTagsWith(Predicate<String> predicate) {
+        this.existingTags = predicate;
+    }
+
+    /**
+     * 释放仓库拥有的知识库 Tag 并忘记其已索引的提交, 知识库被删除或替换后, 下次分析该仓库时全量重建
+     *
+     * @param ragTag 知识库 Tag
+     * @return 忘记的仓库数
+     */
+    public int forget(String ragTag) {
+        return indexState.forget(ragTag);
+    }
+
+    /**
+     * 确定仓库写入的知识库 Tag. 仓库已拥有的 Tag 保持不变; 否则优先认领仓库名称, 仓库名称已属于其他仓库,
+     * 或是不属于任何仓库的已有知识库时 ( 旧版本索引过该仓库除外 ), 认领 仓库名称-URL 哈希
+     *
+     * @param indexedBefore 该仓库是否已有索引记录
+     */
+    private String claimTag(String repositoryName, String repositoryUrl, String urlHash, boolean indexedBefore) {
+        String ownedTag = indexState.tagOf(repositoryUrl);
+        if (ownedTag != null)
+            return ownedTag;
+        if (indexState.owner(repositoryName) == null && (indexedBefore || !existingTags.test(repositoryName))
+                && indexState.claim(repositoryName, repositoryUrl).equals(repositoryUrl))
+            return repositoryName;
+        String ragTag = repositoryName + "-" + urlHash.substring(0, 8);
+        String owner = indexState.claim(ragTag, repositoryUrl);
+        if (!owner.equals(repositoryUrl))
+            throw new IllegalStateException("知识库 \"" + ragTag + "\" 已属于代码仓库 " + owner);
+        log.info("知识库 \"{}\" 已被占用, 代码仓库 {} 写入知识库 \"{}\"", repositoryName, repositoryUrl, ragTag);
+        return ragTag;
+    }
+
+    /**
+     * 全量构建结束后, 成功则切换到新版本并删除旧版本, 失败则丢弃新版本
+     */
+    private void publish(String ragTag, String storageTag, boolean succeeded) {
+        String retired = storageTag;
+        if (succeeded) {
+            retired = knowledgeGenerations.swap(ragTag, storageTag);
+            ingestionPipeline.notifyKnowledgeChanged(ragTag);
+            log.info("知识库 {} 已切换到新版本 {}, 正在删除旧版本 {}", ragTag, storageTag, retired);
+        }
+        try {
+            vectorDocumentDeleter.deleteByKnowledge(retired);
+        } catch (RuntimeException e) {
+            log.error("删除知识库版本 {} 失败!", retired, e);
+        }
+    }
+
+    /**
+     * 打开本地已有的克隆并拉取最新提交, 本地不存在时完整克隆
+     */
+    private Git openOrClone(String repositoryUrl, File localRepositoryFile, CredentialsProvider credentialsProvider) throws GitAPIException, IOException {
+        if (new File(localRepositoryFile, Constants.DOT_GIT).isDirectory()) {
+            Git git = Git.open(localRepositoryFile);
+            try {
+                git.fetch()
+                        .setRemoveDeletedRefs(true)
+                        .setCredentialsProvider(credentialsProvider)
+                        .call();
+                String branch = git.getRepository().getBranch();
+                String remoteBranch = Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + branch;
+                // 远程仓库为空时没有可重置到的分支
+                if (git.getRepository().findRef(remoteBranch) != null)
+                    git.reset()
+                            .setMode(ResetCommand.ResetType.HARD)
+                            .setRef(remoteBranch)
+                            .call();
+                log.info("拉取完毕! 仓库 URL: {}, 分支: {}", repositoryUrl, branch);
+                return git;
+            } catch (GitAPIException | RuntimeException e) {
+                git.close();
+                throw e;
+            }
+        }
+        Files.createDirectories(localRepositoryFile.toPath());
+        Git git = Git.cloneRepository()
+                .setURI(repositoryUrl)
+                .setDirectory(localRepositoryFile)
+                .setCredentialsProvider(credentialsProvider)
+                .call();
+        log.info("克隆完毕! 仓库 URL: {}", repositoryUrl);
+        return git;
+    }
+
+    /**
+     * 比较两次提交, 需要导入的文件放入 toIndex, 需要删除旧向量的文件放入 toRemove
+     */
+    private void diff(Repository repository, ObjectId previous, ObjectId head, Set<String> toIndex, Set<String> toRemove) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository);
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            RevCommit previousCommit = revWalk.parseCommit(previous);
+            RevCommit headCommit = revWalk.parseCommit(head);
+            diffFormatter.setRepository(repository);
+            diffFormatter.setDetectRenames(true);
+            for (DiffEntry entry : diffFormatter.scan(previousCommit.getTree(), headCommit.getTree())) {
+                switch (entry.getChangeType()) {
+                    case ADD, COPY -> addIfFile(entry, toIndex);
+                    case MODIFY, RENAME -> {
+                        toRemove.add(entry.getOldPath());
+                        addIfFile(entry, toIndex);
+                    }
+                    case DELETE -> toRemove.add(entry.getOldPath());
+                }
+            }
+        }
+    }
+
+    private void addIfFile(DiffEntry entry, Set<String> toIndex) {
+        if (isFile(entry.getNewMode()))
+            toIndex.add(entry.getNewPath());
+    }
+
+    /**
+     * 只导入普通文件, 跳过子模块 ( gitlink ) 与符号链接
+     */
+    private boolean isFile(FileMode fileMode) {
+        return fileMode == FileMode.REGULAR_FILE || fileMode == FileMode.EXECUTABLE_FILE;
+    }
+
+    /**
+     * 从仓库 URL 中解析仓库名称
+     *
+     * @param repositoryUrl 仓库 URL
+     * @return 仓库名称
+     */
+    public static String getRepositoryName(String repositoryUrl) {
+        String[] uriSplitArray = repositoryUrl.split("/");
+        return uriSplitArray[uriSplitArray.length - 1].replace(".git", "");
+    }
+}
@@ -0,0 +1,322 @@
+package xin.eason.trigger.git;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 并行仓库扫描器. 使用工作窃取线程池按目录 ( 以及目录内的文件分段 ) 拆分任务, 并行完成
+ * glob 过滤, .gitignore 匹配, 大小检查与二进制检测, 输出需要导入知识库的文件 ( 相对仓库根目录的路径 )
+ */
+@Slf4j
+public class RepositoryScanner {
+
+    /**
+     * 单个任务最多检查的文件数, 超出后继续拆分
+     */
+    private static final int FILES_PER_TASK = 32;
+
+    /**
+     * 扫描参数
+     */
+    private final GitIndexOptions options;
+
+    /**
+     * 工作窃取线程池
+     */
+    private final ForkJoinPool pool;
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<PathMatcher> excludedDirectories;
+    private final List<PathMatcher> binaryDocuments;
+
+    public RepositoryScanner(GitIndexOptions options) {
+        this.options = options;
+        this.pool = new ForkJoinPool(Math.max(options.getScanParallelism(), 1));
+        this.includes = matchers(options.getIncludes());
+        this.excludes = matchers(options.getExcludes());
+        this.excludedDirectories = matchers(options.getExcludes().stream()
+                .filter(glob -> glob.endsWith("/**"))
+                .map(glob -> glob.substring(0, glob.length() - 3))
+                .toList());
+        this.binaryDocuments = matchers(options.getBinaryDocuments());
+    }
+
+    /**
+     * 扫描整个工作区
+     *
+     * @param root 仓库根目录
+     * @return 需要导入的文件, 按路径排序
+     */
+    public List<String> scan(Path root) {
+        long start = System.currentTimeMillis();
+        ScanContext context = new ScanContext(root);
+        List<String> files = new ArrayList<>(pool.invoke(new DirectoryTask(context, root)));
+        files.sort(Comparator.naturalOrder());
+        log.info("扫描仓库 {} 完成, 共 {} 个文件需要导入, 耗时 {} ms", root, files.size(), System.currentTimeMillis() - start);
+        return files;
+    }
+
+    /**
+     * 对指定的文件应用与 {@link #scan(Path)} 相同的过滤规则, 用于增量索引时过滤 diff 得到的文件
+     *
+     * @param root  仓库根目录
+     * @param paths 相对仓库根目录的文件路径
+     * @return 需要导入的文件, 按路径排序
+     */
+    public List<String> filter(Path root, Collection<String> paths) {
+        ScanContext context = new ScanContext(root);
+        List<Path> candidates = paths.stream()
+                .map(root::resolve)
+                .filter(file -> !context.isUnderIgnoredDirectory(root.relativize(file)))
+                .toList();
+        List<String> files = new ArrayList<>(pool.invoke(new FileTask(context, candidates)));
+        files.sort(Comparator.naturalOrder());
+        return files;
+    }
+
+    /**
+     * 关闭扫描线程池
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 检查单个文件: glob, .gitignore, 大小, 二进制
+     */
+    private boolean accept(ScanContext context, Path file) {
+        Path relativePath = context.root.relativize(file);
+        if (!includes.isEmpty() && !matches(includes, relativePath))
+            return false;
+        if (matches(excludes, relativePath) || context.isIgnored(relativePath, false))
+            return false;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isRegularFile() || attributes.size() == 0)
+                return false;
+            if (attributes.size() > options.getMaxFileBytes()) {
+                log.debug("跳过超出大小上限的文件: {} ( {} 字节 )", relativePath, attributes.size());
+                return false;
+            }
+            if (!matches(binaryDocuments, relativePath) && isBinary(file)) {
+                log.debug("跳过二进制文件: {}", relativePath);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("读取文件失败, 跳过: {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取文件头, 出现 NUL 字节即视为二进制文件 ( 与 git 的判断方式一致 )
+     */
+    private boolean isBinary(Path file) throws IOException {
+        byte[] buffer = new byte[Math.max(options.getSniffBytes(), 1)];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read = inputStream.readNBytes(buffer, 0, buffer.length);
+            for (int i = 0; i < read; i++)
+                if (buffer[i] == 0)
+                    return true;
+        }
+        return false;
+    }
+
+    private boolean isExcludedDirectory(Path relativePath) {
+        return matches(excludedDirectories, relativePath) || matches(excludes, relativePath);
+    }
+
+    /**
+     * 以任意层级目录前缀开头的 glob ( 例如 **&#47;*.lock ) 额外生成一个去掉该前缀的匹配器, 使其同时匹配仓库根目录下的路径
+     */
+    private static List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            if (glob.startsWith("**/"))
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3)));
+        }
+        return matchers;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relativePath) {
+        for (PathMatcher matcher : matchers)
+            if (matcher.matches(relativePath))
+                return true;
+        return false;
+    }
+
+    /**
+     * 一次扫描的上下文, 缓存各目录解析后的 .gitignore 规则
+     */
+    private class ScanContext {
+
+        private final Path root;
+
+        /**
+         * 相对目录 -> 该目录下的 .gitignore 规则
+         */
+        private final Map<Path, Optional<IgnoreNode>> ignoreNodes = new ConcurrentHashMap<>();
+
+        /**
+         * .git/info/exclude 中的规则, 优先级低于各级 .gitignore
+         */
+        private final IgnoreNode infoExclude;
+
+        private ScanContext(Path root) {
+            this.root = root;
+            this.infoExclude = options.isRespectGitignore()
+                    ? loadIgnoreNode(root.resolve(Constants.DOT_GIT).resolve("info").resolve("exclude")).orElse(null)
+                    : null;
+        }
+
+        /**
+         * 判断路径是否被 .gitignore 忽略: 从最近的目录向上查找第一个命中的规则
+         */
+        private boolean isIgnored(Path relativePath, boolean isDirectory) {
+            if (!options.isRespectGitignore())
+                return false;
+            Path directory = relativePath.getParent();
+            while (true) {
+                Path key = directory == null ? Paths.get("") : directory;
+                Optional<IgnoreNode> node = ignoreNodes.computeIfAbsent(key, dir -> loadIgnoreNode(root.resolve(dir).resolve(Constants.DOT_GIT_IGNORE)));
+                if (node.isPresent()) {
+                    String entryPath = (directory == null ? relativePath : directory.relativize(relativePath)).toString().replace('\\', '/');
+                    Boolean ignored = node.get().checkIgnored(entryPath, isDirectory);
+                    if (ignored != null)
+                        return ignored;
+                }
+                if (directory == null)
+                    break;
+                directory = directory.getParent();
+            }
+            if (infoExclude != null) {
+                Boolean ignored = infoExclude.checkIgnored(relativePath.toString().replace('\\', '/'), isDirectory);
+                return ignored != null && ignored;
+            }
+            return false;
+        }
+
+        /**
+         * 判断文件的任一上级目录是否被排除或忽略 ( 被忽略目录中的文件无法再被重新包含 )
+         */
+        private boolean isUnderIgnoredDirectory(Path relativePath) {
+            for (Path directory = relativePath.getParent(); directory != null; directory = directory.getParent())
+                if (isExcludedDirectory(directory) || isIgnored(directory, true))
+                    return true;
+            return false;
+        }
+
+        private Optional<IgnoreNode> loadIgnoreNode(Path ignoreFile) {
+            if (!Files.isRegularFile(ignoreFile))
+                return Optional.empty();
+            IgnoreNode node = new IgnoreNode();
+            try (InputStream inputStream = Files.newInputStream(ignoreFile)) {
+                node.parse(inputStream);
+                return Optional.of(node);
+            } catch (IOException e) {
+                log.warn("读取忽略规则失败: {}", ignoreFile, e);
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * 目录任务: 为每个子目录派生新的目录任务, 目录内的文件交给文件任务检查
+     */
+    private class DirectoryTask extends RecursiveTask<List<String>> {
+
+        private final ScanContext context;
+        private final Path directory;
+
+        private DirectoryTask(ScanContext context, Path directory) {
+            this.context = context;
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    Path relativePath = context.root.relativize(child);
+                    if (attributes.isDirectory()) {
+                        if (child.getFileName().toString().equals(Constants.DOT_GIT)
+                                || isExcludedDirectory(relativePath) || context.isIgnored(relativePath, true))
+                            continue;
+                        subdirectories.add(new DirectoryTask(context, child));
+                    } else if (attributes.isRegularFile()) {
+                        files.add(child);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("读取目录失败, 跳过: {}", directory, e);
+                return List.of();
+            }
+
+            subdirectories.forEach(ForkJoinTask::fork);
+            List<String> accepted = new ArrayList<>(new FileTask(context, files).compute());
+            for (DirectoryTask subdirectory : subdirectories)
+                accepted.addAll(subdirectory.join());
+            return accepted;
+        }
+    }
+
+    /**
+     * 文件任务: 文件数超过 {@link #FILES_PER_TASK} 时对半拆分, 否则逐个检查
+     */
+    private class FileTask extends RecursiveTask<List<String>> {
+
+        private final ScanContext context;
+        private final List<Path> files;
+
+        private FileTask(ScanContext context, List<Path> files) {
+            this.context = context;
+            this.files = files;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (files.size() > FILES_PER_TASK) {
+                int middle = files.size() / 2;
+                FileTask left = new FileTask(context, files.subList(0, middle));
+                FileTask right = new FileTask(context, files.subList(middle, files.size()));
+                left.fork();
+                List<String> accepted = new ArrayList<>(right.compute());
+                accepted.addAll(left.join());
+                return accepted;
+            }
+            List<String> accepted = new ArrayList<>();
+            for (Path file : files)
+                if (accept(context, file))
+                    accepted.add(context.root.relativize(file).toString().replace('\\', '/'));
+            return accepted;
+        }
+    }
+}
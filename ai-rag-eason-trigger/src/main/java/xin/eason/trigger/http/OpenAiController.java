@@ -4,25 +4,25 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.ChatResponse;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatClient;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.vectorstore.PgVectorStore;
-import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
 import xin.eason.api.IAiService;
+import xin.eason.trigger.metrics.ChatRequestMetrics;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.ContextBuilder;
+import xin.eason.trigger.retrieval.KnowledgeRetriever;
+import xin.eason.trigger.retrieval.SearchMode;
+import xin.eason.trigger.retrieval.SemanticAnswerCache;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -31,15 +31,40 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OpenAiController implements IAiService {
 
+    /**
+     * 请求未指定 topK 时检索的文本块数量. 混合检索由关键词索引召回精确标识符, 不再需要放大 topK
+     */
+    private static final int DEFAULT_TOP_K = 10;
+
     /**
      * OpenAI 的对话客户端
      */
     private final OpenAiChatClient openAiChatClient;
 
     /**
-     * PostgreSQL 向量库
+     * 知识库检索器
+     */
+    private final KnowledgeRetriever knowledgeRetriever;
+
+    /**
+     * 按 token 预算组装知识库上下文
+     */
+    private final ContextBuilder contextBuilder;
+
+    /**
+     * 语义回答缓存
      */
-    private final PgVectorStore pgVectorStore;
+    private final SemanticAnswerCache semanticAnswerCache;
+
+    /**
+     * RAG 指标
+     */
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 执行问题嵌入, 知识库检索与提示词组装等阻塞步骤的调度器
+     */
+    private final Scheduler ragScheduler;
 
     /**
      * 根据消息生成响应结果
@@ -71,30 +96,25 @@ public class OpenAiController implements IAiService {
     /**
      * 根据选定的 知识库Tag 流式生成消息的响应结果
      *
-     * @param model   需要使用的模型
-     * @param ragTag  知识库 Tag
-     * @param message 发送的消息
+     * @param model      需要使用的模型
+     * @param ragTag     知识库 Tag
+     * @param message    发送的消息
+     * @param topK       检索的文本块数量, 为空时使用默认值
+     * @param searchMode 检索方式 ( vector, keyword, hybrid ), 为空时使用配置的默认值
      * @return 返回 Spring AI 对话响应对象 ( 流式传输 )
      */
     @Override
     @GetMapping("/generate_stream_rag")
-    public Flux<ChatResponse> generateStreamWithRag(String model, String ragTag, String message) {
-        String SYSTEM_PROMPT = """
-                Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
-                If unsure, simply state that you don't know.
-                Another thing you need to note is that your reply must be in Chinese!
-                DOCUMENTS:
-                    {documents}
-                """;
-        SearchRequest searchRequest = SearchRequest.query(message).withTopK(31).withFilterExpression("knowledge == '" + ragTag + "'");
-        List<Document> documents = pgVectorStore.similaritySearch(searchRequest);
-        String documentString = documents.stream().map(Document::getContent).collect(Collectors.joining());
-        Message systemMsg = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(Map.of("documents", documentString));
-        Message userMessage = new UserMessage(message);
-
-        List<Message> messageList = new ArrayList<>();
-        messageList.add(systemMsg);
-        messageList.add(userMessage);
-        return openAiChatClient.stream(new Prompt(messageList, OpenAiChatOptions.builder().withModel(model).build()));
+    public Flux<ChatResponse> generateStreamWithRag(String model, String ragTag, String message, Integer topK, String searchMode) {
+        int retrievalTopK = topK == null ? DEFAULT_TOP_K : topK;
+        SearchMode mode = SearchMode.of(searchMode, null);
+        ChatRequestMetrics metrics = ragMetrics.chat("openai", model, ragTag);
+        // 语义相近的问题直接回放缓存的回答, 未命中时检索知识库并调用大模型.
+        // 这些步骤都会阻塞 ( 嵌入的 HTTP 调用, JDBC 检索 ), 推迟到订阅时在 ragScheduler 上执行, 请求线程立即返回
+        return metrics.observe(Flux.defer(() -> semanticAnswerCache.answer(ragTag, "openai:" + model + ":" + retrievalTopK + ":" + mode, message, () -> {
+            List<Document> documents = metrics.time("retrieve", () -> knowledgeRetriever.retrieve(ragTag, message, retrievalTopK, mode, metrics));
+            List<Message> messageList = metrics.time("prompt", () -> contextBuilder.messages(model, documents, message, metrics));
+            return openAiChatClient.stream(new Prompt(messageList, OpenAiChatOptions.builder().withModel(model).build()));
+        })).subscribeOn(ragScheduler));
     }
 }
@@ -1,29 +1,40 @@
 package xin.eason.trigger.http;
 
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.segment.TextSegment;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.redisson.api.RList;
-import org.redisson.api.RedissonClient;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.ollama.OllamaEmbeddingClient;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.vectorstore.PgVectorStore;
-import org.springframework.core.io.PathResource;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 import xin.eason.api.IRagService;
+import xin.eason.api.dto.EmbeddingCacheStatsDTO;
+import xin.eason.api.dto.IngestionJobStatusDTO;
+import xin.eason.api.dto.KnowledgeBaseStatsDTO;
+import xin.eason.api.dto.KnowledgeTagDTO;
 import xin.eason.api.response.Result;
+import xin.eason.trigger.embedding.CachingEmbeddingClient;
+import xin.eason.trigger.git.GitIndexResult;
+import xin.eason.trigger.git.GitRepositoryIndexer;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.ingest.MultipartStreamReader;
+import xin.eason.trigger.knowledge.KnowledgeLifecycle;
+import xin.eason.trigger.knowledge.KnowledgeRegistry;
+import xin.eason.trigger.metrics.RagMetrics;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,24 +46,34 @@ import java.util.List;
 public class RagController implements IRagService {
 
     /**
-     * 文本分割器
+     * 知识库导入流水线
      */
-    private final DocumentSplitter documentSplitter;
+    private final IngestionPipeline ingestionPipeline;
 
     /**
-     * Ollama 嵌入客户端
+     * 带缓存的嵌入客户端
      */
-    private final OllamaEmbeddingClient ollamaEmbeddingClient;
+    private final CachingEmbeddingClient cachingEmbeddingClient;
 
     /**
-     * PG 向量库
+     * Git 仓库增量索引器
      */
-    private final PgVectorStore pgVectorStore;
+    private final GitRepositoryIndexer gitRepositoryIndexer;
 
     /**
-     * Redisson 客户端
+     * RAG 指标
      */
-    private final RedissonClient redissonClient;
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 知识库的删除, 替换与用量统计
+     */
+    private final KnowledgeLifecycle knowledgeLifecycle;
+
+    /**
+     * 知识库 Tag 登记表
+     */
+    private final KnowledgeRegistry knowledgeRegistry;
 
     /**
      * 查询已有的 RAG 知识库的 Tag 标签
@@ -63,54 +84,244 @@ public class RagController implements IRagService {
     @GetMapping("/query_rag_tag_list")
     public Result<List<String>> queryRagTagList() {
         log.info("正在查询现存的 RAG Tag 列表");
-        RList<String> ragTagRList = redissonClient.getList("ragTag");
-        log.info("查询已完成! 结果为: {}", ragTagRList);
-        return Result.success(ragTagRList);
+        List<String> ragTags = knowledgeRegistry.tags();
+        log.info("查询已完成! 结果为: {}", ragTags);
+        return Result.success(ragTags);
     }
 
     /**
-     * 上传 RAG 知识库文件
+     * 查询已有的 RAG 知识库的 Tag 标签及其元数据
+     *
+     * @return 元数据列表
+     */
+    @Override
+    @GetMapping("/query_rag_tag_detail_list")
+    public Result<List<KnowledgeTagDTO>> queryRagTagDetailList() {
+        return Result.success(knowledgeRegistry.list());
+    }
+
+    /**
+     * 上传 RAG 知识库文件, 文件会被暂存后交由后台导入任务异步处理
      *
      * @param ragTag 上传的 RAG 知识库的 Tag 标签
      * @param files  上传的一系列文件, 使用列表封装
-     * @return 上传
+     * @return 导入任务 ID
      */
     @Override
     @PostMapping(path = "file/upload", headers = "content-type=multipart/form-data")
     public Result<String> uploadRagFiles(String ragTag, List<MultipartFile> files) {
         log.info("开始上传知识库文件");
-        for (MultipartFile file : files) {
-            log.info("正在上传 {}...", file.getOriginalFilename());
-            TikaDocumentReader reader = new TikaDocumentReader(file.getResource());
-            List<Document> documents = reader.get();
-            List<dev.langchain4j.data.document.Document> langChainDocuments = new ArrayList<>();
+        List<IngestionSource> sources = spoolFiles(ragTag, files);
+        if (sources == null)
+            return Result.error("暂存上传文件失败!");
+
+        IngestionJob job;
+        try {
+            job = ingestionPipeline.submit(ragTag, sources);
+        } catch (IllegalStateException e) {
+            sources.forEach(source -> FileUtils.deleteQuietly(source.getPath().toFile()));
+            return Result.error(e.getMessage());
+        }
+        knowledgeRegistry.register(ragTag);
+        knowledgeRegistry.recordIngestion(job, 0, null);
+        log.info("上传已完成! 导入任务 ID: {}", job.getId());
+        return Result.success(job.getId());
+    }
+
+    /**
+     * 流式上传 RAG 知识库文件. 请求体不经过 Spring 的 multipart 解析 ( 需开启 spring.servlet.multipart.resolve-lazily ),
+     * 各文件直接经 FileChannel 写入暂存目录, 每个文件接收完毕即加入导入任务开始处理, 内存占用与文件大小和数量无关
+     *
+     * @param request multipart/form-data 请求, ragTag 表单字段需位于文件之前 ( 或放在查询参数中 )
+     * @return 导入任务 ID
+     */
+    @Override
+    @PostMapping(path = "file/upload_stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Result<String> uploadRagFilesStream(HttpServletRequest request) {
+        String boundary = MultipartStreamReader.boundaryOf(request.getContentType());
+        if (boundary == null)
+            return Result.error("请求不是 multipart/form-data 格式!");
+        // 不能调用 request.getParameter, 否则容器会为了读取表单参数而完整解析请求体
+        String ragTag = queryParameter(request, "ragTag");
+        IngestionJob job = null;
+        long start = System.nanoTime();
+        try {
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary);
+            MultipartStreamReader.Part part;
+            while ((part = reader.next()) != null) {
+                if (!part.isFile()) {
+                    if ("ragTag".equals(part.getName()) && job == null)
+                        ragTag = new String(part.getContent().readAllBytes(), StandardCharsets.UTF_8);
+                    continue;
+                }
+                if (ragTag == null || ragTag.isBlank())
+                    return Result.error("ragTag 必须位于文件之前!");
+                if (job == null)
+                    job = ingestionPipeline.open(ragTag);
+                Path spoolFile = ingestionPipeline.createSpoolFile(part.getFilename());
+                try {
+                    spool(part.getContent(), spoolFile);
+                } catch (IOException e) {
+                    FileUtils.deleteQuietly(spoolFile.toFile());
+                    throw e;
+                }
+                ingestionPipeline.add(job, new IngestionSource(part.getFilename(), spoolFile, true));
+            }
+        } catch (IllegalStateException e) {
+            // 知识库正在删除或替换, 创建任务时即被拒绝
+            return Result.error(e.getMessage());
+        } catch (IOException e) {
+            // 已完整接收的文件继续导入
+            log.error("流式接收上传文件失败!", e);
+            return Result.error("接收上传文件失败!" + (job == null ? "" : " 已接收的文件仍在导入, 任务 ID: " + job.getId()));
+        } finally {
+            if (job != null) {
+                knowledgeRegistry.register(ragTag);
+                knowledgeRegistry.recordIngestion(job, 0, null);
+                ingestionPipeline.seal(job);
+            }
+            ragMetrics.ingestStage("spool", ragTag, System.nanoTime() - start);
+        }
+
+        if (job == null)
+            return Result.error("请求中没有文件!");
+        log.info("流式上传已完成! 导入任务 ID: {}", job.getId());
+        return Result.success(job.getId());
+    }
+
+    /**
+     * 查询知识库导入任务的进度
+     *
+     * @param jobId 导入任务 ID
+     * @return 任务整体进度, 吞吐量以及每个文件的处理状态
+     */
+    @Override
+    @GetMapping("/query_ingestion_job")
+    public Result<IngestionJobStatusDTO> queryIngestionJob(String jobId) {
+        IngestionJob job = ingestionPipeline.getJob(jobId);
+        // 任务进度只保存在接收任务的节点上
+        if (job == null)
+            return Result.error("导入任务不存在, 或不是由本节点接收的!");
+        return Result.success(job.toStatus());
+    }
+
+    /**
+     * 查询嵌入缓存的命中统计
+     *
+     * @return 缓存命中统计
+     */
+    @Override
+    @GetMapping("/query_embedding_cache_stats")
+    public Result<EmbeddingCacheStatsDTO> queryEmbeddingCacheStats() {
+        return Result.success(cachingEmbeddingClient.stats());
+    }
 
-            // 将 Spring AI 的 Document 转换为 langChain4j 的 Document
-            for (Document document : documents)
-                langChainDocuments.add(new dev.langchain4j.data.document.Document(document.getContent()));
+    /**
+     * 删除 RAG 知识库的全部内容, 并从 Tag 列表中移除
+     *
+     * @param ragTag 知识库 Tag
+     * @return 删除的文本块数
+     */
+    @Override
+    @PostMapping("/delete_rag_tag")
+    public Result<Integer> deleteRagTag(String ragTag) {
+        if (ragTag == null || ragTag.isBlank())
+            return Result.error("ragTag 不能为空!");
+        int deleted;
+        try {
+            deleted = knowledgeLifecycle.delete(ragTag);
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        }
+        knowledgeRegistry.remove(ragTag);
+        return Result.success(deleted);
+    }
 
-            List<TextSegment> textSegmentList = documentSplitter.splitAll(langChainDocuments);
-            List<Document> splitDocuments = new ArrayList<>();
+    /**
+     * 用上传的文件替换 RAG 知识库的全部内容: 新版本在后台导入, 期间检索仍使用旧版本, 全部文件导入成功后一次切换
+     *
+     * @param ragTag 知识库 Tag
+     * @param files  新版本的全部文件
+     * @return 构建新版本的导入任务 ID
+     */
+    @Override
+    @PostMapping(path = "file/replace", headers = "content-type=multipart/form-data")
+    public Result<String> replaceRagFiles(String ragTag, List<MultipartFile> files) {
+        if (ragTag == null || ragTag.isBlank() || files == null || files.isEmpty())
+            return Result.error("ragTag 与文件都不能为空!");
+        List<IngestionSource> sources = spoolFiles(ragTag, files);
+        if (sources == null)
+            return Result.error("暂存上传文件失败!");
 
-            // 将 DocumentBySentenceSplitter 分片器分片的结果 TextSegment 的列表转换回 Spring AI 的 Document
-            for (TextSegment textSegment : textSegmentList)
-                splitDocuments.add(new Document(textSegment.text()));
+        IngestionJob job;
+        try {
+            job = knowledgeLifecycle.replace(ragTag, sources);
+        } catch (IllegalStateException e) {
+            sources.forEach(source -> FileUtils.deleteQuietly(source.getPath().toFile()));
+            return Result.error(e.getMessage());
+        }
+        knowledgeRegistry.register(ragTag);
+        knowledgeRegistry.recordReplacement(job, null);
+        log.info("知识库 {} 的新版本正在导入, 导入任务 ID: {}", ragTag, job.getId());
+        return Result.success(job.getId());
+    }
 
-            splitDocuments.forEach(document -> document.getMetadata().put("knowledge", ragTag));
-            pgVectorStore.add(splitDocuments);
+    /**
+     * 查询各知识库 ( 及其替换中, 待删除的版本 ) 的文本块数与占用空间
+     *
+     * @return 用量列表
+     */
+    @Override
+    @GetMapping("/query_knowledge_base_stats")
+    public Result<List<KnowledgeBaseStatsDTO>> queryKnowledgeBaseStats() {
+        return Result.success(knowledgeLifecycle.stats());
+    }
 
-            RList<Object> ragTagRList = redissonClient.getList("ragTag");
-            if (ragTagRList.contains(ragTag)) {
-                return Result.error("该 RagTag 已经存在!");
+    /**
+     * 把上传的文件暂存到磁盘. 请求结束后 MultipartFile 即失效, 必须先暂存再交给后台流水线
+     *
+     * @return 暂存的文件, 失败时返回 null ( 已暂存的文件被删除 )
+     */
+    private List<IngestionSource> spoolFiles(String ragTag, List<MultipartFile> files) {
+        List<IngestionSource> sources = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (MultipartFile file : files) {
+                Path spoolFile = ingestionPipeline.createSpoolFile(file.getOriginalFilename());
+                file.transferTo(spoolFile);
+                sources.add(new IngestionSource(file.getOriginalFilename(), spoolFile, true));
             }
-            ragTagRList.add(ragTag);
+        } catch (IOException e) {
+            log.error("暂存上传文件失败!", e);
+            sources.forEach(source -> FileUtils.deleteQuietly(source.getPath().toFile()));
+            return null;
         }
-        log.info("上传已完成!");
-        return Result.success("上传成功!");
+        ragMetrics.ingestStage("spool", ragTag, System.nanoTime() - start);
+        return sources;
     }
 
     /**
-     * 根据传入的仓库 URL 和用户名, Token 克隆 Git 仓库, 然后上传知识库
+     * 使用 FileChannel 把上传内容写入暂存文件, 由 JDK 以直接缓冲区在通道间搬运
+     */
+    private void spool(InputStream content, Path spoolFile) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(content);
+             FileChannel target = FileChannel.open(spoolFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = target.transferFrom(source, position, Long.MAX_VALUE)) > 0)
+                position += transferred;
+        }
+    }
+
+    private String queryParameter(HttpServletRequest request, String name) {
+        if (request.getQueryString() == null)
+            return null;
+        String value = UriComponentsBuilder.newInstance().query(request.getQueryString()).build().getQueryParams().getFirst(name);
+        return value == null ? null : UriUtils.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 根据传入的仓库 URL 和用户名, Token 同步 Git 仓库, 然后增量更新知识库: 只导入新增或修改的文件, 并删除已删除或已修改文件的旧向量
      *
      * @param repositoryUrl 仓库 URL
      * @param userName      用户名
@@ -120,77 +331,31 @@ public class RagController implements IRagService {
     @Override
     @PostMapping("/analyze_git_repository")
     public Result<String> analyseGitRepository(String repositoryUrl, String userName, String token) {
-        String repositoryName = getRepositoryName(repositoryUrl);
-        if (redissonClient.getList("knowledge").contains(repositoryName))
-            return Result.error("代码仓库已存在在知识库中!");
-
-        String tempCloneRepositoryPath = "./temp-clone-repository";
-        File localRepositoryFile = new File(tempCloneRepositoryPath);
+        GitIndexResult indexResult;
         try {
-            log.info("正在清理临时本地仓库文件夹...");
-            FileUtils.deleteDirectory(localRepositoryFile);
-        } catch (IOException e) {
-            log.error("清理本地仓库文件夹错误! 目录位置: {}", localRepositoryFile.toPath().toAbsolutePath().normalize(), e);
-            return Result.error("清理本地仓库文件夹错误! 目录位置: " + localRepositoryFile.getPath());
-        }
-        try (Git git = Git.cloneRepository()
-                .setURI(repositoryUrl)
-                .setDirectory(localRepositoryFile)
-                .setCredentialsProvider(new UsernamePasswordCredentialsProvider(userName, token))
-                .call()) {
-            log.info("克隆完毕! 仓库 URL: {}", repositoryUrl);
+            indexResult = gitRepositoryIndexer.index(repositoryUrl, userName, token);
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
         } catch (GitAPIException e) {
             log.error("连接 GitHub 仓库失败, URL: {}", repositoryUrl, e);
             return Result.error("连接 GitHub 仓库失败, URL: " + repositoryUrl);
-        }
-
-        // 遍历 临时本地仓库文件夹 中的文件, 并上传知识库
-        try {
-            Path gitHandlerPath = Paths.get(tempCloneRepositoryPath).toAbsolutePath().resolve(".git");
-            Files.walkFileTree(Paths.get(localRepositoryFile.toURI()), new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    FileVisitResult originalSuccessResult = super.visitFile(file, attrs);
-                    if (file.startsWith(gitHandlerPath) || file.toString().endsWith(".png") || file.toString().endsWith(".jpg") || file.toString().endsWith(".jpeg") || file.toString().endsWith(".sh"))
-                        return originalSuccessResult;
-                    log.info("正在上传知识库文件 {} ...", file.toAbsolutePath().normalize());
-                    TikaDocumentReader reader = new TikaDocumentReader(new PathResource(file));
-                    List<Document> documentList = reader.get();
-                    List<Document> documents = reader.get();
-                    List<dev.langchain4j.data.document.Document> langChainDocuments = new ArrayList<>();
-
-                    // 将 Spring AI 的 Document 转换为 langChain4j 的 Document
-                    for (Document document : documents)
-                        langChainDocuments.add(new dev.langchain4j.data.document.Document(document.getContent()));
-
-                    List<TextSegment> textSegmentList = documentSplitter.splitAll(langChainDocuments);
-                    List<Document> splitDocumentList = new ArrayList<>();
-
-                    // 将 DocumentBySentenceSplitter 分片器分片的结果 TextSegment 的列表转换回 Spring AI 的 Document
-                    for (TextSegment textSegment : textSegmentList)
-                        splitDocumentList.add(new Document(textSegment.text()));
-
-                    splitDocumentList.forEach(document -> document.getMetadata().put("knowledge", repositoryName));
-                    pgVectorStore.add(splitDocumentList);
-                    return originalSuccessResult;
-                }
-            });
-
-            // 上传完成后上报 Redis
-            RList<String> knowledgeRlist = redissonClient.getList("ragTag");
-            if (knowledgeRlist.contains(repositoryName))
-                return Result.error("代码仓库已存在在知识库中!");
-            knowledgeRlist.add(repositoryName);
-
         } catch (IOException e) {
-            log.error("遍历本地临时文件并上传知识库时出错!", e);
-            return Result.error("遍历本地临时文件并上传知识库时出错!");
+            log.error("读取本地仓库时出错! URL: {}", repositoryUrl, e);
+            return Result.error("读取本地仓库时出错!");
         }
-        return Result.success("代码仓库 \"" + repositoryName + "\" 已经上传到知识库");
-    }
 
-    private String getRepositoryName(String repositoryUrl) {
-        String[] uriSplitArray = repositoryUrl.split("/");
-        return uriSplitArray[uriSplitArray.length - 1].replace(".git", "");
+        String repositoryName = indexResult.getRepositoryName();
+        if (indexResult.getHeadCommit() == null)
+            return Result.success("代码仓库 \"" + repositoryName + "\" 还没有任何提交, 没有需要索引的文件");
+        if (indexResult.getJobId() == null)
+            return Result.success("代码仓库 \"" + repositoryName + "\" 没有新的提交, 知识库 \"" + indexResult.getRagTag() + "\" 已是最新");
+
+        knowledgeRegistry.register(indexResult.getRagTag());
+        IngestionJob job = ingestionPipeline.getJob(indexResult.getJobId());
+        if (job != null && indexResult.isFullIndex())
+            knowledgeRegistry.recordReplacement(job, indexResult.getHeadCommit());
+        else if (job != null)
+            knowledgeRegistry.recordIngestion(job, indexResult.getRemovedChunks(), indexResult.getHeadCommit());
+        return Result.success(indexResult.getJobId());
     }
 }
@@ -0,0 +1,59 @@
+package xin.eason.trigger.ingest;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spring AI 与 langChain4j 的 Document 互相转换
+ */
+public final class DocumentConversions {
+
+    private DocumentConversions() {
+    }
+
+    /**
+     * 将 Spring AI 的 Document 转换为 langChain4j 的 Document
+     *
+     * @param documents Spring AI 的 Document 列表
+     * @return langChain4j 的 Document 列表
+     */
+    public static List<dev.langchain4j.data.document.Document> toLangChain(List<Document> documents) {
+        List<dev.langchain4j.data.document.Document> langChainDocuments = new ArrayList<>(documents.size());
+        for (Document document : documents)
+            langChainDocuments.add(new dev.langchain4j.data.document.Document(document.getContent()));
+        return langChainDocuments;
+    }
+
+    /**
+     * 将分片结果 TextSegment 转换回 Spring AI 的 Document, 并写入知识库 Tag 与来源元数据
+     *
+     * @param segments 分片结果
+     * @param ragTag   知识库 Tag
+     * @param source   来源文件
+     * @return 文本块列表
+     */
+    public static List<Document> toChunks(List<TextSegment> segments, String ragTag, String source) {
+        List<Document> chunks = new ArrayList<>(segments.size());
+        for (TextSegment textSegment : segments)
+            chunks.add(toChunk(textSegment.text(), ragTag, source));
+        return chunks;
+    }
+
+    /**
+     * 将一段文本转换为 Spring AI 的 Document, 并写入知识库 Tag 与来源元数据
+     *
+     * @param text   文本块内容
+     * @param ragTag 知识库 Tag
+     * @param source 来源文件
+     * @return 文本块
+     */
+    public static Document toChunk(String text, String ragTag, String source) {
+        Document chunk = new Document(text);
+        chunk.getMetadata().put("knowledge", ragTag);
+        chunk.getMetadata().put("source", source);
+        return chunk;
+    }
+}
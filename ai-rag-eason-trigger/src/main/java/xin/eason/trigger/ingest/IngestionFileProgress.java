@@ -0,0 +1,126 @@
+package xin.eason.trigger.ingest;
+
+import lombok.Getter;
+import xin.eason.api.dto.IngestionFileStatusDTO;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个文件在导入流水线中的处理进度, 各阶段线程并发更新
+ */
+public class IngestionFileProgress {
+
+    /**
+     * 对应的输入文件
+     */
+    @Getter
+    private final IngestionSource source;
+
+    /**
+     * 当前所处阶段
+     */
+    private volatile IngestionFileState state = IngestionFileState.QUEUED;
+
+    /**
+     * 分片后的文本块总数, 分片完成前为 -1
+     */
+    private volatile int chunkCount = -1;
+
+    /**
+     * 已写入向量库的文本块数量
+     */
+    private final AtomicInteger storedChunks = new AtomicInteger();
+
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    public IngestionFileProgress(IngestionSource source) {
+        this.source = source;
+    }
+
+    public IngestionFileState getState() {
+        return state;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int getStoredChunks() {
+        return storedChunks.get();
+    }
+
+    /**
+     * 进入新的处理阶段, 已结束的文件不会再改变状态
+     *
+     * @param next 新的阶段
+     */
+    synchronized void moveTo(IngestionFileState next) {
+        if (state.isTerminal())
+            return;
+        if (startedAt == 0)
+            startedAt = System.currentTimeMillis();
+        state = next;
+    }
+
+    /**
+     * 记录分片结果, 没有任何文本块 ( 或文本块已全部写入 ) 的文件直接视为处理完成
+     *
+     * @param chunkCount 文本块总数
+     * @return 文件是否因此结束处理
+     */
+    synchronized boolean chunked(int chunkCount) {
+        this.chunkCount = chunkCount;
+        // 流式解析时文本块边分片边写入, 分片结束时可能已经全部写入完成
+        if (storedChunks.get() >= chunkCount && !state.isTerminal()) {
+            finish(IngestionFileState.COMPLETED, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录一批文本块写入完成
+     *
+     * @param count 本批写入的数量
+     * @return 文件是否因此结束处理
+     */
+    synchronized boolean stored(int count) {
+        // 分片尚未结束 ( chunkCount 为 -1 ) 时不能判定完成
+        if (storedChunks.addAndGet(count) >= chunkCount && chunkCount >= 0 && !state.isTerminal()) {
+            finish(IngestionFileState.COMPLETED, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 标记文件处理失败
+     *
+     * @param cause 失败原因
+     * @return 文件是否因此结束处理 ( 已结束的文件返回 false )
+     */
+    synchronized boolean fail(Throwable cause) {
+        if (state.isTerminal())
+            return false;
+        finish(IngestionFileState.FAILED, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        return true;
+    }
+
+    private void finish(IngestionFileState terminal, String error) {
+        if (startedAt == 0)
+            startedAt = System.currentTimeMillis();
+        this.state = terminal;
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 对外展示的文件进度
+     */
+    public IngestionFileStatusDTO toStatus() {
+        long elapsed = startedAt == 0 ? 0 : (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+        return new IngestionFileStatusDTO(source.getName(), state.name(), Math.max(chunkCount, 0), storedChunks.get(), elapsed, error);
+    }
+}
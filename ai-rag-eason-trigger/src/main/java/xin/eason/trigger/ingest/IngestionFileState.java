@@ -0,0 +1,21 @@
+package xin.eason.trigger.ingest;
+
+/**
+ * 导入文件在流水线中所处的阶段
+ */
+public enum IngestionFileState {
+    QUEUED,
+    PARSING,
+    SPLITTING,
+    EMBEDDING,
+    STORING,
+    COMPLETED,
+    FAILED;
+
+    /**
+     * @return 是否已经处理结束 ( 成功或失败 )
+     */
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
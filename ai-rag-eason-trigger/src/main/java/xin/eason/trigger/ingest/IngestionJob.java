@@ -0,0 +1,249 @@
+package xin.eason.trigger.ingest;
+
+import lombok.Getter;
+import xin.eason.api.dto.IngestionFileStatusDTO;
+import xin.eason.api.dto.IngestionJobStatusDTO;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 一次知识库导入任务, 包含若干文件的处理进度. 任务状态只保存在接收该任务的节点的内存中 ( 见 {@link IngestionPipeline#getJob} ),
+ * 多节点部署时须在提交任务的节点上查询进度, 节点重启后进度丢失; 已写入的文本块不受影响.
+ * 结束后的状态为 COMPLETED ( 全部成功 ), PARTIAL ( 部分文件失败 ) 或 FAILED ( 全部文件失败或发布失败 )
+ */
+public class IngestionJob {
+
+    /**
+     * 任务 ID
+     */
+    @Getter
+    private final String id;
+
+    /**
+     * 写入的知识库 Tag
+     */
+    @Getter
+    private final String ragTag;
+
+    /**
+     * 文本块实际写入的 Tag ( 文本块元数据中的 knowledge ). 通常与 ragTag 相同, 替换知识库时为新版本的 Tag
+     */
+    @Getter
+    private final String storageTag;
+
+    /**
+     * 各文件的处理进度
+     */
+    @Getter
+    private final List<IngestionFileProgress> files;
+
+    /**
+     * 任务创建时间
+     */
+    @Getter
+    private final long createdAt = System.currentTimeMillis();
+
+    private final AtomicInteger remainingFiles;
+
+    /**
+     * 是否已停止接收新文件. 流式上传的任务边接收边处理, 请求结束后才封闭
+     */
+    private volatile boolean sealed;
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final AtomicLong totalChunks = new AtomicLong();
+    private final AtomicLong storedChunks = new AtomicLong();
+    private volatile long finishedAt;
+
+    /**
+     * 任务结束 ( 所有文件处理成功或失败 ) 时完成的 Future
+     */
+    private final CompletableFuture<IngestionJob> completion = new CompletableFuture<>();
+
+    /**
+     * 全部文件处理结束后, 任务完成前执行的发布步骤 ( 批量导入时把暂存的文本块并入向量库 ), 为 null 时直接完成
+     */
+    private volatile Function<IngestionJob, CompletableFuture<Void>> publisher;
+
+    /**
+     * 发布步骤的失败原因
+     */
+    private volatile Throwable publishFailure;
+
+    public IngestionJob(String id, String ragTag, List<IngestionSource> sources) {
+        this(id, ragTag, ragTag, sources);
+    }
+
+    /**
+     * 创建文本块写入指定 Tag 的任务
+     *
+     * @param id         任务 ID
+     * @param ragTag     知识库 Tag
+     * @param storageTag 文本块实际写入的 Tag
+     * @param sources    输入文件列表
+     */
+    public IngestionJob(String id, String ragTag, String storageTag, List<IngestionSource> sources) {
+        this.id = id;
+        this.ragTag = ragTag;
+        this.storageTag = storageTag;
+        this.files = new CopyOnWriteArrayList<>(sources.stream().map(IngestionFileProgress::new).toList());
+        this.remainingFiles = new AtomicInteger(files.size());
+        this.sealed = true;
+        if (files.isEmpty())
+            finish();
+    }
+
+    /**
+     * 创建一个尚未封闭的空任务, 文件通过 {@link #addFile(IngestionSource)} 陆续加入, 调用 {@link #seal()} 后才可能结束
+     *
+     * @param id     任务 ID
+     * @param ragTag 知识库 Tag
+     */
+    public IngestionJob(String id, String ragTag) {
+        this(id, ragTag, ragTag);
+    }
+
+    /**
+     * 创建文本块写入指定 Tag 的未封闭任务
+     *
+     * @param id         任务 ID
+     * @param ragTag     知识库 Tag
+     * @param storageTag 文本块实际写入的 Tag
+     */
+    public IngestionJob(String id, String ragTag, String storageTag) {
+        this.id = id;
+        this.ragTag = ragTag;
+        this.storageTag = storageTag;
+        this.files = new CopyOnWriteArrayList<>();
+        // 多出的一个计数在封闭时释放, 保证接收期间任务不会因已有文件全部处理完而提前结束
+        this.remainingFiles = new AtomicInteger(1);
+    }
+
+    /**
+     * 向未封闭的任务加入一个文件
+     *
+     * @param source 输入文件
+     * @return 文件的处理进度
+     */
+    synchronized IngestionFileProgress addFile(IngestionSource source) {
+        if (sealed)
+            throw new IllegalStateException("导入任务 " + id + " 已封闭, 不能再加入文件");
+        IngestionFileProgress file = new IngestionFileProgress(source);
+        remainingFiles.incrementAndGet();
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * 封闭任务, 不再接收新文件; 已加入的文件全部处理结束后任务完成
+     */
+    synchronized void seal() {
+        if (sealed)
+            return;
+        sealed = true;
+        if (remainingFiles.decrementAndGet() == 0)
+            finish();
+    }
+
+    /**
+     * 设置任务完成前执行的发布步骤, 须在任务结束之前调用
+     *
+     * @param publisher 发布步骤, 返回的 Future 结束后任务才完成
+     */
+    void publishWith(Function<IngestionJob, CompletableFuture<Void>> publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * @return 任务结束时完成的 Future, 可用于注册后续处理
+     */
+    public CompletableFuture<IngestionJob> completion() {
+        return completion;
+    }
+
+    public boolean isFinished() {
+        return completion.isDone();
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void chunked(int count) {
+        totalChunks.addAndGet(count);
+    }
+
+    void stored(int count) {
+        storedChunks.addAndGet(count);
+    }
+
+    /**
+     * 某个文件处理结束时调用, 最后一个文件结束时任务完成
+     *
+     * @param file 结束处理的文件
+     */
+    void fileFinished(IngestionFileProgress file) {
+        if (file.getState() == IngestionFileState.FAILED)
+            failedFiles.incrementAndGet();
+        if (remainingFiles.decrementAndGet() == 0)
+            finish();
+    }
+
+    private void finish() {
+        Function<IngestionJob, CompletableFuture<Void>> publish = publisher;
+        if (publish == null) {
+            complete();
+            return;
+        }
+        publish.apply(this).whenComplete((ignored, e) -> {
+            publishFailure = e;
+            complete();
+        });
+    }
+
+    private void complete() {
+        finishedAt = System.currentTimeMillis();
+        completion.complete(this);
+    }
+
+    /**
+     * @return 任务是否已结束且全部文件处理成功
+     */
+    public boolean isSucceeded() {
+        return "COMPLETED".equals(status(completedFiles(), failedFiles.get()));
+    }
+
+    /**
+     * @return 对外展示的任务进度与吞吐量
+     */
+    public IngestionJobStatusDTO toStatus() {
+        long elapsed = (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - createdAt;
+        double seconds = Math.max(elapsed, 1) / 1000.0;
+        int failed = failedFiles.get();
+        int completed = completedFiles();
+        String status = status(completed, failed);
+        List<IngestionFileStatusDTO> fileStatus = files.stream().map(IngestionFileProgress::toStatus).toList();
+        return new IngestionJobStatusDTO(id, ragTag, status, files.size(), completed, failed,
+                totalChunks.get(), storedChunks.get(), elapsed,
+                (completed + failed) / seconds, storedChunks.get() / seconds, fileStatus);
+    }
+
+    private int completedFiles() {
+        return files.size() - (remainingFiles.get() - (sealed ? 0 : 1)) - failedFiles.get();
+    }
+
+    /**
+     * 部分文件失败时为 PARTIAL, 不能报告为 COMPLETED 掩盖失败的文件
+     */
+    private String status(int completed, int failed) {
+        if (!isFinished())
+            return "RUNNING";
+        if (publishFailure != null || failed > 0 && completed == 0)
+            return "FAILED";
+        return failed > 0 ? "PARTIAL" : "COMPLETED";
+    }
+}
@@ -0,0 +1,59 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 知识库导入流水线参数, 由 spring.ai.rag.ingest 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionOptions {
+    /**
+     * 解析阶段 ( Tika ) 线程数
+     */
+    private int parseThreads = 2;
+    /**
+     * 分片阶段线程数
+     */
+    private int splitThreads = 2;
+    /**
+     * 嵌入阶段线程数
+     */
+    private int embedThreads = 4;
+    /**
+     * 存储阶段线程数
+     */
+    private int storeThreads = 2;
+    /**
+     * 每个阶段最多可积压的任务数, 超出后上游阶段阻塞等待, 以此限制内存占用
+     */
+    private int stageCapacity = 16;
+    /**
+     * 嵌入阶段每批处理的文本块数量
+     */
+    private int embedBatchSize = 32;
+    /**
+     * 不小于该字节数的文件走流式解析: Tika 边解析边分片, 文本块按批次交给嵌入阶段, 内存占用与文件大小无关.
+     * 设为 0 则所有文件都走流式解析
+     */
+    private long streamingThresholdBytes = 16L * 1024 * 1024;
+    /**
+     * 流式解析的文本块最大字符数, 与 DocumentSplitter Bean 的参数保持一致
+     */
+    private int chunkSize = 1000;
+    /**
+     * 流式解析的相邻文本块最大重叠字符数, 与 DocumentSplitter Bean 的参数保持一致
+     */
+    private int chunkOverlap = 200;
+    /**
+     * 上传文件的暂存目录
+     */
+    private String spoolDirectory = "./temp-upload-spool";
+    /**
+     * 内存中最多保留的导入任务数, 超出后淘汰最早结束的任务
+     */
+    private int jobRetention = 200;
+}
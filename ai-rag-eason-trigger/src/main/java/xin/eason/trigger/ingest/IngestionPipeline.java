@@ -0,0 +1,631 @@
+package xin.eason.trigger.ingest;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.PathResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.CachedDocument;
+import xin.eason.trigger.vectorstore.VectorBulkLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * 知识库导入流水线. 文件依次经过 解析 -> 分片 -> 嵌入 -> 存储 四个有界阶段,
+ * 每个阶段拥有独立的线程池, 因此不同文件 ( 以及同一文件的不同批次 ) 可以在各阶段之间重叠执行.
+ * 使用工作队列时, 分片后的文本块批次投递到多个节点共享的队列, 由各节点的 {@link IngestionWorkers} 嵌入与存储, 本节点只负责解析, 分片与汇总进度
+ */
+@Slf4j
+public class IngestionPipeline {
+
+    /**
+     * 流水线参数
+     */
+    private final IngestionOptions options;
+
+    /**
+     * 文本分割器
+     */
+    private final DocumentSplitter documentSplitter;
+
+    /**
+     * 嵌入客户端, 嵌入阶段批量计算向量
+     */
+    private final EmbeddingClient embeddingClient;
+
+    /**
+     * 向量库, 存储阶段写入已携带向量的文本块
+     */
+    private final VectorStore vectorStore;
+
+    /**
+     * RAG 指标, 记录各阶段耗时与每个文件的文本块数
+     */
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 阶段工作线程的类型与嵌入, 存储调用的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    /**
+     * 流式解析使用的 Tika 解析器, 线程安全
+     */
+    private final AutoDetectParser streamingParser = new AutoDetectParser();
+
+    /**
+     * 上传文件暂存目录
+     */
+    @Getter
+    private final Path spoolDirectory;
+
+    /**
+     * 负责把任务中的文件逐个投递到解析阶段的单线程调度器
+     */
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rag-ingest-dispatch-"));
+
+    /**
+     * 执行批量导入发布 ( 并入向量表与重建索引 ) 的单线程执行器, 各任务的发布依次进行
+     */
+    private final ExecutorService publisher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rag-ingest-publish-"));
+
+    /**
+     * 向量库的批量导入通道, 为 null 时存储阶段逐批调用 {@link VectorStore#add(List)}
+     */
+    private volatile VectorBulkLoader bulkLoader;
+
+    /**
+     * 任务 ID -> 进行中的批量导入
+     */
+    private final Map<String, VectorBulkLoader.Load> bulkLoads = new ConcurrentHashMap<>();
+
+    /**
+     * 知识库 Tag -> 文本块实际写入的 Tag, 知识库被替换过时两者不同
+     */
+    private volatile UnaryOperator<String> storageTags = UnaryOperator.identity();
+
+    /**
+     * 多个节点共享的导入工作队列, 为 null 时文本块批次在本节点的嵌入, 存储阶段处理
+     */
+    private volatile IngestionWorkQueue workQueue;
+
+    /**
+     * 已投递到工作队列, 尚未收到结果的工作项 ID -> 所属任务与文件
+     */
+    private final Map<String, RemoteBatch> remoteBatches = new ConcurrentHashMap<>();
+
+    /**
+     * 读取工作队列回报的处理结果并更新任务进度的单线程协调器
+     */
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rag-ingest-coordinate-"));
+
+    private final IngestionStage parseStage;
+    private final IngestionStage splitStage;
+    private final IngestionStage embedStage;
+    private final IngestionStage storeStage;
+
+    /**
+     * 任务 ID -> 导入任务
+     */
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 知识库内容变更监听器, 导入任务结束后回调
+     */
+    private final List<KnowledgeChangeListener> knowledgeChangeListeners = new CopyOnWriteArrayList<>();
+
+    public IngestionPipeline(IngestionOptions options, DocumentSplitter documentSplitter, EmbeddingClient embeddingClient, VectorStore vectorStore, RagMetrics ragMetrics) {
+        this(options, documentSplitter, embeddingClient, vectorStore, ragMetrics, BlockingExecution.platform());
+    }
+
+    public IngestionPipeline(IngestionOptions options, DocumentSplitter documentSplitter, EmbeddingClient embeddingClient, VectorStore vectorStore,
+                             RagMetrics ragMetrics, BlockingExecution blockingExecution) {
+        this.options = options;
+        this.documentSplitter = documentSplitter;
+        this.embeddingClient = embeddingClient;
+        this.vectorStore = vectorStore;
+        this.ragMetrics = ragMetrics;
+        this.blockingExecution = blockingExecution;
+        this.parseStage = stage("parse", options.getParseThreads());
+        this.splitStage = stage("split", options.getSplitThreads());
+        this.embedStage = stage("embed", options.getEmbedThreads());
+        this.storeStage = stage("store", options.getStoreThreads());
+        this.spoolDirectory = Paths.get(options.getSpoolDirectory()).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(spoolDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建上传文件暂存目录失败: " + spoolDirectory, e);
+        }
+    }
+
+    /**
+     * 在暂存目录中创建一个新的空文件, 用于保存上传的文件内容
+     *
+     * @param originalFilename 原始文件名, 保留其扩展名
+     * @return 暂存文件路径
+     * @throws IOException 创建文件失败
+     */
+    public Path createSpoolFile(String originalFilename) throws IOException {
+        String suffix = originalFilename == null ? "" : "-" + Paths.get(originalFilename).getFileName().toString();
+        return Files.createTempFile(spoolDirectory, "upload-", suffix);
+    }
+
+    /**
+     * 提交导入任务, 立即返回, 文件在后台流水线中处理
+     *
+     * @param ragTag  知识库 Tag
+     * @param sources 输入文件列表
+     * @return 导入任务
+     * @throws IllegalStateException 知识库当前不接受导入 ( 例如正在删除或替换 )
+     */
+    public IngestionJob submit(String ragTag, List<IngestionSource> sources) {
+        return submit(ragTag, storageTags.apply(ragTag), sources);
+    }
+
+    /**
+     * 提交文本块写入指定 Tag 的导入任务, 用于在后台构建知识库的新版本
+     *
+     * @param ragTag     知识库 Tag
+     * @param storageTag 文本块实际写入的 Tag
+     * @param sources    输入文件列表
+     * @return 导入任务
+     */
+    public IngestionJob submit(String ragTag, String storageTag, List<IngestionSource> sources) {
+        IngestionJob job = register(new IngestionJob(UUID.randomUUID().toString(), ragTag, storageTag, sources));
+        log.info("已创建导入任务 {}, 知识库: {} ( 写入 {} ), 文件数: {}", job.getId(), ragTag, storageTag, sources.size());
+        dispatcher.execute(() -> {
+            for (IngestionFileProgress file : job.getFiles())
+                submitTo(parseStage, job, file, () -> parse(job, file));
+        });
+        return job;
+    }
+
+    /**
+     * 创建一个边接收边处理的导入任务, 用于流式上传: 每个文件接收完毕即调用 {@link #add(IngestionJob, IngestionSource)} 开始处理,
+     * 全部接收后调用 {@link #seal(IngestionJob)}
+     *
+     * @param ragTag 知识库 Tag
+     * @return 未封闭的导入任务
+     * @throws IllegalStateException 知识库当前不接受导入 ( 例如正在删除或替换 )
+     */
+    public IngestionJob open(String ragTag) {
+        IngestionJob job = register(new IngestionJob(UUID.randomUUID().toString(), ragTag, storageTags.apply(ragTag)));
+        log.info("已创建流式导入任务 {}, 知识库: {}", job.getId(), ragTag);
+        return job;
+    }
+
+    /**
+     * 向未封闭的导入任务加入一个文件, 立即进入解析阶段
+     *
+     * @param job    由 {@link #open(String)} 创建的任务
+     * @param source 输入文件
+     */
+    public void add(IngestionJob job, IngestionSource source) {
+        IngestionFileProgress file = job.addFile(source);
+        dispatcher.execute(() -> submitTo(parseStage, job, file, () -> parse(job, file)));
+    }
+
+    /**
+     * 封闭导入任务, 不再加入文件
+     *
+     * @param job 由 {@link #open(String)} 创建的任务
+     */
+    public void seal(IngestionJob job) {
+        job.seal();
+        log.info("流式导入任务 {} 已接收全部文件, 文件数: {}", job.getId(), job.getFiles().size());
+    }
+
+    private IngestionJob register(IngestionJob job) {
+        jobs.put(job.getId(), job);
+        evictFinishedJobs();
+        VectorBulkLoader loader = bulkLoader;
+        if (loader != null && !job.isFinished()) {
+            VectorBulkLoader.Load load = loader.begin(job.getId());
+            bulkLoads.put(job.getId(), load);
+            job.publishWith(finished -> CompletableFuture.runAsync(() -> publish(finished, load), publisher));
+        }
+        job.completion().thenAccept(finished -> {
+            remoteBatches.values().removeIf(batch -> batch.job() == finished);
+            log.info("导入任务 {} 已结束, 状态: {}", finished.getId(), finished.toStatus().getStatus());
+            notifyKnowledgeChanged(finished.getRagTag());
+        });
+        return job;
+    }
+
+    /**
+     * 之后创建的导入任务改由批量导入通道写入向量库, 任务的全部文件处理结束后统一发布
+     *
+     * @param bulkLoader 批量导入通道
+     */
+    public void useBulkLoader(VectorBulkLoader bulkLoader) {
+        this.bulkLoader = bulkLoader;
+    }
+
+    /**
+     * 之后分片的文本块批次 ( 不使用批量导入通道的任务 ) 投递到工作队列, 并开始读取回报给本节点的处理结果
+     *
+     * @param workQueue 多个节点共享的导入工作队列
+     */
+    public void useWorkQueue(IngestionWorkQueue workQueue) {
+        this.workQueue = workQueue;
+        coordinator.execute(() -> collectResults(workQueue));
+    }
+
+    /**
+     * 设置知识库 Tag 到文本块实际写入的 Tag 的解析方式, 之后创建的导入任务按其写入; 解析方式抛出 {@link IllegalStateException} 时拒绝创建任务
+     *
+     * @param resolver 解析方式
+     */
+    public void resolveStorageTagsWith(UnaryOperator<String> resolver) {
+        this.storageTags = resolver;
+    }
+
+    /**
+     * 注册知识库内容变更监听器
+     *
+     * @param listener 监听器
+     */
+    public void addKnowledgeChangeListener(KnowledgeChangeListener listener) {
+        knowledgeChangeListeners.add(listener);
+    }
+
+    /**
+     * 通知所有监听器知识库内容已变化. 除导入任务结束外, 直接删除向量的调用方也应调用此方法
+     *
+     * @param ragTag 发生变化的知识库 Tag
+     */
+    public void notifyKnowledgeChanged(String ragTag) {
+        for (KnowledgeChangeListener listener : knowledgeChangeListeners) {
+            try {
+                listener.onKnowledgeChanged(ragTag);
+            } catch (Exception e) {
+                log.warn("知识库 {} 变更通知处理失败", ragTag, e);
+            }
+        }
+    }
+
+    /**
+     * 根据任务 ID 查询导入任务
+     *
+     * @param jobId 任务 ID
+     * @return 导入任务, 不存在 ( 或已被淘汰, 或由其他节点接收 ) 时返回 null
+     */
+    public IngestionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 解析阶段: 使用 Tika 读取文件内容, 大文件改走流式解析
+     */
+    private void parse(IngestionJob job, IngestionFileProgress file) {
+        if (file.getState().isTerminal())
+            return;
+        file.moveTo(IngestionFileState.PARSING);
+        IngestionSource source = file.getSource();
+        if (isStreaming(source)) {
+            parseStreaming(job, file);
+            return;
+        }
+        List<Document> documents;
+        long start = System.nanoTime();
+        try {
+            documents = new TikaDocumentReader(new PathResource(source.getPath())).get();
+            ragMetrics.ingestStage("parse", job.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(job, file, e);
+            return;
+        } finally {
+            if (source.isTemporary())
+                deleteQuietly(source.getPath());
+        }
+        submitTo(splitStage, job, file, () -> split(job, file, documents));
+    }
+
+    /**
+     * 流式解析: Tika 把文本推给 {@link StreamingChunker}, 每凑满一批文本块就投递到嵌入阶段, 不经过分片阶段.
+     * 嵌入阶段已满时解析线程阻塞, 因此一个文件在内存中最多只有 ( 阶段容量 + 1 ) 批文本块
+     */
+    private void parseStreaming(IngestionJob job, IngestionFileProgress file) {
+        IngestionSource source = file.getSource();
+        int batchSize = Math.max(options.getEmbedBatchSize(), 1);
+        List<Document> batch = new ArrayList<>(batchSize);
+        StreamingChunker chunker = new StreamingChunker(options.getChunkSize(), options.getChunkOverlap(), text -> {
+            if (file.getState().isTerminal())
+                throw new IllegalStateException("文件已终止处理");
+            batch.add(DocumentConversions.toChunk(text, job.getStorageTag(), source.getName()));
+            if (batch.size() >= batchSize) {
+                dispatchBatch(job, file, new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        long start = System.nanoTime();
+        try (InputStream inputStream = TikaInputStream.get(source.getPath())) {
+            streamingParser.parse(inputStream, new BodyContentHandler(chunker), new Metadata(), new ParseContext());
+            chunker.finish();
+            ragMetrics.ingestStage("stream", job.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(job, file, e);
+            return;
+        } finally {
+            if (source.isTemporary())
+                deleteQuietly(source.getPath());
+        }
+
+        if (!batch.isEmpty())
+            dispatchBatch(job, file, new ArrayList<>(batch));
+        if (file.chunked(chunker.getChunks()))
+            fileFinished(job, file);
+    }
+
+    private void dispatchBatch(IngestionJob job, IngestionFileProgress file, List<Document> batch) {
+        job.chunked(batch.size());
+        dispatch(job, file, batch);
+    }
+
+    /**
+     * 把一批文本块交给嵌入阶段, 使用工作队列时投递到队列
+     */
+    private void dispatch(IngestionJob job, IngestionFileProgress file, List<Document> batch) {
+        IngestionWorkQueue queue = workQueue;
+        if (queue == null || bulkLoads.containsKey(job.getId())) {
+            submitTo(embedStage, job, file, () -> embed(job, file, batch));
+            return;
+        }
+        file.moveTo(IngestionFileState.EMBEDDING);
+        IngestionWorkItem item = new IngestionWorkItem(UUID.randomUUID().toString(), job.getId(), queue.node(), job.getRagTag(), 0,
+                batch.stream().map(CachedDocument::from).toList());
+        remoteBatches.put(item.getId(), new RemoteBatch(job, file));
+        try {
+            blockingExecution.run(Downstream.REDIS, () -> queue.offer(item));
+        } catch (Exception e) {
+            remoteBatches.remove(item.getId());
+            fail(job, file, e);
+        }
+    }
+
+    /**
+     * 协调器: 持续读取回报给本节点的处理结果, 按工作项 ID 找到所属文件并更新进度, 重复回报的结果被忽略.
+     * 从已下线节点接管的结果没有对应的任务, 其文本块已写入向量库, 只通知知识库变化
+     */
+    private void collectResults(IngestionWorkQueue queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Set<String> orphanedTags = new HashSet<>();
+                for (IngestionWorkResult result : queue.results()) {
+                    RemoteBatch batch = remoteBatches.remove(result.getItemId());
+                    if (batch == null) {
+                        if (!queue.node().equals(result.getNode()) && result.getError() == null && result.getRagTag() != null)
+                            orphanedTags.add(result.getRagTag());
+                        continue;
+                    }
+                    if (result.getError() != null) {
+                        fail(batch.job(), batch.file(), new IllegalStateException(result.getError()));
+                        continue;
+                    }
+                    batch.job().stored(result.getStored());
+                    if (batch.file().stored(result.getStored()))
+                        fileFinished(batch.job(), batch.file());
+                }
+                for (String ragTag : orphanedTags) {
+                    log.warn("已接管下线节点导入知识库 {} 的结果, 其导入任务已丢失", ragTag);
+                    notifyKnowledgeChanged(ragTag);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("读取导入工作队列的处理结果失败, 稍后重试", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean isStreaming(IngestionSource source) {
+        try {
+            return Files.size(source.getPath()) >= options.getStreamingThresholdBytes();
+        } catch (IOException e) {
+            // 读取大小失败时交给普通路径, 由其报告错误
+            return false;
+        }
+    }
+
+    /**
+     * 分片阶段: 使用 langchain4j 的分割器切分文本, 并按批次投递到嵌入阶段
+     */
+    private void split(IngestionJob job, IngestionFileProgress file, List<Document> documents) {
+        if (file.getState().isTerminal())
+            return;
+        file.moveTo(IngestionFileState.SPLITTING);
+        List<Document> chunks;
+        long start = System.nanoTime();
+        try {
+            List<TextSegment> segments = documentSplitter.splitAll(DocumentConversions.toLangChain(documents));
+            chunks = DocumentConversions.toChunks(segments, job.getStorageTag(), file.getSource().getName());
+            ragMetrics.ingestStage("split", job.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(job, file, e);
+            return;
+        }
+
+        job.chunked(chunks.size());
+        if (file.chunked(chunks.size())) {
+            fileFinished(job, file);
+            return;
+        }
+        int batchSize = Math.max(options.getEmbedBatchSize(), 1);
+        for (int from = 0; from < chunks.size(); from += batchSize) {
+            List<Document> batch = new ArrayList<>(chunks.subList(from, Math.min(from + batchSize, chunks.size())));
+            dispatch(job, file, batch);
+        }
+    }
+
+    /**
+     * 嵌入阶段: 一次请求计算一批文本块的向量, 并写回 Document
+     */
+    private void embed(IngestionJob job, IngestionFileProgress file, List<Document> batch) {
+        if (file.getState().isTerminal())
+            return;
+        file.moveTo(IngestionFileState.EMBEDDING);
+        long start = System.nanoTime();
+        try {
+            List<List<Double>> embeddings = blockingExecution.call(Downstream.EMBEDDING,
+                    () -> embeddingClient.embed(batch.stream().map(Document::getContent).toList()));
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).setEmbedding(embeddings.get(i));
+            ragMetrics.ingestStage("embed", job.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(job, file, e);
+            return;
+        }
+        submitTo(storeStage, job, file, () -> store(job, file, batch));
+    }
+
+    /**
+     * 存储阶段: 将已携带向量的文本块写入向量库
+     */
+    private void store(IngestionJob job, IngestionFileProgress file, List<Document> batch) {
+        if (file.getState().isTerminal())
+            return;
+        file.moveTo(IngestionFileState.STORING);
+        long start = System.nanoTime();
+        try {
+            VectorBulkLoader.Load load = bulkLoads.get(job.getId());
+            if (load != null)
+                blockingExecution.run(Downstream.VECTOR_STORE, () -> load.add(batch));
+            else
+                blockingExecution.run(Downstream.VECTOR_STORE, () -> vectorStore.add(batch));
+            ragMetrics.ingestStage("store", job.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(job, file, e);
+            return;
+        }
+        job.stored(batch.size());
+        if (file.stored(batch.size()))
+            fileFinished(job, file);
+    }
+
+    /**
+     * 发布阶段: 任务的全部文件处理结束后, 使批量导入的文本块对检索可见. 失败时丢弃暂存的文本块, 任务标记为失败
+     */
+    private void publish(IngestionJob job, VectorBulkLoader.Load load) {
+        bulkLoads.remove(job.getId());
+        long start = System.nanoTime();
+        try {
+            blockingExecution.run(Downstream.VECTOR_STORE, load::publish);
+            ragMetrics.ingestStage("publish", job.getRagTag(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            log.error("导入任务 {} 发布批量导入的文本块失败!", job.getId(), e);
+            try {
+                load.abort();
+            } catch (RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private IngestionStage stage(String name, int threads) {
+        return new IngestionStage(name, threads, options.getStageCapacity(), blockingExecution.executor("rag-ingest-" + name + "-", threads));
+    }
+
+    /**
+     * 向指定阶段提交任务, 阶段已满时阻塞当前线程, 提交失败则将文件标记为失败
+     */
+    private void submitTo(IngestionStage stage, IngestionJob job, IngestionFileProgress file, Runnable task) {
+        try {
+            stage.submit(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, file, e);
+        } catch (RejectedExecutionException e) {
+            fail(job, file, new IllegalStateException("导入流水线 " + stage.getName() + " 阶段已关闭", e));
+        }
+    }
+
+    private void fail(IngestionJob job, IngestionFileProgress file, Throwable cause) {
+        log.error("导入任务 {} 处理文件 {} 失败!", job.getId(), file.getSource().getName(), cause);
+        if (file.fail(cause))
+            fileFinished(job, file);
+    }
+
+    private void fileFinished(IngestionJob job, IngestionFileProgress file) {
+        ragMetrics.ingestFile(job.getRagTag(), file.getState() == IngestionFileState.COMPLETED, file.getChunkCount());
+        job.fileFinished(file);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除暂存文件失败: {}", path, e);
+        }
+    }
+
+    /**
+     * 任务数超过保留上限时, 淘汰最早结束的任务
+     */
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - options.getJobRetention();
+        if (excess <= 0)
+            return;
+        jobs.values().stream()
+                .filter(IngestionJob::isFinished)
+                .sorted(Comparator.comparingLong(IngestionJob::getFinishedAt))
+                .limit(excess)
+                .forEach(job -> jobs.remove(job.getId()));
+    }
+
+    /**
+     * 已投递到工作队列的一批文本块所属的任务与文件
+     */
+    private record RemoteBatch(IngestionJob job, IngestionFileProgress file) {
+    }
+
+    /**
+     * 关闭流水线的所有线程池
+     */
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        publisher.shutdownNow();
+        coordinator.shutdownNow();
+        parseStage.shutdown();
+        splitStage.shutdown();
+        embedStage.shutdown();
+        storeStage.shutdown();
+    }
+}
@@ -0,0 +1,39 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 分布式导入工作队列参数, 由 spring.ai.rag.work-queue 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionQueueOptions {
+    /**
+     * 是否把文本块批次投递到 Redis 工作队列, 由所有节点的工作线程共同嵌入与存储
+     */
+    private boolean enabled = false;
+    /**
+     * 每个节点消费工作队列的线程数, 每个线程阻塞读取时占用一个 Redis 连接
+     */
+    private int workerThreads = 2;
+    /**
+     * 每个线程一次读取的最多工作项数
+     */
+    private int batchesPerPoll = 1;
+    /**
+     * 阻塞读取工作项 ( 与任务结果 ) 的最长等待毫秒数
+     */
+    private long pollTimeoutMillis = 1000;
+    /**
+     * 工作项被读取后超过该毫秒数仍未确认 ( 节点宕机或处理卡死 ), 由其他工作线程重新领取;
+     * 节点的协调线程超过该毫秒数没有读取结果时视为已下线, 其未处理的结果由其他节点接管
+     */
+    private long visibilityTimeoutMillis = 300000;
+    /**
+     * 工作项最多处理次数 ( 含首次 ), 用尽后该批次所属的文件标记为失败
+     */
+    private int maxAttempts = 3;
+}
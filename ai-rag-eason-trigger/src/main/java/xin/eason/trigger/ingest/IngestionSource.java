@@ -0,0 +1,26 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * 导入任务的单个输入文件
+ */
+@Data
+@AllArgsConstructor
+public class IngestionSource {
+    /**
+     * 文件名称, 写入文本块元数据的 source 字段
+     */
+    private String name;
+    /**
+     * 文件在本地磁盘上的路径
+     */
+    private Path path;
+    /**
+     * 是否为暂存文件, 暂存文件在解析完成后删除
+     */
+    private boolean temporary;
+}
@@ -0,0 +1,63 @@
+package xin.eason.trigger.ingest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 导入流水线中的一个有界阶段, 最多容纳 capacity 个 ( 排队 + 执行中 ) 任务, 阶段已满时提交方阻塞, 从而把下游的处理速度反压到上游.
+ * 平台线程时由固定数量的工作线程执行; 虚拟线程时每个任务一个虚拟线程, 同时执行的任务数即阶段容量, 对下游的并发由 {@link xin.eason.trigger.concurrent.BlockingExecution} 的许可限制
+ */
+class IngestionStage {
+
+    /**
+     * 阶段名称
+     */
+    private final String name;
+
+    /**
+     * 阶段执行器
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 阶段容量许可
+     */
+    private final Semaphore permits;
+
+    IngestionStage(String name, int threads, int capacity, ExecutorService executor) {
+        this.name = name;
+        this.executor = executor;
+        this.permits = new Semaphore(Math.max(capacity, threads));
+    }
+
+    /**
+     * 提交任务, 阶段已满时阻塞直到有空位
+     *
+     * @param task 任务
+     * @throws InterruptedException 等待空位时被中断
+     */
+    void submit(Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,41 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import xin.eason.trigger.retrieval.CachedDocument;
+
+import java.util.List;
+
+/**
+ * 分布式导入工作项: 一批已分片, 尚未嵌入的文本块, 由任一节点嵌入并写入向量库
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionWorkItem {
+    /**
+     * 工作项 ID, 协调节点据此去重处理结果
+     */
+    private String id;
+    /**
+     * 所属导入任务 ID
+     */
+    private String jobId;
+    /**
+     * 任务所在 ( 接收处理结果 ) 的节点
+     */
+    private String node;
+    /**
+     * 知识库 Tag, 用于指标
+     */
+    private String ragTag;
+    /**
+     * 已失败的处理次数
+     */
+    private int attempts;
+    /**
+     * 文本块, 元数据中已带有文本块 Tag 与来源文件
+     */
+    private List<CachedDocument> chunks;
+}
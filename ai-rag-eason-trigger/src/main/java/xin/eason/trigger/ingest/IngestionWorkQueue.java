@@ -0,0 +1,64 @@
+package xin.eason.trigger.ingest;
+
+import java.util.List;
+
+/**
+ * 多个节点共享的导入工作队列. 工作项被领取后在确认前对其他消费者不可见, 超过可见性超时仍未确认则可被重新领取;
+ * 处理结果经各节点独立的结果队列回报给任务所在节点, 节点下线后其未处理的结果由其他节点接管
+ */
+public interface IngestionWorkQueue {
+
+    /**
+     * @return 当前节点的标识, 投递的工作项的结果回报到此节点
+     */
+    String node();
+
+    /**
+     * 投递工作项
+     *
+     * @param item 工作项
+     */
+    void offer(IngestionWorkItem item);
+
+    /**
+     * 领取工作项, 优先领取超过可见性超时仍未确认的工作项, 没有可领取的工作项时阻塞等待一段时间
+     *
+     * @param consumer 消费者名称
+     * @return 领取到的工作项, 可能为空
+     * @throws InterruptedException 等待时被中断
+     */
+    List<Delivery> take(String consumer) throws InterruptedException;
+
+    /**
+     * 确认工作项已处理完毕, 不再重新投递
+     *
+     * @param delivery 领取到的工作项
+     */
+    void ack(Delivery delivery);
+
+    /**
+     * 回报工作项的处理结果
+     *
+     * @param result 处理结果
+     */
+    void report(IngestionWorkResult result);
+
+    /**
+     * 读取回报给当前节点的处理结果, 没有结果时阻塞等待一段时间. 上一次返回的结果在再次调用时才确认, 调用方须先处理完上一批;
+     * 返回的结果也可能来自已下线的节点 ( {@link IngestionWorkResult#getNode()} 不是当前节点 ), 其任务已随该节点丢失
+     *
+     * @return 处理结果, 可能为空
+     * @throws InterruptedException 等待时被中断
+     */
+    List<IngestionWorkResult> results() throws InterruptedException;
+
+    /**
+     * 领取到的工作项
+     *
+     * @param receipt  确认时使用的凭据
+     * @param item     工作项
+     * @param attempts 本次领取前已失败的处理次数, 包含处理中宕机 ( 超时未确认 ) 的次数
+     */
+    record Delivery(String receipt, IngestionWorkItem item, int attempts) {
+    }
+}
@@ -0,0 +1,38 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 工作项的处理结果, 回报给任务所在节点
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionWorkResult {
+    /**
+     * 工作项 ID
+     */
+    private String itemId;
+    /**
+     * 所属导入任务 ID
+     */
+    private String jobId;
+    /**
+     * 任务所在节点
+     */
+    private String node;
+    /**
+     * 知识库 Tag, 任务所在节点下线后接管结果的节点据此通知知识库变化
+     */
+    private String ragTag;
+    /**
+     * 写入向量库的文本块数
+     */
+    private int stored;
+    /**
+     * 失败原因, 成功时为 null
+     */
+    private String error;
+}
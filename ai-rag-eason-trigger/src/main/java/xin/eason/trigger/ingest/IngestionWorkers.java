@@ -0,0 +1,181 @@
+package xin.eason.trigger.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.VectorStore;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.metrics.RagMetrics;
+import xin.eason.trigger.retrieval.CachedDocument;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导入工作队列的消费者. 每个节点启动若干工作线程, 领取任一节点投递的文本块批次, 嵌入后写入共享的向量库并回报结果;
+ * 处理失败的工作项以递增的失败次数重新投递, 次数用尽后回报失败
+ */
+@Slf4j
+public class IngestionWorkers {
+
+    /**
+     * 导入工作队列
+     */
+    private final IngestionWorkQueue workQueue;
+
+    /**
+     * 嵌入客户端
+     */
+    private final EmbeddingClient embeddingClient;
+
+    /**
+     * 共享的向量库
+     */
+    private final VectorStore vectorStore;
+
+    /**
+     * RAG 指标
+     */
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 工作线程类型与嵌入, 存储调用的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    /**
+     * 工作队列参数
+     */
+    private final IngestionQueueOptions options;
+
+    /**
+     * 工作线程
+     */
+    private final ExecutorService workers;
+
+    /**
+     * 当前节点处理成功的工作项数
+     */
+    private final AtomicLong processed = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public IngestionWorkers(IngestionWorkQueue workQueue, EmbeddingClient embeddingClient, VectorStore vectorStore, RagMetrics ragMetrics,
+                            BlockingExecution blockingExecution, IngestionQueueOptions options) {
+        this.workQueue = workQueue;
+        this.embeddingClient = embeddingClient;
+        this.vectorStore = vectorStore;
+        this.ragMetrics = ragMetrics;
+        this.blockingExecution = blockingExecution;
+        this.options = options;
+        int threads = Math.max(options.getWorkerThreads(), 1);
+        this.workers = Executors.newFixedThreadPool(threads, blockingExecution.threadFactory("rag-ingest-worker-"));
+        for (int i = 0; i < threads; i++) {
+            String consumer = workQueue.node() + "-" + i;
+            workers.execute(() -> consume(consumer));
+        }
+    }
+
+    /**
+     * @return 当前节点处理成功的工作项数
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    private void consume(String consumer) {
+        while (running) {
+            List<IngestionWorkQueue.Delivery> deliveries;
+            try {
+                deliveries = workQueue.take(consumer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                if (!running)
+                    return;
+                log.warn("领取导入工作项失败, 稍后重试", e);
+                if (!pause())
+                    return;
+                continue;
+            }
+            for (IngestionWorkQueue.Delivery delivery : deliveries) {
+                try {
+                    process(delivery);
+                } catch (RuntimeException e) {
+                    // 未确认的工作项在可见性超时后被重新领取
+                    log.warn("回报导入工作项 {} 的结果失败", delivery.item().getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 嵌入并写入一个工作项, 回报结果后确认. 回报或确认之前宕机时工作项被重新领取, 文本块 ID 不变, 重复写入覆盖原有记录
+     */
+    private void process(IngestionWorkQueue.Delivery delivery) {
+        IngestionWorkItem item = delivery.item();
+        if (delivery.attempts() >= options.getMaxAttempts()) {
+            workQueue.report(new IngestionWorkResult(item.getId(), item.getJobId(), item.getNode(), item.getRagTag(), 0,
+                    "工作项处理 " + delivery.attempts() + " 次后仍未完成"));
+            workQueue.ack(delivery);
+            return;
+        }
+
+        List<Document> batch = item.getChunks().stream().map(CachedDocument::toDocument).toList();
+        try {
+            long start = System.nanoTime();
+            List<List<Double>> embeddings = blockingExecution.call(Downstream.EMBEDDING,
+                    () -> embeddingClient.embed(batch.stream().map(Document::getContent).toList()));
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).setEmbedding(embeddings.get(i));
+            ragMetrics.ingestStage("embed", item.getRagTag(), System.nanoTime() - start);
+            start = System.nanoTime();
+            blockingExecution.run(Downstream.VECTOR_STORE, () -> vectorStore.add(batch));
+            ragMetrics.ingestStage("store", item.getRagTag(), System.nanoTime() - start);
+        } catch (Exception e) {
+            int attempts = delivery.attempts() + 1;
+            if (attempts < options.getMaxAttempts()) {
+                log.warn("导入工作项 {} 第 {} 次处理失败, 重新投递", item.getId(), attempts, e);
+                item.setAttempts(attempts);
+                workQueue.offer(item);
+            } else {
+                log.error("导入工作项 {} 处理 {} 次均失败!", item.getId(), attempts, e);
+                workQueue.report(new IngestionWorkResult(item.getId(), item.getJobId(), item.getNode(), item.getRagTag(), 0,
+                        e.getClass().getSimpleName() + ": " + e.getMessage()));
+            }
+            workQueue.ack(delivery);
+            return;
+        }
+        workQueue.report(new IngestionWorkResult(item.getId(), item.getJobId(), item.getNode(), item.getRagTag(), batch.size(), null));
+        workQueue.ack(delivery);
+        processed.incrementAndGet();
+    }
+
+    /**
+     * 队列不可用时暂停一个读取周期, 避免空转
+     *
+     * @return 是否仍在运行
+     */
+    private boolean pause() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(options.getPollTimeoutMillis());
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 停止领取工作项并关闭工作线程, 处理中的工作项在可见性超时后由其他节点重新领取
+     */
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+    }
+}
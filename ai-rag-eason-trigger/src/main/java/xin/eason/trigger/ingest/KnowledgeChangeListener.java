@@ -0,0 +1,15 @@
+package xin.eason.trigger.ingest;
+
+/**
+ * 知识库内容变更监听器, 在某个知识库 Tag 的向量被写入或删除后回调
+ */
+@FunctionalInterface
+public interface KnowledgeChangeListener {
+
+    /**
+     * 知识库内容发生变化
+     *
+     * @param ragTag 发生变化的知识库 Tag
+     */
+    void onKnowledgeChanged(String ragTag);
+}
@@ -0,0 +1,278 @@
+package xin.eason.trigger.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 流式 multipart/form-data 解析器: 直接从请求体中逐个读出各部分, 每部分的内容以 {@link InputStream} 的形式边读边交给调用方,
+ * 不在内存或临时文件中缓冲整个请求. 内存占用只有一个固定大小的读缓冲
+ */
+public class MultipartStreamReader {
+
+    /**
+     * 单个部分的头部最大字节数
+     */
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream in;
+
+    /**
+     * 部分之间的分隔符: CRLF -- boundary
+     */
+    private final byte[] delimiter;
+
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * 当前正在读取的部分, 读取下一部分前会跳过其剩余内容
+     */
+    private PartInputStream current;
+
+    private boolean finished;
+
+    /**
+     * @param in       请求体
+     * @param boundary Content-Type 中的 boundary 参数
+     */
+    public MultipartStreamReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(64 * 1024, delimiter.length * 4)];
+        // 请求体以 --boundary 开头, 前面补一个 CRLF 后即可与后续分隔符统一处理
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * 从 Content-Type 中取出 boundary 参数
+     *
+     * @param contentType 请求的 Content-Type
+     * @return boundary, 不是 multipart/form-data 请求时返回 null
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data"))
+            return null;
+        String boundary = parameters(contentType).get("boundary");
+        return boundary == null || boundary.isEmpty() ? null : boundary;
+    }
+
+    /**
+     * 读取下一个部分. 返回的部分内容必须在下一次调用前读取 ( 未读完的内容会被跳过 )
+     *
+     * @return 下一个部分, 没有更多部分时返回 null
+     * @throws IOException 读取失败或请求体格式错误
+     */
+    public Part next() throws IOException {
+        if (finished)
+            return null;
+        if (current == null) {
+            skipPreamble();
+        } else {
+            current.skipRemaining();
+        }
+        // 分隔符之后: "--" 表示结束, 否则是 CRLF 与头部
+        if (!ensure(2))
+            throw new IOException("multipart 请求体意外结束");
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        Map<String, String> headers = readHeaders();
+        Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+        current = new PartInputStream();
+        return new Part(disposition.get("name"), disposition.get("filename"), headers.get("content-type"), current);
+    }
+
+    private void skipPreamble() throws IOException {
+        new PartInputStream().skipRemaining();
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        // 跳过分隔符所在行的剩余部分 ( 通常只有 CRLF )
+        readLine();
+        Map<String, String> headers = new HashMap<>();
+        int total = 0;
+        while (true) {
+            String line = readLine();
+            total += line.length();
+            if (total > MAX_HEADER_BYTES)
+                throw new IOException("multipart 头部过长");
+            if (line.isEmpty())
+                return headers;
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensure(1))
+                throw new IOException("multipart 请求体意外结束");
+            byte b = buffer[position++];
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            if (line.size() > MAX_HEADER_BYTES)
+                throw new IOException("multipart 头部过长");
+            line.write(b);
+        }
+    }
+
+    /**
+     * 确保缓冲中至少有 count 个未读字节
+     *
+     * @return 请求体已结束且不足 count 个字节时返回 false
+     */
+    private boolean ensure(int count) throws IOException {
+        while (limit - position < count) {
+            if (eof)
+                return false;
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                eof = true;
+            else
+                limit += read;
+        }
+        return true;
+    }
+
+    /**
+     * 在缓冲的未读部分中查找分隔符
+     *
+     * @return 分隔符的起始位置, 未找到时返回 -1
+     */
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        outer:
+        for (int i = position; i <= limit - delimiter.length; i++) {
+            if (buffer[i] != first)
+                continue;
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parameters(String header) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String token : header.split(";")) {
+            int equals = token.indexOf('=');
+            if (equals <= 0)
+                continue;
+            String value = token.substring(equals + 1).trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+                value = value.substring(1, value.length() - 1);
+            parameters.put(token.substring(0, equals).trim().toLowerCase(Locale.ROOT), value);
+        }
+        return parameters;
+    }
+
+    /**
+     * multipart 请求中的一个部分
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Part {
+        /**
+         * 表单字段名
+         */
+        private final String name;
+        /**
+         * 文件名, 普通表单字段为 null
+         */
+        private final String filename;
+        /**
+         * 内容类型, 未声明时为 null
+         */
+        private final String contentType;
+        /**
+         * 部分内容, 读到下一个分隔符为止
+         */
+        private final InputStream content;
+
+        /**
+         * @return 是否为文件
+         */
+        public boolean isFile() {
+            return filename != null;
+        }
+    }
+
+    /**
+     * 读取当前部分内容的输入流, 遇到分隔符时结束
+     */
+    private class PartInputStream extends InputStream {
+
+        private boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (closed)
+                return -1;
+            if (length == 0)
+                return 0;
+            while (true) {
+                ensure(delimiter.length);
+                int index = indexOfDelimiter();
+                if (index == position) {
+                    position += delimiter.length;
+                    closed = true;
+                    return -1;
+                }
+                // 未找到分隔符时, 缓冲末尾可能是分隔符的前半部分, 保留到下次读取
+                int available = index >= 0 ? index - position : limit - position - (delimiter.length - 1);
+                if (available > 0) {
+                    int count = Math.min(length, available);
+                    System.arraycopy(buffer, position, target, offset, count);
+                    position += count;
+                    return count;
+                }
+                if (!ensure(limit - position + 1))
+                    throw new IOException("multipart 请求体意外结束");
+            }
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] skip = new byte[8192];
+            while (read(skip, 0, skip.length) >= 0) {
+                // 丢弃
+            }
+        }
+
+        @Override
+        public void close() {
+            // 由 MultipartStreamReader 统一管理请求体, 关闭单个部分不关闭底层流
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package xin.eason.trigger.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.AutoClaimResult;
+import org.redisson.api.PendingEntry;
+import org.redisson.api.RSet;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis Stream 消费者组的导入工作队列. 所有节点的工作线程属于同一个消费者组, 每条工作项只投递给一个消费者;
+ * 已投递未确认的工作项留在组的待确认列表 ( PEL ) 中, 空闲时间超过可见性超时后由其他消费者以 XCLAIM 领取, PEL 中的投递次数计入失败次数.
+ * 处理结果写入任务所在节点的结果 Stream, 由该节点的协调线程以消费者组读取, 处理完后确认.
+ * 协调线程每次读取时刷新节点心跳; 心跳超过可见性超时未刷新的节点视为已下线, 其结果 Stream 中未确认的结果由其他节点以 XAUTOCLAIM 接管,
+ * 尚未读取的结果也一并读取, 取完后删除该 Stream
+ */
+@Slf4j
+public class RedisIngestionWorkQueue implements IngestionWorkQueue {
+
+    private static final String WORK_STREAM = "ragIngestWork";
+    private static final String WORKER_GROUP = "rag-ingest-workers";
+    private static final String RESULT_STREAM_PREFIX = "ragIngestResultStream:";
+    private static final String RESULT_GROUP = "rag-ingest-coordinator";
+    private static final String COORDINATORS = "ragIngestCoordinators";
+    private static final String HEARTBEAT_PREFIX = "ragIngestCoordinator:";
+    private static final String ITEM_FIELD = "item";
+    private static final String RESULT_FIELD = "result";
+
+    /**
+     * 一次最多读取的处理结果数
+     */
+    private static final int RESULT_DRAIN_LIMIT = 256;
+
+    /**
+     * 结果 Stream 的过期时间, 节点下线且没有节点接管时其结果 Stream 不会一直留在 Redis 中
+     */
+    private static final Duration RESULT_TTL = Duration.ofDays(1);
+
+    /**
+     * Redisson 客户端
+     */
+    private final RedissonClient redissonClient;
+
+    /**
+     * 工作队列参数
+     */
+    private final IngestionQueueOptions options;
+
+    /**
+     * 当前节点的标识
+     */
+    private final String node;
+
+    /**
+     * 工作项 Stream, 值为 JSON 序列化的工作项
+     */
+    private final RStream<String, String> stream;
+
+    /**
+     * 回报给当前节点的处理结果
+     */
+    private final RStream<String, String> results;
+
+    /**
+     * 所有协调节点的标识, 用于发现已下线的节点
+     */
+    private final RSet<String> coordinators;
+
+    /**
+     * 上一次 {@link #results()} 返回的结果, 结果 Stream 名称 -> 条目 ID, 下一次读取时确认
+     */
+    private final Map<String, List<StreamMessageId>> unacknowledged = new HashMap<>();
+
+    /**
+     * 下一次检查已下线节点的时间 ( System.nanoTime )
+     */
+    private long nextTakeoverNanos;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RedisIngestionWorkQueue(RedissonClient redissonClient, IngestionQueueOptions options) {
+        this.redissonClient = redissonClient;
+        this.options = options;
+        this.node = ManagementFactory.getRuntimeMXBean().getName() + "#" + UUID.randomUUID().toString().substring(0, 8);
+        this.stream = redissonClient.getStream(WORK_STREAM, StringCodec.INSTANCE);
+        this.results = redissonClient.getStream(RESULT_STREAM_PREFIX + node, StringCodec.INSTANCE);
+        this.coordinators = redissonClient.getSet(COORDINATORS, StringCodec.INSTANCE);
+        createGroup(stream, StreamCreateGroupArgs.name(WORKER_GROUP).makeStream());
+        joinCoordinators();
+        this.nextTakeoverNanos = System.nanoTime();
+        log.info("已加入导入工作队列, 节点: {}", node);
+    }
+
+    @Override
+    public String node() {
+        return node;
+    }
+
+    @Override
+    public void offer(IngestionWorkItem item) {
+        stream.add(StreamAddArgs.entry(ITEM_FIELD, write(item)));
+    }
+
+    @Override
+    public List<Delivery> take(String consumer) throws InterruptedException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException();
+        List<Delivery> deliveries = reclaim(consumer);
+        int remaining = options.getBatchesPerPoll() - deliveries.size();
+        if (remaining <= 0)
+            return deliveries;
+        Map<StreamMessageId, Map<String, String>> messages = stream.readGroup(WORKER_GROUP, consumer,
+                StreamReadGroupArgs.neverDelivered().count(remaining).timeout(Duration.ofMillis(options.getPollTimeoutMillis())));
+        if (messages != null)
+            messages.forEach((id, fields) -> addDelivery(deliveries, id, fields, 0));
+        return deliveries;
+    }
+
+    @Override
+    public void ack(Delivery delivery) {
+        String[] parts = delivery.receipt().split("-");
+        StreamMessageId id = new StreamMessageId(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        stream.ack(WORKER_GROUP, id);
+        stream.remove(id);
+    }
+
+    @Override
+    public void report(IngestionWorkResult result) {
+        RStream<String, String> queue = redissonClient.getStream(RESULT_STREAM_PREFIX + result.getNode(), StringCodec.INSTANCE);
+        queue.add(StreamAddArgs.entry(RESULT_FIELD, write(result)));
+        queue.expire(RESULT_TTL);
+    }
+
+    @Override
+    public List<IngestionWorkResult> results() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException();
+        acknowledgeResults();
+        heartbeat();
+        List<IngestionWorkResult> drained = new ArrayList<>();
+        if (System.nanoTime() - nextTakeoverNanos >= 0) {
+            takeOver(drained);
+            nextTakeoverNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(options.getVisibilityTimeoutMillis() / 2, 1));
+            if (!drained.isEmpty())
+                return drained;
+        }
+        Map<StreamMessageId, Map<String, String>> messages;
+        try {
+            messages = results.readGroup(RESULT_GROUP, node,
+                    StreamReadGroupArgs.neverDelivered().count(RESULT_DRAIN_LIMIT).timeout(Duration.ofMillis(options.getPollTimeoutMillis())));
+        } catch (RedisException e) {
+            // 心跳曾中断超过可见性超时 ( 例如长时间停顿 ), 结果 Stream 已被其他节点接管并删除, 重新加入
+            if (!isNoGroup(e))
+                throw e;
+            log.warn("节点 {} 的导入结果曾被其他节点接管, 重新加入协调节点列表", node);
+            joinCoordinators();
+            return drained;
+        }
+        addResults(drained, results, messages);
+        return drained;
+    }
+
+    /**
+     * 创建本节点的结果 Stream 与消费者组, 刷新心跳并加入协调节点列表
+     */
+    private void joinCoordinators() {
+        createGroup(results, resultGroup());
+        heartbeat();
+        coordinators.add(node);
+    }
+
+    /**
+     * 确认上一次返回的结果: 协调线程处理完一批结果后才会再次读取, 处理前宕机的结果留在待确认列表中, 由其他节点接管
+     */
+    private void acknowledgeResults() {
+        unacknowledged.forEach((name, ids) -> {
+            RStream<String, String> queue = redissonClient.getStream(name, StringCodec.INSTANCE);
+            StreamMessageId[] acknowledged = ids.toArray(new StreamMessageId[0]);
+            queue.ack(RESULT_GROUP, acknowledged);
+            queue.remove(acknowledged);
+        });
+        unacknowledged.clear();
+    }
+
+    /**
+     * 刷新当前节点的心跳, 超过可见性超时未刷新时其他节点接管本节点的结果
+     */
+    private void heartbeat() {
+        redissonClient.getBucket(HEARTBEAT_PREFIX + node, StringCodec.INSTANCE).set(node, Duration.ofMillis(options.getVisibilityTimeoutMillis()));
+    }
+
+    /**
+     * 接管已下线节点的结果: 以 XAUTOCLAIM 领取其协调线程读取后未确认 ( 空闲超过可见性超时 ) 的结果, 再读取尚未投递的结果.
+     * 领取后空闲时间重新计算, 多个节点同时接管时每条结果只由一个节点领取; 结果 Stream 取空后删除并移出协调节点列表
+     */
+    private void takeOver(List<IngestionWorkResult> drained) {
+        for (String other : coordinators.readAll()) {
+            if (other.equals(node) || redissonClient.getBucket(HEARTBEAT_PREFIX + other, StringCodec.INSTANCE).isExists())
+                continue;
+            RStream<String, String> orphaned = redissonClient.getStream(RESULT_STREAM_PREFIX + other, StringCodec.INSTANCE);
+            if (orphaned.size() == 0) {
+                orphaned.delete();
+                coordinators.remove(other);
+                log.info("已下线节点 {} 的导入结果已全部接管", other);
+                continue;
+            }
+            int before = drained.size();
+            try {
+                AutoClaimResult<String, String> claimed = orphaned.autoClaim(RESULT_GROUP, node, options.getVisibilityTimeoutMillis(),
+                        TimeUnit.MILLISECONDS, StreamMessageId.MIN, RESULT_DRAIN_LIMIT);
+                addResults(drained, orphaned, claimed.getMessages());
+                addResults(drained, orphaned, orphaned.readGroup(RESULT_GROUP, node, StreamReadGroupArgs.neverDelivered().count(RESULT_DRAIN_LIMIT)));
+            } catch (RedisException e) {
+                // 消费者组不存在: 该 Stream 在接管并删除后才由迟到的结果重新写入, 下一轮从头读取
+                if (!isNoGroup(e))
+                    throw e;
+                createGroup(orphaned, resultGroup());
+            }
+            if (drained.size() > before)
+                log.warn("节点 {} 已下线, 接管其 {} 条导入结果", other, drained.size() - before);
+        }
+    }
+
+    /**
+     * 解析读取到的结果并记录待确认的条目, 内容损坏的条目丢弃, 下一次读取时一并确认
+     */
+    private void addResults(List<IngestionWorkResult> drained, RStream<String, String> queue, Map<StreamMessageId, Map<String, String>> messages) {
+        if (messages == null || messages.isEmpty())
+            return;
+        List<StreamMessageId> ids = unacknowledged.computeIfAbsent(queue.getName(), name -> new ArrayList<>());
+        messages.forEach((id, fields) -> {
+            ids.add(id);
+            String json = fields == null ? null : fields.get(RESULT_FIELD);
+            try {
+                if (json != null)
+                    drained.add(read(json, IngestionWorkResult.class));
+            } catch (UncheckedIOException e) {
+                log.error("导入结果 {} 内容无法解析, 已丢弃", id, e);
+            }
+        });
+    }
+
+    /**
+     * 结果 Stream 的消费者组从头读取, 创建之前已写入的结果也会被读到
+     */
+    private static StreamCreateGroupArgs resultGroup() {
+        return StreamCreateGroupArgs.name(RESULT_GROUP).id(StreamMessageId.ALL).makeStream();
+    }
+
+    /**
+     * 创建消费者组 ( 同时创建 Stream ), 已存在时忽略
+     */
+    private static void createGroup(RStream<String, String> target, StreamCreateGroupArgs group) {
+        try {
+            target.createGroup(group);
+        } catch (RedisException e) {
+            // 其他节点已创建消费者组
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP"))
+                throw e;
+        }
+    }
+
+    private static boolean isNoGroup(RedisException e) {
+        return e.getMessage() != null && e.getMessage().contains("NOGROUP");
+    }
+
+    /**
+     * 领取空闲时间超过可见性超时的工作项. XCLAIM 只领取仍然超时的条目, 多个消费者同时领取时每条只有一个成功
+     */
+    private List<Delivery> reclaim(String consumer) {
+        List<Delivery> deliveries = new ArrayList<>();
+        long visibilityTimeout = options.getVisibilityTimeoutMillis();
+        List<PendingEntry> expired = stream.listPending(WORKER_GROUP, StreamMessageId.MIN, StreamMessageId.MAX,
+                visibilityTimeout, TimeUnit.MILLISECONDS, options.getBatchesPerPoll());
+        if (expired.isEmpty())
+            return deliveries;
+
+        Map<StreamMessageId, Long> deliveryCounts = new HashMap<>();
+        for (PendingEntry entry : expired)
+            deliveryCounts.put(entry.getId(), entry.getLastTimeDelivered());
+        Map<StreamMessageId, Map<String, String>> claimed = stream.claim(WORKER_GROUP, consumer, visibilityTimeout, TimeUnit.MILLISECONDS,
+                deliveryCounts.keySet().toArray(new StreamMessageId[0]));
+        claimed.forEach((id, fields) -> {
+            log.warn("工作项 {} 超过 {} 毫秒未确认, 由 {} 重新领取", id, visibilityTimeout, consumer);
+            addDelivery(deliveries, id, fields, deliveryCounts.getOrDefault(id, 1L).intValue());
+        });
+        return deliveries;
+    }
+
+    /**
+     * 解析工作项, 内容损坏 ( 或已被删除 ) 的条目直接确认丢弃
+     */
+    private void addDelivery(List<Delivery> deliveries, StreamMessageId id, Map<String, String> fields, int unacknowledged) {
+        String json = fields == null ? null : fields.get(ITEM_FIELD);
+        IngestionWorkItem item = null;
+        try {
+            if (json != null)
+                item = read(json, IngestionWorkItem.class);
+        } catch (UncheckedIOException e) {
+            log.error("工作项 {} 内容无法解析, 已丢弃", id, e);
+        }
+        if (item == null) {
+            stream.ack(WORKER_GROUP, id);
+            stream.remove(id);
+            return;
+        }
+        deliveries.add(new Delivery(id.toString(), item, item.getAttempts() + unacknowledged));
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package xin.eason.trigger.ingest;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * 流式分片器: 作为 Tika 的 SAX {@link org.xml.sax.ContentHandler} 接收解析出的文本, 边解析边按句子组装文本块,
+ * 每凑满一个文本块立即交给下游, 因此内存占用只与文本块大小有关, 与文件大小无关.
+ * <p>
+ * 组装规则与 {@link dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter} 一致:
+ * 文本块由完整的句子组成, 不超过 maxChunkSize 个字符; 相邻文本块之间重叠不超过 maxOverlapSize 个字符的整句;
+ * 超长的句子按单词 ( 没有空白时按字符 ) 切开. 句子以 . ! ? 。 ！ ？ 结尾或以空行分隔, 句内的连续空白折叠为一个空格
+ */
+public class StreamingChunker extends DefaultHandler {
+
+    private final int maxChunkSize;
+    private final int maxOverlapSize;
+
+    /**
+     * 文本块的接收方, 可以阻塞 ( 例如下游阶段已满 ), 从而把反压传递给解析线程
+     */
+    private final Consumer<String> sink;
+
+    /**
+     * 尚未组成完整句子的文本, 长度不超过 maxChunkSize
+     */
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * 当前文本块中的句子
+     */
+    private final Deque<String> sentences = new ArrayDeque<>();
+
+    /**
+     * 当前文本块的长度 ( 含句子间的空格 )
+     */
+    private int length;
+
+    /**
+     * 当前文本块中是否有 ( 上一个文本块重叠部分之外的 ) 新句子
+     */
+    private boolean fresh;
+
+    /**
+     * pending 末尾是否为空白, 用于折叠连续空白
+     */
+    private boolean lastWhitespace = true;
+
+    /**
+     * 连续换行数, 遇到空行时结束当前句子
+     */
+    private int newlines;
+
+    /**
+     * 已输出的文本块数
+     */
+    private int chunks;
+
+    public StreamingChunker(int maxChunkSize, int maxOverlapSize, Consumer<String> sink) {
+        if (maxChunkSize <= 0 || maxOverlapSize < 0 || maxOverlapSize >= maxChunkSize)
+            throw new IllegalArgumentException("文本块大小必须为正数, 重叠大小必须小于文本块大小");
+        this.maxChunkSize = maxChunkSize;
+        this.maxOverlapSize = maxOverlapSize;
+        this.sink = sink;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        for (int i = start; i < start + length; i++)
+            append(ch[i]);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() {
+        finish();
+    }
+
+    /**
+     * 追加一段文本, 解析器之外的调用方 ( 例如纯文本流 ) 可直接使用
+     *
+     * @param text 文本
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++)
+            append(text.charAt(i));
+    }
+
+    /**
+     * 输出剩余的文本, 可重复调用
+     */
+    public void finish() {
+        endSentence();
+        if (fresh)
+            emit();
+    }
+
+    /**
+     * @return 已输出的文本块数
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    private void append(char c) {
+        if (Character.isWhitespace(c)) {
+            checkSentenceEnd();
+            if (c == '\n' && ++newlines >= 2) {
+                endSentence();
+                return;
+            }
+            if (!lastWhitespace) {
+                pending.append(' ');
+                lastWhitespace = true;
+            }
+            return;
+        }
+        newlines = 0;
+        pending.append(c);
+        lastWhitespace = false;
+        if (c == '。' || c == '！' || c == '？') {
+            endSentence();
+        } else if (pending.length() >= maxChunkSize) {
+            // 没有句子边界的超长文本: 在最后一个空白处切开, 剩余部分继续累积
+            int cut = pending.lastIndexOf(" ");
+            cut = cut <= 0 ? pending.length() : cut;
+            addSentence(pending.substring(0, cut));
+            pending.delete(0, cut);
+        }
+    }
+
+    /**
+     * 英文句末标点要等到其后出现空白才能确认 ( 排除 3.14 之类 ), 因此在写入空白前检查
+     */
+    private void checkSentenceEnd() {
+        int last = pending.length() - 1;
+        if (last >= 0) {
+            char c = pending.charAt(last);
+            if (c == '.' || c == '!' || c == '?')
+                endSentence();
+        }
+    }
+
+    private void endSentence() {
+        String sentence = pending.toString().trim();
+        pending.setLength(0);
+        lastWhitespace = true;
+        if (!sentence.isEmpty())
+            addSentence(sentence);
+    }
+
+    private void addSentence(String sentence) {
+        sentence = sentence.trim();
+        if (sentence.isEmpty())
+            return;
+        if (sentence.length() > maxChunkSize) {
+            splitLongSentence(sentence);
+            return;
+        }
+        if (length > 0 && fresh && length + 1 + sentence.length() > maxChunkSize) {
+            emit();
+            keepOverlap();
+        }
+        // 重叠部分加上新句子仍然放不下时, 从头丢弃重叠的句子
+        while (!sentences.isEmpty() && length + 1 + sentence.length() > maxChunkSize)
+            removeFirst();
+        sentences.addLast(sentence);
+        length += (length == 0 ? 0 : 1) + sentence.length();
+        fresh = true;
+    }
+
+    private void splitLongSentence(String sentence) {
+        int from = 0;
+        while (from < sentence.length()) {
+            int to = Math.min(from + maxChunkSize, sentence.length());
+            if (to < sentence.length()) {
+                int space = sentence.lastIndexOf(' ', to);
+                if (space > from)
+                    to = space;
+            }
+            addSentence(sentence.substring(from, to));
+            from = to;
+        }
+    }
+
+    private void emit() {
+        sink.accept(String.join(" ", sentences));
+        chunks++;
+        fresh = false;
+    }
+
+    /**
+     * 保留当前文本块末尾不超过 maxOverlapSize 个字符的整句, 作为下一个文本块的开头
+     */
+    private void keepOverlap() {
+        int overlap = 0;
+        int kept = 0;
+        for (var iterator = sentences.descendingIterator(); iterator.hasNext(); ) {
+            int size = iterator.next().length() + (kept == 0 ? 0 : 1);
+            if (overlap + size > maxOverlapSize)
+                break;
+            overlap += size;
+            kept++;
+        }
+        while (sentences.size() > kept)
+            removeFirst();
+    }
+
+    private void removeFirst() {
+        String removed = sentences.removeFirst();
+        length = sentences.isEmpty() ? 0 : length - removed.length() - 1;
+    }
+}
@@ -0,0 +1,163 @@
+package xin.eason.trigger.knowledge;
+
+import org.redisson.api.RMap;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RedissonClient;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识库版本表, 在 Redis 中记录 知识库 Tag -> 当前版本的文本块 Tag. 替换知识库时新版本写入新的 Tag, 构建完成后一次切换该表,
+ * 检索与增量导入都按此表解析, 切换对所有实例同时生效. 从未被替换过的知识库不在表中, 文本块 Tag 即知识库 Tag.
+ * 正在删除或替换的知识库同样记录在 Redis 中, 所有实例共享这把锁: 持有期间其他删除, 替换与增量导入都被拒绝
+ */
+public class KnowledgeGenerations {
+
+    /**
+     * Redis 中版本表的名称
+     */
+    private static final String GENERATION_MAP = "ragTagGeneration";
+
+    /**
+     * Redis 中记录 正在删除或替换的知识库 Tag -> 替换中的新版本文本块 Tag ( 删除时为空串 ) 的表名称
+     */
+    private static final String LOCK_MAP = "ragTagLock";
+
+    /**
+     * 锁的租期, 持有锁的实例宕机后最迟在租期结束时自动释放
+     */
+    private static final long LOCK_LEASE_HOURS = 6;
+
+    /**
+     * Redisson 客户端
+     */
+    private final RedissonClient redissonClient;
+
+    /**
+     * Redis 调用的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    public KnowledgeGenerations(RedissonClient redissonClient, BlockingExecution blockingExecution) {
+        this.redissonClient = redissonClient;
+        this.blockingExecution = blockingExecution;
+    }
+
+    /**
+     * 解析知识库当前版本的文本块 Tag
+     *
+     * @param ragTag 知识库 Tag
+     * @return 文本块 Tag
+     */
+    public String resolve(String ragTag) {
+        String storageTag = blockingExecution.call(Downstream.REDIS, () -> generations().get(ragTag));
+        return storageTag == null ? ragTag : storageTag;
+    }
+
+    /**
+     * 解析增量导入写入的文本块 Tag. 知识库正在替换时新版本切换后旧版本即被删除, 正在删除时写入的文本块也会被删除,
+     * 因此这两种情况下拒绝导入, 而不是让写入的文本块在切换后丢失
+     *
+     * @param ragTag 知识库 Tag
+     * @return 文本块 Tag
+     * @throws IllegalStateException 该知识库正在删除或替换
+     */
+    public String resolveForWrite(String ragTag) {
+        if (isLocked(ragTag))
+            throw new IllegalStateException("知识库 \"" + ragTag + "\" 正在删除或替换中, 请稍后再试");
+        return resolve(ragTag);
+    }
+
+    /**
+     * 为知识库的新版本生成一个文本块 Tag, 切换前不会被检索到
+     *
+     * @param ragTag 知识库 Tag
+     * @return 新版本的文本块 Tag
+     */
+    public String next(String ragTag) {
+        return ragTag + "#" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 把知识库切换到新版本
+     *
+     * @param ragTag     知识库 Tag
+     * @param storageTag 新版本的文本块 Tag
+     * @return 被替换的版本的文本块 Tag
+     */
+    public String swap(String ragTag, String storageTag) {
+        String previous = blockingExecution.call(Downstream.REDIS, () -> generations().put(ragTag, storageTag));
+        return previous == null ? ragTag : previous;
+    }
+
+    /**
+     * 从版本表中移除知识库
+     *
+     * @param ragTag 知识库 Tag
+     * @return 移除前的文本块 Tag
+     */
+    public String remove(String ragTag) {
+        String previous = blockingExecution.call(Downstream.REDIS, () -> generations().remove(ragTag));
+        return previous == null ? ragTag : previous;
+    }
+
+    /**
+     * 读取整个版本表
+     *
+     * @return 知识库 Tag -> 当前版本的文本块 Tag, 只包含被替换过的知识库
+     */
+    public Map<String, String> all() {
+        return blockingExecution.call(Downstream.REDIS, () -> generations().readAllMap());
+    }
+
+    /**
+     * 锁定知识库, 开始删除或替换. 锁记录在 Redis 中, 其他实例同样可见
+     *
+     * @param ragTag     知识库 Tag
+     * @param storageTag 替换中的新版本文本块 Tag, 删除时为空串
+     * @return 是否锁定成功, 已被锁定 ( 包括其他实例 ) 时返回 false
+     */
+    public boolean lock(String ragTag, String storageTag) {
+        return blockingExecution.call(Downstream.REDIS, () -> locks().fastPutIfAbsent(ragTag, storageTag, LOCK_LEASE_HOURS, TimeUnit.HOURS));
+    }
+
+    /**
+     * 释放知识库的锁
+     *
+     * @param ragTag 知识库 Tag
+     */
+    public void unlock(String ragTag) {
+        blockingExecution.run(Downstream.REDIS, () -> locks().fastRemove(ragTag));
+    }
+
+    /**
+     * 判断知识库是否正在删除或替换
+     *
+     * @param ragTag 知识库 Tag
+     * @return 是否已被锁定
+     */
+    public boolean isLocked(String ragTag) {
+        return blockingExecution.call(Downstream.REDIS, () -> locks().containsKey(ragTag));
+    }
+
+    /**
+     * 读取全部锁
+     *
+     * @return 正在删除或替换的知识库 Tag -> 替换中的新版本文本块 Tag ( 删除时为空串 )
+     */
+    public Map<String, String> building() {
+        return blockingExecution.call(Downstream.REDIS, () -> locks().readAllMap());
+    }
+
+    private RMapCache<String, String> locks() {
+        return redissonClient.getMapCache(LOCK_MAP);
+    }
+
+    private RMap<String, String> generations() {
+        return redissonClient.getMap(GENERATION_MAP);
+    }
+}
@@ -0,0 +1,202 @@
+package xin.eason.trigger.knowledge;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import xin.eason.api.dto.KnowledgeBaseStatsDTO;
+import xin.eason.trigger.git.GitRepositoryIndexer;
+import xin.eason.trigger.ingest.IngestionJob;
+import xin.eason.trigger.ingest.IngestionPipeline;
+import xin.eason.trigger.ingest.IngestionSource;
+import xin.eason.trigger.vectorstore.KnowledgeInventory;
+import xin.eason.trigger.vectorstore.VectorDocumentDeleter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * 知识库的删除, 替换与用量统计.
+ * 替换时新版本以新的文本块 Tag 在后台导入, 期间检索仍使用旧版本; 全部文件导入成功后在 {@link KnowledgeGenerations} 中一次切换,
+ * 再在后台删除旧版本, 任一文件失败则丢弃新版本. 删除或替换期间知识库在 {@link KnowledgeGenerations} 中被锁定, 所有实例上对该知识库的
+ * 删除, 替换与增量导入 ( 包括上传与 Git 仓库的增量同步 ) 都被拒绝, 否则写入旧版本的文本块会在切换后随旧版本一起被删除. 删除整个版本走 {@link VectorDocumentDeleter#deleteByKnowledge(String)}
+ * ( 分区表为 DROP 分区, 单表为按主键分批删除 ), 不会长时间占用向量表
+ */
+@Slf4j
+public class KnowledgeLifecycle {
+
+    private static final String ACTIVE = "ACTIVE";
+    private static final String BUILDING = "BUILDING";
+    private static final String INACTIVE = "INACTIVE";
+
+    /**
+     * {@link KnowledgeGenerations#next(String)} 生成的文本块 Tag 后缀
+     */
+    private static final Pattern GENERATION_SUFFIX = Pattern.compile("#[0-9a-f]{8}$");
+
+    /**
+     * 知识库导入流水线
+     */
+    private final IngestionPipeline ingestionPipeline;
+
+    /**
+     * 向量删除器
+     */
+    private final VectorDocumentDeleter vectorDocumentDeleter;
+
+    /**
+     * 向量库用量统计
+     */
+    private final KnowledgeInventory knowledgeInventory;
+
+    /**
+     * 知识库版本表
+     */
+    private final KnowledgeGenerations knowledgeGenerations;
+
+    /**
+     * Git 仓库增量索引器, 为 null 时不处理仓库的索引记录
+     */
+    private final GitRepositoryIndexer gitRepositoryIndexer;
+
+    /**
+     * 切换版本与删除旧版本的单线程执行器
+     */
+    private final ExecutorService retirer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rag-knowledge-retire-"));
+
+    public KnowledgeLifecycle(IngestionPipeline ingestionPipeline, VectorDocumentDeleter vectorDocumentDeleter, KnowledgeInventory knowledgeInventory,
+                              KnowledgeGenerations knowledgeGenerations, GitRepositoryIndexer gitRepositoryIndexer) {
+        this.ingestionPipeline = ingestionPipeline;
+        this.vectorDocumentDeleter = vectorDocumentDeleter;
+        this.knowledgeInventory = knowledgeInventory;
+        this.knowledgeGenerations = knowledgeGenerations;
+        this.gitRepositoryIndexer = gitRepositoryIndexer;
+    }
+
+    /**
+     * 删除知识库的全部文本块
+     *
+     * @param ragTag 知识库 Tag
+     * @return 删除的文本块数
+     * @throws IllegalStateException 该知识库正在删除或替换
+     */
+    public int delete(String ragTag) {
+        acquire(ragTag, "");
+        try {
+            String storageTag = knowledgeGenerations.remove(ragTag);
+            int deleted = vectorDocumentDeleter.deleteByKnowledge(storageTag);
+            if (gitRepositoryIndexer != null)
+                gitRepositoryIndexer.forget(ragTag);
+            ingestionPipeline.notifyKnowledgeChanged(ragTag);
+            log.info("已删除知识库 {} ( 文本块 Tag: {} ), 文本块数: {}", ragTag, storageTag, deleted);
+            return deleted;
+        } finally {
+            knowledgeGenerations.unlock(ragTag);
+        }
+    }
+
+    /**
+     * 用一组文件替换知识库的全部内容. 方法在提交导入任务后立即返回, 任务全部成功后才切换到新版本
+     *
+     * @param ragTag  知识库 Tag
+     * @param sources 新版本的全部文件
+     * @return 构建新版本的导入任务
+     * @throws IllegalStateException 该知识库正在删除或替换
+     */
+    public IngestionJob replace(String ragTag, List<IngestionSource> sources) {
+        String storageTag = knowledgeGenerations.next(ragTag);
+        acquire(ragTag, storageTag);
+        IngestionJob job;
+        try {
+            job = ingestionPipeline.submit(ragTag, storageTag, sources);
+        } catch (RuntimeException e) {
+            knowledgeGenerations.unlock(ragTag);
+            throw e;
+        }
+        job.completion().whenCompleteAsync((finished, throwable) -> {
+            try {
+                if (throwable == null && finished.isSucceeded()) {
+                    String previous = knowledgeGenerations.swap(ragTag, storageTag);
+                    if (gitRepositoryIndexer != null)
+                        gitRepositoryIndexer.forget(ragTag);
+                    ingestionPipeline.notifyKnowledgeChanged(ragTag);
+                    log.info("知识库 {} 已切换到新版本 {}, 正在删除旧版本 {}", ragTag, storageTag, previous);
+                    retire(previous);
+                } else {
+                    log.warn("知识库 {} 的替换任务 {} 存在失败的文件, 保留原版本并丢弃新版本 {}", ragTag, job.getId(), storageTag);
+                    retire(storageTag);
+                }
+            } finally {
+                knowledgeGenerations.unlock(ragTag);
+            }
+        }, retirer);
+        return job;
+    }
+
+    /**
+     * 统计各知识库版本的文本块数与占用空间
+     *
+     * @return 按知识库 Tag 排序的用量列表
+     */
+    public List<KnowledgeBaseStatsDTO> stats() {
+        Map<String, String> generations = knowledgeGenerations.all();
+        Map<String, String> owners = new HashMap<>();
+        generations.forEach((ragTag, storageTag) -> owners.put(storageTag, ragTag));
+        Map<String, String> building = new HashMap<>();
+        knowledgeGenerations.building().forEach((ragTag, storageTag) -> {
+            if (!storageTag.isEmpty())
+                building.put(storageTag, ragTag);
+        });
+
+        List<KnowledgeBaseStatsDTO> stats = new ArrayList<>();
+        for (KnowledgeInventory.Usage usage : knowledgeInventory.usage()) {
+            String storageTag = usage.knowledge() == null ? "" : usage.knowledge();
+            String ragTag;
+            String state;
+            if (owners.containsKey(storageTag)) {
+                ragTag = owners.get(storageTag);
+                state = ACTIVE;
+            } else if (building.containsKey(storageTag)) {
+                ragTag = building.get(storageTag);
+                state = BUILDING;
+            } else if (generations.containsKey(storageTag) || GENERATION_SUFFIX.matcher(storageTag).find()) {
+                // 已被替换的原始版本, 或替换失败后未能删除的版本
+                ragTag = GENERATION_SUFFIX.matcher(storageTag).replaceFirst("");
+                state = INACTIVE;
+            } else {
+                ragTag = storageTag;
+                state = ACTIVE;
+            }
+            stats.add(new KnowledgeBaseStatsDTO(ragTag, storageTag, state, usage.chunks(), usage.bytes()));
+        }
+        stats.sort(Comparator.comparing(KnowledgeBaseStatsDTO::getRagTag).thenComparing(KnowledgeBaseStatsDTO::getStorageTag));
+        return stats;
+    }
+
+    /**
+     * 关闭执行器
+     */
+    public void shutdown() {
+        retirer.shutdownNow();
+    }
+
+    private void acquire(String ragTag, String storageTag) {
+        if (!knowledgeGenerations.lock(ragTag, storageTag))
+            throw new IllegalStateException("知识库 \"" + ragTag + "\" 正在删除或替换中, 请稍后再试");
+    }
+
+    /**
+     * 删除不再使用的版本, 失败时该版本在用量统计中显示为 INACTIVE
+     */
+    private void retire(String storageTag) {
+        try {
+            vectorDocumentDeleter.deleteByKnowledge(storageTag);
+        } catch (RuntimeException e) {
+            log.error("删除知识库版本 {} 失败!", storageTag, e);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package xin.eason.trigger.knowledge;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RList;
+import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.options.LocalCachedMapOptions;
+import xin.eason.api.dto.KnowledgeTagDTO;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.ingest.IngestionJob;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 知识库 Tag 登记表, 在 Redis Hash 中记录 知识库 Tag -> 元数据 ( 文本块数, 最后索引的提交, 嵌入模型, 时间 ).
+ * 使用 Redisson 本地缓存 Map, 启动时预加载全部条目, 其他实例的修改通过发布订阅同步到本地, 查询 Tag 是否存在与列出全部 Tag 都不访问 Redis;
+ * 登记使用 HSETNX, 多个实例并发登记同一 Tag 时只有一个成功.
+ * 滚动升级期间旧版本节点仍只读写旧的 Tag 列表, 兼容模式下登记与移除同时写入该列表, 列出 Tag 时以列表为准:
+ * 列表中有而登记表中没有的 Tag ( 旧节点新登记的 ) 补登记, 登记表中有而列表中没有的 Tag ( 旧节点已移除的 ) 不列出.
+ * 所有节点升级后关闭兼容模式, 启动时把列表中剩余的 Tag 迁移到登记表后删除列表
+ */
+@Slf4j
+public class KnowledgeRegistry {
+
+    /**
+     * Redis 中登记表的名称
+     */
+    private static final String REGISTRY_MAP = "ragTagRegistry";
+
+    /**
+     * 旧版本使用的 Tag 列表, 关闭兼容模式后启动时迁移到登记表并删除
+     */
+    private static final String LEGACY_TAG_LIST = "ragTag";
+
+    /**
+     * 知识库 Tag -> 元数据, 本地缓存与 Redis 同步
+     */
+    private final RLocalCachedMap<String, KnowledgeTagDTO> registry;
+
+    /**
+     * 旧版本的 Tag 列表, 关闭兼容模式时为 null
+     */
+    private final RList<String> legacyTags;
+
+    /**
+     * 嵌入模型名称
+     */
+    private final String embeddingModel;
+
+    /**
+     * Redis 调用的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    public KnowledgeRegistry(RedissonClient redissonClient, String embeddingModel, BlockingExecution blockingExecution) {
+        this(redissonClient, embeddingModel, true, blockingExecution);
+    }
+
+    /**
+     * @param legacyTagList 是否兼容仍读写旧 Tag 列表的旧版本节点
+     */
+    public KnowledgeRegistry(RedissonClient redissonClient, String embeddingModel, boolean legacyTagList, BlockingExecution blockingExecution) {
+        this.embeddingModel = embeddingModel;
+        this.blockingExecution = blockingExecution;
+        this.registry = redissonClient.getLocalCachedMap(LocalCachedMapOptions.<String, KnowledgeTagDTO>name(REGISTRY_MAP)
+                .cacheSize(0)
+                .syncStrategy(LocalCachedMapOptions.SyncStrategy.UPDATE)
+                .reconnectionStrategy(LocalCachedMapOptions.ReconnectionStrategy.LOAD));
+        RList<String> legacy = redissonClient.getList(LEGACY_TAG_LIST);
+        this.legacyTags = legacyTagList ? legacy : null;
+        migrate(legacy.readAll());
+        if (!legacyTagList && legacy.delete())
+            log.info("所有节点已升级, 删除旧的 Tag 列表");
+        registry.preloadCache();
+        log.info("已加载 {} 个知识库 Tag", registry.getCachedMap().size());
+    }
+
+    /**
+     * 登记知识库 Tag, 已登记时不做任何修改. 兼容模式下先写入旧的 Tag 列表 ( 旧节点可见 ), 已被旧节点移除的 Tag 重新登记
+     *
+     * @param ragTag 知识库 Tag
+     * @return 本次是否新登记了该 Tag
+     */
+    public boolean register(String ragTag) {
+        if (legacyTags != null) {
+            boolean listed = blockingExecution.call(Downstream.REDIS, () -> {
+                if (legacyTags.contains(ragTag))
+                    return true;
+                legacyTags.add(ragTag);
+                return false;
+            });
+            if (!listed) {
+                // 新的 Tag, 或已被旧节点移除 ( 登记表中的元数据已过期 ), 都重新登记
+                blockingExecution.run(Downstream.REDIS, () -> registry.fastPut(ragTag, newTag(ragTag, System.currentTimeMillis())));
+                return true;
+            }
+        }
+        if (registry.getCachedMap().containsKey(ragTag))
+            return false;
+        return blockingExecution.call(Downstream.REDIS, () -> registry.fastPutIfAbsent(ragTag, newTag(ragTag, System.currentTimeMillis())));
+    }
+
+    /**
+     * 判断知识库 Tag 是否已登记
+     *
+     * @param ragTag 知识库 Tag
+     * @return 是否已登记
+     */
+    public boolean contains(String ragTag) {
+        if (legacyTags != null)
+            return blockingExecution.call(Downstream.REDIS, () -> legacyTags.contains(ragTag));
+        return registry.getCachedMap().containsKey(ragTag);
+    }
+
+    /**
+     * 列出全部知识库 Tag
+     *
+     * @return 按登记时间排序的 Tag 列表
+     */
+    public List<String> tags() {
+        return list().stream().map(KnowledgeTagDTO::getRagTag).toList();
+    }
+
+    /**
+     * 列出全部知识库 Tag 及其元数据
+     *
+     * @return 按登记时间排序的元数据列表 ( 兼容模式下为旧 Tag 列表中的顺序, 同样是登记顺序 )
+     */
+    public List<KnowledgeTagDTO> list() {
+        if (legacyTags != null)
+            return listLegacy();
+        List<KnowledgeTagDTO> tags = new ArrayList<>(registry.getCachedMap().values());
+        tags.sort(Comparator.comparing(KnowledgeTagDTO::getCreateTime).thenComparing(KnowledgeTagDTO::getRagTag));
+        return tags;
+    }
+
+    /**
+     * 导入任务结束后更新知识库的文本块数, Git 仓库的导入任务全部成功时同时记录其提交
+     *
+     * @param job           导入任务
+     * @param removedChunks 提交任务前删除的旧文本块数
+     * @param commit        本次索引的 Git 提交, 不是代码仓库时为 null
+     */
+    public void recordIngestion(IngestionJob job, long removedChunks, String commit) {
+        job.completion().whenComplete((finished, throwable) -> {
+            if (throwable != null)
+                return;
+            boolean succeeded = finished.isSucceeded();
+            update(finished.getRagTag(), tag -> {
+                tag.setChunks(Math.max(0, tag.getChunks() + finished.toStatus().getStoredChunks() - removedChunks));
+                if (commit != null && succeeded)
+                    tag.setLastCommit(commit);
+            });
+        });
+    }
+
+    /**
+     * 替换任务全部成功后, 知识库的文本块数即新版本的文本块数 ( 与 {@link KnowledgeLifecycle#replace} 的切换条件一致 ),
+     * 已索引的提交改为新版本对应的提交
+     *
+     * @param job    构建新版本的导入任务
+     * @param commit 新版本对应的 Git 提交, 不是代码仓库 ( 或手动替换了代码仓库的内容 ) 时为 null
+     */
+    public void recordReplacement(IngestionJob job, String commit) {
+        job.completion().whenComplete((finished, throwable) -> {
+            if (throwable != null || !finished.isSucceeded())
+                return;
+            update(finished.getRagTag(), tag -> {
+                tag.setChunks(finished.toStatus().getStoredChunks());
+                tag.setLastCommit(commit);
+            });
+        });
+    }
+
+    /**
+     * 移除知识库 Tag, 兼容模式下同时从旧的 Tag 列表中移除
+     *
+     * @param ragTag 知识库 Tag
+     * @return 是否存在并被移除
+     */
+    public boolean remove(String ragTag) {
+        return blockingExecution.call(Downstream.REDIS, () -> {
+            boolean listed = legacyTags != null && legacyTags.remove(ragTag, 0);
+            return registry.fastRemove(ragTag) > 0 || listed;
+        });
+    }
+
+    /**
+     * 在 Redis 端加锁修改元数据, 并刷新更新时间与嵌入模型; Tag 已被移除时不再登记
+     */
+    private void update(String ragTag, Consumer<KnowledgeTagDTO> modifier) {
+        try {
+            blockingExecution.run(Downstream.REDIS, () -> registry.computeIfPresent(ragTag, (key, tag) -> {
+                modifier.accept(tag);
+                tag.setEmbeddingModel(embeddingModel);
+                tag.setUpdateTime(System.currentTimeMillis());
+                return tag;
+            }));
+        } catch (RuntimeException e) {
+            log.error("更新知识库 {} 的元数据失败!", ragTag, e);
+        }
+    }
+
+    /**
+     * 兼容模式下以旧 Tag 列表为准列出 Tag, 并补登记旧节点新登记的 Tag
+     */
+    private List<KnowledgeTagDTO> listLegacy() {
+        List<String> listed = blockingExecution.call(Downstream.REDIS, legacyTags::readAll);
+        migrate(listed);
+        List<KnowledgeTagDTO> tags = new ArrayList<>(listed.size());
+        for (String ragTag : new LinkedHashSet<>(listed)) {
+            KnowledgeTagDTO tag = registry.getCachedMap().get(ragTag);
+            // 其他节点刚登记, 尚未同步到本地
+            if (tag == null)
+                tag = blockingExecution.call(Downstream.REDIS, () -> registry.get(ragTag));
+            if (tag != null)
+                tags.add(tag);
+        }
+        return tags;
+    }
+
+    private KnowledgeTagDTO newTag(String ragTag, long now) {
+        return new KnowledgeTagDTO(ragTag, 0L, null, embeddingModel, now, now);
+    }
+
+    /**
+     * 把旧版本 Tag 列表中尚未登记的 Tag 登记到登记表
+     */
+    private void migrate(List<String> tags) {
+        long now = System.currentTimeMillis();
+        int migrated = 0;
+        for (String ragTag : tags) {
+            if (registry.getCachedMap().containsKey(ragTag))
+                continue;
+            // 登记时间依次加一毫秒, 保持原列表顺序
+            KnowledgeTagDTO tag = newTag(ragTag, now + migrated);
+            if (blockingExecution.call(Downstream.REDIS, () -> registry.fastPutIfAbsent(ragTag, tag)))
+                migrated++;
+        }
+        if (migrated > 0)
+            log.info("已把 {} 个知识库 Tag 从旧的 Tag 列表迁移到登记表", migrated);
+    }
+}
@@ -0,0 +1,111 @@
+package xin.eason.trigger.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.ChatResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 单次知识库对话请求的指标记录器, 由 {@link RagMetrics#chat(String, String, String)} 创建
+ */
+public class ChatRequestMetrics {
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+
+    /**
+     * 请求开始时刻 ( 纳秒 )
+     */
+    private final long startNanos = System.nanoTime();
+
+    ChatRequestMetrics(MeterRegistry registry, Tags tags) {
+        this.registry = registry;
+        this.tags = tags;
+    }
+
+    /**
+     * 执行并记录一个阶段的耗时, 阶段抛出异常时同样记录
+     *
+     * @param stage  阶段名
+     * @param action 阶段逻辑
+     * @return 阶段结果
+     */
+    public <T> T time(String stage, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            timer("rag.chat.stage", "知识库对话各阶段耗时", Tags.of("stage", stage)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录写入系统提示词的知识库上下文大小
+     *
+     * @param tokens 上下文 token 数
+     * @param chunks 上下文段数 ( 合并重叠文本块之后 )
+     */
+    public void context(int tokens, int chunks) {
+        summary("rag.chat.context.tokens", "写入提示词的知识库 token 数", "tokens").record(tokens);
+        summary("rag.chat.context.chunks", "写入提示词的知识库段数", "chunks").record(chunks);
+    }
+
+    /**
+     * 包装流式回答, 在流上记录首 token 延迟, 流式输出耗时, token 数, 生成速度与请求结果.
+     * 每个内容非空的分片计为一个 token ( Ollama 与 OpenAI 的流式接口均逐 token 推送 )
+     *
+     * @param responses 流式回答
+     * @return 带指标记录的流式回答
+     */
+    public Flux<ChatResponse> observe(Flux<ChatResponse> responses) {
+        AtomicLong firstTokenNanos = new AtomicLong();
+        AtomicInteger tokens = new AtomicInteger();
+        return responses
+                .doOnNext(response -> {
+                    if (response.getResult() == null || response.getResult().getOutput().getContent() == null
+                            || response.getResult().getOutput().getContent().isEmpty())
+                        return;
+                    if (tokens.getAndIncrement() == 0) {
+                        long now = System.nanoTime();
+                        firstTokenNanos.set(now);
+                        timer("rag.chat.first.token", "从收到请求到第一个 token 的延迟", Tags.empty()).record(now - startNanos, TimeUnit.NANOSECONDS);
+                    }
+                })
+                .doFinally(signal -> finish(signal, firstTokenNanos.get(), tokens.get()));
+    }
+
+    private void finish(SignalType signal, long firstTokenNanos, int tokens) {
+        long end = System.nanoTime();
+        String outcome = switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancel";
+        };
+        timer("rag.chat.request", "知识库对话请求总耗时", Tags.of("outcome", outcome)).record(end - startNanos, TimeUnit.NANOSECONDS);
+        if (signal != SignalType.ON_COMPLETE || tokens == 0)
+            return;
+
+        long streamNanos = end - firstTokenNanos;
+        timer("rag.chat.stream", "从第一个 token 到流结束的耗时", Tags.empty()).record(streamNanos, TimeUnit.NANOSECONDS);
+        summary("rag.chat.tokens", "每次回答的 token 数", "tokens").record(tokens);
+        // 只有一个 token 时无法计算速度
+        if (tokens > 1 && streamNanos > 0)
+            summary("rag.chat.tokens.per.second", "回答的 token 生成速度", "tokens/s").record((tokens - 1) * 1e9 / streamNanos);
+    }
+
+    private Timer timer(String name, String description, Tags extraTags) {
+        return Timer.builder(name).description(description).tags(tags).tags(extraTags).register(registry);
+    }
+
+    private DistributionSummary summary(String name, String description, String baseUnit) {
+        return DistributionSummary.builder(name).description(description).baseUnit(baseUnit).tags(tags).register(registry);
+    }
+}
@@ -0,0 +1,89 @@
+package xin.eason.trigger.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG 指标的统一入口, 所有指标名以 rag. 开头, 通过 Actuator 的 /actuator/prometheus 暴露:
+ * <ul>
+ *     <li>rag.chat.stage: 对话各阶段耗时, 标签 stage = retrieve ( 含检索缓存 ), embed ( 问题嵌入 ), search ( 向量检索 ), prompt ( 提示词组装 )</li>
+ *     <li>rag.chat.first.token: 从收到请求到第一个 token 的延迟</li>
+ *     <li>rag.chat.stream: 从第一个 token 到流结束的耗时</li>
+ *     <li>rag.chat.request: 整个请求的耗时, 标签 outcome = success, error, cancel</li>
+ *     <li>rag.chat.tokens / rag.chat.tokens.per.second: 每次回答的 token 数与生成速度</li>
+ *     <li>rag.ingest.stage: 导入各阶段耗时, 标签 stage = spool, parse, split, embed, store, stream ( 大文件流式解析并分片, 含等待下游的时间 )</li>
+ *     <li>rag.ingest.chunks: 每个文件的文本块数</li>
+ *     <li>rag.ingest.files: 处理结束的文件数, 标签 outcome = completed, failed</li>
+ * </ul>
+ * 对话指标带 provider, model, rag_tag 标签, 导入指标带 rag_tag 标签. 直方图由 management.metrics.distribution 配置开启
+ */
+public class RagMetrics {
+
+    private final MeterRegistry registry;
+
+    public RagMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return 不向任何后端上报的指标对象, 用于测试与基准
+     */
+    public static RagMetrics disabled() {
+        return new RagMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * 开始记录一次知识库对话请求, 请求开始时间即为调用时刻
+     *
+     * @param provider 模型提供方, 例如 ollama, openai
+     * @param model    对话模型
+     * @param ragTag   知识库 Tag
+     * @return 单次请求的指标记录器
+     */
+    public ChatRequestMetrics chat(String provider, String model, String ragTag) {
+        return new ChatRequestMetrics(registry, Tags.of("provider", provider, "model", String.valueOf(model), "rag_tag", String.valueOf(ragTag)));
+    }
+
+    /**
+     * 记录导入阶段耗时
+     *
+     * @param stage  阶段名
+     * @param ragTag 知识库 Tag
+     * @param nanos  耗时 ( 纳秒 )
+     */
+    public void ingestStage(String stage, String ragTag, long nanos) {
+        Timer.builder("rag.ingest.stage")
+                .description("知识库导入各阶段耗时")
+                .tags("stage", stage, "rag_tag", String.valueOf(ragTag))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一个文件处理结束
+     *
+     * @param ragTag    知识库 Tag
+     * @param completed 是否成功
+     * @param chunks    文件的文本块数, 未完成分片时为负数
+     */
+    public void ingestFile(String ragTag, boolean completed, int chunks) {
+        Counter.builder("rag.ingest.files")
+                .description("处理结束的导入文件数")
+                .tags("rag_tag", String.valueOf(ragTag), "outcome", completed ? "completed" : "failed")
+                .register(registry)
+                .increment();
+        if (chunks >= 0)
+            DistributionSummary.builder("rag.ingest.chunks")
+                    .description("每个导入文件的文本块数")
+                    .baseUnit("chunks")
+                    .tags("rag_tag", String.valueOf(ragTag))
+                    .register(registry)
+                    .record(chunks);
+    }
+}
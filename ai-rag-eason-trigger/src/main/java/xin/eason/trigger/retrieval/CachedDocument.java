@@ -0,0 +1,29 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文本块在 Redis 中的存储形式 ( 检索结果缓存, 导入工作项 ), 只保留 ID, 内容与元数据 ( 不保存向量 )
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedDocument {
+    private String id;
+    private String content;
+    private Map<String, Object> metadata;
+
+    public static CachedDocument from(Document document) {
+        return new CachedDocument(document.getId(), document.getContent(), new HashMap<>(document.getMetadata()));
+    }
+
+    public Document toDocument() {
+        return new Document(id, content, metadata == null ? new HashMap<>() : metadata);
+    }
+}
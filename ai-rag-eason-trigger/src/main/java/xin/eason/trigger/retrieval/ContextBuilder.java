@@ -0,0 +1,258 @@
+package xin.eason.trigger.retrieval;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.metrics.ChatRequestMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 按模型的 token 预算组装写入系统提示词的知识库上下文:
+ * <ol>
+ *     <li>内容近似重复的文本块只保留排名靠前的一个</li>
+ *     <li>同一来源的相邻文本块首尾重叠 ( 分片时的 overlap ) 时拼接为一段, 重叠部分只保留一份; 被其他文本块包含的文本块去掉</li>
+ *     <li>按检索排名依次放入, 放不下的文本块跳过, 直到用完预算</li>
+ * </ol>
+ * 预算 = min(maxDocumentTokens, 上下文窗口 - 回答预留 - 提示词模板 - 用户问题). token 数以 cl100k_base 编码估算,
+ * 与 Ollama 模型自身的分词器有出入, 回答预留的部分同时作为误差余量
+ */
+public class ContextBuilder {
+
+    /**
+     * 文本块之间的分隔符
+     */
+    private static final String SEPARATOR = "\n\n";
+
+    private static final int TOKEN_COUNT_CACHE_SIZE = 20000;
+
+    /**
+     * 组装参数
+     */
+    private final ContextOptions options;
+
+    /**
+     * token 编码, 线程安全
+     */
+    private final Encoding encoding;
+
+    /**
+     * 文本 -> token 数. 分词较慢 ( 约 2 MB/s ), 而同一文本块会在许多请求中反复出现
+     */
+    private final Cache<String, Integer> tokenCounts = CacheBuilder.newBuilder().maximumSize(TOKEN_COUNT_CACHE_SIZE).build();
+
+    /**
+     * 不含知识库文本的系统提示词 token 数
+     */
+    private final int templateTokens;
+
+    public ContextBuilder(ContextOptions options) {
+        this.options = options;
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        this.templateTokens = countTokens(RagPrompts.SYSTEM_PROMPT.replace("{documents}", ""));
+    }
+
+    /**
+     * 组装发送给大模型的消息列表, 并记录写入的知识库 token 数与段数
+     *
+     * @param model     对话模型
+     * @param documents 按相关性排列的文本块
+     * @param question  用户问题
+     * @param metrics   本次请求的指标记录器
+     * @return 系统消息与用户消息
+     */
+    public List<Message> messages(String model, List<Document> documents, String question, ChatRequestMetrics metrics) {
+        Context context = build(model, documents, question);
+        metrics.context(context.tokens(), context.chunks());
+        return RagPrompts.messages(context.text(), question);
+    }
+
+    /**
+     * 组装知识库上下文
+     *
+     * @param model     对话模型
+     * @param documents 按相关性排列的文本块
+     * @param question  用户问题
+     * @return 上下文文本, token 数与写入的段数
+     */
+    public Context build(String model, List<Document> documents, String question) {
+        int budget = Math.min(options.getMaxDocumentTokens(),
+                contextWindow(model) - options.getReservedTokens() - templateTokens - countTokens(question));
+        if (budget <= 0 || documents.isEmpty())
+            return new Context("", 0, 0);
+
+        List<Document> candidates = mergeOverlaps(RankFusion.dedupe(documents, options.getDedupeThreshold(), Integer.MAX_VALUE), budget);
+        StringBuilder text = new StringBuilder();
+        int used = 0;
+        int chunks = 0;
+        int separatorTokens = countTokens(SEPARATOR);
+        for (Document document : candidates) {
+            String content = document.getContent();
+            int tokens = countTokens(content) + (chunks == 0 ? 0 : separatorTokens);
+            if (used + tokens > budget) {
+                // 排名第一的文本块单独就超出预算时截断写入, 其余放不下的跳过, 继续尝试更短的文本块
+                if (chunks > 0)
+                    continue;
+                EncodingResult truncated = encoding.encode(content, budget);
+                content = encoding.decode(truncated.getTokens());
+                tokens = truncated.getTokens().size();
+            }
+            if (chunks > 0)
+                text.append(SEPARATOR);
+            text.append(content);
+            used += tokens;
+            chunks++;
+        }
+        return new Context(text.toString(), used, chunks);
+    }
+
+    /**
+     * @param model 对话模型
+     * @return 模型的上下文窗口 ( token 数 )
+     */
+    public int contextWindow(String model) {
+        Integer tokens = model == null ? null : options.getModelContextTokens().get(model);
+        return tokens == null ? options.getDefaultContextTokens() : tokens;
+    }
+
+    /**
+     * @param text 文本
+     * @return 文本的 token 数
+     */
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty())
+            return 0;
+        Integer tokens = tokenCounts.getIfPresent(text);
+        if (tokens == null) {
+            tokens = encoding.countTokens(text);
+            tokenCounts.put(text, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * 合并同一来源中首尾重叠的文本块, 合并后的段落保留其中最靠前的排名; 被其他文本块完整包含的文本块直接去掉.
+     * 合并后可能超出预算的两段不合并, 避免一整段因放不下而被截断或跳过
+     */
+    private List<Document> mergeOverlaps(List<Document> documents, int budget) {
+        List<Segment> segments = new ArrayList<>(documents.size());
+        Map<Object, List<Segment>> bySource = new HashMap<>();
+        for (Document document : documents) {
+            String content = document.getContent() == null ? "" : document.getContent().strip();
+            if (content.isEmpty())
+                continue;
+            Object source = document.getMetadata().get("source");
+            List<Segment> sameSource = bySource.computeIfAbsent(Objects.requireNonNullElse(source, document.getId()), key -> new ArrayList<>());
+            Segment segment = new Segment(document, content, countTokens(content));
+            boolean added = false;
+            // 新文本块可能同时与多个已有段落相连, 合并后继续与剩余段落比较; 合并后保留排名靠前的段落
+            boolean merged = true;
+            while (merged) {
+                merged = false;
+                for (Segment other : sameSource) {
+                    if (other == segment)
+                        continue;
+                    String combined = combine(other, segment, budget);
+                    if (combined == null)
+                        continue;
+                    Segment kept = !added || segments.indexOf(other) < segments.indexOf(segment) ? other : segment;
+                    Segment dropped = kept == other ? segment : other;
+                    kept.tokens = combined.length() == kept.content.length() ? kept.tokens
+                            : combined.length() == dropped.content.length() ? dropped.tokens : kept.tokens + dropped.tokens;
+                    kept.content = combined;
+                    if (added) {
+                        sameSource.remove(dropped);
+                        segments.remove(dropped);
+                    }
+                    segment = kept;
+                    added = true;
+                    merged = true;
+                    break;
+                }
+            }
+            if (!added) {
+                sameSource.add(segment);
+                segments.add(segment);
+            }
+        }
+
+        List<Document> merged = new ArrayList<>(segments.size());
+        for (Segment segment : segments)
+            merged.add(segment.content.equals(segment.document.getContent())
+                    ? segment.document
+                    : new Document(segment.document.getId(), segment.content, segment.document.getMetadata()));
+        return merged;
+    }
+
+    /**
+     * 尝试把两段合并为一段
+     *
+     * @return 合并结果, 两段既不重叠也不互相包含, 或合并后可能超出预算时返回 null
+     */
+    private String combine(Segment firstSegment, Segment secondSegment, int budget) {
+        String first = firstSegment.content;
+        String second = secondSegment.content;
+        if (first.contains(second))
+            return first;
+        if (second.contains(first))
+            return second;
+        if (firstSegment.tokens + secondSegment.tokens > budget)
+            return null;
+        int overlap = overlap(first, second);
+        if (overlap > 0)
+            return first + second.substring(overlap);
+        overlap = overlap(second, first);
+        if (overlap > 0)
+            return second + first.substring(overlap);
+        return null;
+    }
+
+    /**
+     * @return head 的开头与 tail 的结尾重叠的最大字符数, 不足 minOverlapChars 时为 0
+     */
+    private int overlap(String tail, String head) {
+        int max = Math.min(Math.min(tail.length(), head.length()), options.getMaxOverlapChars());
+        for (int length = max; length >= Math.max(options.getMinOverlapChars(), 1); length--) {
+            if (tail.regionMatches(tail.length() - length, head, 0, length))
+                return length;
+        }
+        return 0;
+    }
+
+    /**
+     * 合并中的段落, 以排名最靠前的文本块作为代表
+     */
+    private static final class Segment {
+        private final Document document;
+        private String content;
+        /**
+         * token 数上限 ( 各部分之和, 重叠部分重复计算 )
+         */
+        private int tokens;
+
+        private Segment(Document document, String content, int tokens) {
+            this.document = document;
+            this.content = content;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 组装好的上下文
+     *
+     * @param text   上下文文本
+     * @param tokens token 数
+     * @param chunks 写入的段数 ( 合并后 )
+     */
+    public record Context(String text, int tokens, int chunks) {
+    }
+}
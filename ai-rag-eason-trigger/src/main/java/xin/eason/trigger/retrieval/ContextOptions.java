@@ -0,0 +1,45 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 知识库上下文组装参数, 由 spring.ai.rag.context 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContextOptions {
+    /**
+     * 未在 modelContextTokens 中配置的模型使用的上下文窗口 ( token 数 ). Ollama 模型按该值设置 num_ctx
+     */
+    private int defaultContextTokens = 4096;
+    /**
+     * 各模型的上下文窗口 ( token 数 ), 键为模型名
+     */
+    private Map<String, Integer> modelContextTokens = new HashMap<>();
+    /**
+     * 为模型回答预留的 token 数
+     */
+    private int reservedTokens = 1024;
+    /**
+     * 写入提示词的知识库文本最多占用的 token 数, 上下文窗口很大时也不超过该值, 以控制预填充耗时
+     */
+    private int maxDocumentTokens = 3000;
+    /**
+     * 同一来源的两个文本块首尾重叠至少多少个字符时合并为一段
+     */
+    private int minOverlapChars = 20;
+    /**
+     * 检测首尾重叠的最大字符数, 应不小于分片时的重叠长度
+     */
+    private int maxOverlapChars = 400;
+    /**
+     * 内容相似度 ( 字符 shingle 的 Jaccard 系数 ) 不低于该值的文本块只保留排名靠前的一个
+     */
+    private double dedupeThreshold = 0.8;
+}
@@ -0,0 +1,237 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.trigger.embedding.PrecomputedEmbeddingClient;
+import xin.eason.trigger.metrics.ChatRequestMetrics;
+import xin.eason.trigger.vectorstore.LexicalIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 知识库检索器, 供各个对话控制器共用: 把问题扩展为多个子查询并行检索, 以倒数排名融合合并结果并去掉近似重复的文本块,
+ * 结果经过 {@link RetrievalCache} 缓存. 子查询并行执行 ( 嵌入请求由批量嵌入客户端合并 ), 总耗时取决于最慢的一路检索.
+ * 混合检索时关键词子查询交给 {@link LexicalIndex}, 其余子查询走向量检索, 类名, 错误码等精确标识符不必靠放大 topK 才能召回
+ */
+@Slf4j
+public class KnowledgeRetriever {
+
+    /**
+     * 向量库
+     */
+    private final VectorStore vectorStore;
+
+    /**
+     * 关键词索引, 为 null 时只能做向量检索
+     */
+    private final LexicalIndex lexicalIndex;
+
+    /**
+     * 检索结果缓存
+     */
+    private final RetrievalCache retrievalCache;
+
+    /**
+     * 向量库使用的嵌入客户端, 问题向量在检索前单独计算, 再交给向量库复用
+     */
+    private final PrecomputedEmbeddingClient embeddingClient;
+
+    /**
+     * 检索参数
+     */
+    private final RetrievalOptions options;
+
+    /**
+     * 子查询线程的类型与嵌入, 检索调用的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    /**
+     * 请求未指定时使用的检索方式
+     */
+    private final SearchMode defaultMode;
+
+    /**
+     * 子查询扩展器
+     */
+    private final QueryExpander queryExpander;
+
+    /**
+     * 执行扩展子查询的执行器. 平台线程时为有界线程池, 队列满时由调用线程执行; 虚拟线程时每个子查询一个虚拟线程, 并发由下游许可限制
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 知识库 Tag -> 文本块实际写入的 Tag, 知识库被替换过时两者不同
+     */
+    private volatile UnaryOperator<String> storageTags = UnaryOperator.identity();
+
+    public KnowledgeRetriever(VectorStore vectorStore, LexicalIndex lexicalIndex, RetrievalCache retrievalCache,
+                              PrecomputedEmbeddingClient embeddingClient, RetrievalOptions options) {
+        this(vectorStore, lexicalIndex, retrievalCache, embeddingClient, options, BlockingExecution.platform());
+    }
+
+    public KnowledgeRetriever(VectorStore vectorStore, LexicalIndex lexicalIndex, RetrievalCache retrievalCache,
+                              PrecomputedEmbeddingClient embeddingClient, RetrievalOptions options, BlockingExecution blockingExecution) {
+        this.vectorStore = vectorStore;
+        this.lexicalIndex = lexicalIndex;
+        this.retrievalCache = retrievalCache;
+        this.embeddingClient = embeddingClient;
+        this.options = options;
+        this.blockingExecution = blockingExecution;
+        this.defaultMode = SearchMode.of(options.getSearchMode(), SearchMode.HYBRID);
+        this.queryExpander = new QueryExpander(options.getMaxQueries());
+        this.executor = blockingExecution.isVirtualThreads() ? blockingExecution.executor("rag-retrieval-", 0) : boundedPool(options);
+    }
+
+    /**
+     * 设置知识库 Tag 到文本块实际写入的 Tag 的解析方式, 检索缓存未命中时按其解析
+     *
+     * @param resolver 解析方式
+     */
+    public void resolveStorageTagsWith(UnaryOperator<String> resolver) {
+        this.storageTags = resolver;
+    }
+
+    /**
+     * 以配置的默认检索方式检索知识库
+     *
+     * @param ragTag  知识库 Tag
+     * @param query   用户问题
+     * @param topK    返回的文本块数量, 不超过配置的上限
+     * @param metrics 本次请求的指标记录器
+     * @return 与问题最相关的文本块
+     */
+    public List<Document> retrieve(String ragTag, String query, int topK, ChatRequestMetrics metrics) {
+        return retrieve(ragTag, query, topK, null, metrics);
+    }
+
+    /**
+     * 检索知识库, 每路向量子查询分别记录 问题嵌入 与 向量检索 两个阶段的耗时, 关键词检索记录为 keyword 阶段 ( 命中检索缓存时都不发生 )
+     *
+     * @param ragTag  知识库 Tag
+     * @param query   用户问题
+     * @param topK    返回的文本块数量, 不超过配置的上限
+     * @param mode    检索方式, 为 null 时使用配置的默认值; 没有关键词索引时总是向量检索
+     * @param metrics 本次请求的指标记录器
+     * @return 与问题最相关的文本块
+     */
+    public List<Document> retrieve(String ragTag, String query, int topK, SearchMode mode, ChatRequestMetrics metrics) {
+        int limit = Math.max(1, Math.min(topK, options.getMaxTopK()));
+        SearchMode searchMode = lexicalIndex == null ? SearchMode.VECTOR : mode == null ? defaultMode : mode;
+        return retrievalCache.get(ragTag, query, limit, searchMode, () -> {
+            String storageTag = storageTags.apply(ragTag);
+            if (searchMode == SearchMode.KEYWORD)
+                return keywordSearch(storageTag, keywordQuery(query), limit, metrics);
+
+            List<QueryExpander.SubQuery> queries = options.isMultiQuery()
+                    ? queryExpander.expand(query)
+                    : List.of(new QueryExpander.SubQuery(query, false));
+            // 混合检索时关键词子查询改走关键词索引, 没有扩展出关键词子查询时补一路
+            List<Search> searches = new ArrayList<>(queries.size() + 1);
+            int keywordSearches = 0;
+            for (QueryExpander.SubQuery subQuery : queries) {
+                if (searchMode == SearchMode.HYBRID && subQuery.keyword()) {
+                    searches.add(new Search(() -> keywordSearch(storageTag, subQuery.text(), limit, metrics), true));
+                    keywordSearches++;
+                } else {
+                    searches.add(new Search(() -> search(storageTag, subQuery.text(), limit, metrics), false));
+                }
+            }
+            if (searchMode == SearchMode.HYBRID && keywordSearches == 0) {
+                searches.add(new Search(() -> keywordSearch(storageTag, keywordQuery(query), limit, metrics), true));
+                keywordSearches++;
+            }
+
+            // 扩展的子查询交给线程池, 原问题在当前线程检索; 扩展子查询失败时忽略该路结果, 原问题失败则整体失败
+            List<CompletableFuture<List<Document>>> expanded = new ArrayList<>(searches.size() - 1);
+            for (Search search : searches.subList(1, searches.size())) {
+                expanded.add(CompletableFuture.supplyAsync(search.supplier(), executor)
+                        .exceptionally(e -> {
+                            log.warn("子查询检索失败, 知识库: {}, 问题: {}", ragTag, query, e);
+                            return List.of();
+                        }));
+            }
+            List<List<Document>> rankings = new ArrayList<>(searches.size());
+            rankings.add(searches.get(0).supplier().get());
+            for (CompletableFuture<List<Document>> future : expanded)
+                rankings.add(future.join());
+
+            if (rankings.size() == 1)
+                return RankFusion.dedupe(rankings.get(0), options.getDedupeThreshold(), limit);
+            // 关键词结果的权重按向量子查询的路数放大, keywordWeight 为 1 时关键词检索与全部向量子查询合计的权重相同
+            double keywordWeight = keywordSearches == 0 ? 0
+                    : options.getKeywordWeight() * Math.max(searches.size() - keywordSearches, 1) / keywordSearches;
+            double[] weights = new double[rankings.size()];
+            for (int i = 0; i < weights.length; i++)
+                weights[i] = searches.get(i).keyword() ? keywordWeight : 1;
+            List<Document> fused = RankFusion.reciprocalRank(rankings, weights, options.getRrfK());
+            return RankFusion.dedupe(fused, options.getDedupeThreshold(), limit);
+        });
+    }
+
+    /**
+     * 在向量库中检索一个子查询
+     */
+    private List<Document> search(String ragTag, String query, int topK, ChatRequestMetrics metrics) {
+        List<Double> embedding = metrics.time("embed", () -> blockingExecution.call(Downstream.EMBEDDING, () -> embeddingClient.embed(query)));
+        SearchRequest searchRequest = SearchRequest.query(query).withTopK(topK).withFilterExpression("knowledge == '" + ragTag + "'");
+        return metrics.time("search", () -> blockingExecution.call(Downstream.VECTOR_STORE,
+                () -> embeddingClient.withQueryEmbedding(query, embedding, () -> vectorStore.similaritySearch(searchRequest))));
+    }
+
+    /**
+     * 在关键词索引中检索
+     */
+    private List<Document> keywordSearch(String ragTag, String query, int topK, ChatRequestMetrics metrics) {
+        return metrics.time("keyword", () -> blockingExecution.call(Downstream.VECTOR_STORE, () -> lexicalIndex.keywordSearch(ragTag, query, topK)));
+    }
+
+    /**
+     * 关键词检索使用的查询: 去掉疑问词与停用词, 全是停用词时使用原问题
+     */
+    private static String keywordQuery(String query) {
+        String keywords = String.join(" ", QueryExpander.keywords(query));
+        return keywords.isEmpty() ? query : keywords;
+    }
+
+    /**
+     * 平台线程时执行子查询的有界线程池, 队列满时由调用线程执行
+     */
+    private static ExecutorService boundedPool(RetrievalOptions options) {
+        int threads = Math.max(options.getThreads(), 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 4),
+                new CustomizableThreadFactory("rag-retrieval-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 关闭子查询执行器
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一路检索
+     *
+     * @param supplier 执行检索的方法
+     * @param keyword  是否为关键词检索
+     */
+    private record Search(Supplier<List<Document>> supplier, boolean keyword) {
+    }
+}
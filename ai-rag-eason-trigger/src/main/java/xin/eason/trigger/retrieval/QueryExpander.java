@@ -0,0 +1,108 @@
+package xin.eason.trigger.retrieval;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 把用户问题扩展为多个子查询, 不调用大模型, 不增加额外的往返延迟:
+ * <ul>
+ *     <li>原问题</li>
+ *     <li>关键词查询: 去掉标点, 疑问词与停用词后剩下的关键词, 对措辞不敏感</li>
+ *     <li>分句查询: 一个问题里包含多个分句 ( 以 ? ; 。 换行等分隔 ) 时, 每个分句单独检索, 避免某个子问题被其他分句淹没</li>
+ * </ul>
+ */
+public class QueryExpander {
+
+    private static final Pattern CLAUSE_SEPARATOR = Pattern.compile("[?？;；。!！\\n]+");
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{IsHan}]+|[\\p{L}\\p{N}_]+");
+
+    private static final Set<String> ENGLISH_STOP_WORDS = Set.of(
+            "a", "an", "the", "is", "are", "was", "were", "be", "been", "do", "does", "did", "of", "to", "in", "on", "for",
+            "with", "and", "or", "what", "which", "who", "how", "why", "when", "where", "can", "could", "should", "would",
+            "i", "you", "me", "my", "it", "its", "this", "that", "these", "those", "please", "tell", "about", "there");
+
+    /**
+     * 中文疑问词与虚词, 按长度从长到短依次从词组中删除
+     */
+    private static final List<String> CHINESE_STOP_WORDS = List.of(
+            "请问", "告诉我", "什么是", "是什么", "为什么", "怎么样", "怎么", "如何", "哪些", "哪个", "什么", "能否", "可以",
+            "一下", "的", "了", "吗", "呢", "吧", "啊", "是", "在", "和", "与", "及", "或", "把", "被", "有", "我", "你", "请");
+
+    /**
+     * 最多的子查询数 ( 含原问题 )
+     */
+    private final int maxQueries;
+
+    public QueryExpander(int maxQueries) {
+        this.maxQueries = Math.max(maxQueries, 1);
+    }
+
+    /**
+     * 扩展问题
+     *
+     * @param query 用户问题
+     * @return 子查询列表, 第一个总是原问题, 不含重复项
+     */
+    public List<SubQuery> expand(String query) {
+        List<SubQuery> queries = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        add(queries, seen, new SubQuery(query.trim(), false));
+
+        String keywords = String.join(" ", keywords(query));
+        if (!keywords.isEmpty())
+            add(queries, seen, new SubQuery(keywords, true));
+
+        String[] clauses = CLAUSE_SEPARATOR.split(query);
+        if (clauses.length > 1) {
+            for (String clause : clauses) {
+                if (clause.trim().length() >= 4)
+                    add(queries, seen, new SubQuery(clause.trim(), false));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * 提取关键词: 英文按单词去掉停用词, 中文按连续汉字去掉疑问词与虚词
+     *
+     * @param text 文本
+     * @return 关键词列表
+     */
+    public static List<String> keywords(String text) {
+        List<String> keywords = new ArrayList<>();
+        var matcher = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (Character.UnicodeScript.of(token.codePointAt(0)) == Character.UnicodeScript.HAN) {
+                for (String stopWord : CHINESE_STOP_WORDS)
+                    token = token.replace(stopWord, " ");
+                for (String part : token.trim().split("\\s+")) {
+                    if (!part.isEmpty())
+                        keywords.add(part);
+                }
+            } else if (!ENGLISH_STOP_WORDS.contains(token)) {
+                keywords.add(token);
+            }
+        }
+        return keywords;
+    }
+
+    private void add(List<SubQuery> queries, Set<String> seen, SubQuery query) {
+        if (queries.size() < maxQueries && !query.text().isEmpty() && seen.add(query.text().toLowerCase(Locale.ROOT)))
+            queries.add(query);
+    }
+
+    /**
+     * 子查询
+     *
+     * @param text    查询文本
+     * @param keyword 是否为关键词查询
+     */
+    public record SubQuery(String text, boolean keyword) {
+    }
+}
@@ -0,0 +1,56 @@
+package xin.eason.trigger.retrieval;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 知识库问答的提示词组装: 检索到的文本块写入系统提示词的 DOCUMENTS 段, 用户问题作为用户消息
+ */
+public final class RagPrompts {
+
+    public static final String SYSTEM_PROMPT = """
+            Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
+            If unsure, simply state that you don't know.
+            Another thing you need to note is that your reply must be in Chinese!
+            DOCUMENTS:
+                {documents}
+            """;
+
+    private RagPrompts() {
+    }
+
+    /**
+     * 组装发送给大模型的消息列表, 文本块之间以空行分隔, 不做合并与截断
+     *
+     * @param documents 检索到的文本块
+     * @param message   用户问题
+     * @return 系统消息与用户消息
+     */
+    public static List<Message> messages(List<Document> documents, String message) {
+        return messages(documents.stream().map(Document::getContent).collect(Collectors.joining("\n\n")), message);
+    }
+
+    /**
+     * 组装发送给大模型的消息列表
+     *
+     * @param documents 已组装好的知识库上下文, 见 {@link ContextBuilder}
+     * @param message   用户问题
+     * @return 系统消息与用户消息
+     */
+    public static List<Message> messages(String documents, String message) {
+        Message systemMsg = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(Map.of("documents", documents));
+        Message userMessage = new UserMessage(message);
+
+        List<Message> messageList = new ArrayList<>();
+        messageList.add(systemMsg);
+        messageList.add(userMessage);
+        return messageList;
+    }
+}
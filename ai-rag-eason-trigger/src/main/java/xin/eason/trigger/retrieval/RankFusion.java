@@ -0,0 +1,142 @@
+package xin.eason.trigger.retrieval;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 多路检索结果的融合与去重
+ */
+public final class RankFusion {
+
+    /**
+     * 计算内容相似度时使用的字符 shingle 长度
+     */
+    private static final int SHINGLE = 5;
+
+    private RankFusion() {
+    }
+
+    /**
+     * 倒数排名融合 ( Reciprocal Rank Fusion ): 文档得分为其在各路结果中 1 / (k + 排名) 之和, 排名从 1 开始.
+     * 只依赖排名, 不依赖各路结果的原始分数, 因此可以直接融合向量检索与关键词检索
+     *
+     * @param rankings 各路检索结果, 每路按相关性从高到低排列
+     * @param k        平滑常数
+     * @return 按融合得分从高到低排列的文档 ( 按 ID 合并 )
+     */
+    public static List<Document> reciprocalRank(List<List<Document>> rankings, int k) {
+        double[] weights = new double[rankings.size()];
+        Arrays.fill(weights, 1);
+        return reciprocalRank(rankings, weights, k);
+    }
+
+    /**
+     * 加权的倒数排名融合: 第 i 路结果的得分乘以 weights[i]
+     *
+     * @param rankings 各路检索结果, 每路按相关性从高到低排列
+     * @param weights  各路结果的权重
+     * @param k        平滑常数
+     * @return 按融合得分从高到低排列的文档 ( 按 ID 合并 )
+     */
+    public static List<Document> reciprocalRank(List<List<Document>> rankings, double[] weights, int k) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < rankings.size(); i++) {
+            List<Document> ranking = rankings.get(i);
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), weights[i] / (k + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed());
+        return fused;
+    }
+
+    /**
+     * 去掉内容近似重复的文本块 ( 例如同一文件被导入两次, 或相邻文本块的重叠部分 ), 保留排名靠前的一个
+     *
+     * @param documents 按相关性排列的文档
+     * @param threshold Jaccard 系数阈值, 不低于该值视为重复
+     * @param limit     最多返回的文档数
+     * @return 去重后的文档
+     */
+    public static List<Document> dedupe(List<Document> documents, double threshold, int limit) {
+        List<Document> selected = new ArrayList<>(Math.min(limit, documents.size()));
+        List<long[]> selectedShingles = new ArrayList<>();
+        for (Document document : documents) {
+            if (selected.size() >= limit)
+                break;
+            long[] shingles = shingles(document.getContent());
+            boolean duplicate = false;
+            for (long[] other : selectedShingles) {
+                if (similar(shingles, other, threshold)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                selected.add(document);
+                selectedShingles.add(shingles);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return 规范化文本 ( 小写, 折叠空白 ) 的字符 shingle 哈希, 已排序去重
+     */
+    private static long[] shingles(String content) {
+        String text = content == null ? "" : content.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        if (text.length() <= SHINGLE)
+            return new long[]{text.hashCode()};
+        long[] hashes = new long[text.length() - SHINGLE + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            long hash = 1125899906842597L;
+            for (int j = i; j < i + SHINGLE; j++)
+                hash = 31 * hash + text.charAt(j);
+            hashes[i] = hash;
+        }
+        Arrays.sort(hashes);
+        int distinct = 1;
+        for (int i = 1; i < hashes.length; i++) {
+            if (hashes[i] != hashes[distinct - 1])
+                hashes[distinct++] = hashes[i];
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    /**
+     * @return 两个 shingle 集合的 Jaccard 系数是否不低于 threshold. 剩余元素全部相同也达不到阈值时提前返回
+     */
+    private static boolean similar(long[] a, long[] b, double threshold) {
+        // |A ∩ B| / |A ∪ B| >= t 等价于 |A ∩ B| >= t * (|A| + |B|) / (1 + t)
+        double required = threshold * (a.length + b.length) / (1 + threshold);
+        if (Math.min(a.length, b.length) < required)
+            return false;
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (common + Math.min(a.length - i, b.length - j) < required)
+                return false;
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return common >= required;
+    }
+}
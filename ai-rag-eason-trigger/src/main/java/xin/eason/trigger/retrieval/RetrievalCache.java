@@ -0,0 +1,220 @@
+package xin.eason.trigger.retrieval;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.ai.document.Document;
+import xin.eason.trigger.ingest.KnowledgeChangeListener;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存, 键为 (嵌入模型, 知识库 Tag, 规范化后的问题, topK, 检索方式).
+ * 每个知识库 Tag 维护一个版本号并参与缓存键计算, 知识库内容变化时版本号递增, 旧条目不再命中并随过期时间淘汰.
+ * 开启 Redis 后, 缓存条目与版本号在多个节点之间共享, 版本变化通过 Redis 发布订阅通知其他节点
+ */
+@Slf4j
+public class RetrievalCache implements KnowledgeChangeListener {
+
+    private static final String REDIS_CACHE_NAME = "ragRetrievalCache";
+    private static final String REDIS_GENERATION_PREFIX = "ragRetrievalGeneration:";
+    private static final String REDIS_INVALIDATION_TOPIC = "ragRetrievalInvalidation";
+    private static final TypeReference<List<CachedDocument>> CACHED_DOCUMENTS = new TypeReference<>() {
+    };
+
+    /**
+     * 嵌入模型名称, 更换模型后旧缓存自然失效
+     */
+    private final String model;
+
+    /**
+     * 缓存参数
+     */
+    private final RetrievalCacheOptions options;
+
+    /**
+     * Redisson 客户端, 未开启 Redis 共享时为 null
+     */
+    private final RedissonClient redissonClient;
+
+    /**
+     * 进程内缓存
+     */
+    private final Cache<String, List<Document>> localCache;
+
+    /**
+     * Redis 共享缓存, 值为 JSON 序列化的检索结果
+     */
+    private final RMapCache<String, String> redisCache;
+
+    /**
+     * 知识库 Tag -> 当前版本号
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RetrievalCache(String model, RetrievalCacheOptions options, RedissonClient redissonClient) {
+        this(model, options, redissonClient, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker 计算进程内缓存过期时间使用的时钟 ( Redis 中的条目由 Redis 按 TTL 淘汰 )
+     */
+    public RetrievalCache(String model, RetrievalCacheOptions options, RedissonClient redissonClient, Ticker ticker) {
+        this.model = model;
+        this.options = options;
+        this.redissonClient = options.isRedisEnabled() ? redissonClient : null;
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumSize(options.getMaximumEntries())
+                .expireAfterWrite(options.getTtlMinutes(), TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build();
+        if (this.redissonClient != null) {
+            this.redisCache = this.redissonClient.getMapCache(REDIS_CACHE_NAME, StringCodec.INSTANCE);
+            RTopic topic = this.redissonClient.getTopic(REDIS_INVALIDATION_TOPIC, StringCodec.INSTANCE);
+            topic.addListener(String.class, (channel, ragTag) -> generation(ragTag).set(loadGeneration(ragTag)));
+        } else {
+            this.redisCache = null;
+        }
+    }
+
+    /**
+     * 查询缓存, 未命中时调用 loader 执行检索并写入缓存
+     *
+     * @param ragTag 知识库 Tag
+     * @param query  用户问题
+     * @param topK   返回的文本块数量
+     * @param mode   检索方式
+     * @param loader 实际执行检索的方法
+     * @return 检索结果
+     */
+    public List<Document> get(String ragTag, String query, int topK, SearchMode mode, Supplier<List<Document>> loader) {
+        if (!options.isEnabled())
+            return loader.get();
+
+        String key = cacheKey(ragTag, query, topK, mode);
+        List<Document> documents = localCache.getIfPresent(key);
+        if (documents == null && redisCache != null) {
+            documents = loadFromRedis(key);
+            if (documents != null)
+                localCache.put(key, documents);
+        }
+        if (documents != null) {
+            hits.increment();
+            return documents;
+        }
+
+        misses.increment();
+        documents = List.copyOf(loader.get());
+        localCache.put(key, documents);
+        if (redisCache != null)
+            saveToRedis(key, documents);
+        return documents;
+    }
+
+    /**
+     * 知识库内容变化时递增该 Tag 的版本号, 使其全部缓存条目失效
+     *
+     * @param ragTag 发生变化的知识库 Tag
+     */
+    @Override
+    public void onKnowledgeChanged(String ragTag) {
+        if (redissonClient != null) {
+            long generation = redissonClient.getAtomicLong(REDIS_GENERATION_PREFIX + ragTag).incrementAndGet();
+            generation(ragTag).set(generation);
+            redissonClient.getTopic(REDIS_INVALIDATION_TOPIC, StringCodec.INSTANCE).publish(ragTag);
+        } else {
+            generation(ragTag).incrementAndGet();
+        }
+        log.info("知识库 {} 内容已变化, 检索缓存失效", ragTag);
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 未命中次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 缓存键: sha256(模型, Tag, 版本号, topK, 检索方式, 规范化后的问题)
+     */
+    private String cacheKey(String ragTag, String query, int topK, SearchMode mode) {
+        return Hashing.sha256().newHasher()
+                .putString(model, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(ragTag, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putLong(generation(ragTag).get())
+                .putInt(topK)
+                .putInt(mode.ordinal())
+                .putString(normalize(query), StandardCharsets.UTF_8)
+                .hash()
+                .toString();
+    }
+
+    /**
+     * 规范化问题文本: Unicode NFKC, 去除首尾空白, 合并连续空白, 转为小写
+     */
+    static String normalize(String query) {
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC);
+        return normalized.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private AtomicLong generation(String ragTag) {
+        return generations.computeIfAbsent(ragTag, tag -> new AtomicLong(redissonClient == null ? 0 : loadGeneration(tag)));
+    }
+
+    private long loadGeneration(String ragTag) {
+        return redissonClient.getAtomicLong(REDIS_GENERATION_PREFIX + ragTag).get();
+    }
+
+    private List<Document> loadFromRedis(String key) {
+        try {
+            String json = redisCache.get(key);
+            if (json == null)
+                return null;
+            return objectMapper.readValue(json, CACHED_DOCUMENTS).stream().map(CachedDocument::toDocument).toList();
+        } catch (Exception e) {
+            log.warn("读取 Redis 检索缓存失败", e);
+            return null;
+        }
+    }
+
+    private void saveToRedis(String key, List<Document> documents) {
+        try {
+            String json = objectMapper.writeValueAsString(documents.stream().map(CachedDocument::from).toList());
+            redisCache.fastPutAsync(key, json, options.getTtlMinutes(), TimeUnit.MINUTES);
+        } catch (JsonProcessingException e) {
+            log.warn("序列化检索结果失败", e);
+        } catch (Exception e) {
+            log.warn("写入 Redis 检索缓存失败", e);
+        }
+    }
+}
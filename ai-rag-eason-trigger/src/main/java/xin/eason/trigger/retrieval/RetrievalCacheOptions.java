@@ -0,0 +1,30 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 检索结果缓存参数, 由 spring.ai.rag.retrieval-cache 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetrievalCacheOptions {
+    /**
+     * 是否开启检索结果缓存
+     */
+    private boolean enabled = true;
+    /**
+     * 进程内缓存的最大条目数
+     */
+    private long maximumEntries = 10000;
+    /**
+     * 缓存条目的过期时间 ( 分钟 )
+     */
+    private long ttlMinutes = 60;
+    /**
+     * 是否通过 Redis 在多个节点之间共享缓存与失效通知
+     */
+    private boolean redisEnabled = false;
+}
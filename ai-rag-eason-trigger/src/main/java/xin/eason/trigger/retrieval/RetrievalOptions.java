@@ -0,0 +1,59 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 知识库检索参数, 由 spring.ai.rag.retrieval 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetrievalOptions {
+    /**
+     * 是否把问题扩展为多个子查询并行检索, 关闭时只用原问题检索一次
+     */
+    private boolean multiQuery = true;
+    /**
+     * 最多的子查询数 ( 含原问题 )
+     */
+    private int maxQueries = 4;
+    /**
+     * 倒数排名融合 ( RRF ) 的平滑常数 k, 文档得分为各子查询中 1 / (k + 排名) 之和
+     */
+    private int rrfK = 60;
+    /**
+     * 内容相似度 ( 字符 shingle 的 Jaccard 系数 ) 不低于该值的文本块视为重复, 只保留排名靠前的一个
+     */
+    private double dedupeThreshold = 0.9;
+    /**
+     * 并行执行子查询的线程数
+     */
+    private int threads = 8;
+    /**
+     * 请求可指定的最大 topK
+     */
+    private int maxTopK = 100;
+    /**
+     * 请求未指定时的检索方式: vector ( 只做向量检索 ), keyword ( 只做关键词检索 ), hybrid ( 两者以倒数排名融合合并 )
+     */
+    private String searchMode = "hybrid";
+    /**
+     * 混合检索中关键词结果的融合权重, 1 表示关键词检索与全部向量子查询合计的权重相同
+     */
+    private double keywordWeight = 1.0;
+    /**
+     * 是否在 PG 向量表上建立 tsvector 生成列与 GIN 全文索引 ( 仅 pgvector 向量库 ). 首次开启时在 ACCESS EXCLUSIVE 锁下重写整张表,
+     * 应作为一次性迁移在维护窗口中开启; 关闭时 PG 向量库没有关键词索引, 检索总是向量检索
+     */
+    private boolean pgFullText = false;
+    /**
+     * 流式对话中执行问题嵌入, 检索与提示词组装等阻塞步骤的调度器线程上限, 为 0 时使用 Reactor 默认值 ( CPU 核数的 10 倍 )
+     */
+    private int schedulerThreads = 0;
+    /**
+     * 调度器线程全忙时最多排队的请求数, 超出时请求直接失败
+     */
+    private int schedulerQueueSize = 10000;
+}
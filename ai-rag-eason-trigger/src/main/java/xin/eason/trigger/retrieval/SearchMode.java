@@ -0,0 +1,39 @@
+package xin.eason.trigger.retrieval;
+
+import java.util.Locale;
+
+/**
+ * 知识库检索方式, 可由请求指定
+ */
+public enum SearchMode {
+    /**
+     * 只做向量检索
+     */
+    VECTOR,
+    /**
+     * 只做关键词检索
+     */
+    KEYWORD,
+    /**
+     * 向量检索与关键词检索的结果以倒数排名融合合并
+     */
+    HYBRID;
+
+    /**
+     * 解析检索方式, 忽略大小写
+     *
+     * @param value       检索方式名称
+     * @param defaultMode 名称为空时使用的检索方式
+     * @return 检索方式
+     * @throws IllegalArgumentException 名称不是合法的检索方式
+     */
+    public static SearchMode of(String value, SearchMode defaultMode) {
+        if (value == null || value.isBlank())
+            return defaultMode;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("未知的检索方式: " + value + ", 可选 vector, keyword, hybrid");
+        }
+    }
+}
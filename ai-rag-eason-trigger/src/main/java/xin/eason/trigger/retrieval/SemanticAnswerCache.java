@@ -0,0 +1,296 @@
+package xin.eason.trigger.retrieval;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.embedding.EmbeddingClient;
+import reactor.core.publisher.Flux;
+import xin.eason.trigger.concurrent.BlockingExecution;
+import xin.eason.trigger.concurrent.Downstream;
+import xin.eason.kernel.SimilarityKernel;
+import xin.eason.kernel.SimilarityKernels;
+import xin.eason.trigger.ingest.KnowledgeChangeListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 语义回答缓存. 缓存 (问题向量, 知识库 Tag, 模型, 完整回答), 新问题与某个已缓存问题的余弦距离不超过阈值时,
+ * 直接回放缓存的回答, 不再调用大模型. 条目按数量与过期时间淘汰, 知识库内容变化时该 Tag 下的回答全部失效.
+ * 每个 Tag 的问题向量连续存放并限制条数, 查询时的相似度扫描长度有上限
+ */
+@Slf4j
+public class SemanticAnswerCache implements KnowledgeChangeListener {
+
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    /**
+     * 缓存参数
+     */
+    private final SemanticCacheOptions options;
+
+    /**
+     * 嵌入客户端, 用于计算问题向量 ( 检索阶段会嵌入同一问题, 向量由嵌入缓存复用 )
+     */
+    private final EmbeddingClient embeddingClient;
+
+    /**
+     * 嵌入服务的并发上限
+     */
+    private final BlockingExecution blockingExecution;
+
+    /**
+     * 条目 ID -> 回答, 负责数量与过期时间淘汰
+     */
+    private final Cache<Long, AnswerEntry> entries;
+
+    /**
+     * 知识库 Tag -> 该 Tag 下的条目与问题向量, 用于相似度扫描与按 Tag 失效
+     */
+    private final Map<String, TagAnswers> answersByTag = new ConcurrentHashMap<>();
+
+    /**
+     * 知识库 Tag -> 版本号, 生成回答期间知识库发生变化时丢弃该回答
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SemanticAnswerCache(SemanticCacheOptions options, EmbeddingClient embeddingClient) {
+        this(options, embeddingClient, BlockingExecution.platform());
+    }
+
+    public SemanticAnswerCache(SemanticCacheOptions options, EmbeddingClient embeddingClient, BlockingExecution blockingExecution) {
+        this(options, embeddingClient, blockingExecution, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker 计算过期时间使用的时钟
+     */
+    public SemanticAnswerCache(SemanticCacheOptions options, EmbeddingClient embeddingClient, BlockingExecution blockingExecution, Ticker ticker) {
+        this.options = options;
+        this.embeddingClient = embeddingClient;
+        this.blockingExecution = blockingExecution;
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(options.getMaximumEntries())
+                .expireAfterWrite(options.getTtlMinutes(), TimeUnit.MINUTES)
+                .ticker(ticker)
+                .<Long, AnswerEntry>removalListener(notification -> {
+                    if (notification.getCause() != RemovalCause.EXPLICIT) {
+                        AnswerEntry entry = notification.getValue();
+                        TagAnswers answers = answersByTag.get(entry.ragTag());
+                        if (answers != null)
+                            answers.remove(entry);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 在生成回答前查询语义缓存: 命中时回放缓存的回答, 否则调用 generator 生成回答, 并在流正常结束后缓存完整回答
+     *
+     * @param ragTag    知识库 Tag
+     * @param model     模型标识 ( 包含模型提供方 )
+     * @param query     用户问题
+     * @param generator 实际调用大模型的方法
+     * @return 对话响应流
+     */
+    public Flux<ChatResponse> answer(String ragTag, String model, String query, Supplier<Flux<ChatResponse>> generator) {
+        if (!options.isEnabled())
+            return generator.get();
+
+        float[] embedding = normalize(blockingExecution.call(Downstream.EMBEDDING, () -> embeddingClient.embed(query)));
+        AnswerEntry hit = lookup(ragTag, model, embedding);
+        if (hit != null) {
+            hits.increment();
+            log.info("语义缓存命中, 知识库: {}, 模型: {}", ragTag, model);
+            return Flux.just(new ChatResponse(List.of(new Generation(hit.answer()))));
+        }
+
+        misses.increment();
+        long generation = generation(ragTag).get();
+        StringBuilder answer = new StringBuilder();
+        return generator.get()
+                .doOnNext(response -> {
+                    if (response.getResult() != null && response.getResult().getOutput().getContent() != null)
+                        answer.append(response.getResult().getOutput().getContent());
+                })
+                .doOnComplete(() -> put(ragTag, model, embedding, answer.toString(), generation));
+    }
+
+    /**
+     * 知识库内容变化时, 清除该 Tag 下的全部回答
+     *
+     * @param ragTag 发生变化的知识库 Tag
+     */
+    @Override
+    public void onKnowledgeChanged(String ragTag) {
+        generation(ragTag).incrementAndGet();
+        TagAnswers removed = answersByTag.remove(ragTag);
+        if (removed != null)
+            entries.invalidateAll(removed.ids());
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 未命中次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 扫描同一 Tag, 同一模型下的回答, 返回余弦距离最小且不超过阈值的条目; 该条目已过期时视为未命中
+     */
+    private AnswerEntry lookup(String ragTag, String model, float[] embedding) {
+        TagAnswers answers = answersByTag.get(ragTag);
+        if (answers == null)
+            return null;
+        AnswerEntry best = answers.nearest(model, embedding, options.getMaxDistance());
+        // 在 TagAnswers 的锁外访问 Guava 缓存, 过期清理触发的移除回调会获取其他 Tag 的锁
+        return best != null && entries.getIfPresent(best.id()) != null ? best : null;
+    }
+
+    private void put(String ragTag, String model, float[] embedding, String answer, long generation) {
+        // 生成期间知识库已变化, 回答可能基于旧内容, 不保留
+        if (answer.isEmpty() || generation(ragTag).get() != generation)
+            return;
+        AnswerEntry entry = new AnswerEntry(nextId.incrementAndGet(), ragTag, model, answer);
+        TagAnswers answers = answersByTag.computeIfAbsent(ragTag, tag -> new TagAnswers(options.getMaxEntriesPerTag()));
+        List<Long> evicted = answers.add(entry, embedding);
+        entries.put(entry.id(), entry);
+        if (!evicted.isEmpty())
+            entries.invalidateAll(evicted);
+        if (generation(ragTag).get() != generation) {
+            answers.remove(entry);
+            entries.invalidate(entry.id());
+        }
+    }
+
+    private AtomicLong generation(String ragTag) {
+        return generations.computeIfAbsent(ragTag, tag -> new AtomicLong());
+    }
+
+    /**
+     * 把嵌入向量转换为单位长度的 float 向量
+     */
+    private static float[] normalize(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++)
+            vector[i] = embedding.get(i).floatValue();
+        float norm = (float) Math.sqrt(KERNEL.dot(vector, vector));
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++)
+                vector[i] /= norm;
+        }
+        return vector;
+    }
+
+    /**
+     * 一条缓存的回答, 问题向量存放在所属 Tag 的 {@link TagAnswers} 中
+     */
+    private record AnswerEntry(long id, String ragTag, String model, String answer) {
+    }
+
+    /**
+     * 一个 Tag 下的回答: 固定容量的环形缓冲区, 问题向量 ( 已归一化 ) 按槽位连续存放在同一个数组中,
+     * 写满后覆盖最早写入的回答. 嵌入维度变化 ( 更换了嵌入模型 ) 时清空原有回答
+     */
+    private static final class TagAnswers {
+
+        private final int capacity;
+        private final AnswerEntry[] slots;
+        private int dimensions;
+        private float[] vectors;
+
+        /**
+         * 下一次写入的槽位
+         */
+        private int next;
+
+        TagAnswers(int capacity) {
+            this.capacity = Math.max(capacity, 1);
+            this.slots = new AnswerEntry[this.capacity];
+        }
+
+        /**
+         * 返回同一模型下与问题向量的余弦距离最小且不超过 maxDistance 的回答
+         */
+        synchronized AnswerEntry nearest(String model, float[] embedding, double maxDistance) {
+            if (embedding.length != dimensions)
+                return null;
+            AnswerEntry best = null;
+            double bestDistance = maxDistance;
+            for (int slot = 0; slot < capacity; slot++) {
+                AnswerEntry entry = slots[slot];
+                if (entry == null || !entry.model().equals(model))
+                    continue;
+                double distance = 1 - KERNEL.dot(vectors, slot * dimensions, embedding, 0, dimensions);
+                if (distance <= bestDistance) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 写入一条回答
+         *
+         * @return 被覆盖或清空的回答 ID
+         */
+        synchronized List<Long> add(AnswerEntry entry, float[] embedding) {
+            List<Long> evicted = new ArrayList<>(1);
+            if (embedding.length != dimensions) {
+                evicted.addAll(ids());
+                Arrays.fill(slots, null);
+                dimensions = embedding.length;
+                vectors = new float[capacity * dimensions];
+                next = 0;
+            }
+            if (slots[next] != null)
+                evicted.add(slots[next].id());
+            slots[next] = entry;
+            System.arraycopy(embedding, 0, vectors, next * dimensions, dimensions);
+            next = (next + 1) % capacity;
+            return evicted;
+        }
+
+        synchronized void remove(AnswerEntry entry) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (slots[slot] == entry) {
+                    slots[slot] = null;
+                    return;
+                }
+            }
+        }
+
+        synchronized List<Long> ids() {
+            List<Long> ids = new ArrayList<>();
+            for (AnswerEntry entry : slots) {
+                if (entry != null)
+                    ids.add(entry.id());
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package xin.eason.trigger.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 语义回答缓存参数, 由 spring.ai.rag.semantic-cache 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SemanticCacheOptions {
+    /**
+     * 是否开启语义回答缓存 ( 默认关闭 )
+     */
+    private boolean enabled = false;
+    /**
+     * 命中所需的最大余弦距离 ( 1 - 余弦相似度 ), 越小越严格
+     */
+    private double maxDistance = 0.05;
+    /**
+     * 缓存的最大回答数
+     */
+    private long maximumEntries = 2000;
+    /**
+     * 每个知识库 Tag 缓存的最大回答数, 即每次查询最多扫描的问题向量数, 超出时覆盖该 Tag 下最早写入的回答
+     */
+    private int maxEntriesPerTag = 256;
+    /**
+     * 回答的过期时间 ( 分钟 )
+     */
+    private long ttlMinutes = 60;
+}
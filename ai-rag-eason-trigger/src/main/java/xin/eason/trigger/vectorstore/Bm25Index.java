@@ -0,0 +1,426 @@
+package xin.eason.trigger.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * 进程内 BM25 倒排索引. 文档以递增的 int 编号加入, 每个词的倒排表以变长整数编码 ( 文档编号差值, 词频 ) 连续存放在 byte[] 中,
+ * 常见情况下每条记录只占 2 字节. 倒排表按知识库 Tag 分开存放, 指定 Tag 的检索只解码该 Tag 的倒排表, 文档数与平均长度也按 Tag 统计
+ * ( 每个知识库视为独立的语料 ); 得分累加在只记录命中文档的稀疏表中, 不随文档总数分配数组.
+ * 删除只扣除文档长度统计, 倒排表中的记录在检索时跳过. 可以整体写入快照 ( {@link #writeTo} ) 并原样恢复, 不必重新分词.
+ * 非线程安全, 由调用方 ( {@link HnswVectorStore} 的读写锁 ) 保证同步
+ */
+public class Bm25Index {
+
+    /**
+     * 快照文件标识
+     */
+    private static final int SNAPSHOT_MAGIC = 0x424d3236;
+
+    /**
+     * 词频饱和参数
+     */
+    private static final float K1 = 1.2f;
+
+    /**
+     * 文档长度归一化参数
+     */
+    private static final float B = 0.75f;
+
+    /**
+     * 知识库 Tag -> 该 Tag 的倒排表与统计, 没有 Tag 的文档在 null 键下
+     */
+    private final Map<String, Partition> partitions = new HashMap<>();
+
+    /**
+     * 文档编号 -> 文档长度 ( 词数 ), 0 表示文档不存在或已删除
+     */
+    private int[] lengths = new int[1024];
+
+    /**
+     * 文档编号 -> 所属分区, 用于删除时扣除分区统计
+     */
+    private Partition[] partitionOf = new Partition[1024];
+
+    /**
+     * 最近加入的文档编号
+     */
+    private int lastDocument = -1;
+
+    private int documents;
+
+    /**
+     * 加入没有知识库 Tag 的文档
+     *
+     * @param document 文档编号, 必须大于之前加入的所有编号
+     * @param text     文本内容
+     */
+    public void add(int document, String text) {
+        add(document, null, text);
+    }
+
+    /**
+     * 加入文档
+     *
+     * @param document 文档编号, 必须大于之前加入的所有编号
+     * @param tag      知识库 Tag, 可以为 null
+     * @param text     文本内容
+     */
+    public void add(int document, String tag, String text) {
+        if (document <= lastDocument)
+            throw new IllegalArgumentException("文档编号必须递增: " + document + " <= " + lastDocument);
+        lastDocument = document;
+        List<String> tokens = LexicalTokenizer.tokenize(text);
+        if (tokens.isEmpty())
+            return;
+        Partition partition = partitions.computeIfAbsent(tag, key -> new Partition());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens)
+            frequencies.merge(token, 1, Integer::sum);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet())
+            partition.postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(document, entry.getValue());
+
+        if (document >= lengths.length) {
+            int capacity = Math.max(lengths.length * 2, document + 1);
+            lengths = Arrays.copyOf(lengths, capacity);
+            partitionOf = Arrays.copyOf(partitionOf, capacity);
+        }
+        lengths[document] = tokens.size();
+        partitionOf[document] = partition;
+        partition.documents++;
+        partition.totalLength += tokens.size();
+        documents++;
+    }
+
+    /**
+     * 删除文档, 编号不存在时忽略
+     *
+     * @param document 文档编号
+     */
+    public void remove(int document) {
+        if (document >= lengths.length || lengths[document] == 0)
+            return;
+        Partition partition = partitionOf[document];
+        partition.documents--;
+        partition.totalLength -= lengths[document];
+        documents--;
+        lengths[document] = 0;
+        partitionOf[document] = null;
+    }
+
+    /**
+     * 在全部文档中做 BM25 检索
+     *
+     * @see #search(String, String, int, IntPredicate)
+     */
+    public long[] search(String query, int topK, IntPredicate accept) {
+        return search(null, query, topK, accept);
+    }
+
+    /**
+     * BM25 检索. 指定 Tag 时只读取该 Tag 的倒排表, 以该 Tag 的文档统计计算 IDF 与平均长度; 不指定时合并全部 Tag 的统计
+     *
+     * @param tag    知识库 Tag, 为 null 时检索全部文档
+     * @param query  查询文本
+     * @param topK   返回的文档数量
+     * @param accept 文档过滤条件
+     * @return 按 (得分, 文档编号) 编码的结果, 得分降序, 见 {@link #score(long)} 与 {@link #document(long)}
+     */
+    public long[] search(String tag, String query, int topK, IntPredicate accept) {
+        List<Partition> scope;
+        if (tag == null) {
+            scope = new ArrayList<>(partitions.values());
+        } else {
+            Partition partition = partitions.get(tag);
+            scope = partition == null ? List.of() : List.of(partition);
+        }
+        int scopeDocuments = 0;
+        long scopeLength = 0;
+        for (Partition partition : scope) {
+            scopeDocuments += partition.documents;
+            scopeLength += partition.totalLength;
+        }
+        if (scopeDocuments == 0 || topK <= 0)
+            return new long[0];
+        Set<String> terms = new LinkedHashSet<>(LexicalTokenizer.tokenize(query));
+        float averageLength = (float) scopeLength / scopeDocuments;
+        ScoreAccumulator scores = null;
+        int[] cursor = new int[2];
+        for (String term : terms) {
+            int frequencyOfTerm = 0;
+            for (Partition partition : scope) {
+                Postings termPostings = partition.postings.get(term);
+                if (termPostings != null)
+                    frequencyOfTerm += termPostings.documents;
+            }
+            if (frequencyOfTerm == 0)
+                continue;
+            if (scores == null)
+                scores = new ScoreAccumulator(frequencyOfTerm);
+            // 文档频率包含已删除的文档, 只影响 IDF 的近似程度; 删除较多时不能超过未删除的文档数, 否则 IDF 为负, 命中的文档全部被丢弃
+            frequencyOfTerm = Math.min(frequencyOfTerm, scopeDocuments);
+            float idf = (float) Math.log(1 + (scopeDocuments - frequencyOfTerm + 0.5) / (frequencyOfTerm + 0.5));
+            for (Partition partition : scope) {
+                Postings termPostings = partition.postings.get(term);
+                if (termPostings == null)
+                    continue;
+                cursor[0] = 0;
+                cursor[1] = 0;
+                while (cursor[0] < termPostings.size) {
+                    int document = cursor[1] += termPostings.next(cursor);
+                    int frequency = termPostings.next(cursor);
+                    int length = lengths[document];
+                    if (length == 0)
+                        continue;
+                    scores.add(document, idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength)));
+                }
+            }
+        }
+        if (scores == null)
+            return new long[0];
+
+        LongHeap heap = new LongHeap(topK + 1, false);
+        for (int slot = 0; slot < scores.keys.length; slot++) {
+            int document = scores.keys[slot] - 1;
+            if (document < 0)
+                continue;
+            float score = scores.values[slot];
+            if (score <= 0 || !accept.test(document))
+                continue;
+            heap.push(LongHeap.key(score, document));
+            if (heap.size() > topK)
+                heap.pop();
+        }
+        long[] results = heap.drainAscending();
+        for (int i = 0, j = results.length - 1; i < j; i++, j--) {
+            long swap = results[i];
+            results[i] = results[j];
+            results[j] = swap;
+        }
+        return results;
+    }
+
+    /**
+     * @return 未删除的文档数
+     */
+    public int size() {
+        return documents;
+    }
+
+    /**
+     * @return 倒排表占用的字节数
+     */
+    public long postingsBytes() {
+        long bytes = 0;
+        for (Partition partition : partitions.values()) {
+            for (Postings termPostings : partition.postings.values())
+                bytes += termPostings.size;
+        }
+        return bytes;
+    }
+
+    /**
+     * 写入索引快照
+     *
+     * @param out 输出流
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(lastDocument);
+        out.writeInt(documents);
+        out.writeInt(partitions.size());
+        Map<Partition, Integer> numbers = new HashMap<>();
+        for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+            Partition partition = entry.getValue();
+            numbers.put(partition, numbers.size());
+            out.writeBoolean(entry.getKey() != null);
+            if (entry.getKey() != null)
+                out.writeUTF(entry.getKey());
+            out.writeInt(partition.documents);
+            out.writeLong(partition.totalLength);
+            out.writeInt(partition.postings.size());
+            for (Map.Entry<String, Postings> term : partition.postings.entrySet()) {
+                Postings termPostings = term.getValue();
+                out.writeUTF(term.getKey());
+                out.writeInt(termPostings.lastDocument);
+                out.writeInt(termPostings.documents);
+                out.writeInt(termPostings.size);
+                out.write(termPostings.data, 0, termPostings.size);
+            }
+        }
+        // 每个文档的长度与所属分区编号, 已删除的文档长度为 0
+        for (int document = 0; document <= lastDocument; document++) {
+            int length = document < lengths.length ? lengths[document] : 0;
+            out.writeInt(length);
+            if (length > 0)
+                out.writeInt(numbers.get(partitionOf[document]));
+        }
+    }
+
+    /**
+     * 从快照恢复索引
+     *
+     * @param in 输入流
+     * @return 索引, 快照标识不匹配 ( 例如旧版本的快照 ) 时返回 null
+     */
+    public static Bm25Index readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC)
+            return null;
+        Bm25Index index = new Bm25Index();
+        index.lastDocument = in.readInt();
+        index.documents = in.readInt();
+        Partition[] numbered = new Partition[in.readInt()];
+        for (int number = 0; number < numbered.length; number++) {
+            String tag = in.readBoolean() ? in.readUTF() : null;
+            Partition partition = new Partition();
+            partition.documents = in.readInt();
+            partition.totalLength = in.readLong();
+            int terms = in.readInt();
+            for (int i = 0; i < terms; i++) {
+                String term = in.readUTF();
+                Postings termPostings = new Postings();
+                termPostings.lastDocument = in.readInt();
+                termPostings.documents = in.readInt();
+                termPostings.size = in.readInt();
+                termPostings.data = new byte[Math.max(termPostings.size, 8)];
+                in.readFully(termPostings.data, 0, termPostings.size);
+                partition.postings.put(term, termPostings);
+            }
+            index.partitions.put(tag, partition);
+            numbered[number] = partition;
+        }
+        int capacity = Math.max(index.lastDocument + 1, 1024);
+        index.lengths = new int[capacity];
+        index.partitionOf = new Partition[capacity];
+        for (int document = 0; document <= index.lastDocument; document++) {
+            int length = in.readInt();
+            index.lengths[document] = length;
+            if (length > 0)
+                index.partitionOf[document] = numbered[in.readInt()];
+        }
+        return index;
+    }
+
+    public static float score(long result) {
+        return LongHeap.distance(result);
+    }
+
+    public static int document(long result) {
+        return LongHeap.node(result);
+    }
+
+    /**
+     * 一个知识库 Tag 的倒排表与文档统计
+     */
+    private static final class Partition {
+        /**
+         * 词 -> 倒排表
+         */
+        private final Map<String, Postings> postings = new HashMap<>();
+        private int documents;
+        private long totalLength;
+    }
+
+    /**
+     * 变长整数编码的倒排表, 每个字节低 7 位为数据, 最高位表示后面还有字节
+     */
+    private static final class Postings {
+        private byte[] data = new byte[8];
+        private int size;
+        private int lastDocument;
+        private int documents;
+
+        void add(int document, int frequency) {
+            write(document - lastDocument);
+            write(frequency);
+            lastDocument = document;
+            documents++;
+        }
+
+        /**
+         * 从 cursor[0] 处读取一个变长整数并移动游标
+         */
+        int next(int[] cursor) {
+            int value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = data[cursor[0]++];
+                value |= (current & 0x7f) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return value;
+        }
+
+        private void write(int value) {
+            if (size + 5 > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            while ((value & ~0x7f) != 0) {
+                data[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    /**
+     * 文档编号 -> 得分的开放寻址哈希表, 容量按命中的倒排记录数分配, 与文档总数无关. 键存放文档编号加 1, 0 表示空槽
+     */
+    private static final class ScoreAccumulator {
+        private int[] keys;
+        private float[] values;
+        private int size;
+
+        ScoreAccumulator(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new float[capacity];
+        }
+
+        void add(int document, float score) {
+            if ((size + 1) * 2 > keys.length)
+                grow();
+            int mask = keys.length - 1;
+            int key = document + 1;
+            int slot = mix(document) & mask;
+            while (keys[slot] != 0 && keys[slot] != key)
+                slot = (slot + 1) & mask;
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += score;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new float[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int slot = mix(oldKeys[i] - 1) & mask;
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int mix(int value) {
+            int hash = value * 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * PG 向量库批量导入参数, 由 spring.ai.rag.bulk-load 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkLoadOptions {
+    /**
+     * 导入流水线是否以 COPY 批量写入 PG 向量库
+     */
+    private boolean enabled = false;
+    /**
+     * 是否先写入每个任务独立的 UNLOGGED 暂存表, 任务结束时一次并入向量表. 关闭时直接 COPY 进向量表, 写入后立即可检索
+     */
+    private boolean staging = true;
+    /**
+     * 暂存行数不少于向量表现有行数的该比例时, 并入前删除向量索引, 并入后重建, 不再逐行维护索引; 小于 0 时从不重建
+     */
+    private double rebuildIndexRatio = 0.2;
+    /**
+     * 暂存行数少于该值时总是逐行维护索引, 避免向量表很小 ( 或统计信息缺失 ) 时为少量数据重建整个索引
+     */
+    private long rebuildIndexMinRows = 10000;
+    /**
+     * 重建向量索引时会话使用的 maintenance_work_mem, HNSW 图能完整放入时构建最快
+     */
+    private String maintenanceWorkMem = "512MB";
+}
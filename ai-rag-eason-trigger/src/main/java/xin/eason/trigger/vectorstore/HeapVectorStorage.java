@@ -0,0 +1,73 @@
+package xin.eason.trigger.vectorstore;
+
+import xin.eason.kernel.SimilarityKernel;
+import xin.eason.kernel.SimilarityKernels;
+
+import java.util.Arrays;
+
+/**
+ * 堆内向量存储, 向量按块连续存放在 float[] 中
+ */
+final class HeapVectorStorage implements VectorStorage {
+
+    /**
+     * 每块容纳的节点数 ( 2 的幂 )
+     */
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    private final int dimensions;
+
+    /**
+     * 向量块, 每块 BLOCK_SIZE * dimensions 个 float
+     */
+    private float[][] blocks = new float[0][];
+
+    private int size;
+
+    HeapVectorStorage(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int append(float[] vector) {
+        int node = size;
+        int block = node >>> BLOCK_SHIFT;
+        if (block == blocks.length) {
+            blocks = Arrays.copyOf(blocks, block + 1);
+            blocks[block] = new float[BLOCK_SIZE * dimensions];
+        }
+        System.arraycopy(vector, 0, blocks[block], (node & BLOCK_MASK) * dimensions, dimensions);
+        size++;
+        return node;
+    }
+
+    @Override
+    public void copy(int node, float[] target) {
+        System.arraycopy(blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimensions, target, 0, dimensions);
+    }
+
+    @Override
+    public float dot(float[] query, int node) {
+        return KERNEL.dot(query, 0, blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * dimensions, dimensions);
+    }
+
+    @Override
+    public float dot(int a, int b) {
+        return KERNEL.dot(blocks[a >>> BLOCK_SHIFT], (a & BLOCK_MASK) * dimensions,
+                blocks[b >>> BLOCK_SHIFT], (b & BLOCK_MASK) * dimensions, dimensions);
+    }
+}
@@ -0,0 +1,448 @@
+package xin.eason.trigger.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW ( Hierarchical Navigable Small World ) 近邻图. 向量由 {@link VectorStorage} 保存 ( 已归一化, 距离为 1 - 点积 ),
+ * 第 0 层的邻接表按块连续存放在 int[] 中, 只有少量节点拥有的上层邻接表单独分配.
+ * 本类不是线程安全的: 插入需要独占访问, 查询之间可以并发
+ */
+final class HnswGraph {
+
+    /**
+     * 每块容纳的节点数 ( 2 的幂 )
+     */
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /**
+     * 快照文件魔数 "RAGH"
+     */
+    private static final int SNAPSHOT_MAGIC = 0x52414748;
+
+    private final VectorStorage vectors;
+    private final int dimensions;
+    private final int maxConnections;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    /**
+     * 第 0 层邻接表块, 每个节点占 maxConnections0 + 1 个 int, 首个元素为邻居数
+     */
+    private int[][] linkBlocks = new int[0][];
+
+    /**
+     * 上层邻接表: 节点 -> 层 ( 从第 1 层开始 ) -> 邻居数 + 邻居
+     */
+    private int[][][] upperLinks = new int[0][][];
+
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * 每个查询线程独立的访问标记
+     */
+    private final ThreadLocal<VisitedSet> visitedSets = ThreadLocal.withInitial(VisitedSet::new);
+
+    HnswGraph(VectorStorage vectors, HnswOptions options) {
+        this.vectors = vectors;
+        this.dimensions = vectors.dimensions();
+        this.maxConnections = Math.max(options.getM(), 2);
+        this.maxConnections0 = maxConnections * 2;
+        this.efConstruction = Math.max(options.getEfConstruction(), maxConnections);
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+        this.random = new SplittableRandom(options.getSeed());
+    }
+
+    /**
+     * @return 已加入图中的节点数, 可能小于向量存储中的向量数
+     */
+    int size() {
+        return size;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    VectorStorage vectors() {
+        return vectors;
+    }
+
+    /**
+     * 追加一个已归一化的向量并将其加入图中
+     *
+     * @param vector 归一化后的向量
+     * @return 节点编号
+     */
+    int add(float[] vector) {
+        int node = vectors.append(vector);
+        if (node != size)
+            throw new IllegalStateException("向量存储中存在尚未加入图的节点 " + size);
+        insert(node, vector);
+        return node;
+    }
+
+    /**
+     * 将向量存储中尚未加入图的节点依次加入图中 ( 例如快照之后追加的向量 )
+     *
+     * @return 加入的节点数
+     */
+    int indexPending() {
+        int pending = vectors.size() - size;
+        float[] vector = new float[dimensions];
+        while (size < vectors.size()) {
+            vectors.copy(size, vector);
+            insert(size, vector);
+        }
+        return pending;
+    }
+
+    private void insert(int node, float[] vector) {
+        ensureCapacity(node + 1);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        if (level > 0) {
+            int[][] links = new int[level][];
+            for (int i = 0; i < level; i++)
+                links[i] = new int[maxConnections + 1];
+            upperLinks[node] = links;
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        NodeDistance distance = other -> distance(vector, other);
+        int current = entryPoint;
+        float currentDistance = distance.to(current);
+        for (int l = maxLevel; l > level; l--) {
+            long nearest = greedy(distance, current, currentDistance, l);
+            current = LongHeap.node(nearest);
+            currentDistance = LongHeap.distance(nearest);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(distance, current, l, efConstruction, null);
+            int[] neighbors = selectNeighbors(candidates, maxConnections);
+            setNeighbors(node, l, neighbors, neighbors.length);
+            for (int neighbor : neighbors)
+                connect(neighbor, node, l);
+            current = LongHeap.node(candidates[0]);
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 近似最近邻查询
+     *
+     * @param query  归一化后的查询向量
+     * @param k      返回数量
+     * @param ef     候选列表大小
+     * @param accept 结果过滤条件, 不满足的节点仍参与图遍历, 但不会出现在结果中
+     * @return (距离, 节点) 编码后的键, 按距离升序, 最多 k 个
+     */
+    long[] search(float[] query, int k, int ef, IntPredicate accept) {
+        return search(node -> distance(query, node), k, ef, accept);
+    }
+
+    /**
+     * 使用自定义距离函数 ( 例如基于量化编码的近似距离 ) 的近似最近邻查询
+     *
+     * @param distance 查询到节点的距离
+     * @param k        返回数量
+     * @param ef       候选列表大小
+     * @param accept   结果过滤条件
+     * @return (距离, 节点) 编码后的键, 按距离升序, 最多 k 个
+     */
+    long[] search(NodeDistance distance, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0)
+            return new long[0];
+        int current = entryPoint;
+        float currentDistance = distance.to(current);
+        for (int l = maxLevel; l > 0; l--) {
+            long nearest = greedy(distance, current, currentDistance, l);
+            current = LongHeap.node(nearest);
+            currentDistance = LongHeap.distance(nearest);
+        }
+        long[] results = searchLayer(distance, current, 0, Math.max(ef, k), accept);
+        return results.length > k ? Arrays.copyOf(results, k) : results;
+    }
+
+    /**
+     * 查询向量与节点之间的余弦距离
+     */
+    float distance(float[] query, int node) {
+        return Math.max(0f, 1 - vectors.dot(query, node));
+    }
+
+    private float distance(int a, int b) {
+        return Math.max(0f, 1 - vectors.dot(a, b));
+    }
+
+    /**
+     * 在指定层上贪心移动到离查询最近的节点
+     */
+    private long greedy(NodeDistance distance, int start, float startDistance, int level) {
+        int current = start;
+        float currentDistance = startDistance;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int node = current;
+            int count = neighborCount(node, level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbor(node, level, i);
+                float d = distance.to(neighbor);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return LongHeap.key(currentDistance, current);
+    }
+
+    /**
+     * 在指定层上做 ef 宽度的最佳优先搜索
+     *
+     * @return 按距离升序排列的结果键
+     */
+    private long[] searchLayer(NodeDistance distance, int entry, int level, int ef, IntPredicate accept) {
+        VisitedSet visited = visitedSets.get();
+        visited.reset(size);
+        LongHeap candidates = new LongHeap(ef * 2, false);
+        LongHeap results = new LongHeap(ef + 1, true);
+
+        long entryKey = LongHeap.key(distance.to(entry), entry);
+        visited.visit(entry);
+        candidates.push(entryKey);
+        if (accept == null || accept.test(entry))
+            results.push(entryKey);
+
+        while (!candidates.isEmpty()) {
+            long candidate = candidates.pop();
+            if (results.size() >= ef && LongHeap.distance(candidate) > LongHeap.distance(results.peek()))
+                break;
+            int node = LongHeap.node(candidate);
+            int count = neighborCount(node, level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbor(node, level, i);
+                if (!visited.visit(neighbor))
+                    continue;
+                float d = distance.to(neighbor);
+                if (results.size() < ef || d < LongHeap.distance(results.peek())) {
+                    long key = LongHeap.key(d, neighbor);
+                    candidates.push(key);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(key);
+                        if (results.size() > ef)
+                            results.pop();
+                    }
+                }
+            }
+        }
+        return results.drainAscending();
+    }
+
+    /**
+     * 启发式邻居选择: 候选按距离升序遍历, 只有当它离基准点比离所有已选邻居都近时才被选中, 以保持图的连通性与方向多样性
+     */
+    private int[] selectNeighbors(long[] candidates, int limit) {
+        int[] selected = new int[Math.min(limit, candidates.length)];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            int candidate = LongHeap.node(candidates[i]);
+            float candidateDistance = LongHeap.distance(candidates[i]);
+            boolean good = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(candidate, selected[j]) < candidateDistance) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good)
+                selected[count++] = candidate;
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 为已有节点增加一条指向新节点的边, 邻居已满时重新做启发式选择
+     */
+    private void connect(int node, int newNeighbor, int level) {
+        int limit = level == 0 ? maxConnections0 : maxConnections;
+        int count = neighborCount(node, level);
+        if (count < limit) {
+            int[] links = links(node, level);
+            int offset = linkOffset(node, level);
+            links[offset + 1 + count] = newNeighbor;
+            links[offset] = count + 1;
+            return;
+        }
+        long[] candidates = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            int neighbor = neighbor(node, level, i);
+            candidates[i] = LongHeap.key(distance(node, neighbor), neighbor);
+        }
+        candidates[count] = LongHeap.key(distance(node, newNeighbor), newNeighbor);
+        Arrays.sort(candidates);
+        int[] selected = selectNeighbors(candidates, limit);
+        setNeighbors(node, level, selected, selected.length);
+    }
+
+    private int neighborCount(int node, int level) {
+        return links(node, level)[linkOffset(node, level)];
+    }
+
+    private int neighbor(int node, int level, int index) {
+        return links(node, level)[linkOffset(node, level) + 1 + index];
+    }
+
+    private void setNeighbors(int node, int level, int[] neighbors, int count) {
+        int[] links = links(node, level);
+        int offset = linkOffset(node, level);
+        links[offset] = count;
+        System.arraycopy(neighbors, 0, links, offset + 1, count);
+    }
+
+    private int[] links(int node, int level) {
+        return level == 0 ? linkBlocks[node >>> BLOCK_SHIFT] : upperLinks[node][level - 1];
+    }
+
+    private int linkOffset(int node, int level) {
+        return level == 0 ? (node & BLOCK_MASK) * (maxConnections0 + 1) : 0;
+    }
+
+    /**
+     * 将图结构 ( 不含向量 ) 写入快照
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(dimensions);
+        out.writeInt(maxConnections);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        int stride = maxConnections0 + 1;
+        for (int node = 0; node < size; node++) {
+            int[] block = linkBlocks[node >>> BLOCK_SHIFT];
+            int offset = (node & BLOCK_MASK) * stride;
+            int count = block[offset];
+            out.writeShort(count);
+            for (int i = 1; i <= count; i++)
+                out.writeInt(block[offset + i]);
+            int[][] upper = upperLinks[node];
+            out.writeByte(upper == null ? 0 : upper.length);
+            if (upper == null)
+                continue;
+            for (int[] links : upper) {
+                out.writeShort(links[0]);
+                for (int i = 1; i <= links[0]; i++)
+                    out.writeInt(links[i]);
+            }
+        }
+    }
+
+    /**
+     * 从快照恢复图结构, 快照与向量存储或参数不匹配时返回 null
+     *
+     * @param in      快照输入流
+     * @param vectors 向量存储, 其向量数不小于快照中的节点数
+     * @param options 索引参数
+     */
+    static HnswGraph readFrom(DataInputStream in, VectorStorage vectors, HnswOptions options) throws IOException {
+        HnswGraph graph = new HnswGraph(vectors, options);
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != graph.dimensions || in.readInt() != graph.maxConnections)
+            return null;
+        int size = in.readInt();
+        if (size > vectors.size())
+            return null;
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        graph.ensureCapacity(size);
+        int stride = graph.maxConnections0 + 1;
+        for (int node = 0; node < size; node++) {
+            int[] block = graph.linkBlocks[node >>> BLOCK_SHIFT];
+            int offset = (node & BLOCK_MASK) * stride;
+            int count = in.readUnsignedShort();
+            block[offset] = count;
+            for (int i = 1; i <= count; i++)
+                block[offset + i] = in.readInt();
+            int levels = in.readUnsignedByte();
+            if (levels == 0)
+                continue;
+            int[][] upper = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] links = new int[graph.maxConnections + 1];
+                links[0] = in.readUnsignedShort();
+                for (int i = 1; i <= links[0]; i++)
+                    links[i] = in.readInt();
+                upper[l] = links;
+            }
+            graph.upperLinks[node] = upper;
+        }
+        graph.size = size;
+        return graph;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int blocks = (capacity + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        if (blocks > linkBlocks.length) {
+            int oldBlocks = linkBlocks.length;
+            linkBlocks = Arrays.copyOf(linkBlocks, blocks);
+            for (int i = oldBlocks; i < blocks; i++)
+                linkBlocks[i] = new int[BLOCK_SIZE * (maxConnections0 + 1)];
+        }
+        if (capacity > upperLinks.length)
+            upperLinks = Arrays.copyOf(upperLinks, Math.max(capacity, upperLinks.length * 2));
+    }
+
+    /**
+     * 查询到节点的距离函数
+     */
+    @FunctionalInterface
+    interface NodeDistance {
+        float to(int node);
+    }
+
+    /**
+     * 基于版本号的访问标记, 每次查询无需清空数组
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int version;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                version = 0;
+            }
+            if (++version == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                version = 1;
+            }
+        }
+
+        boolean visit(int node) {
+            if (marks[node] == version)
+                return false;
+            marks[node] = version;
+            return true;
+        }
+    }
+}
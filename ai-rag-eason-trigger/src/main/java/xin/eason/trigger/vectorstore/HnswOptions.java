@@ -0,0 +1,70 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * HNSW 索引参数, 由 spring.ai.rag.hnsw 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HnswOptions {
+    /**
+     * 每个节点在上层的最大邻居数, 第 0 层为其 2 倍. 越大召回率越高, 内存与构建耗时也越高
+     */
+    private int m = 16;
+    /**
+     * 构建时的候选列表大小
+     */
+    private int efConstruction = 200;
+    /**
+     * 查询时的候选列表大小, 不小于 topK
+     */
+    private int efSearch = 100;
+    /**
+     * 知识库 Tag 下的文本块数不超过该值时, 直接对该 Tag 做精确扫描, 而不是带过滤条件遍历整张图
+     */
+    private int bruteForceThreshold = 5000;
+    /**
+     * 层级随机数种子, 固定种子可使构建结果可复现
+     */
+    private long seed = 42;
+    /**
+     * 磁盘段目录, 为空时索引只保存在内存中; 否则向量以内存映射文件保存在堆外, 重启后直接打开
+     */
+    private String dataDirectory = "";
+    /**
+     * 每追加多少个节点写一次 HNSW 图快照 ( 关闭时总会写入 ), 快照之后的节点在下次打开时补建
+     */
+    private int snapshotInterval = 10000;
+    /**
+     * 向量量化方式 ( none, int8, pq ). 开启后图遍历与精确扫描在量化编码上进行, 再用全精度向量对候选重排序
+     */
+    private String quantization = "none";
+    /**
+     * 乘积量化的子空间数, 即每个向量的编码字节数
+     */
+    private int pqSubspaces = 96;
+    /**
+     * 向量数达到该值时从已有向量中抽样训练码本
+     */
+    private int trainingSize = 10000;
+    /**
+     * 量化检索的候选数为 topK 的多少倍, 候选再用全精度向量重排序
+     */
+    private int rerankFactor = 4;
+    /**
+     * 是否在内存中维护 BM25 关键词索引, 磁盘模式下随图快照保存, 打开向量库时只读取快照之后追加的文本内容
+     */
+    private boolean lexicalIndex = true;
+    /**
+     * 已删除节点 ( 墓碑 ) 占全部节点的比例达到该值时压缩: 只保留未删除的节点重建近邻图与磁盘段, 回收墓碑占用的向量, 记录与邻接表
+     */
+    private double compactionRatio = 0.3;
+    /**
+     * 触发压缩的最少墓碑数, 避免小索引频繁重建
+     */
+    private int compactionMinDeleted = 1000;
+}
@@ -0,0 +1,776 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 基于进程内 HNSW 图的 {@link VectorStore}. 查询不经过数据库, 向量以 float[] 块连续存放.
+ * 支持对 knowledge 等元数据字段过滤: 知识库 Tag 较小时直接精确扫描该 Tag 的文本块, 否则在图遍历中过滤结果.
+ * 删除采用墓碑标记, 被删除的节点仍参与图遍历以保持连通性, 但不会出现在结果中; 墓碑比例达到阈值时压缩, 只保留未删除的节点重建.
+ * 配置了磁盘段目录时, 向量保存在内存映射文件中 ( 不占用堆 ), 文本内容与元数据按需从磁盘读取 ( 堆上只保留文档 ID 与知识库 Tag ),
+ * 写入只追加, 重启后无需重新导入. 开启量化时, 向量数达到训练阈值后从已有向量中训练码本, 此后检索在紧凑的量化编码上进行,
+ * 只有候选才读取全精度向量重排序. 同时在内存中维护文本块的 BM25 关键词索引, 供混合检索使用; 磁盘模式下文档 ID, Tag 与 BM25 索引
+ * 随图快照写入磁盘段, 打开时从快照恢复, 只重放快照之后追加的记录
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, VectorDocumentDeleter, LexicalIndex, KnowledgeInventory, Closeable {
+
+    /**
+     * 索引参数
+     */
+    private final HnswOptions options;
+
+    /**
+     * 嵌入客户端, 为未携带向量的文档以及查询计算向量
+     */
+    private final EmbeddingClient embeddingClient;
+
+    /**
+     * 插入与删除独占, 查询共享
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 近邻图, 在写入第一个文档时按其向量维度创建
+     */
+    private HnswGraph graph;
+
+    /**
+     * 磁盘段目录, 仅在内存中保存索引时为 null
+     */
+    private final Path directory;
+
+    /**
+     * 磁盘段, 仅在内存中保存索引时为 null. 压缩后替换为新段
+     */
+    private VectorSegment segment;
+
+    /**
+     * 最近一次写入图快照时的节点数
+     */
+    private int snapshotSize;
+
+    /**
+     * 量化编码, 未开启量化或码本尚未训练时为 null
+     */
+    private volatile QuantizedCodes codes;
+
+    /**
+     * 是否正在训练码本
+     */
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    /**
+     * 文档 ID 索引快照的文件标识
+     */
+    private static final int INDEX_SNAPSHOT_MAGIC = 0x49445831;
+
+    private final List<String> ids = new ArrayList<>();
+
+    /**
+     * 节点 -> 知识库 Tag, 没有 knowledge 元数据时为 null
+     */
+    private final List<String> knowledgeTags = new ArrayList<>();
+
+    /**
+     * 文本内容与元数据, 仅在内存模式下保存, 磁盘模式下按需从磁盘段读取
+     */
+    private final List<String> contents = new ArrayList<>();
+    private final List<Map<String, Object>> metadata = new ArrayList<>();
+
+    /**
+     * 文档 ID -> 节点编号
+     */
+    private final Map<String, Integer> nodeById = new HashMap<>();
+
+    /**
+     * 知识库 Tag -> 节点编号列表 ( 包含已删除的节点 )
+     */
+    private final Map<String, IntList> nodesByKnowledge = new HashMap<>();
+
+    /**
+     * 已删除的节点
+     */
+    private final BitSet deleted = new BitSet();
+
+    /**
+     * BM25 关键词索引, 未开启时为 null. 压缩后重建
+     */
+    private Bm25Index lexicalIndex;
+
+    public HnswVectorStore(EmbeddingClient embeddingClient, HnswOptions options) {
+        this.embeddingClient = embeddingClient;
+        this.options = options;
+        this.lexicalIndex = options.isLexicalIndex() ? new Bm25Index() : null;
+        if (StringUtils.isBlank(options.getDataDirectory())) {
+            this.directory = null;
+            this.segment = null;
+            return;
+        }
+        this.directory = Paths.get(options.getDataDirectory()).toAbsolutePath().normalize();
+        try {
+            long start = System.nanoTime();
+            this.segment = VectorSegment.open(directory);
+            // 从快照恢复 ID, Tag 与 BM25 索引; 快照缺失或与当前段不匹配时重放全部记录
+            IndexSnapshot snapshot = segment.loadIndex(HnswVectorStore::readIndex);
+            int restored = 0;
+            if (snapshot != null && snapshot.ids().size() <= segment.size() && (lexicalIndex == null || snapshot.lexicalIndex() != null)) {
+                if (lexicalIndex != null)
+                    lexicalIndex = snapshot.lexicalIndex();
+                for (int node = 0; node < snapshot.ids().size(); node++)
+                    restore(node, snapshot.ids().get(node), snapshot.knowledgeTags().get(node));
+                restored = snapshot.ids().size();
+            }
+            segment.replay(restored, new VectorSegment.RecordVisitor() {
+                @Override
+                public void record(int node, String id, Map<String, Object> documentMetadata) {
+                    restore(node, id, knowledgeOf(documentMetadata));
+                }
+
+                @Override
+                public void deleted(int node) {
+                    markDeleted(node);
+                }
+            });
+            this.graph = segment.loadGraph(options);
+            this.snapshotSize = graph == null ? 0 : graph.size();
+            if (quantized())
+                this.codes = segment.loadCodes(options.getQuantization());
+            if (lexicalIndex != null) {
+                for (int node = restored; node < ids.size(); node++) {
+                    if (!deleted.get(node))
+                        lexicalIndex.add(node, knowledgeTags.get(node), segment.readContent(node));
+                }
+            }
+            log.info("已打开本地向量库 {}, 文档数: {}, 从快照恢复 {} 条, 重放 {} 条, 耗时 {} ms", directory, nodeById.size(),
+                    restored, ids.size() - restored, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开本地向量库失败: " + directory, e);
+        }
+    }
+
+    /**
+     * 写入文档, 已存在的 ID 会被覆盖
+     *
+     * @param documents 文档列表
+     */
+    @Override
+    public void add(List<Document> documents) {
+        List<float[]> vectors = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            List<Double> embedding = document.getEmbedding();
+            if (embedding == null || embedding.isEmpty()) {
+                embedding = embeddingClient.embed(document);
+                document.setEmbedding(embedding);
+            }
+            vectors.add(normalize(embedding));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] vector = vectors.get(i);
+                if (graph == null)
+                    graph = new HnswGraph(segment == null ? new HeapVectorStorage(vector.length) : segment.createVectors(vector.length), options);
+                if (vector.length != graph.dimensions())
+                    throw new IllegalArgumentException("向量维度不一致: 期望 " + graph.dimensions() + ", 实际 " + vector.length);
+
+                Integer previous = nodeById.get(document.getId());
+                if (previous != null)
+                    delete(previous);
+                int node = graph.add(vector);
+                Map<String, Object> documentMetadata = new HashMap<>(document.getMetadata());
+                if (segment == null) {
+                    contents.add(document.getContent());
+                    metadata.add(documentMetadata);
+                } else {
+                    segment.appendRecord(node, document.getId(), documentMetadata, document.getContent());
+                }
+                index(node, document.getId(), knowledgeOf(documentMetadata));
+                if (lexicalIndex != null)
+                    lexicalIndex.add(node, knowledgeOf(documentMetadata), document.getContent());
+            }
+            if (segment != null)
+                segment.commit();
+            if (codes != null && graph != null)
+                codes.encodePending(graph.vectors());
+            if (segment != null && graph != null && graph.size() - snapshotSize >= options.getSnapshotInterval()) {
+                segment.saveGraph(graph, codes, this::writeIndex);
+                snapshotSize = graph.size();
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入本地向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        trainIfNeeded();
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = false;
+            for (String id : idList) {
+                Integer node = nodeById.get(id);
+                if (node != null) {
+                    delete(node);
+                    removed = true;
+                }
+            }
+            if (segment != null)
+                segment.commit();
+            compactIfNeeded();
+            return Optional.of(removed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入本地向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteBySources(String knowledge, Collection<String> sources) {
+        Set<String> sourceSet = new HashSet<>(sources);
+        return deleteMatching(knowledge, node -> sourceSet.contains(String.valueOf(metadata(node).get("source"))));
+    }
+
+    @Override
+    public int deleteByKnowledge(String knowledge) {
+        return deleteMatching(knowledge, node -> true);
+    }
+
+    /**
+     * 统计各 Tag 未删除的文本块数, 占用字节数只计全精度向量
+     */
+    @Override
+    public List<Usage> usage() {
+        lock.readLock().lock();
+        try {
+            List<Usage> usage = new ArrayList<>(nodesByKnowledge.size());
+            long vectorBytes = graph == null ? 0 : (long) graph.dimensions() * Float.BYTES;
+            for (Map.Entry<String, IntList> entry : nodesByKnowledge.entrySet()) {
+                IntList nodes = entry.getValue();
+                long live = 0;
+                for (int i = 0; i < nodes.size(); i++) {
+                    if (!deleted.get(nodes.get(i)))
+                        live++;
+                }
+                if (live > 0)
+                    usage.add(new Usage(entry.getKey(), live, live * vectorBytes));
+            }
+            return usage;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingClient.embed(request.getQuery()));
+        Filter.Expression filter = request.getFilterExpression();
+        int topK = request.getTopK();
+
+        lock.readLock().lock();
+        try {
+            if (graph == null || topK <= 0)
+                return List.of();
+            String knowledge = MetadataFilters.knowledgeOf(filter);
+            // 只按 Tag 过滤时直接比较内存中的 Tag, 不必读取元数据
+            IntPredicate accept = filter == null ? node -> !deleted.get(node)
+                    : MetadataFilters.isKnowledgeOnly(filter) ? node -> !deleted.get(node) && knowledge.equals(knowledgeTags.get(node))
+                    : node -> !deleted.get(node) && MetadataFilters.matches(filter, metadata(node));
+            QuantizedCodes quantizedCodes = codes;
+            int candidates = quantizedCodes == null ? topK : topK * Math.max(options.getRerankFactor(), 1);
+            HnswGraph.NodeDistance nodeDistance;
+            if (quantizedCodes == null) {
+                nodeDistance = node -> graph.distance(query, node);
+            } else {
+                VectorQuantizer.CodeScorer scorer = quantizedCodes.quantizer().scorer(query);
+                nodeDistance = node -> Math.max(0f, 1 - quantizedCodes.dot(scorer, node));
+            }
+            long[] results;
+            if (knowledge != null) {
+                IntList nodes = nodesByKnowledge.get(knowledge);
+                if (nodes == null)
+                    return List.of();
+                results = nodes.size() <= options.getBruteForceThreshold()
+                        ? exactSearch(nodeDistance, candidates, nodes, accept)
+                        : graph.search(nodeDistance, candidates, Math.max(options.getEfSearch(), candidates), accept);
+            } else {
+                results = graph.search(nodeDistance, candidates, Math.max(options.getEfSearch(), candidates), accept);
+            }
+            if (quantizedCodes != null)
+                results = rerank(query, results, topK);
+
+            List<Document> documents = new ArrayList<>(results.length);
+            for (long result : results) {
+                float distance = LongHeap.distance(result);
+                if (1 - distance < request.getSimilarityThreshold())
+                    continue;
+                int node = LongHeap.node(result);
+                Map<String, Object> documentMetadata = new HashMap<>(metadata(node));
+                documentMetadata.put("distance", distance);
+                documents.add(new Document(ids.get(node), content(node), documentMetadata));
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取本地向量库失败", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在 BM25 关键词索引中检索, 未开启关键词索引时返回空列表
+     *
+     * @param knowledge 知识库 Tag, 为 null 时不过滤
+     * @param query     查询文本
+     * @param topK      返回的文本块数量
+     * @return 按 BM25 得分降序排列的文本块
+     */
+    @Override
+    public List<Document> keywordSearch(String knowledge, String query, int topK) {
+        lock.readLock().lock();
+        try {
+            if (lexicalIndex == null)
+                return List.of();
+            // 倒排表按 Tag 分开存放, 只需排除已删除的节点
+            long[] results = lexicalIndex.search(knowledge, query, topK, node -> !deleted.get(node));
+            List<Document> documents = new ArrayList<>(results.length);
+            for (long result : results) {
+                int node = Bm25Index.document(result);
+                Map<String, Object> documentMetadata = new HashMap<>(metadata(node));
+                documentMetadata.put("score", Bm25Index.score(result));
+                documents.add(new Document(ids.get(node), content(node), documentMetadata));
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取本地向量库失败", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 未被删除的文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 已删除但尚未被压缩回收的节点数
+     */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 立即压缩, 不论墓碑比例是否达到阈值
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+        } catch (IOException e) {
+            throw new UncheckedIOException("压缩本地向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入图快照并关闭磁盘段
+     */
+    @Override
+    public void close() throws IOException {
+        if (segment == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            if (graph != null)
+                segment.saveGraph(graph, codes, this::writeIndex);
+            segment.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 对给定节点做线性扫描
+     */
+    private long[] exactSearch(HnswGraph.NodeDistance distance, int topK, IntList nodes, IntPredicate accept) {
+        LongHeap heap = new LongHeap(topK + 1, true);
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = nodes.get(i);
+            if (!accept.test(node))
+                continue;
+            heap.push(LongHeap.key(distance.to(node), node));
+            if (heap.size() > topK)
+                heap.pop();
+        }
+        return heap.drainAscending();
+    }
+
+    /**
+     * 用全精度向量重新计算候选的距离, 保留最近的 topK 个
+     */
+    private long[] rerank(float[] query, long[] candidates, int topK) {
+        LongHeap heap = new LongHeap(topK + 1, true);
+        for (long candidate : candidates) {
+            int node = LongHeap.node(candidate);
+            heap.push(LongHeap.key(graph.distance(query, node), node));
+            if (heap.size() > topK)
+                heap.pop();
+        }
+        return heap.drainAscending();
+    }
+
+    private boolean quantized() {
+        return !VectorQuantizer.NONE.equalsIgnoreCase(options.getQuantization());
+    }
+
+    /**
+     * 向量数达到训练阈值且尚无码本时, 抽样训练码本并编码所有已有向量. 训练在锁外进行, 不阻塞检索
+     */
+    private void trainIfNeeded() {
+        if (!quantized() || codes != null || !training.compareAndSet(false, true))
+            return;
+        try {
+            float[][] sample;
+            lock.readLock().lock();
+            try {
+                if (codes != null || graph == null || graph.size() < Math.max(options.getTrainingSize(), 1))
+                    return;
+                VectorStorage vectors = graph.vectors();
+                SplittableRandom random = new SplittableRandom(options.getSeed());
+                sample = new float[Math.min(options.getTrainingSize(), vectors.size())][vectors.dimensions()];
+                for (float[] vector : sample)
+                    vectors.copy(random.nextInt(vectors.size()), vector);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            long start = System.nanoTime();
+            VectorQuantizer quantizer = VectorQuantizer.train(options.getQuantization().toLowerCase(), sample, options);
+            lock.writeLock().lock();
+            try {
+                QuantizedCodes trained = new QuantizedCodes(quantizer);
+                trained.encodePending(graph.vectors());
+                codes = trained;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("已训练 {} 量化码本, 样本数: {}, 编码大小: {} 字节, 耗时 {} ms",
+                    quantizer.type(), sample.length, quantizer.codeSize(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            training.set(false);
+        }
+    }
+
+    private int deleteMatching(String knowledge, IntPredicate predicate) {
+        lock.writeLock().lock();
+        try {
+            IntList nodes = nodesByKnowledge.get(knowledge);
+            if (nodes == null)
+                return 0;
+            int removed = 0;
+            IntList remaining = new IntList();
+            for (int i = 0; i < nodes.size(); i++) {
+                int node = nodes.get(i);
+                if (deleted.get(node))
+                    continue;
+                if (predicate.test(node)) {
+                    delete(node);
+                    removed++;
+                } else {
+                    remaining.add(node);
+                }
+            }
+            nodesByKnowledge.put(knowledge, remaining);
+            if (segment != null)
+                segment.commit();
+            log.info("已删除知识库 {} 中的 {} 条向量", knowledge, removed);
+            compactIfNeeded();
+            return removed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入本地向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 墓碑数达到 compactionMinDeleted 且占全部节点的比例达到 compactionRatio 时压缩. 调用方须持有写锁
+     */
+    private void compactIfNeeded() throws IOException {
+        int dead = deleted.cardinality();
+        if (dead > 0 && dead >= options.getCompactionMinDeleted() && dead >= ids.size() * options.getCompactionRatio())
+            rebuild();
+    }
+
+    /**
+     * 只保留未删除的节点, 按原顺序重新编号后重建近邻图, 量化编码与 BM25 索引. 磁盘模式下新段写入 .compacting 目录,
+     * 写完并刷盘后再替换原目录, 替换之前失败时原索引保持不变. 重建期间持有写锁, 耗时与存活节点数成正比
+     */
+    private void rebuild() throws IOException {
+        int total = ids.size();
+        int dead = deleted.cardinality();
+        if (graph == null || dead == 0)
+            return;
+        long start = System.nanoTime();
+        Path compacted = segment == null ? null : VectorSegment.compactionDirectory(directory);
+        VectorSegment target = null;
+        HnswGraph rebuilt;
+        QuantizedCodes rebuiltCodes;
+        Bm25Index rebuiltLexicalIndex = lexicalIndex == null ? null : new Bm25Index();
+        List<String> liveIds = new ArrayList<>(total - dead);
+        List<String> liveKnowledgeTags = new ArrayList<>(total - dead);
+        List<Map<String, Object>> liveMetadata = new ArrayList<>(segment == null ? total - dead : 0);
+        List<String> liveContents = new ArrayList<>(segment == null ? total - dead : 0);
+        try {
+            if (segment == null) {
+                rebuilt = new HnswGraph(new HeapVectorStorage(graph.dimensions()), options);
+            } else {
+                VectorSegment.deleteDirectory(compacted);
+                target = VectorSegment.open(compacted);
+                rebuilt = new HnswGraph(target.createVectors(graph.dimensions()), options);
+            }
+            float[] vector = new float[graph.dimensions()];
+            for (int node = deleted.nextClearBit(0); node < total; node = deleted.nextClearBit(node + 1)) {
+                graph.vectors().copy(node, vector);
+                int live = rebuilt.add(vector);
+                String content = content(node);
+                if (target == null) {
+                    liveContents.add(content);
+                    liveMetadata.add(metadata.get(node));
+                } else {
+                    target.appendRecord(live, ids.get(node), segment.readMetadata(node), content);
+                }
+                if (rebuiltLexicalIndex != null)
+                    rebuiltLexicalIndex.add(live, knowledgeTags.get(node), content);
+                liveIds.add(ids.get(node));
+                liveKnowledgeTags.add(knowledgeTags.get(node));
+            }
+            rebuiltCodes = codes == null ? null : new QuantizedCodes(codes.quantizer());
+            if (rebuiltCodes != null)
+                rebuiltCodes.encodePending(rebuilt.vectors());
+            if (target != null) {
+                Bm25Index snapshotLexicalIndex = rebuiltLexicalIndex;
+                target.saveGraph(rebuilt, rebuiltCodes, out -> writeIndex(out, liveIds, liveKnowledgeTags, snapshotLexicalIndex));
+                target.close();
+                target = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (target != null)
+                target.close();
+            if (compacted != null)
+                VectorSegment.deleteDirectory(compacted);
+            throw e;
+        }
+
+        if (segment != null) {
+            segment.close();
+            VectorSegment.replace(directory, compacted);
+            segment = VectorSegment.open(directory);
+            rebuilt = segment.loadGraph(options);
+            if (rebuiltCodes != null)
+                rebuiltCodes = segment.loadCodes(options.getQuantization());
+        }
+        graph = rebuilt;
+        snapshotSize = graph.size();
+        codes = rebuiltCodes;
+        lexicalIndex = rebuiltLexicalIndex;
+        ids.clear();
+        knowledgeTags.clear();
+        metadata.clear();
+        metadata.addAll(liveMetadata);
+        contents.clear();
+        contents.addAll(liveContents);
+        nodeById.clear();
+        nodesByKnowledge.clear();
+        deleted.clear();
+        for (int node = 0; node < liveIds.size(); node++)
+            index(node, liveIds.get(node), liveKnowledgeTags.get(node));
+        log.info("已压缩本地向量库, 回收 {} 个已删除节点, 保留 {} 个节点, 耗时 {} ms", dead, liveIds.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 登记节点的 ID 与知识库 Tag
+     */
+    private void index(int node, String id, String knowledge) {
+        ids.add(id);
+        knowledgeTags.add(knowledge);
+        nodeById.put(id, node);
+        if (knowledge != null)
+            nodesByKnowledge.computeIfAbsent(knowledge, tag -> new IntList()).add(node);
+    }
+
+    /**
+     * 打开磁盘段时登记节点. 覆盖写入的新记录提交后宕机时旧记录的墓碑可能未落盘, 同一 ID 以最后一条记录为准
+     */
+    private void restore(int node, String id, String knowledge) {
+        Integer previous = nodeById.get(id);
+        if (previous != null)
+            markDeleted(previous);
+        index(node, id, knowledge);
+    }
+
+    private static String knowledgeOf(Map<String, Object> documentMetadata) {
+        Object knowledge = documentMetadata.get("knowledge");
+        return knowledge == null ? null : knowledge.toString();
+    }
+
+    /**
+     * 读取节点的元数据, 磁盘模式下从磁盘段读取
+     */
+    private Map<String, Object> metadata(int node) {
+        if (segment == null)
+            return metadata.get(node);
+        try {
+            return segment.readMetadata(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取本地向量库失败", e);
+        }
+    }
+
+    private void writeIndex(DataOutputStream out) throws IOException {
+        writeIndex(out, ids, knowledgeTags, lexicalIndex);
+    }
+
+    /**
+     * 写入文档索引快照: 文档 ID, 知识库 Tag ( 以 Tag 表编号存放 ) 与 BM25 索引. 已删除的节点照常写入, 打开时由墓碑删除
+     */
+    private static void writeIndex(DataOutputStream out, List<String> ids, List<String> knowledgeTags, Bm25Index lexicalIndex) throws IOException {
+        Map<String, Integer> tagNumbers = new HashMap<>();
+        for (String tag : knowledgeTags) {
+            if (tag != null)
+                tagNumbers.putIfAbsent(tag, tagNumbers.size());
+        }
+        String[] tags = new String[tagNumbers.size()];
+        tagNumbers.forEach((tag, number) -> tags[number] = tag);
+
+        out.writeInt(INDEX_SNAPSHOT_MAGIC);
+        out.writeInt(tags.length);
+        for (String tag : tags)
+            out.writeUTF(tag);
+        out.writeInt(ids.size());
+        for (int node = 0; node < ids.size(); node++) {
+            byte[] id = ids.get(node).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(id.length);
+            out.write(id);
+            String tag = knowledgeTags.get(node);
+            out.writeInt(tag == null ? -1 : tagNumbers.get(tag));
+        }
+        out.writeBoolean(lexicalIndex != null);
+        if (lexicalIndex != null)
+            lexicalIndex.writeTo(out);
+    }
+
+    /**
+     * 读取文档索引快照, 文件标识不匹配时返回 null
+     */
+    private static IndexSnapshot readIndex(DataInputStream in) throws IOException {
+        if (in.readInt() != INDEX_SNAPSHOT_MAGIC)
+            return null;
+        String[] tags = new String[in.readInt()];
+        for (int i = 0; i < tags.length; i++)
+            tags[i] = in.readUTF();
+        int size = in.readInt();
+        List<String> ids = new ArrayList<>(size);
+        List<String> knowledgeTags = new ArrayList<>(size);
+        for (int node = 0; node < size; node++) {
+            byte[] id = new byte[in.readInt()];
+            in.readFully(id);
+            ids.add(new String(id, StandardCharsets.UTF_8));
+            int tag = in.readInt();
+            knowledgeTags.add(tag < 0 ? null : tags[tag]);
+        }
+        Bm25Index lexicalIndex = in.readBoolean() ? Bm25Index.readFrom(in) : null;
+        return new IndexSnapshot(ids, knowledgeTags, lexicalIndex);
+    }
+
+    /**
+     * 删除节点, 磁盘模式下同时追加墓碑 ( 在下一次提交时落盘 ), 调用方须在写锁释放前提交磁盘段
+     */
+    private void delete(int node) throws IOException {
+        if (deleted.get(node))
+            return;
+        if (segment != null)
+            segment.appendTombstone(node);
+        markDeleted(node);
+    }
+
+    private void markDeleted(int node) {
+        deleted.set(node);
+        nodeById.remove(ids.get(node), node);
+        if (lexicalIndex != null)
+            lexicalIndex.remove(node);
+    }
+
+    private String content(int node) throws IOException {
+        return segment == null ? contents.get(node) : segment.readContent(node);
+    }
+
+    private static float[] normalize(List<Double> embedding) {
+        double norm = 0;
+        for (Double value : embedding)
+            norm += value * value;
+        norm = Math.sqrt(norm);
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++)
+            vector[i] = (float) (norm == 0 ? 0 : embedding.get(i) / norm);
+        return vector;
+    }
+
+    /**
+     * 文档索引快照
+     *
+     * @param ids           节点 -> 文档 ID
+     * @param knowledgeTags 节点 -> 知识库 Tag
+     * @param lexicalIndex  BM25 索引, 快照中没有时为 null
+     */
+    private record IndexSnapshot(List<String> ids, List<String> knowledgeTags, Bm25Index lexicalIndex) {
+    }
+}
@@ -0,0 +1,42 @@
+package xin.eason.trigger.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的 int 列表, 避免装箱
+ */
+final class IntList {
+
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int initialCapacity) {
+        this.values = new int[Math.max(initialCapacity, 4)];
+    }
+
+    void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,26 @@
+package xin.eason.trigger.vectorstore;
+
+import java.util.List;
+
+/**
+ * 统计向量库中各知识库 Tag 的文本块数与占用空间, 用于知识库管理
+ */
+public interface KnowledgeInventory {
+
+    /**
+     * 统计各 Tag 的用量
+     *
+     * @return 每个 Tag 一项, 顺序不做保证
+     */
+    List<Usage> usage();
+
+    /**
+     * 一个 Tag 的用量
+     *
+     * @param knowledge 文本块元数据中的 knowledge
+     * @param chunks    文本块数
+     * @param bytes     占用字节数, 各实现的统计口径见实现类
+     */
+    record Usage(String knowledge, long chunks, long bytes) {
+    }
+}
@@ -0,0 +1,21 @@
+package xin.eason.trigger.vectorstore;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 与向量库中的文本块一同维护的关键词索引, 在导入时随向量写入而建立, 用于检索类名, 错误码等向量检索容易漏掉的精确标识符
+ */
+public interface LexicalIndex {
+
+    /**
+     * 在指定知识库中做关键词检索
+     *
+     * @param knowledge 知识库 Tag
+     * @param query     查询文本, 由 {@link LexicalTokenizer} 分词
+     * @param topK      返回的文本块数量
+     * @return 按相关度降序排列的文本块, metadata 中的 score 为相关度得分
+     */
+    List<Document> keywordSearch(String knowledge, String query, int topK);
+}
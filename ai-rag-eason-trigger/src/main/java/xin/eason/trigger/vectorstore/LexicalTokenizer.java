@@ -0,0 +1,69 @@
+package xin.eason.trigger.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 关键词检索使用的分词器, 文本块与查询使用同一套规则:
+ * <ul>
+ *     <li>英文与代码标识符按下划线切分, 驼峰标识符同时保留整体与各个单词 ( HnswVectorStore -> hnswvectorstore, hnsw, vector, store )</li>
+ *     <li>连续汉字切为相邻的二元组, 单个汉字保留原样</li>
+ *     <li>统一转为小写, 过长的词 ( 如 base64 内容 ) 被丢弃</li>
+ * </ul>
+ */
+public final class LexicalTokenizer {
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{IsHan}]+|[\\p{L}\\p{N}_]+");
+
+    private static final Pattern UNDERSCORES = Pattern.compile("_+");
+
+    /**
+     * 驼峰边界: 小写或数字后接大写, 以及连续大写后接 大写 + 小写 ( HTTPServer -> HTTP, Server )
+     */
+    private static final Pattern CAMEL_BOUNDARY = Pattern.compile("(?<=[\\p{Ll}\\p{N}])(?=\\p{Lu})|(?<=\\p{Lu})(?=\\p{Lu}\\p{Ll})");
+
+    /**
+     * 超过该长度的词不参与索引
+     */
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private LexicalTokenizer() {
+    }
+
+    /**
+     * 分词
+     *
+     * @param text 文本
+     * @return 词列表, 按出现顺序, 可能包含重复项
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null)
+            return tokens;
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (Character.UnicodeScript.of(token.codePointAt(0)) == Character.UnicodeScript.HAN) {
+                if (token.length() == 1)
+                    tokens.add(token);
+                for (int i = 0; i + 1 < token.length(); i++)
+                    tokens.add(token.substring(i, i + 2));
+                continue;
+            }
+            for (String piece : UNDERSCORES.split(token)) {
+                if (piece.isEmpty() || piece.length() > MAX_TOKEN_LENGTH)
+                    continue;
+                tokens.add(piece.toLowerCase(Locale.ROOT));
+                String[] words = CAMEL_BOUNDARY.split(piece);
+                if (words.length > 1) {
+                    for (String word : words)
+                        tokens.add(word.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return tokens;
+    }
+}
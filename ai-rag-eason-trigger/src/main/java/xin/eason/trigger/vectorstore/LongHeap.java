@@ -0,0 +1,96 @@
+package xin.eason.trigger.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * long 类型的二叉堆, 避免装箱. 向量检索中用于存放 (距离, 节点) 编码后的键, 见 {@link #key(float, int)}
+ */
+final class LongHeap {
+
+    private final boolean maxHeap;
+    private long[] heap;
+    private int size;
+
+    LongHeap(int initialCapacity, boolean maxHeap) {
+        this.heap = new long[Math.max(initialCapacity, 4)];
+        this.maxHeap = maxHeap;
+    }
+
+    /**
+     * 将非负距离与节点编号编码为一个 long, 其自然顺序即按距离 ( 其次按节点 ) 排序
+     */
+    static long key(float distance, int node) {
+        return ((long) Float.floatToRawIntBits(Math.max(distance, 0f)) << 32) | (node & 0xffffffffL);
+    }
+
+    static float distance(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    static int node(long key) {
+        return (int) key;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long peek() {
+        return heap[0];
+    }
+
+    void push(long value) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(value, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    long pop() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], last))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * 取出全部元素, 按距离升序排列
+     */
+    long[] drainAscending() {
+        long[] sorted = Arrays.copyOf(heap, size);
+        size = 0;
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private boolean before(long a, long b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
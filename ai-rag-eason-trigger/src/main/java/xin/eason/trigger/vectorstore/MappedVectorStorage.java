@@ -0,0 +1,202 @@
+package xin.eason.trigger.vectorstore;
+
+import xin.eason.kernel.SimilarityKernel;
+import xin.eason.kernel.SimilarityKernels;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 基于内存映射文件的向量存储. 文件由 64 字节文件头和定长的 little-endian float32 向量组成,
+ * 按区域 ( 每区域 REGION_SIZE 个向量 ) 映射, 向量不占用 Java 堆, 热数据由操作系统页缓存负责.
+ * 向量数由调用方 ( 偏移量文件 ) 决定, 文件末尾超出部分视为未提交的数据
+ */
+final class MappedVectorStorage implements VectorStorage, Closeable {
+
+    /**
+     * 文件魔数 "RAGV"
+     */
+    private static final int MAGIC = 0x52414756;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    /**
+     * 每个映射区域容纳的向量数 ( 2 的幂 )
+     */
+    private static final int REGION_SHIFT = 14;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int REGION_MASK = REGION_SIZE - 1;
+
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final long regionBytes;
+    private MappedByteBuffer[] mapped = new MappedByteBuffer[0];
+    private FloatBuffer[] regions = new FloatBuffer[0];
+    private int size;
+
+    /**
+     * 每个查询线程独立的向量读取缓冲
+     */
+    private final ThreadLocal<float[]> scratchA;
+    private final ThreadLocal<float[]> scratchB;
+
+    private MappedVectorStorage(FileChannel channel, int dimensions, int size) throws IOException {
+        this.channel = channel;
+        this.dimensions = dimensions;
+        this.regionBytes = (long) REGION_SIZE * dimensions * Float.BYTES;
+        this.scratchA = ThreadLocal.withInitial(() -> new float[dimensions]);
+        this.scratchB = ThreadLocal.withInitial(() -> new float[dimensions]);
+        this.size = size;
+        mapRegions(size);
+    }
+
+    /**
+     * 创建新的向量文件, 已存在的文件会被清空
+     *
+     * @param file       文件路径
+     * @param dimensions 向量维度
+     */
+    static MappedVectorStorage create(Path file, int dimensions) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).rewind();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        channel.force(true);
+        return new MappedVectorStorage(channel, dimensions, 0);
+    }
+
+    /**
+     * 打开已有的向量文件
+     *
+     * @param file 文件路径
+     * @param size 已提交的向量数
+     */
+    static MappedVectorStorage open(Path file, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+            header.flip();
+            if (header.remaining() < 12 || header.getInt() != MAGIC)
+                throw new IOException("不是有效的向量文件: " + file);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("不支持的向量文件版本 " + version + ": " + file);
+            int dimensions = header.getInt();
+            long required = HEADER_BYTES + (long) size * dimensions * Float.BYTES;
+            if (channel.size() < required)
+                throw new IOException("向量文件已损坏, 长度 " + channel.size() + " 小于 " + required + ": " + file);
+            return new MappedVectorStorage(channel, dimensions, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 读取向量文件头中的维度
+     */
+    static int readDimensions(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+            header.flip();
+            if (header.remaining() < 12 || header.getInt() != MAGIC)
+                throw new IOException("不是有效的向量文件: " + file);
+            header.getInt();
+            return header.getInt();
+        }
+    }
+
+    static boolean exists(Path file) {
+        return Files.isRegularFile(file);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int append(float[] vector) {
+        int node = size;
+        try {
+            mapRegions(node + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("映射向量文件失败", e);
+        }
+        regions[node >>> REGION_SHIFT].put((node & REGION_MASK) * dimensions, vector, 0, dimensions);
+        size++;
+        return node;
+    }
+
+    @Override
+    public void copy(int node, float[] target) {
+        regions[node >>> REGION_SHIFT].get((node & REGION_MASK) * dimensions, target, 0, dimensions);
+    }
+
+    @Override
+    public float dot(float[] query, int node) {
+        float[] vector = scratchA.get();
+        copy(node, vector);
+        return KERNEL.dot(query, 0, vector, 0, dimensions);
+    }
+
+    @Override
+    public float dot(int a, int b) {
+        float[] vectorB = scratchB.get();
+        copy(b, vectorB);
+        return dot(vectorB, a);
+    }
+
+    /**
+     * 将已映射区域中的修改刷到磁盘
+     */
+    void force() {
+        for (MappedByteBuffer buffer : mapped)
+            buffer.force();
+    }
+
+    /**
+     * 关闭文件通道, 调用方应先 {@link #force()}. 映射区域在被垃圾回收后才会解除映射
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 确保前 capacity 个向量所在的区域均已映射, 以读写方式映射超出文件末尾的区域会使文件 ( 稀疏地 ) 增长
+     */
+    private void mapRegions(int capacity) throws IOException {
+        int required = (capacity + REGION_SIZE - 1) >>> REGION_SHIFT;
+        if (required <= regions.length)
+            return;
+        int old = regions.length;
+        mapped = Arrays.copyOf(mapped, required);
+        regions = Arrays.copyOf(regions, required);
+        for (int r = old; r < required; r++) {
+            mapped[r] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + r * regionBytes, regionBytes);
+            regions[r] = mapped[r].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+}
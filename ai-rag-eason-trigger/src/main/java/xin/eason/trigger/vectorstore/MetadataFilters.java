@@ -0,0 +1,120 @@
+package xin.eason.trigger.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 在内存中对文档元数据求值 Spring AI 的 {@link Filter.Expression}, 供本地向量库使用
+ */
+public final class MetadataFilters {
+
+    private MetadataFilters() {
+    }
+
+    /**
+     * 判断元数据是否满足过滤表达式
+     *
+     * @param expression 过滤表达式, 为 null 时视为全部满足
+     * @param metadata   文档元数据
+     * @return 是否满足
+     */
+    public static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        if (expression == null)
+            return true;
+        return switch (expression.type()) {
+            case AND -> matches(operand(expression.left()), metadata) && matches(operand(expression.right()), metadata);
+            case OR -> matches(operand(expression.left()), metadata) || matches(operand(expression.right()), metadata);
+            case NOT -> !matches(operand(expression.left()), metadata);
+            case EQ -> Objects.equals(normalize(value(expression, metadata)), normalize(literal(expression)));
+            case NE -> !Objects.equals(normalize(value(expression, metadata)), normalize(literal(expression)));
+            case GT -> compare(expression, metadata) > 0;
+            case GTE -> compare(expression, metadata) >= 0;
+            case LT -> compare(expression, metadata) < 0;
+            case LTE -> compare(expression, metadata) <= 0;
+            case IN -> contains(literal(expression), value(expression, metadata));
+            case NIN -> !contains(literal(expression), value(expression, metadata));
+        };
+    }
+
+    /**
+     * 提取表达式中对 knowledge 字段的等值约束 ( 可位于 AND 的任一侧 ), 用于按知识库 Tag 缩小扫描范围
+     *
+     * @param expression 过滤表达式
+     * @return 知识库 Tag, 不存在该约束时返回 null
+     */
+    public static String knowledgeOf(Filter.Expression expression) {
+        if (expression == null)
+            return null;
+        if (expression.type() == Filter.ExpressionType.EQ && expression.left() instanceof Filter.Key key
+                && "knowledge".equals(unquote(key.key())) && expression.right() instanceof Filter.Value value)
+            return String.valueOf(value.value());
+        if (expression.type() == Filter.ExpressionType.AND) {
+            String left = knowledgeOf(operand(expression.left()));
+            return left != null ? left : knowledgeOf(operand(expression.right()));
+        }
+        return null;
+    }
+
+    /**
+     * 判断过滤表达式是否只有对 knowledge 字段的等值约束
+     *
+     * @param expression 过滤表达式
+     * @return 是否只按知识库 Tag 过滤
+     */
+    public static boolean isKnowledgeOnly(Filter.Expression expression) {
+        return expression != null && expression.type() == Filter.ExpressionType.EQ && knowledgeOf(expression) != null;
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group)
+            return group.content();
+        if (operand instanceof Filter.Expression expression)
+            return expression;
+        throw new IllegalArgumentException("不支持的过滤条件: " + operand);
+    }
+
+    private static Object value(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key))
+            throw new IllegalArgumentException("过滤条件左侧必须为字段名: " + expression);
+        return metadata.get(unquote(key.key()));
+    }
+
+    private static Object literal(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value))
+            throw new IllegalArgumentException("过滤条件右侧必须为常量: " + expression);
+        return value.value();
+    }
+
+    private static String unquote(String key) {
+        if (key.length() > 1 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'")))
+            return key.substring(1, key.length() - 1);
+        return key;
+    }
+
+    /**
+     * 数值统一按 double 比较, 其余按原值比较
+     */
+    private static Object normalize(Object value) {
+        return value instanceof Number number ? number.doubleValue() : value;
+    }
+
+    private static boolean contains(Object literal, Object value) {
+        if (literal instanceof Collection<?> collection)
+            return collection.stream().anyMatch(item -> Objects.equals(normalize(item), normalize(value)));
+        return Objects.equals(normalize(literal), normalize(value));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Filter.Expression expression, Map<String, Object> metadata) {
+        Object left = normalize(value(expression, metadata));
+        Object right = normalize(literal(expression));
+        if (left == null || right == null)
+            return left == right ? 0 : (left == null ? -1 : 1);
+        if (left instanceof Comparable comparable && left.getClass() == right.getClass())
+            return comparable.compareTo(right);
+        return String.valueOf(left).compareTo(String.valueOf(right));
+    }
+}
@@ -0,0 +1,254 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 PostgreSQL COPY 的 {@link VectorBulkLoader}. 文本块以二进制 COPY 写入, 开启暂存时先写入每个任务独立的 UNLOGGED 暂存表,
+ * 任务结束时以一条 INSERT ... SELECT 并入向量表. 并入的行数相对向量表较大时, 先删除 HNSW / IVFFlat 索引, 并入后用原定义一次重建,
+ * 避免逐行维护索引. 重建期间检索退化为顺序扫描 ( 结果仍然正确 ), 多个任务的并入以 advisory lock 串行执行
+ */
+@Slf4j
+public class PgBulkLoader implements VectorBulkLoader {
+
+    private static final String TABLE = PgVectorStore.VECTOR_TABLE_NAME;
+
+    /**
+     * 串行化并入与索引重建的 advisory lock 键
+     */
+    private static final String LOCK_KEY = "hashtext('" + TABLE + "_bulk_load')";
+
+    private static final int COPY_BUFFER_BYTES = 1 << 16;
+
+    private static final String COLUMN_TYPES_SQL = "SELECT attname, format_type(atttypid, atttypmod) FROM pg_attribute"
+            + " WHERE attrelid = '" + TABLE + "'::regclass AND attname IN ('metadata', 'embedding') AND NOT attisdropped";
+
+    private static final String VECTOR_INDEXES_SQL = "SELECT indexname, indexdef FROM pg_indexes"
+            + " WHERE schemaname = current_schema() AND tablename = '" + TABLE + "' AND (indexdef ILIKE '% USING hnsw %' OR indexdef ILIKE '% USING ivfflat %')";
+
+    private static final String ESTIMATED_ROWS_SQL = "SELECT reltuples::bigint FROM pg_class WHERE oid = '" + TABLE + "'::regclass";
+
+    private static final String COUNT_ROWS_SQL = "SELECT count(*) FROM " + TABLE;
+
+    /**
+     * 批量导入参数
+     */
+    private final BulkLoadOptions options;
+
+    /**
+     * 用于调用数据库的对象
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * metadata 列类型 ( json 或 jsonb )
+     */
+    private volatile String metadataType = "json";
+
+    /**
+     * embedding 列类型 ( 带维度的 vector )
+     */
+    private volatile String embeddingType = "vector";
+
+    public PgBulkLoader(BulkLoadOptions options, JdbcTemplate jdbcTemplate) {
+        this.options = options;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 读取向量表的列类型, 暂存表与 COPY 的二进制格式与之保持一致. 需在 {@link PgVectorStore} 建表之后调用
+     */
+    public void initialize() {
+        Map<String, String> types = new HashMap<>();
+        jdbcTemplate.query(COLUMN_TYPES_SQL, (RowCallbackHandler) rs -> types.put(rs.getString(1), rs.getString(2)));
+        metadataType = types.getOrDefault("metadata", metadataType);
+        embeddingType = types.getOrDefault("embedding", embeddingType);
+        log.info("已就绪 {} 表的 COPY 批量导入, metadata: {}, embedding: {}, 暂存表: {}", TABLE, metadataType, embeddingType, options.isStaging());
+    }
+
+    @Override
+    public Load begin(String jobId) {
+        return options.isStaging() ? new StagedLoad(TABLE + "_load_" + jobId.replaceAll("[^A-Za-z0-9]", "")) : new DirectLoad();
+    }
+
+    /**
+     * 以二进制 COPY 把一批文本块写入指定表
+     */
+    private void copy(String table, List<Document> documents) {
+        boolean jsonb = "jsonb".equals(metadataType);
+        String sql = "COPY " + table + " (id, content, metadata, embedding) FROM STDIN (FORMAT binary)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            PGCopyOutputStream out = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, COPY_BUFFER_BYTES);
+            try {
+                PgCopyWriter writer = new PgCopyWriter(out, jsonb);
+                writer.writeHeader();
+                for (Document document : documents)
+                    writer.writeRow(document);
+                writer.writeTrailer();
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                if (out.isActive())
+                    out.cancelCopy();
+                if (e instanceof IOException ioException)
+                    throw new UncheckedIOException("COPY 写入 " + table + " 失败", ioException);
+                throw (RuntimeException) e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 直接 COPY 进向量表, 写入即可检索, 索引逐行维护
+     */
+    private final class DirectLoad implements Load {
+
+        @Override
+        public void add(List<Document> documents) {
+            copy(TABLE, documents);
+        }
+
+        @Override
+        public void publish() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+
+    /**
+     * 先 COPY 进 UNLOGGED 暂存表, 发布时一次并入向量表
+     */
+    private final class StagedLoad implements Load {
+
+        private final String stagingTable;
+        private final AtomicLong rows = new AtomicLong();
+        private volatile boolean created;
+
+        private StagedLoad(String stagingTable) {
+            this.stagingTable = stagingTable;
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            createIfAbsent();
+            copy(stagingTable, documents);
+            rows.addAndGet(documents.size());
+        }
+
+        @Override
+        public void publish() {
+            if (!created)
+                return;
+            long start = System.nanoTime();
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+                    try {
+                        merge(statement);
+                    } finally {
+                        statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                    }
+                }
+                return null;
+            });
+            log.info("已将暂存表 {} 的 {} 条向量并入 {}, 耗时 {} ms", stagingTable, rows.get(), TABLE, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        @Override
+        public void abort() {
+            if (created)
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + stagingTable);
+        }
+
+        private synchronized void createIfAbsent() {
+            if (created)
+                return;
+            jdbcTemplate.execute("CREATE UNLOGGED TABLE IF NOT EXISTS " + stagingTable
+                    + " (id uuid, content text, metadata " + metadataType + ", embedding " + embeddingType + ")");
+            created = true;
+        }
+
+        private void merge(Statement statement) throws SQLException {
+            long staged = rows.get();
+            List<String[]> indexes = new ArrayList<>();
+            long existing = 0;
+            if (options.getRebuildIndexRatio() >= 0 && staged >= options.getRebuildIndexMinRows()) {
+                existing = existingRows(statement);
+                if (staged >= options.getRebuildIndexRatio() * existing) {
+                    try (ResultSet rs = statement.executeQuery(VECTOR_INDEXES_SQL)) {
+                        while (rs.next())
+                            indexes.add(new String[]{rs.getString(1), rs.getString(2)});
+                    }
+                }
+            }
+
+            for (String[] index : indexes)
+                statement.execute("DROP INDEX IF EXISTS " + index[0]);
+            try {
+                statement.execute("INSERT INTO " + TABLE + " (id, content, metadata, embedding)"
+                        + " SELECT id, content, metadata, embedding FROM " + stagingTable
+                        + " ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding");
+            } finally {
+                // 并入失败也要恢复索引
+                if (!indexes.isEmpty())
+                    rebuild(statement, indexes, existing + staged);
+            }
+            statement.execute("DROP TABLE " + stagingTable);
+        }
+
+        /**
+         * 向量表现有行数. reltuples 在从未 ANALYZE 的表上为 -1, 此时精确计数 ( 这样的表通常刚创建, 行数不多 )
+         */
+        private long existingRows(Statement statement) throws SQLException {
+            try (ResultSet rs = statement.executeQuery(ESTIMATED_ROWS_SQL)) {
+                if (rs.next() && rs.getLong(1) >= 0)
+                    return rs.getLong(1);
+            }
+            try (ResultSet rs = statement.executeQuery(COUNT_ROWS_SQL)) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        /**
+         * 按原定义重建向量索引. maintenance_work_mem 只在重建期间生效, 结束 ( 或失败 ) 后恢复, 不会残留在连接池的连接上;
+         * 单个索引重建失败时记录错误并继续重建其余索引, 不掩盖并入本身的异常, 缺失的索引由 PgVectorStore 下次启动时以 CREATE INDEX IF NOT EXISTS 补建
+         */
+        private void rebuild(Statement statement, List<String[]> indexes, long estimatedRows) throws SQLException {
+            long start = System.nanoTime();
+            int rebuilt = 0;
+            statement.execute("SET maintenance_work_mem = '" + options.getMaintenanceWorkMem().replace("'", "") + "'");
+            try {
+                for (String[] index : indexes) {
+                    try {
+                        statement.execute(index[1]);
+                        rebuilt++;
+                    } catch (SQLException e) {
+                        log.error("重建 {} 表的向量索引 {} 失败, 检索将退化为顺序扫描! 索引定义: {}", TABLE, index[0], index[1], e);
+                    }
+                }
+            } finally {
+                statement.execute("RESET maintenance_work_mem");
+            }
+            log.info("已重建 {} 表的 {}/{} 个向量索引, 约 {} 行, 耗时 {} ms", TABLE, rebuilt, indexes.size(), estimatedRows,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package xin.eason.trigger.vectorstore;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.ai.document.Document;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 以 PostgreSQL COPY 二进制格式写出向量表的行, 列依次为 id uuid, content text, metadata json / jsonb, embedding vector.
+ * 二进制格式省去了文本格式下向量逐个浮点数的格式化与服务端解析
+ */
+public final class PgCopyWriter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private static final short COLUMNS = 4;
+
+    /**
+     * jsonb 二进制格式的版本号
+     */
+    private static final int JSONB_VERSION = 1;
+
+    private final DataOutputStream out;
+
+    /**
+     * metadata 列是否为 jsonb
+     */
+    private final boolean jsonb;
+
+    public PgCopyWriter(OutputStream out, boolean jsonb) {
+        this.out = new DataOutputStream(out);
+        this.jsonb = jsonb;
+    }
+
+    /**
+     * 写出文件头: 签名, 标志位与扩展区长度
+     */
+    public void writeHeader() throws IOException {
+        out.write(SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    /**
+     * 写出一行
+     *
+     * @param document 已携带向量的文本块, ID 必须是 UUID
+     */
+    public void writeRow(Document document) throws IOException {
+        List<Double> embedding = document.getEmbedding();
+        if (embedding == null || embedding.isEmpty())
+            throw new IllegalArgumentException("文本块 " + document.getId() + " 没有向量");
+        out.writeShort(COLUMNS);
+
+        UUID id = UUID.fromString(document.getId());
+        out.writeInt(16);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+
+        byte[] content = (document.getContent() == null ? "" : document.getContent()).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(content.length);
+        out.write(content);
+
+        byte[] metadata = JSON.toJSONString(document.getMetadata()).getBytes(StandardCharsets.UTF_8);
+        if (jsonb) {
+            out.writeInt(metadata.length + 1);
+            out.writeByte(JSONB_VERSION);
+        } else {
+            out.writeInt(metadata.length);
+        }
+        out.write(metadata);
+
+        // pgvector 二进制格式: int16 维度, int16 保留位, 随后为 float4 分量
+        out.writeInt(4 + 4 * embedding.size());
+        out.writeShort(embedding.size());
+        out.writeShort(0);
+        for (Double value : embedding)
+            out.writeFloat(value.floatValue());
+    }
+
+    /**
+     * 写出文件尾
+     */
+    public void writeTrailer() throws IOException {
+        out.writeShort(-1);
+        out.flush();
+    }
+}
@@ -0,0 +1,100 @@
+package xin.eason.trigger.vectorstore;
+
+import com.alibaba.fastjson.JSON;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 PostgreSQL 全文检索的 {@link LexicalIndex}. 在 {@link PgVectorStore} 表上增加由 content 生成的 tsvector 列并建立 GIN 索引,
+ * 写入向量时由数据库同步计算, 导入流程无需改动. 生成列同时索引原文与按驼峰拆开的文本, 类名既能整体匹配也能按单词匹配.
+ * 'simple' 配置把连续汉字整体作为一个词, 中文问题的关键词匹配效果有限, 主要依赖混合检索中的向量部分.
+ * 增加生成列会在 ACCESS EXCLUSIVE 锁下重写整张表, 因此默认关闭, 开启即为一次性迁移, 列已存在时不再执行 ALTER TABLE
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PgFullTextIndex implements LexicalIndex {
+
+    private static final String TABLE = PgVectorStore.VECTOR_TABLE_NAME;
+
+    /**
+     * 'simple' 配置不做词干化与停用词过滤, 标识符与错误码按原样 ( 小写 ) 保留
+     */
+    private static final String ADD_COLUMN_SQL = "ALTER TABLE " + TABLE + " ADD COLUMN IF NOT EXISTS lexemes tsvector GENERATED ALWAYS AS ("
+            + "to_tsvector('simple', content || ' ' || regexp_replace(content, '([[:lower:][:digit:]])([[:upper:]])', '\\1 \\2', 'g'))) STORED";
+
+    private static final String COLUMN_EXISTS_SQL = "SELECT count(*) FROM information_schema.columns WHERE table_name = ? AND column_name = 'lexemes'";
+
+    private static final String INDEX = TABLE + "_lexemes_idx";
+
+    /**
+     * CONCURRENTLY 建索引期间不阻塞写入, 不能在事务中执行 ( JdbcTemplate 默认自动提交 )
+     */
+    private static final String CREATE_INDEX_SQL = "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + INDEX + " ON " + TABLE + " USING GIN (lexemes)";
+
+    /**
+     * CONCURRENTLY 建索引中途失败会留下无效索引, IF NOT EXISTS 会跳过它, 需先删除
+     */
+    private static final String INVALID_INDEX_SQL = "SELECT count(*) FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid"
+            + " WHERE c.relname = ? AND NOT i.indisvalid";
+
+    private static final String DROP_INDEX_SQL = "DROP INDEX CONCURRENTLY IF EXISTS " + INDEX;
+
+    private static final String SEARCH_SQL = "SELECT id, content, metadata::text AS metadata_json, ts_rank_cd(lexemes, query) AS score"
+            + " FROM " + TABLE + ", to_tsquery('simple', ?) query"
+            + " WHERE metadata->>'knowledge' = ? AND lexemes @@ query ORDER BY score DESC LIMIT ?";
+
+    /**
+     * 用于调用数据库的对象
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 创建 tsvector 生成列与 GIN 索引, 已存在时跳过. 需在 {@link PgVectorStore} 建表之后调用.
+     * 首次执行时已有数据的表在 ACCESS EXCLUSIVE 锁下重写回填, 期间向量表不可读写, 大表应在维护窗口中开启;
+     * GIN 索引以 CONCURRENTLY 方式建立, 不阻塞写入
+     */
+    public void initialize() {
+        long start = System.nanoTime();
+        Long columns = jdbcTemplate.queryForObject(COLUMN_EXISTS_SQL, Long.class, TABLE);
+        if (columns == null || columns == 0) {
+            log.warn("正在为 {} 表增加 tsvector 生成列, 重写整张表期间向量表被锁定", TABLE);
+            jdbcTemplate.execute(ADD_COLUMN_SQL);
+        }
+        Long invalid = jdbcTemplate.queryForObject(INVALID_INDEX_SQL, Long.class, INDEX);
+        if (invalid != null && invalid > 0) {
+            log.warn("全文索引 {} 上次未建立完成, 删除后重建", INDEX);
+            jdbcTemplate.execute(DROP_INDEX_SQL);
+        }
+        jdbcTemplate.execute(CREATE_INDEX_SQL);
+        log.info("已就绪 {} 表的全文索引, 耗时 {} ms", TABLE, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public List<Document> keywordSearch(String knowledge, String query, int topK) {
+        String tsQuery = toTsQuery(query);
+        if (tsQuery.isEmpty() || topK <= 0)
+            return List.of();
+        return jdbcTemplate.query(SEARCH_SQL, (rs, rowNum) -> {
+            Map<String, Object> metadata = new HashMap<>(JSON.parseObject(rs.getString("metadata_json")));
+            metadata.put("score", rs.getFloat("score"));
+            return new Document(rs.getString("id"), rs.getString("content"), metadata);
+        }, tsQuery, knowledge, topK);
+    }
+
+    /**
+     * 把查询分词后以 OR 连接为 tsquery. 分词结果只包含字母与数字, 无需转义
+     */
+    static String toTsQuery(String query) {
+        Set<String> terms = new LinkedHashSet<>(LexicalTokenizer.tokenize(query));
+        return String.join(" | ", terms);
+    }
+}
@@ -0,0 +1,34 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 按知识库 Tag 分区的 PG 向量库参数, 由 spring.ai.rag.partitioned 配置项绑定
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PgPartitionOptions {
+    /**
+     * 各分区 HNSW 索引的 m
+     */
+    private int m = 16;
+    /**
+     * 各分区 HNSW 索引的 ef_construction
+     */
+    private int efConstruction = 64;
+    /**
+     * 过滤条件除知识库 Tag 外还有其他字段时, 先从分区取回 topK 的该倍数个候选, 再在内存中按其余条件过滤
+     */
+    private int filterOverFetch = 4;
+    /**
+     * 是否同时维护 tsvector 生成列与 GIN 全文索引, 供混合检索的关键词部分使用
+     */
+    private boolean lexicalIndex = true;
+    /**
+     * 分区表为空时, 是否在启动时把 vector_store 表中的数据按 Tag 迁移过来 ( 不删除原表 )
+     */
+    private boolean migrate = false;
+}
@@ -0,0 +1,398 @@
+package xin.eason.trigger.vectorstore;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按知识库 Tag 分区的 PG {@link VectorStore}. 文本块存放在以 knowledge 列做 LIST 分区的表中, 每个 Tag 一个分区,
+ * 在分区表上建立的 HNSW 索引由 PG 在每个分区上各建一份. 按 Tag 检索时分区裁剪只访问该 Tag 的分区与索引,
+ * 延迟不随其他 Tag 的数据量增长; 删除整个 Tag 即卸下并 DROP 其分区, 与行数无关 ( 需要 PG 14+ ).
+ * 写入时按文本块元数据中的 knowledge 自动路由, 分区不存在时创建. 同时实现 {@link LexicalIndex} ( tsvector 生成列 + GIN 索引,
+ * 同样按分区建立 ) 与 {@link VectorDocumentDeleter}
+ */
+@Slf4j
+public class PgPartitionedVectorStore implements VectorStore, VectorDocumentDeleter, LexicalIndex, KnowledgeInventory {
+
+    public static final String TABLE = "vector_store_partitioned";
+
+    /**
+     * 元数据中没有 knowledge 的文本块归入的 Tag
+     */
+    private static final String NO_KNOWLEDGE = "";
+
+    /**
+     * 单条 DELETE 语句携带的来源文件数上限
+     */
+    private static final int SOURCES_PER_STATEMENT = 500;
+
+    /**
+     * 分区不存在时写入失败的 SQLState
+     */
+    private static final String UNDEFINED_TABLE = "42P01";
+    private static final String CHECK_VIOLATION = "23514";
+
+    private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS " + TABLE
+            + " (knowledge text NOT NULL, id uuid NOT NULL, content text, metadata jsonb, embedding vector(%d), PRIMARY KEY (knowledge, id))"
+            + " PARTITION BY LIST (knowledge)";
+
+    private static final String CREATE_VECTOR_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + TABLE + "_embedding_idx ON " + TABLE
+            + " USING hnsw (embedding vector_cosine_ops) WITH (m = %d, ef_construction = %d)";
+
+    private static final String ADD_LEXEMES_SQL = "ALTER TABLE " + TABLE + " ADD COLUMN IF NOT EXISTS lexemes tsvector GENERATED ALWAYS AS ("
+            + "to_tsvector('simple', content || ' ' || regexp_replace(content, '([[:lower:][:digit:]])([[:upper:]])', '\\1 \\2', 'g'))) STORED";
+
+    private static final String CREATE_LEXEMES_INDEX_SQL = "CREATE INDEX IF NOT EXISTS " + TABLE + "_lexemes_idx ON " + TABLE + " USING GIN (lexemes)";
+
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+            + " WHERE i.inhparent = '" + TABLE + "'::regclass";
+
+    /**
+     * 分区是否仍挂在分区表上, 挂着时返回其 detach pending 状态 ( 上次 DETACH CONCURRENTLY 被中断 ), 已卸下时没有结果
+     */
+    private static final String ATTACHMENT_SQL = "SELECT i.inhdetachpending FROM pg_inherits i"
+            + " WHERE i.inhparent = '" + TABLE + "'::regclass AND i.inhrelid = to_regclass(?)";
+
+    /**
+     * 分区行数的估计值: 优先取累计统计中的存活行数 ( 随写入更新, 无需 ANALYZE ), 没有统计时取 pg_class.reltuples ( 从未 ANALYZE 时为 -1 )
+     */
+    private static final String ROWS_SQL = "SELECT COALESCE(s.n_live_tup, GREATEST(c.reltuples, 0)::bigint) FROM pg_class c"
+            + " LEFT JOIN pg_stat_user_tables s ON s.relid = c.oid WHERE c.oid = to_regclass(?)";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE + " (knowledge, id, content, metadata, embedding) VALUES (?, ?, ?, ?::jsonb, ?::vector)"
+            + " ON CONFLICT (knowledge, id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+
+    private static final String SEARCH_SQL = "SELECT id, content, metadata::text AS metadata_json, embedding <=> ?::vector AS distance FROM " + TABLE;
+
+    private static final String KEYWORD_SEARCH_SQL = "SELECT id, content, metadata::text AS metadata_json, ts_rank_cd(lexemes, query) AS score"
+            + " FROM " + TABLE + ", to_tsquery('simple', ?) query"
+            + " WHERE knowledge = ? AND lexemes @@ query ORDER BY score DESC LIMIT ?";
+
+    private static final String DELETE_BY_IDS_SQL = "DELETE FROM " + TABLE + " WHERE id = ANY(?)";
+
+    private static final String DELETE_BY_SOURCES_SQL = "DELETE FROM " + TABLE + " WHERE knowledge = ? AND metadata->>'source' = ANY(?)";
+
+    /**
+     * 分区参数
+     */
+    private final PgPartitionOptions options;
+
+    /**
+     * 用于调用数据库的对象
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 嵌入客户端, 为未携带向量的文档以及查询计算向量
+     */
+    private final EmbeddingClient embeddingClient;
+
+    /**
+     * 已确认存在的分区表名
+     */
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+
+    public PgPartitionedVectorStore(PgPartitionOptions options, JdbcTemplate jdbcTemplate, EmbeddingClient embeddingClient) {
+        this.options = options;
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingClient = embeddingClient;
+    }
+
+    /**
+     * 创建分区表与索引, 已存在时跳过. 开启迁移且分区表为空时, 把 {@link PgVectorStore} 表中的数据按 Tag 迁移过来
+     */
+    public void initialize() {
+        long start = System.nanoTime();
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        if (!exists(TABLE))
+            jdbcTemplate.execute(CREATE_TABLE_SQL.formatted(embeddingClient.dimensions()));
+        jdbcTemplate.execute(CREATE_VECTOR_INDEX_SQL.formatted(options.getM(), options.getEfConstruction()));
+        if (options.isLexicalIndex()) {
+            jdbcTemplate.execute(ADD_LEXEMES_SQL);
+            jdbcTemplate.execute(CREATE_LEXEMES_INDEX_SQL);
+        }
+        partitions.addAll(jdbcTemplate.queryForList(PARTITIONS_SQL, String.class));
+        if (options.isMigrate())
+            migrate();
+        log.info("已就绪按 Tag 分区的向量表 {}, 现有 {} 个分区, 耗时 {} ms", TABLE, partitions.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 写入文档, 按元数据中的 knowledge 路由到对应分区, 同一 Tag 下已存在的 ID 会被覆盖
+     *
+     * @param documents 文档列表
+     */
+    @Override
+    public void add(List<Document> documents) {
+        Map<String, List<Document>> byKnowledge = new LinkedHashMap<>();
+        for (Document document : documents) {
+            if (document.getEmbedding() == null || document.getEmbedding().isEmpty())
+                document.setEmbedding(embeddingClient.embed(document));
+            byKnowledge.computeIfAbsent(knowledgeOf(document), knowledge -> new ArrayList<>()).add(document);
+        }
+        for (Map.Entry<String, List<Document>> entry : byKnowledge.entrySet()) {
+            String partition = ensurePartition(entry.getKey());
+            try {
+                insert(entry.getKey(), entry.getValue());
+            } catch (DataAccessException e) {
+                // 分区可能已被其他实例删除, 重新创建后再试一次; 其他错误 ( 连接, 约束, 数据 ) 原样抛出
+                if (!isMissingPartition(e))
+                    throw e;
+                partitions.remove(partition);
+                ensurePartition(entry.getKey());
+                insert(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        UUID[] ids = idList.stream().map(UUID::fromString).toArray(UUID[]::new);
+        int deleted = jdbcTemplate.update(DELETE_BY_IDS_SQL, ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids)));
+        return Optional.of(deleted > 0);
+    }
+
+    /**
+     * 相似度检索. 过滤条件中含 knowledge 等值约束时只检索该 Tag 的分区; 其余过滤条件在取回 topK * filterOverFetch 个候选后于内存中求值
+     *
+     * @param request 检索请求
+     * @return 按距离升序排列的文本块, metadata 中的 distance 为余弦距离
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        int topK = request.getTopK();
+        if (topK <= 0)
+            return List.of();
+        String query = toVector(embeddingClient.embed(request.getQuery()));
+        Filter.Expression filter = request.getFilterExpression();
+        String knowledge = MetadataFilters.knowledgeOf(filter);
+        boolean residual = filter != null && !(filter.type() == Filter.ExpressionType.EQ && knowledge != null);
+        int limit = residual ? topK * Math.max(options.getFilterOverFetch(), 1) : topK;
+
+        List<Object> args = new ArrayList<>(3);
+        args.add(query);
+        String sql = SEARCH_SQL;
+        if (knowledge != null) {
+            sql += " WHERE knowledge = ?";
+            args.add(knowledge);
+        }
+        sql += " ORDER BY distance LIMIT ?";
+        args.add(limit);
+
+        List<Document> documents = new ArrayList<>(topK);
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            float distance = rs.getFloat("distance");
+            if (documents.size() >= topK || 1 - distance < request.getSimilarityThreshold())
+                return;
+            Map<String, Object> metadata = new HashMap<>(JSON.parseObject(rs.getString("metadata_json")));
+            if (residual && !MetadataFilters.matches(filter, metadata))
+                return;
+            metadata.put("distance", distance);
+            documents.add(new Document(rs.getString("id"), rs.getString("content"), metadata));
+        }, args.toArray());
+        return documents;
+    }
+
+    @Override
+    public List<Document> keywordSearch(String knowledge, String query, int topK) {
+        String tsQuery = PgFullTextIndex.toTsQuery(query);
+        if (!options.isLexicalIndex() || tsQuery.isEmpty() || topK <= 0)
+            return List.of();
+        return jdbcTemplate.query(KEYWORD_SEARCH_SQL, (rs, rowNum) -> {
+            Map<String, Object> metadata = new HashMap<>(JSON.parseObject(rs.getString("metadata_json")));
+            metadata.put("score", rs.getFloat("score"));
+            return new Document(rs.getString("id"), rs.getString("content"), metadata);
+        }, tsQuery, knowledge, topK);
+    }
+
+    @Override
+    public int deleteBySources(String knowledge, Collection<String> sources) {
+        List<String> sourceList = new ArrayList<>(sources);
+        int deleted = 0;
+        for (int from = 0; from < sourceList.size(); from += SOURCES_PER_STATEMENT) {
+            String[] batch = sourceList.subList(from, Math.min(from + SOURCES_PER_STATEMENT, sourceList.size())).toArray(String[]::new);
+            deleted += jdbcTemplate.update(DELETE_BY_SOURCES_SQL, ps -> {
+                ps.setString(1, knowledge);
+                ps.setArray(2, ps.getConnection().createArrayOf("text", batch));
+            });
+        }
+        log.info("已删除知识库 {} 中 {} 个文件的 {} 条向量", knowledge, sourceList.size(), deleted);
+        return deleted;
+    }
+
+    /**
+     * 删除知识库的分区. 先以 DETACH PARTITION CONCURRENTLY 卸下分区 ( PG 14+ ), 不阻塞其他 Tag 的读写, 再删除已卸下的表;
+     * 上次卸下被中断 ( 分区处于 detach pending 状态 ) 时以 DETACH PARTITION FINALIZE 完成. 卸下失败时不删除分区并抛出异常,
+     * 否则直接 DROP 仍挂在分区表上的分区需要对分区表加 ACCESS EXCLUSIVE 锁, 阻塞所有 Tag 的读写.
+     * 返回的行数取自统计信息 ( 见 {@link #ROWS_SQL} ), 不扫描分区
+     *
+     * @param knowledge 知识库 Tag
+     * @return 删除的行数 ( 估计值 )
+     * @throws DataAccessException 卸下或删除分区失败, 分区保持原状
+     */
+    @Override
+    public int deleteByKnowledge(String knowledge) {
+        String partition = partitionName(knowledge);
+        long rows = 0;
+        if (exists(partition)) {
+            Boolean pending = jdbcTemplate.query(ATTACHMENT_SQL, rs -> rs.next() ? rs.getBoolean(1) : null, partition);
+            if (pending != null) {
+                String mode = pending ? " FINALIZE" : " CONCURRENTLY";
+                try {
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition + mode);
+                } catch (DataAccessException e) {
+                    log.error("卸下知识库 {} 的分区 {} 失败, 分区未删除", knowledge, partition, e);
+                    throw e;
+                }
+            }
+            rows = rows(partition);
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+        partitions.remove(partition);
+        log.info("已删除知识库 {} 的分区 {}, 约 {} 条向量", knowledge, partition, rows);
+        return (int) rows;
+    }
+
+    /**
+     * 逐个分区统计文本块数与占用字节数 ( 分区表及其索引的总大小 ). 文本块数取自统计信息, 与分区大小无关;
+     * 知识库 Tag 只读取分区中的一行, 空分区不计入
+     */
+    @Override
+    public List<Usage> usage() {
+        List<Usage> usage = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+            String knowledge = jdbcTemplate.query("SELECT knowledge FROM " + partition + " LIMIT 1", rs -> rs.next() ? rs.getString(1) : null);
+            if (knowledge == null)
+                continue;
+            Long bytes = jdbcTemplate.queryForObject("SELECT pg_total_relation_size(to_regclass(?))", Long.class, partition);
+            usage.add(new Usage(knowledge, rows(partition), bytes == null ? 0 : bytes));
+        }
+        return usage;
+    }
+
+    /**
+     * 分区行数的估计值
+     */
+    private long rows(String partition) {
+        Long rows = jdbcTemplate.queryForObject(ROWS_SQL, Long.class, partition);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * 知识库 Tag 对应的分区表名. Tag 可以包含任意字符, 表名取其哈希
+     *
+     * @param knowledge 知识库 Tag
+     * @return 分区表名
+     */
+    public static String partitionName(String knowledge) {
+        return TABLE + "_" + Hashing.sha256().hashString(knowledge, StandardCharsets.UTF_8).toString().substring(0, 16);
+    }
+
+    /**
+     * 确保 Tag 的分区存在
+     *
+     * @return 分区表名
+     */
+    private String ensurePartition(String knowledge) {
+        String partition = partitionName(knowledge);
+        if (partitions.contains(partition))
+            return partition;
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + TABLE
+                    + " FOR VALUES IN ('" + knowledge.replace("'", "''") + "')");
+            log.info("已为知识库 {} 创建分区 {}", knowledge, partition);
+        } catch (DataAccessException e) {
+            // 其他实例同时创建了同一分区
+            if (!exists(partition))
+                throw e;
+        }
+        partitions.add(partition);
+        return partition;
+    }
+
+    private void insert(String knowledge, List<Document> documents) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, documents, documents.size(), (PreparedStatement ps, Document document) -> {
+            ps.setString(1, knowledge);
+            ps.setObject(2, UUID.fromString(document.getId()));
+            ps.setString(3, document.getContent());
+            ps.setString(4, JSON.toJSONString(document.getMetadata()));
+            ps.setString(5, toVector(document.getEmbedding()));
+        });
+    }
+
+    /**
+     * 分区表为空时, 为 {@link PgVectorStore} 表中的每个 Tag 创建分区并复制数据
+     */
+    private void migrate() {
+        if (!exists(PgVectorStore.VECTOR_TABLE_NAME) || Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + TABLE + ")", Boolean.class)))
+            return;
+        long start = System.nanoTime();
+        String source = PgVectorStore.VECTOR_TABLE_NAME;
+        List<String> tags = jdbcTemplate.queryForList("SELECT DISTINCT COALESCE(metadata->>'knowledge', '') FROM " + source, String.class);
+        tags.forEach(this::ensurePartition);
+        int rows = jdbcTemplate.update("INSERT INTO " + TABLE + " (knowledge, id, content, metadata, embedding)"
+                + " SELECT COALESCE(metadata->>'knowledge', ''), id, content, metadata::jsonb, embedding FROM " + source + " ON CONFLICT DO NOTHING");
+        log.info("已从 {} 迁移 {} 个知识库的 {} 条向量, 耗时 {} ms", source, tags.size(), rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 判断写入失败是否因为分区不存在: 分区表被删除 ( 42P01 undefined_table ), 或分区被卸下后没有匹配的分区 ( 23514 check_violation,
+     * "no partition of relation ... found for row" )
+     */
+    private static boolean isMissingPartition(DataAccessException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                for (SQLException next = sqlException; next != null; next = next.getNextException()) {
+                    if (UNDEFINED_TABLE.equals(next.getSQLState()) || CHECK_VIOLATION.equals(next.getSQLState()))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean exists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+
+    private static String knowledgeOf(Document document) {
+        Object knowledge = document.getMetadata().get("knowledge");
+        return knowledge == null ? NO_KNOWLEDGE : String.valueOf(knowledge);
+    }
+
+    /**
+     * 转为 pgvector 的文本表示 [x1,x2,...]
+     */
+    private static String toVector(List<Double> embedding) {
+        StringBuilder builder = new StringBuilder(embedding.size() * 12).append('[');
+        for (int i = 0; i < embedding.size(); i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append(embedding.get(i).floatValue());
+        }
+        return builder.append(']').toString();
+    }
+}
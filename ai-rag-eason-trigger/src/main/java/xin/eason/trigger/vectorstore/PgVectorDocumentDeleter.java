@@ -0,0 +1,81 @@
+package xin.eason.trigger.vectorstore;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于 PostgreSQL 的 {@link VectorDocumentDeleter}, 直接按 metadata 字段删除 {@link PgVectorStore} 表中的行.
+ * 删除整个知识库时先取出全部 ID, 再按主键分批删除, 每批是一个短事务, 不会长时间占用向量表
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PgVectorDocumentDeleter implements VectorDocumentDeleter, KnowledgeInventory {
+
+    /**
+     * 单条 DELETE 语句携带的来源文件数上限
+     */
+    private static final int SOURCES_PER_STATEMENT = 500;
+
+    private static final String DELETE_BY_SOURCES_SQL = "DELETE FROM " + PgVectorStore.VECTOR_TABLE_NAME
+            + " WHERE metadata->>'knowledge' = ? AND metadata->>'source' = ANY(?)";
+
+    /**
+     * 删除整个知识库时单条 DELETE 语句删除的行数上限
+     */
+    private static final int IDS_PER_STATEMENT = 1000;
+
+    private static final String SELECT_IDS_BY_KNOWLEDGE_SQL = "SELECT id FROM " + PgVectorStore.VECTOR_TABLE_NAME
+            + " WHERE metadata->>'knowledge' = ?";
+
+    private static final String DELETE_BY_IDS_SQL = "DELETE FROM " + PgVectorStore.VECTOR_TABLE_NAME + " WHERE id = ANY(?)";
+
+    private static final String USAGE_SQL = "SELECT metadata->>'knowledge' AS knowledge, count(*) AS chunks, sum(pg_column_size(t.*)) AS bytes"
+            + " FROM " + PgVectorStore.VECTOR_TABLE_NAME + " t GROUP BY 1";
+
+    /**
+     * 用于调用数据库的对象
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int deleteBySources(String knowledge, Collection<String> sources) {
+        List<String> sourceList = new ArrayList<>(sources);
+        int deleted = 0;
+        for (int from = 0; from < sourceList.size(); from += SOURCES_PER_STATEMENT) {
+            String[] batch = sourceList.subList(from, Math.min(from + SOURCES_PER_STATEMENT, sourceList.size())).toArray(String[]::new);
+            deleted += jdbcTemplate.update(DELETE_BY_SOURCES_SQL, ps -> {
+                ps.setString(1, knowledge);
+                ps.setArray(2, ps.getConnection().createArrayOf("text", batch));
+            });
+        }
+        log.info("已删除知识库 {} 中 {} 个文件的 {} 条向量", knowledge, sourceList.size(), deleted);
+        return deleted;
+    }
+
+    @Override
+    public int deleteByKnowledge(String knowledge) {
+        long start = System.nanoTime();
+        List<Object> ids = jdbcTemplate.queryForList(SELECT_IDS_BY_KNOWLEDGE_SQL, Object.class, knowledge);
+        int deleted = 0;
+        for (int from = 0; from < ids.size(); from += IDS_PER_STATEMENT) {
+            Object[] batch = ids.subList(from, Math.min(from + IDS_PER_STATEMENT, ids.size())).toArray();
+            deleted += jdbcTemplate.update(DELETE_BY_IDS_SQL, ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", batch)));
+        }
+        log.info("已删除知识库 {} 的全部 {} 条向量, 耗时 {} ms", knowledge, deleted, (System.nanoTime() - start) / 1_000_000);
+        return deleted;
+    }
+
+    /**
+     * 扫描全表统计各 Tag 的文本块数, 占用字节数为行数据大小之和 ( 不含索引 )
+     */
+    @Override
+    public List<Usage> usage() {
+        return jdbcTemplate.query(USAGE_SQL, (rs, rowNum) -> new Usage(rs.getString("knowledge"), rs.getLong("chunks"), rs.getLong("bytes")));
+    }
+}
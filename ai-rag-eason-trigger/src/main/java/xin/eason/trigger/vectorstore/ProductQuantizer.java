@@ -0,0 +1,181 @@
+package xin.eason.trigger.vectorstore;
+
+import xin.eason.kernel.SimilarityKernel;
+import xin.eason.kernel.SimilarityKernels;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 乘积量化 ( PQ ): 向量被切分为若干子空间, 每个子空间用 k-means 训练 256 个中心, 编码为每个子空间最近中心的下标 ( 1 字节 ).
+ * 查询时先计算查询子向量与所有中心的点积表, 编码上的点积即为查表求和 ( ADC, 非对称距离计算 )
+ */
+final class ProductQuantizer implements VectorQuantizer {
+
+    /**
+     * 每个子空间的中心数, 编码为 1 字节
+     */
+    private static final int CENTROIDS = 256;
+    private static final int ITERATIONS = 8;
+
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    private final int dimensions;
+
+    /**
+     * 子空间起始维度, 长度为子空间数 + 1
+     */
+    private final int[] bounds;
+
+    /**
+     * 子空间 -> 中心数 * 子空间维度 的中心坐标
+     */
+    private final float[][] codebooks;
+
+    private final int centroids;
+
+    private ProductQuantizer(int dimensions, int[] bounds, float[][] codebooks, int centroids) {
+        this.dimensions = dimensions;
+        this.bounds = bounds;
+        this.codebooks = codebooks;
+        this.centroids = centroids;
+    }
+
+    /**
+     * 训练码本
+     *
+     * @param sample    训练样本
+     * @param subspaces 子空间数, 超过维度时取维度
+     * @param seed      随机数种子
+     */
+    static ProductQuantizer train(float[][] sample, int subspaces, long seed) {
+        int dimensions = sample[0].length;
+        int m = Math.max(1, Math.min(subspaces, dimensions));
+        int[] bounds = new int[m + 1];
+        for (int s = 0; s <= m; s++)
+            bounds[s] = (int) ((long) s * dimensions / m);
+        int centroids = Math.min(CENTROIDS, sample.length);
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] codebooks = new float[m][];
+        for (int s = 0; s < m; s++)
+            codebooks[s] = kMeans(sample, bounds[s], bounds[s + 1] - bounds[s], centroids, random);
+        return new ProductQuantizer(dimensions, bounds, codebooks, centroids);
+    }
+
+    /**
+     * 在一个子空间上做 Lloyd k-means, 初始中心为随机样本, 空簇重新取随机样本
+     */
+    private static float[] kMeans(float[][] sample, int from, int width, int k, SplittableRandom random) {
+        float[] centers = new float[k * width];
+        for (int c = 0; c < k; c++)
+            System.arraycopy(sample[random.nextInt(sample.length)], from, centers, c * width, width);
+        int[] assignment = new int[sample.length];
+        float[] sums = new float[k * width];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int i = 0; i < sample.length; i++)
+                assignment[i] = nearest(centers, k, width, sample[i], from);
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < sample.length; i++) {
+                int c = assignment[i];
+                counts[c]++;
+                for (int j = 0; j < width; j++)
+                    sums[c * width + j] += sample[i][from + j];
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    System.arraycopy(sample[random.nextInt(sample.length)], from, centers, c * width, width);
+                    continue;
+                }
+                for (int j = 0; j < width; j++)
+                    centers[c * width + j] = sums[c * width + j] / counts[c];
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * 欧氏距离最近的中心
+     */
+    private static int nearest(float[] centers, int k, int width, float[] vector, int from) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float distance = KERNEL.squaredL2(vector, from, centers, c * width, width);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    static ProductQuantizer readFrom(DataInputStream in) throws IOException {
+        int dimensions = in.readInt();
+        int m = in.readInt();
+        int centroids = in.readInt();
+        int[] bounds = new int[m + 1];
+        for (int s = 0; s <= m; s++)
+            bounds[s] = in.readInt();
+        float[][] codebooks = new float[m][];
+        for (int s = 0; s < m; s++) {
+            codebooks[s] = new float[centroids * (bounds[s + 1] - bounds[s])];
+            for (int i = 0; i < codebooks[s].length; i++)
+                codebooks[s][i] = in.readFloat();
+        }
+        return new ProductQuantizer(dimensions, bounds, codebooks, centroids);
+    }
+
+    @Override
+    public String type() {
+        return PQ;
+    }
+
+    @Override
+    public int codeSize() {
+        return codebooks.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < codebooks.length; s++)
+            codes[offset + s] = (byte) nearest(codebooks[s], centroids, bounds[s + 1] - bounds[s], vector, bounds[s]);
+    }
+
+    @Override
+    public CodeScorer scorer(float[] query) {
+        int m = codebooks.length;
+        float[] table = new float[m * centroids];
+        for (int s = 0; s < m; s++) {
+            int from = bounds[s];
+            int width = bounds[s + 1] - from;
+            float[] centers = codebooks[s];
+            for (int c = 0; c < centroids; c++)
+                table[s * centroids + c] = KERNEL.dot(query, from, centers, c * width, width);
+        }
+        int stride = centroids;
+        return (codes, offset) -> {
+            float dot = 0;
+            for (int s = 0, base = 0; s < m; s++, base += stride)
+                dot += table[base + (codes[offset + s] & 0xff)];
+            return dot;
+        };
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(PQ);
+        out.writeInt(dimensions);
+        out.writeInt(codebooks.length);
+        out.writeInt(centroids);
+        for (int bound : bounds)
+            out.writeInt(bound);
+        for (float[] codebook : codebooks)
+            for (float value : codebook)
+                out.writeFloat(value);
+    }
+}
@@ -0,0 +1,86 @@
+package xin.eason.trigger.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按节点顺序保存的量化编码, 按块连续存放在 byte[] 中. 写入需要独占访问, 读取之间可以并发
+ */
+final class QuantizedCodes {
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private final VectorQuantizer quantizer;
+    private final int codeSize;
+    private byte[][] blocks = new byte[0][];
+    private int size;
+
+    QuantizedCodes(VectorQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.codeSize = quantizer.codeSize();
+    }
+
+    VectorQuantizer quantizer() {
+        return quantizer;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 编码向量存储中尚未编码的节点
+     *
+     * @param vectors 全精度向量存储
+     */
+    void encodePending(VectorStorage vectors) {
+        float[] vector = new float[vectors.dimensions()];
+        while (size < vectors.size()) {
+            vectors.copy(size, vector);
+            int block = size >>> BLOCK_SHIFT;
+            if (block == blocks.length) {
+                blocks = Arrays.copyOf(blocks, block + 1);
+                blocks[block] = new byte[BLOCK_SIZE * codeSize];
+            }
+            quantizer.encode(vector, blocks[block], (size & BLOCK_MASK) * codeSize);
+            size++;
+        }
+    }
+
+    /**
+     * 使用查询打分器计算节点的近似点积
+     */
+    float dot(VectorQuantizer.CodeScorer scorer, int node) {
+        return scorer.dot(blocks[node >>> BLOCK_SHIFT], (node & BLOCK_MASK) * codeSize);
+    }
+
+    /**
+     * 写入码本与编码
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        quantizer.writeTo(out);
+        out.writeInt(size);
+        for (int block = 0; block * BLOCK_SIZE < size; block++)
+            out.write(blocks[block], 0, Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE) * codeSize);
+    }
+
+    /**
+     * 读取 {@link #writeTo} 写入的码本与编码
+     */
+    static QuantizedCodes readFrom(DataInputStream in) throws IOException {
+        QuantizedCodes codes = new QuantizedCodes(VectorQuantizer.readFrom(in));
+        int size = in.readInt();
+        int blockCount = (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        codes.blocks = new byte[blockCount][];
+        for (int block = 0; block < blockCount; block++) {
+            codes.blocks[block] = new byte[BLOCK_SIZE * codes.codeSize];
+            in.readFully(codes.blocks[block], 0, Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE) * codes.codeSize);
+        }
+        codes.size = size;
+        return codes;
+    }
+}
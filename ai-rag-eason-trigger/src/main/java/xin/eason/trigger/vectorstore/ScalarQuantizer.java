@@ -0,0 +1,98 @@
+package xin.eason.trigger.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 逐维 int8 标量量化: 每一维按训练样本中的最小值与最大值均匀划分为 256 级, 编码大小为 float32 的 1/4
+ */
+final class ScalarQuantizer implements VectorQuantizer {
+
+    private final float[] minimum;
+    private final float[] step;
+
+    private ScalarQuantizer(float[] minimum, float[] step) {
+        this.minimum = minimum;
+        this.step = step;
+    }
+
+    static ScalarQuantizer train(float[][] sample) {
+        int dimensions = sample[0].length;
+        float[] minimum = new float[dimensions];
+        float[] maximum = new float[dimensions];
+        Arrays.fill(minimum, Float.POSITIVE_INFINITY);
+        Arrays.fill(maximum, Float.NEGATIVE_INFINITY);
+        for (float[] vector : sample) {
+            for (int i = 0; i < dimensions; i++) {
+                minimum[i] = Math.min(minimum[i], vector[i]);
+                maximum[i] = Math.max(maximum[i], vector[i]);
+            }
+        }
+        float[] step = new float[dimensions];
+        for (int i = 0; i < dimensions; i++)
+            step[i] = Math.max((maximum[i] - minimum[i]) / 255f, 1e-9f);
+        return new ScalarQuantizer(minimum, step);
+    }
+
+    static ScalarQuantizer readFrom(DataInputStream in) throws IOException {
+        int dimensions = in.readInt();
+        float[] minimum = new float[dimensions];
+        float[] step = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            minimum[i] = in.readFloat();
+            step[i] = in.readFloat();
+        }
+        return new ScalarQuantizer(minimum, step);
+    }
+
+    @Override
+    public String type() {
+        return INT8;
+    }
+
+    @Override
+    public int codeSize() {
+        return minimum.length;
+    }
+
+    @Override
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int i = 0; i < minimum.length; i++) {
+            int level = Math.round((vector[i] - minimum[i]) / step[i]);
+            codes[offset + i] = (byte) (Math.min(Math.max(level, 0), 255) - 128);
+        }
+    }
+
+    /**
+     * 点积 = sum(q * (min + (c + 128) * step)) = base + sum(q * step * c), 其中 base 只与查询有关
+     */
+    @Override
+    public CodeScorer scorer(float[] query) {
+        int dimensions = minimum.length;
+        float[] scaled = new float[dimensions];
+        float base = 0;
+        for (int i = 0; i < dimensions; i++) {
+            scaled[i] = query[i] * step[i];
+            base += query[i] * minimum[i] + 128 * scaled[i];
+        }
+        float constant = base;
+        return (codes, offset) -> {
+            float dot = constant;
+            for (int i = 0; i < dimensions; i++)
+                dot += scaled[i] * codes[offset + i];
+            return dot;
+        };
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(INT8);
+        out.writeInt(minimum.length);
+        for (int i = 0; i < minimum.length; i++) {
+            out.writeFloat(minimum[i]);
+            out.writeFloat(step[i]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package xin.eason.trigger.vectorstore;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 向量库的批量导入通道. 导入任务期间的文本块经由它写入, 任务结束时统一发布, 绕开 {@link org.springframework.ai.vectorstore.VectorStore#add(List)} 的逐行写入
+ */
+public interface VectorBulkLoader {
+
+    /**
+     * 为一个导入任务开始一次批量导入
+     *
+     * @param jobId 导入任务 ID
+     * @return 批量导入会话
+     */
+    Load begin(String jobId);
+
+    /**
+     * 一次批量导入, 可由多个线程并发写入
+     */
+    interface Load {
+
+        /**
+         * 写入一批已携带向量的文本块
+         *
+         * @param documents 文本块
+         */
+        void add(List<Document> documents);
+
+        /**
+         * 所有文本块写入后调用, 使其对检索可见
+         */
+        void publish();
+
+        /**
+         * 放弃本次导入中尚未发布的文本块
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,27 @@
+package xin.eason.trigger.vectorstore;
+
+import java.util.Collection;
+
+/**
+ * 按元数据删除向量库中的文本块. Spring AI 的 {@link org.springframework.ai.vectorstore.VectorStore} 只支持按文档 ID 删除,
+ * 而知识库的增量更新需要按 知识库 Tag + 来源文件 删除
+ */
+public interface VectorDocumentDeleter {
+
+    /**
+     * 删除知识库中来自指定文件的全部文本块
+     *
+     * @param knowledge 知识库 Tag
+     * @param sources   来源文件 ( 文本块元数据中的 source )
+     * @return 删除的行数
+     */
+    int deleteBySources(String knowledge, Collection<String> sources);
+
+    /**
+     * 删除知识库中的全部文本块
+     *
+     * @param knowledge 知识库 Tag
+     * @return 删除的行数, 按分区删除的实现返回统计信息中的估计值
+     */
+    int deleteByKnowledge(String knowledge);
+}
@@ -0,0 +1,92 @@
+package xin.eason.trigger.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 向量量化器: 将归一化后的 float32 向量压缩为定长字节编码, 并可直接在编码上近似计算与查询向量的点积
+ */
+interface VectorQuantizer {
+
+    /**
+     * 不量化
+     */
+    String NONE = "none";
+    /**
+     * 逐维 int8 标量量化
+     */
+    String INT8 = "int8";
+    /**
+     * 乘积量化
+     */
+    String PQ = "pq";
+
+    /**
+     * @return 量化类型
+     */
+    String type();
+
+    /**
+     * @return 每个向量的编码字节数
+     */
+    int codeSize();
+
+    /**
+     * 编码一个向量
+     *
+     * @param vector 归一化后的向量
+     * @param codes  编码输出数组
+     * @param offset 写入位置
+     */
+    void encode(float[] vector, byte[] codes, int offset);
+
+    /**
+     * 为查询向量预计算打分器
+     *
+     * @param query 归一化后的查询向量
+     * @return 在编码上近似计算点积的打分器
+     */
+    CodeScorer scorer(float[] query);
+
+    /**
+     * 将码本写入输出流
+     */
+    void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * 从训练样本训练量化器
+     *
+     * @param type    量化类型
+     * @param sample  训练样本 ( 归一化后的向量 )
+     * @param options 索引参数
+     * @return 量化器
+     */
+    static VectorQuantizer train(String type, float[][] sample, HnswOptions options) {
+        return switch (type) {
+            case INT8 -> ScalarQuantizer.train(sample);
+            case PQ -> ProductQuantizer.train(sample, options.getPqSubspaces(), options.getSeed());
+            default -> throw new IllegalArgumentException("未知的量化类型: " + type);
+        };
+    }
+
+    /**
+     * 从输入流读取 {@link #writeTo} 写入的码本
+     */
+    static VectorQuantizer readFrom(DataInputStream in) throws IOException {
+        String type = in.readUTF();
+        return switch (type) {
+            case INT8 -> ScalarQuantizer.readFrom(in);
+            case PQ -> ProductQuantizer.readFrom(in);
+            default -> throw new IOException("未知的量化类型: " + type);
+        };
+    }
+
+    /**
+     * 在编码上近似计算与查询向量的点积
+     */
+    @FunctionalInterface
+    interface CodeScorer {
+        float dot(byte[] codes, int offset);
+    }
+}
@@ -0,0 +1,511 @@
+package xin.eason.trigger.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 本地向量库的磁盘段, 一个目录包含以下文件:
+ * <ul>
+ *     <li>vectors.f32: 定长 float32 向量, 内存映射访问 ( 见 {@link MappedVectorStorage} )</li>
+ *     <li>records.dat: 只追加的文档记录 ( ID, 元数据 JSON, 文本内容 )</li>
+ *     <li>offsets.i64: 每个节点对应记录在 records.dat 中的起始位置, 写入偏移量即视为该节点已提交.
+ *     偏移量在向量与记录刷盘之后才批量写入 ( 见 {@link #commit} ), 因此磁盘上的偏移量总是指向完整的记录</li>
+ *     <li>tombstones.i32: 只追加的已删除节点编号. 墓碑在 {@link #commit} 中于偏移量之后写入并刷盘,
+ *     覆盖写入时旧记录的墓碑不会先于新记录落盘</li>
+ *     <li>graph.bin: HNSW 图结构快照, 快照之后追加的节点在打开时补建</li>
+ *     <li>codes.bin: 量化码本与编码快照 ( 开启量化时 ), 快照之后追加的节点在打开时补编码</li>
+ *     <li>index.bin: 文档 ID, 知识库 Tag 与 BM25 索引的快照, 与图快照一同写入, 打开时只需重放快照之后追加的记录</li>
+ * </ul>
+ * 写入只追加到文件末尾, 由操作系统页缓存异步落盘, 调用 {@link #commit}, {@link #saveGraph} 或 {@link #close} 时强制刷盘.
+ * 打开时沿偏移量校验每条记录的边界, 截断第一条越界或不连续的记录及其之后的数据.
+ * 压缩时在同级的 .compacting 目录中写出新段, 再以两次重命名替换原目录 ( 见 {@link #replace} ), 打开时完成被中断的替换.
+ * 本类不是线程安全的: 写入需要独占访问, {@link #readContent} 之间可以并发
+ */
+@Slf4j
+final class VectorSegment implements Closeable {
+
+    private static final String VECTORS_FILE = "vectors.f32";
+    private static final String RECORDS_FILE = "records.dat";
+    private static final String OFFSETS_FILE = "offsets.i64";
+    private static final String TOMBSTONES_FILE = "tombstones.i32";
+    private static final String GRAPH_FILE = "graph.bin";
+    private static final String CODES_FILE = "codes.bin";
+    private static final String INDEX_FILE = "index.bin";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String RETIRED_SUFFIX = ".retired";
+
+    /**
+     * 记录头: ID 长度, 元数据长度, 内容长度
+     */
+    private static final int RECORD_HEADER_BYTES = 12;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FileChannel records;
+    private final FileChannel offsets;
+    private final FileChannel tombstones;
+
+    /**
+     * 向量存储, 在写入第一个向量时按其维度创建
+     */
+    private MappedVectorStorage vectors;
+
+    /**
+     * 节点 -> 记录起始位置
+     */
+    private long[] recordOffsets;
+    private int size;
+
+    /**
+     * 偏移量已写入文件的节点数, 其后的节点记录已追加但尚未提交
+     */
+    private int committed;
+    private long recordsEnd;
+
+    /**
+     * 尚未写入文件的墓碑, 在下一次 {@link #commit} 时写入
+     */
+    private final IntList pendingTombstones = new IntList();
+
+    private VectorSegment(Path directory) throws IOException {
+        this.directory = directory;
+        this.records = FileChannel.open(directory.resolve(RECORDS_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.offsets = FileChannel.open(directory.resolve(OFFSETS_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.tombstones = FileChannel.open(directory.resolve(TOMBSTONES_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 打开 ( 或创建 ) 磁盘段. 只读取偏移量文件与向量文件头, 未提交的尾部数据会被截断
+     *
+     * @param directory 段目录
+     */
+    static VectorSegment open(Path directory) throws IOException {
+        recover(directory);
+        Files.createDirectories(directory);
+        VectorSegment segment = new VectorSegment(directory);
+        try {
+            segment.load();
+        } catch (IOException | RuntimeException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    /**
+     * @param directory 段目录
+     * @return 压缩时写出新段的临时目录
+     */
+    static Path compactionDirectory(Path directory) {
+        return directory.resolveSibling(directory.getFileName() + COMPACTING_SUFFIX);
+    }
+
+    /**
+     * 以压缩后的新段替换原段: 先将原目录重命名为 .retired, 再将新段目录重命名为原目录, 最后删除旧段.
+     * 调用前两个段都须已关闭
+     *
+     * @param directory 段目录
+     * @param compacted 已写完并关闭的新段目录
+     */
+    static void replace(Path directory, Path compacted) throws IOException {
+        Path retired = directory.resolveSibling(directory.getFileName() + RETIRED_SUFFIX);
+        deleteDirectory(retired);
+        Files.move(directory, retired, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(compacted, directory, StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(retired);
+    }
+
+    /**
+     * 原目录已被重命名而新段尚未就位时 ( 两次重命名之间宕机 ), 新段已完整写出, 完成替换; 否则丢弃未完成的压缩
+     */
+    private static void recover(Path directory) throws IOException {
+        Path compacted = compactionDirectory(directory);
+        if (!Files.exists(directory) && Files.isDirectory(compacted)) {
+            log.warn("上次压缩在替换磁盘段时中断, 使用已写出的新段: {}", compacted);
+            Files.move(compacted, directory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deleteDirectory(compacted);
+        deleteDirectory(directory.resolveSibling(directory.getFileName() + RETIRED_SUFFIX));
+    }
+
+    /**
+     * 删除目录及其中的文件 ( 段目录没有子目录 ), 目录不存在时忽略
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private void load() throws IOException {
+        int stored = (int) (offsets.size() / Long.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(stored * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && offsets.read(buffer, buffer.position()) >= 0) ;
+        buffer.flip();
+        recordOffsets = new long[Math.max(stored, 16)];
+        buffer.asLongBuffer().get(recordOffsets, 0, stored);
+
+        // 记录首尾相接, 沿偏移量校验每条记录: 起始位置与上一条记录的结尾一致, 且完整地落在记录文件中
+        long recordsSize = records.size();
+        recordsEnd = 0;
+        committed = 0;
+        while (committed < stored && recordOffsets[committed] == recordsEnd) {
+            long end = recordEnd(recordsEnd, recordsSize);
+            if (end < 0)
+                break;
+            recordsEnd = end;
+            committed++;
+        }
+        if (committed < stored)
+            log.warn("磁盘段 {} 的第 {} 条记录不完整, 截断其后的 {} 条记录", directory, committed, stored - committed);
+
+        Path vectorsFile = directory.resolve(VECTORS_FILE);
+        if (MappedVectorStorage.exists(vectorsFile))
+            vectors = MappedVectorStorage.open(vectorsFile, committed);
+        else if (committed > 0)
+            throw new IOException("向量文件缺失: " + vectorsFile);
+        size = committed;
+
+        // 截断最后一次提交之后写了一半的记录与偏移量
+        records.truncate(recordsEnd);
+        offsets.truncate((long) committed * Long.BYTES);
+        tombstones.truncate(tombstones.size() / Integer.BYTES * Integer.BYTES);
+    }
+
+    /**
+     * @return 已提交的节点数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 向量存储, 尚未写入任何向量时为 null
+     */
+    MappedVectorStorage vectors() {
+        return vectors;
+    }
+
+    /**
+     * 创建向量文件
+     *
+     * @param dimensions 向量维度
+     */
+    MappedVectorStorage createVectors(int dimensions) throws IOException {
+        if (vectors != null)
+            throw new IllegalStateException("向量文件已存在");
+        vectors = MappedVectorStorage.create(directory.resolve(VECTORS_FILE), dimensions);
+        return vectors;
+    }
+
+    /**
+     * 追加节点的文档记录, 节点向量须已追加到 {@link #vectors()}. 记录在 {@link #commit} 之后才会在重新打开时可见
+     *
+     * @param node     节点编号
+     * @param id       文档 ID
+     * @param metadata 元数据
+     * @param content  文本内容
+     */
+    void appendRecord(int node, String id, Map<String, Object> metadata, String content) throws IOException {
+        if (node != size)
+            throw new IllegalStateException("节点编号不连续: 期望 " + size + ", 实际 " + node);
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes = objectMapper.writeValueAsBytes(metadata);
+        byte[] contentBytes = content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + idBytes.length + metadataBytes.length + contentBytes.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(idBytes.length).putInt(metadataBytes.length).putInt(contentBytes.length)
+                .put(idBytes).put(metadataBytes).put(contentBytes).flip();
+        long offset = recordsEnd;
+        writeFully(records, record, offset);
+        recordsEnd += record.capacity();
+
+        if (node == recordOffsets.length)
+            recordOffsets = Arrays.copyOf(recordOffsets, node * 2);
+        recordOffsets[node] = offset;
+        size++;
+    }
+
+    /**
+     * 提交已追加的记录与墓碑: 先将向量与记录刷盘, 再批量写入它们的偏移量, 最后写入墓碑并刷盘. 宕机时偏移量可能丢失 ( 节点视为未提交 ),
+     * 但不会指向尚未落盘的记录或向量; 有墓碑时偏移量先于墓碑刷盘, 覆盖写入的旧记录只会在新记录提交之后被删除
+     */
+    void commit() throws IOException {
+        if (committed < size) {
+            if (vectors != null)
+                vectors.force();
+            records.force(false);
+            ByteBuffer offsetBytes = ByteBuffer.allocate((size - committed) * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int node = committed; node < size; node++)
+                offsetBytes.putLong(recordOffsets[node]);
+            offsetBytes.flip();
+            writeFully(offsets, offsetBytes, (long) committed * Long.BYTES);
+            if (!pendingTombstones.isEmpty())
+                offsets.force(false);
+            committed = size;
+        }
+        if (pendingTombstones.isEmpty())
+            return;
+        ByteBuffer tombstoneBytes = ByteBuffer.allocate(pendingTombstones.size() * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < pendingTombstones.size(); i++)
+            tombstoneBytes.putInt(pendingTombstones.get(i));
+        tombstoneBytes.flip();
+        writeFully(tombstones, tombstoneBytes, tombstones.size());
+        tombstones.force(false);
+        pendingTombstones.clear();
+    }
+
+    /**
+     * 记录一个已删除的节点, 在下一次 {@link #commit} 时写入
+     */
+    void appendTombstone(int node) {
+        pendingTombstones.add(node);
+    }
+
+    /**
+     * 从节点 from 开始顺序读取已提交的记录 ( 跳过文本内容 ), 再读取所有墓碑
+     *
+     * @param from    起始节点编号, 之前的节点已从 {@link #loadIndex} 恢复
+     * @param visitor 记录访问者
+     */
+    void replay(int from, RecordVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(RECORDS_FILE)), 1 << 16))) {
+            if (from < size)
+                in.skipNBytes(recordOffsets[from]);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int node = from; node < size; node++) {
+                in.readFully(header.array());
+                int idLength = header.getInt(0);
+                int metadataLength = header.getInt(4);
+                int contentLength = header.getInt(8);
+                byte[] idBytes = new byte[idLength];
+                in.readFully(idBytes);
+                byte[] metadataBytes = new byte[metadataLength];
+                in.readFully(metadataBytes);
+                in.skipNBytes(contentLength);
+                visitor.record(node, new String(idBytes, StandardCharsets.UTF_8), objectMapper.readValue(metadataBytes, METADATA_TYPE));
+            }
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(directory.resolve(TOMBSTONES_FILE)))) {
+            byte[] bytes = in.readAllBytes();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.remaining() >= Integer.BYTES) {
+                int node = buffer.getInt();
+                if (node < size)
+                    visitor.deleted(node);
+            }
+        }
+    }
+
+    /**
+     * 读取节点的文本内容
+     */
+    String readContent(int node) throws IOException {
+        long offset = recordOffsets[node];
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(records, header, offset);
+        ByteBuffer content = ByteBuffer.allocate(header.getInt(8));
+        readFully(records, content, offset + RECORD_HEADER_BYTES + header.getInt(0) + header.getInt(4));
+        return new String(content.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取节点的元数据
+     */
+    Map<String, Object> readMetadata(int node) throws IOException {
+        long offset = recordOffsets[node];
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(records, header, offset);
+        ByteBuffer metadata = ByteBuffer.allocate(header.getInt(4));
+        readFully(records, metadata, offset + RECORD_HEADER_BYTES + header.getInt(0));
+        return objectMapper.readValue(metadata.array(), METADATA_TYPE);
+    }
+
+    /**
+     * 恢复 HNSW 图: 读取快照并补建快照之后追加的节点, 快照缺失或不匹配时全量重建
+     *
+     * @param options 索引参数
+     * @return 近邻图, 尚未写入任何向量时为 null
+     */
+    HnswGraph loadGraph(HnswOptions options) throws IOException {
+        if (vectors == null)
+            return null;
+        HnswGraph graph = null;
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        if (Files.isRegularFile(graphFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile), 1 << 16))) {
+                graph = HnswGraph.readFrom(in, vectors, options);
+            } catch (IOException e) {
+                log.warn("读取 HNSW 图快照失败, 将重建: {}", graphFile, e);
+            }
+        }
+        if (graph == null)
+            graph = new HnswGraph(vectors, options);
+        int snapshotSize = graph.size();
+        int pending = graph.indexPending();
+        if (pending > 0)
+            log.info("已从快照恢复 {} 个节点, 补建 {} 个节点", snapshotSize, pending);
+        return graph;
+    }
+
+    /**
+     * 读取量化码本与编码快照并补编码快照之后追加的节点
+     *
+     * @param type 期望的量化类型, 与快照不一致时丢弃快照
+     * @return 量化编码, 快照缺失或不匹配时返回 null
+     */
+    QuantizedCodes loadCodes(String type) {
+        Path codesFile = directory.resolve(CODES_FILE);
+        if (vectors == null || !Files.isRegularFile(codesFile))
+            return null;
+        QuantizedCodes codes;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(codesFile), 1 << 16))) {
+            codes = QuantizedCodes.readFrom(in);
+        } catch (IOException e) {
+            log.warn("读取量化编码快照失败, 将重新训练: {}", codesFile, e);
+            return null;
+        }
+        if (!codes.quantizer().type().equalsIgnoreCase(type) || codes.size() > vectors.size())
+            return null;
+        codes.encodePending(vectors);
+        return codes;
+    }
+
+    /**
+     * 读取文档索引快照
+     *
+     * @param reader 快照读取方法, 快照与当前段不匹配时返回 null
+     * @return 快照内容, 快照缺失或读取失败时返回 null
+     */
+    <T> T loadIndex(SnapshotReader<T> reader) {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(indexFile))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            return reader.read(in);
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取文档索引快照失败, 将重放全部记录: {}", indexFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 将向量, 记录与墓碑刷盘, 然后原子地替换 HNSW 图快照, 量化编码快照以及文档索引快照
+     *
+     * @param graph 近邻图
+     * @param codes 量化编码, 未开启量化时为 null
+     * @param index 文档索引快照的写入方法
+     */
+    void saveGraph(HnswGraph graph, QuantizedCodes codes, SnapshotWriter index) throws IOException {
+        commit();
+        force();
+        writeAtomically(GRAPH_FILE, graph::writeTo);
+        if (codes != null)
+            writeAtomically(CODES_FILE, codes::writeTo);
+        writeAtomically(INDEX_FILE, index);
+    }
+
+    private void writeAtomically(String fileName, SnapshotWriter writer) throws IOException {
+        Path temporary = directory.resolve(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            writer.write(out);
+        }
+        Files.move(temporary, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (records; offsets; tombstones) {
+            commit();
+            force();
+            if (vectors != null)
+                vectors.close();
+        }
+    }
+
+    private void force() throws IOException {
+        if (vectors != null)
+            vectors.force();
+        records.force(false);
+        offsets.force(false);
+        tombstones.force(false);
+    }
+
+    /**
+     * @return 从 offset 开始的记录的结尾位置, 记录头越界, 长度为负或记录超出 limit 时返回 -1
+     */
+    private long recordEnd(long offset, long limit) throws IOException {
+        if (offset + RECORD_HEADER_BYTES > limit)
+            return -1;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(records, header, offset);
+        int idLength = header.getInt(0);
+        int metadataLength = header.getInt(4);
+        int contentLength = header.getInt(8);
+        if (idLength < 0 || metadataLength <= 0 || contentLength < 0)
+            return -1;
+        long end = offset + RECORD_HEADER_BYTES + idLength + metadataLength + contentLength;
+        return end > limit ? -1 : end;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("记录文件意外结束, 位置: " + position);
+            position += read;
+        }
+    }
+
+    @FunctionalInterface
+    interface SnapshotWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface SnapshotReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * 重放记录时的回调
+     */
+    interface RecordVisitor {
+
+        void record(int node, String id, Map<String, Object> metadata);
+
+        void deleted(int node);
+    }
+}
@@ -0,0 +1,40 @@
+package xin.eason.trigger.vectorstore;
+
+/**
+ * 定长向量的顺序存储, 节点编号即写入顺序. 写入需要独占访问, 读取之间可以并发
+ */
+interface VectorStorage {
+
+    /**
+     * @return 向量维度
+     */
+    int dimensions();
+
+    /**
+     * @return 已写入的向量数
+     */
+    int size();
+
+    /**
+     * 追加一个向量
+     *
+     * @param vector 向量
+     * @return 节点编号
+     */
+    int append(float[] vector);
+
+    /**
+     * 读取节点向量到 target
+     */
+    void copy(int node, float[] target);
+
+    /**
+     * 查询向量与节点向量的点积
+     */
+    float dot(float[] query, int node);
+
+    /**
+     * 两个节点向量的点积
+     */
+    float dot(int a, int b);
+}